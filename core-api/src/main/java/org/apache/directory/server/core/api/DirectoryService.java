@@ -349,6 +349,78 @@ public interface DirectoryService extends ServerEntryFactory
     List<String> getInterceptors( OperationEnum operation );
 
 
+    /**
+     * Returns the precompiled chain of interceptors implementing an operation, in
+     * the order they have to be called. The chain is rebuilt when an interceptor is
+     * added or removed, the returned array is shared and must not be modified.
+     * <br>
+     * The default implementation resolves the interceptors names returned by
+     * {@link #getInterceptors(OperationEnum)} on each call.
+     *
+     * @param operation The operation that the interceptors must implement
+     * @return the chain of interceptors for this operation
+     */
+    default Interceptor[] getInterceptorChain( OperationEnum operation )
+    {
+        List<String> names = getInterceptors( operation );
+
+        if ( names == null )
+        {
+            return new Interceptor[0];
+        }
+
+        Interceptor[] chain = new Interceptor[names.size()];
+        int pos = 0;
+
+        for ( String name : names )
+        {
+            chain[pos++] = getInterceptor( name );
+        }
+
+        return chain;
+    }
+
+
+    /**
+     * Rebuilds the chains of interceptors. It must be called when the state of an
+     * interceptor changes in a way that modifies the result of its
+     * {@link Interceptor#isActive(OperationEnum)} method. The default implementation
+     * does nothing, for the services which don't leave the inactive interceptors out
+     * of the chains.
+     */
+    default void refreshInterceptorChains()
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * Tells if the lookup and hasEntry operation contexts released by the threads processing
+     * the operations of this service are kept for their next operation. The default is
+     * <tt>true</tt>.
+     *
+     * @return <tt>true</tt> if the released operation contexts are pooled
+     */
+    default boolean isOperationContextPooling()
+    {
+        return true;
+    }
+
+
+    /**
+     * Enables or disables the pooling of the operation contexts used by this service. It
+     * should be disabled when its operations are processed by threads which are not reused,
+     * like the virtual threads. The default implementation does nothing, the pooling stays
+     * enabled.
+     *
+     * @param pooling <tt>true</tt> to keep the released operation contexts for the next operation of the thread
+     */
+    default void setOperationContextPooling( boolean pooling )
+    {
+        // Nothing to do
+    }
+
+
     /**
      * Sets the interceptors in the server.
      *
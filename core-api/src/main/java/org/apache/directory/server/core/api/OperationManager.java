@@ -20,10 +20,13 @@
 package org.apache.directory.server.core.api;
 
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -171,7 +174,7 @@ public interface OperationManager
 
 
     /**
-     * Acquires a WriteLock
+     * Acquires a WriteLock on the whole server : no other operation can be done until it is released
      */
     void lockWrite();
 
@@ -183,7 +186,36 @@ public interface OperationManager
 
 
     /**
-     * Acquires a ReadLock
+     * Acquires the WriteLocks of the partitions containing some entries, in the order the
+     * partition locks must be taken. The updates and the reads done on the other partitions
+     * are not blocked. The entries which are not in any partition are ignored.
+     *
+     * @param dns The Dn of the entries that will be updated
+     * @return The suffixes of the locked partitions, to be given to {@link #unlockWrite(List)}
+     * @throws LdapException If the locks can't be acquired
+     */
+    default List<Dn> lockWrite( Collection<Dn> dns ) throws LdapException
+    {
+        lockWrite();
+
+        return null;
+    }
+
+
+    /**
+     * Releases the WriteLocks acquired by {@link #lockWrite(Collection)}
+     *
+     * @param suffixDns The suffixes of the locked partitions
+     */
+    default void unlockWrite( List<Dn> suffixDns )
+    {
+        unlockWrite();
+    }
+
+
+    /**
+     * Acquires a ReadLock on the whole server : it prevents the operations done on the whole
+     * server, but not the updates done on a single partition.
      */
     void lockRead();
 
@@ -195,7 +227,36 @@ public interface OperationManager
 
 
     /**
-     * @return the OperationManager R/W lock
+     * @return the OperationManager R/W lock, taken by the operations done on the whole server
      */
     ReadWriteLock getRWLock();
+
+
+    /**
+     * Gets the lock protecting a partition. The updates done on the partition hold its write lock,
+     * the partition must hold its read lock when it reads its data.
+     *
+     * @param suffixDn The partition suffix
+     * @return the R/W lock of the partition. The default is the OperationManager R/W lock.
+     */
+    default ReadWriteLock getRWLock( Dn suffixDn )
+    {
+        return getRWLock();
+    }
+
+
+    /**
+     * Checks that an update on an entry can be done locally, before it is buffered in a
+     * transaction : the entry must not be, or be under, a referral, and a moved entry must
+     * not be moved under a referral.
+     *
+     * @param dn The updated entry Dn
+     * @param newSuperiorDn The new superior of a moved entry, or null
+     * @param referralIgnored <tt>true</tt> if the referrals are managed as normal entries (ManageDsaIT)
+     * @throws LdapException If the update can't be done locally, with the referral to follow if any
+     */
+    default void checkReferral( Dn dn, Dn newSuperiorDn, boolean referralIgnored ) throws LdapException
+    {
+        // Nothing to check by default
+    }
 }
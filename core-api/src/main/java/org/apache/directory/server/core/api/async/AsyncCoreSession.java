@@ -0,0 +1,486 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A non blocking view of a {@link CoreSession}. The operations are run through the
+ * interceptor chain by the given executor, and their results are returned as
+ * CompletableFutures. The searches stream their entries to an {@link EntrySubscriber} :
+ * the cursor is only advanced when the subscriber has requested some entries, and by
+ * one executor task at a time, so a slow subscriber never holds a thread while it is
+ * not ready to receive more entries.
+ * <br>
+ * The session locks and transactions are released when an operation returns, so the
+ * operations of the wrapped session can be run by any thread. A session transaction
+ * must not be used with an asynchronous session, though, as it is not bound to a thread.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AsyncCoreSession
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( AsyncCoreSession.class );
+
+    /** The wrapped session */
+    private final CoreSession session;
+
+    /** The executor running the operations */
+    private final Executor executor;
+
+
+    /**
+     * Creates a new instance of AsyncCoreSession.
+     *
+     * @param session The session the operations are done with
+     * @param executor The executor running the operations
+     */
+    public AsyncCoreSession( CoreSession session, Executor executor )
+    {
+        this.session = session;
+        this.executor = executor;
+    }
+
+
+    /**
+     * @return The wrapped session
+     */
+    public CoreSession getSession()
+    {
+        return session;
+    }
+
+
+    /**
+     * Adds an entry into the DirectoryService.
+     *
+     * @param entry The entry to add
+     * @return A future completed when the entry has been added
+     */
+    public CompletableFuture<Void> add( final Entry entry )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.add( entry );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Adds an entry into the DirectoryService.
+     *
+     * @param addRequest The request containing the entry to add
+     * @return A future completed when the entry has been added
+     */
+    public CompletableFuture<Void> add( final AddRequest addRequest )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.add( addRequest );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Deletes an entry from the DirectoryService.
+     *
+     * @param dn The Dn of the entry to delete
+     * @return A future completed when the entry has been deleted
+     */
+    public CompletableFuture<Void> delete( final Dn dn )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.delete( dn );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Looks up an entry in the DirectoryService.
+     *
+     * @param dn The Dn of the entry to look for
+     * @param atIds The attributes to return
+     * @return A future completed with the found entry
+     */
+    public CompletableFuture<Entry> lookup( final Dn dn, final String... atIds )
+    {
+        return submit( new Callable<Entry>()
+        {
+            @Override
+            public Entry call() throws Exception
+            {
+                return session.lookup( dn, atIds );
+            }
+        } );
+    }
+
+
+    /**
+     * Modifies an entry in the DirectoryService.
+     *
+     * @param dn The Dn of the entry to modify
+     * @param mods The modifications to apply
+     * @return A future completed when the entry has been modified
+     */
+    public CompletableFuture<Void> modify( final Dn dn, final List<Modification> mods )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.modify( dn, mods );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Modifies an entry in the DirectoryService.
+     *
+     * @param dn The Dn of the entry to modify
+     * @param mods The modifications to apply
+     * @return A future completed when the entry has been modified
+     */
+    public CompletableFuture<Void> modify( final Dn dn, final Modification... mods )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.modify( dn, mods );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Modifies an entry in the DirectoryService.
+     *
+     * @param modifyRequest The request containing the modifications
+     * @return A future completed when the entry has been modified
+     */
+    public CompletableFuture<Void> modify( final ModifyRequest modifyRequest )
+    {
+        return submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                session.modify( modifyRequest );
+
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Searches the DirectoryService. The subscriber's onSubscribe method is called before
+     * this method returns, and the search is started when the first entries are requested.
+     *
+     * @param searchRequest The search request
+     * @param subscriber The subscriber receiving the entries
+     */
+    public void search( SearchRequest searchRequest, EntrySubscriber subscriber )
+    {
+        SearchSubscription subscription = new SearchSubscription( searchRequest, subscriber );
+
+        subscriber.onSubscribe( subscription );
+    }
+
+
+    /**
+     * Runs an operation on the executor.
+     */
+    private <T> CompletableFuture<T> submit( final Callable<T> operation )
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        try
+        {
+            executor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        future.complete( operation.call() );
+                    }
+                    catch ( Exception e )
+                    {
+                        future.completeExceptionally( e );
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            future.completeExceptionally( ree );
+        }
+
+        return future;
+    }
+
+
+    /**
+     * The subscription of an asynchronous search. The requests and the cancellation only
+     * update its state and schedule a drain task, which is run by the executor. Only one
+     * drain task runs at a time : the counter of pending signals is incremented by each
+     * signal, and the task loops until it has consumed all of them.
+     */
+    private final class SearchSubscription implements EntrySubscription, Runnable
+    {
+        /** The search request */
+        private final SearchRequest searchRequest;
+
+        /** The subscriber receiving the entries */
+        private final EntrySubscriber subscriber;
+
+        /** The number of entries requested and not yet returned */
+        private final AtomicLong demand = new AtomicLong();
+
+        /** The number of signals not yet handled by the drain task */
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+
+        /** Set when the subscriber has cancelled the search */
+        private volatile boolean cancelled;
+
+        /** Set when the subscriber has requested a non positive number of entries */
+        private volatile boolean invalidRequest;
+
+        /** The search cursor, only used by the drain task */
+        private Cursor<Entry> cursor;
+
+        /** Set when the search is over, only used by the drain task */
+        private boolean done;
+
+
+        SearchSubscription( SearchRequest searchRequest, EntrySubscriber subscriber )
+        {
+            this.searchRequest = searchRequest;
+            this.subscriber = subscriber;
+        }
+
+
+        @Override
+        public void request( long n )
+        {
+            if ( n <= 0 )
+            {
+                invalidRequest = true;
+            }
+            else
+            {
+                long current;
+                long next;
+
+                do
+                {
+                    current = demand.get();
+
+                    if ( current == Long.MAX_VALUE )
+                    {
+                        return;
+                    }
+
+                    next = current + n;
+
+                    if ( next < 0 )
+                    {
+                        next = Long.MAX_VALUE;
+                    }
+                }
+                while ( !demand.compareAndSet( current, next ) );
+            }
+
+            schedule();
+        }
+
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            schedule();
+        }
+
+
+        private void schedule()
+        {
+            if ( pendingSignals.getAndIncrement() == 0 )
+            {
+                try
+                {
+                    executor.execute( this );
+                }
+                catch ( RejectedExecutionException ree )
+                {
+                    // No drain task is running, we can terminate the search here
+                    cancelled = true;
+                    fail( ree );
+                }
+            }
+        }
+
+
+        @Override
+        public void run()
+        {
+            int signals = pendingSignals.get();
+
+            do
+            {
+                drain();
+                signals = pendingSignals.addAndGet( -signals );
+            }
+            while ( signals != 0 );
+        }
+
+
+        private void drain()
+        {
+            if ( done )
+            {
+                return;
+            }
+
+            if ( cancelled )
+            {
+                done = true;
+                closeCursor();
+
+                return;
+            }
+
+            if ( invalidRequest )
+            {
+                fail( new IllegalArgumentException( "The number of requested entries must be positive" ) );
+
+                return;
+            }
+
+            try
+            {
+                if ( cursor == null )
+                {
+                    cursor = session.search( searchRequest );
+                }
+
+                while ( !cancelled && ( demand.get() > 0 ) )
+                {
+                    if ( !cursor.next() )
+                    {
+                        done = true;
+                        closeCursor();
+                        subscriber.onComplete();
+
+                        return;
+                    }
+
+                    Entry entry = cursor.get();
+
+                    if ( demand.get() != Long.MAX_VALUE )
+                    {
+                        demand.decrementAndGet();
+                    }
+
+                    subscriber.onNext( entry );
+                }
+            }
+            catch ( Exception e )
+            {
+                fail( e );
+            }
+        }
+
+
+        private void fail( Throwable throwable )
+        {
+            done = true;
+            closeCursor();
+            subscriber.onError( throwable );
+        }
+
+
+        private void closeCursor()
+        {
+            if ( cursor != null )
+            {
+                try
+                {
+                    cursor.close();
+                }
+                catch ( IOException ioe )
+                {
+                    LOG.warn( "Failed to close the search cursor", ioe );
+                }
+
+                cursor = null;
+            }
+        }
+    }
+}
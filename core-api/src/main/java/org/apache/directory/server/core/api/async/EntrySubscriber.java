@@ -0,0 +1,68 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * A receiver of the entries returned by an asynchronous search. It follows the
+ * java.util.concurrent.Flow.Subscriber contract : {@link #onSubscribe(EntrySubscription)}
+ * is called first, then {@link #onNext(Entry)} is called at most as many times as
+ * entries have been requested through the subscription, and finally one of
+ * {@link #onComplete()} or {@link #onError(Throwable)} is called, unless the
+ * subscription has been cancelled.
+ * <br>
+ * The methods are never called concurrently, but they may be called by different threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface EntrySubscriber
+{
+    /**
+     * Called before any other method, with the subscription used to request the entries.
+     *
+     * @param subscription The search subscription
+     */
+    void onSubscribe( EntrySubscription subscription );
+
+
+    /**
+     * Called for each returned entry.
+     *
+     * @param entry The next entry
+     */
+    void onNext( Entry entry );
+
+
+    /**
+     * Called when the search has failed. No other method will be called.
+     *
+     * @param throwable The cause of the failure
+     */
+    void onError( Throwable throwable );
+
+
+    /**
+     * Called when all the entries have been returned. No other method will be called.
+     */
+    void onComplete();
+}
@@ -0,0 +1,45 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+/**
+ * The link between an asynchronous search and its {@link EntrySubscriber}. It follows the
+ * java.util.concurrent.Flow.Subscription contract : the cursor is only read when some
+ * entries have been requested.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface EntrySubscription
+{
+    /**
+     * Adds some entries to the number of entries the subscriber is ready to receive.
+     * A non positive number fails the search with an IllegalArgumentException.
+     *
+     * @param n The number of additional entries to return
+     */
+    void request( long n );
+
+
+    /**
+     * Stops the search. The cursor is closed, and the subscriber receives no more entries.
+     */
+    void cancel();
+}
@@ -23,7 +23,9 @@ package org.apache.directory.server.core.api.entry;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -41,6 +43,12 @@ import org.apache.directory.server.i18n.I18n;
 /**
  * A ServerEntry refers to the original entry before being modified by
  * EntryFilters or operations.
+ * <br>
+ * When created in copy on write mode, the original entry is not copied : the cloned
+ * entry shares its attributes with it, and an attribute is only copied when it is
+ * modified, or when it is fetched with one of the get() methods, as the caller may
+ * modify it. The attributes returned while iterating over such an entry must not be
+ * modified.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -52,6 +60,9 @@ public class ClonedServerEntry implements Entry
     /** The copied entry */
     protected Entry clonedEntry;
 
+    /** Tells if the cloned entry may still share some attributes with the original entry */
+    private boolean shared;
+
 
     /**
      * Creates a new instance of ClonedServerEntry.
@@ -69,9 +80,35 @@ public class ClonedServerEntry implements Entry
      * @param originalEntry The original entry
      */
     public ClonedServerEntry( Entry originalEntry )
+    {
+        this( originalEntry, false );
+    }
+
+
+    /**
+     * Creates a new instance of ClonedServerEntry.
+     *
+     * In copy on write mode, the original entry's attributes are only copied when they
+     * are accessed through a get() method or modified. The original entry must not be
+     * modified as long as this entry is used.
+     *
+     * @param originalEntry The original entry
+     * @param copyOnWrite If the original entry's attributes are shared until they are modified
+     */
+    public ClonedServerEntry( Entry originalEntry, boolean copyOnWrite )
     {
         this.originalEntry = originalEntry;
-        this.clonedEntry = originalEntry.clone();
+
+        // The attributes of a cloned entry may be modified in place, we can't share them
+        if ( copyOnWrite && !( originalEntry instanceof ClonedServerEntry ) )
+        {
+            clonedEntry = originalEntry.shallowClone();
+            shared = true;
+        }
+        else
+        {
+            clonedEntry = originalEntry.clone();
+        }
     }
 
 
@@ -85,17 +122,80 @@ public class ClonedServerEntry implements Entry
 
 
     /**
-     * @return the cloned Entry
+     * @return the cloned Entry, which does not share any attribute with the original entry
      */
     public Entry getClonedEntry()
     {
+        if ( shared )
+        {
+            for ( Attribute attribute : clonedEntry.getAttributes().toArray( new Attribute[0] ) )
+            {
+                writable( attribute );
+            }
+
+            shared = false;
+        }
+
         return clonedEntry;
     }
 
 
+    /**
+     * Copies the given attribute in the cloned entry if it belongs to the original entry.
+     *
+     * @param attribute The attribute to copy
+     * @return The attribute that can be modified
+     */
+    private Attribute writable( Attribute attribute )
+    {
+        if ( !shared || ( attribute == null ) )
+        {
+            return attribute;
+        }
+
+        Attribute originalAttribute;
+
+        if ( attribute.getAttributeType() != null )
+        {
+            originalAttribute = originalEntry.get( attribute.getAttributeType() );
+        }
+        else
+        {
+            originalAttribute = originalEntry.get( attribute.getUpId() );
+        }
+
+        if ( originalAttribute != attribute )
+        {
+            return attribute;
+        }
+
+        Attribute copy = attribute.clone();
+
+        try
+        {
+            clonedEntry.put( copy );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the attribute is already present in the entry
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        return copy;
+    }
+
+
+    private Attribute writable( AttributeType attributeType )
+    {
+        return writable( clonedEntry.get( attributeType ) );
+    }
+
+
     @Override
     public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -103,6 +203,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( AttributeType attributeType, String... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -110,6 +212,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( AttributeType attributeType, Value... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -117,6 +221,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -124,6 +230,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -131,6 +239,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -166,7 +276,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute get( AttributeType attributeType )
     {
-        return clonedEntry.get( attributeType );
+        return writable( attributeType );
     }
 
 
@@ -176,6 +286,11 @@ public class ClonedServerEntry implements Entry
     @Override
     public Collection<Attribute> getAttributes()
     {
+        if ( shared )
+        {
+            return Collections.unmodifiableList( new ArrayList<>( clonedEntry.getAttributes() ) );
+        }
+
         return clonedEntry.getAttributes();
     }
 
@@ -232,6 +347,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -239,6 +356,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, String... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -246,6 +365,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, Value... values ) throws LdapException
     {
+        writable( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -267,6 +388,18 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( Attribute... attributes ) throws LdapException
     {
+        for ( Attribute attribute : attributes )
+        {
+            if ( attribute.getAttributeType() != null )
+            {
+                writable( attribute.getAttributeType() );
+            }
+            else
+            {
+                writable( clonedEntry.get( attribute.getUpId() ) );
+            }
+        }
+
         return clonedEntry.add( attributes );
     }
 
@@ -274,6 +407,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, String... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -281,6 +416,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, byte[]... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -288,6 +425,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, Value... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -337,7 +476,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute get( String alias )
     {
-        return clonedEntry.get( alias );
+        return writable( clonedEntry.get( alias ) );
     }
 
 
@@ -368,6 +507,11 @@ public class ClonedServerEntry implements Entry
     @Override
     public Iterator<Attribute> iterator()
     {
+        if ( shared )
+        {
+            return getAttributes().iterator();
+        }
+
         return clonedEntry.iterator();
     }
 
@@ -403,6 +547,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, byte[]... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -410,6 +556,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, String... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -417,6 +565,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, Value... values ) throws LdapException
     {
+        writable( clonedEntry.get( upId ) );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -499,7 +649,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry shallowClone()
     {
-        return clonedEntry.shallowClone();
+        return getClonedEntry().shallowClone();
     }
 
 
@@ -529,7 +679,7 @@ public class ClonedServerEntry implements Entry
 
         if ( obj instanceof ClonedServerEntry )
         {
-            other = ( ( ClonedServerEntry ) obj ).getClonedEntry();
+            other = ( ( ClonedServerEntry ) obj ).clonedEntry;
         }
         else if ( obj instanceof Entry )
         {
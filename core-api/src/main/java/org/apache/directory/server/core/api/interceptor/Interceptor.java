@@ -23,6 +23,7 @@ package org.apache.directory.server.core.api.interceptor;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -125,6 +126,22 @@ public interface Interceptor
     void destroy();
 
 
+    /**
+     * Tells if this interceptor has some work to do for an operation, in the current
+     * state of the server. An inactive interceptor is left out of the operation chain
+     * until {@link DirectoryService#refreshInterceptorChains()} is called.
+     * <br>
+     * The interceptors are active for all the operations they implement by default.
+     *
+     * @param operation The operation
+     * @return <tt>true</tt> if the interceptor must be called for this operation
+     */
+    default boolean isActive( OperationEnum operation )
+    {
+        return true;
+    }
+
+
     /**
      * Filters {@link Partition#add( AddOperationContext )} call.
      * 
@@ -31,6 +31,7 @@ import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 
@@ -64,7 +65,7 @@ public abstract class AbstractOperationContext implements OperationContext
     protected Collection<String> byPassed;
 
     /** The interceptors to call for this operation */
-    protected List<String> interceptors;
+    protected Interceptor[] interceptors;
 
     /** The current interceptor position */
     protected int currentInterceptor;
@@ -83,6 +84,9 @@ public abstract class AbstractOperationContext implements OperationContext
     /** The partition this operation will be applied on */
     protected Partition partition;
 
+    /** Tells if this context has been released to the OperationContextPool */
+    private boolean released;
+
 
     /**
      * Creates a new instance of AbstractOperationContext.
@@ -113,6 +117,53 @@ public abstract class AbstractOperationContext implements OperationContext
     }
 
 
+    /**
+     * Reinitializes this context so that it can be used for another operation. All
+     * the references to the previous operation are dropped.
+     *
+     * @param session The session to use
+     * @param dn The associated Dn
+     */
+    protected void reset( CoreSession session, Dn dn )
+    {
+        this.session = session;
+        this.dn = dn;
+        entry = null;
+        originalEntry = null;
+        requestControls.clear();
+        responseControls.clear();
+        byPassed = null;
+        interceptors = null;
+        currentInterceptor = 0;
+        authorizedPrincipal = null;
+        transaction = null;
+        partition = null;
+        released = false;
+
+        // Same as the constructor
+        ignoreReferral();
+    }
+
+
+    /**
+     * Marks this context as released : it can't be used anymore.
+     */
+    void release()
+    {
+        reset( null, null );
+        released = true;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if this context has been released
+     */
+    boolean isReleased()
+    {
+        return released;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -313,6 +364,24 @@ public abstract class AbstractOperationContext implements OperationContext
      */
     @Override
     public final void setInterceptors( List<String> interceptors )
+    {
+        Interceptor[] chain = new Interceptor[interceptors.size()];
+        int pos = 0;
+
+        for ( String interceptorName : interceptors )
+        {
+            chain[pos++] = session.getDirectoryService().getInterceptor( interceptorName );
+        }
+
+        this.interceptors = chain;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void setInterceptors( Interceptor[] interceptors )
     {
         this.interceptors = interceptors;
     }
@@ -324,15 +393,34 @@ public abstract class AbstractOperationContext implements OperationContext
     @Override
     public final String getNextInterceptor()
     {
-        if ( currentInterceptor == interceptors.size() )
+        Interceptor interceptor = getNextInterceptorInChain();
+
+        if ( interceptor == null )
         {
             return "FINAL";
         }
 
-        String interceptor = interceptors.get( currentInterceptor );
-        currentInterceptor++;
+        return interceptor.getName();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Interceptor getNextInterceptorInChain()
+    {
+        if ( released )
+        {
+            throw new IllegalStateException( "The " + getClass().getSimpleName() + " has been released" );
+        }
+
+        if ( currentInterceptor >= interceptors.length )
+        {
+            return null;
+        }
 
-        return interceptor;
+        return interceptors[currentInterceptor++];
     }
 
 
@@ -60,7 +60,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -77,7 +77,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -95,7 +95,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -114,7 +114,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -135,7 +135,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
     }
 
@@ -155,7 +155,7 @@ public class CompareOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.COMPARE ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.COMPARE ) );
         }
 
         if ( requestControls.containsKey( ManageDsaIT.OID ) )
@@ -121,6 +121,31 @@ public abstract class FilteringOperationContext extends AbstractOperationContext
     }
 
 
+    /**
+     * Reinitializes this context so that it can be used for another operation.
+     *
+     * @param session The session to use
+     * @param dn The Dn
+     * @param returningAttributes The attributes to return
+     */
+    protected void reset( CoreSession session, Dn dn, String... returningAttributes )
+    {
+        reset( session, dn );
+
+        this.returningAttributes = null;
+        returningAttributesString = null;
+        allOperationalAttributes = false;
+        allUserAttributes = false;
+        noAttributes = false;
+        typesOnly = false;
+
+        if ( session != null )
+        {
+            setReturningAttributes( returningAttributes );
+        }
+    }
+
+
     /**
      * @return the returningAttributes as a Set of AttributeTypeOptions
      */
@@ -45,7 +45,7 @@ public class HasEntryOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.HAS_ENTRY ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
         }
     }
 
@@ -62,7 +62,25 @@ public class HasEntryOperationContext extends AbstractOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.HAS_ENTRY ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
+        }
+    }
+
+
+    /**
+     * Reinitializes this context so that it can be used for another hasEntry operation.
+     *
+     * @param session The session to use
+     * @param entryDn The Entry Dn we want to know if it exists
+     */
+    @Override
+    protected void reset( CoreSession session, Dn entryDn )
+    {
+        super.reset( session, entryDn );
+
+        if ( session != null )
+        {
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.HAS_ENTRY ) );
         }
     }
 
@@ -47,7 +47,7 @@ public class LookupOperationContext extends FilteringOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -64,7 +64,7 @@ public class LookupOperationContext extends FilteringOperationContext
 
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -81,7 +81,7 @@ public class LookupOperationContext extends FilteringOperationContext
         
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -99,7 +99,27 @@ public class LookupOperationContext extends FilteringOperationContext
         
         if ( session != null )
         {
-            setInterceptors( session.getDirectoryService().getInterceptors( OperationEnum.LOOKUP ) );
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
+        }
+    }
+
+
+    /**
+     * Reinitializes this context so that it can be used for another lookup.
+     *
+     * @param session The session to use
+     * @param dn The Entry's Dn we are looking for
+     * @param returningAttributes The attributes to return
+     */
+    @Override
+    protected void reset( CoreSession session, Dn dn, String... returningAttributes )
+    {
+        super.reset( session, dn, returningAttributes );
+        syncreplLookup = false;
+
+        if ( session != null )
+        {
+            setInterceptors( session.getDirectoryService().getInterceptorChain( OperationEnum.LOOKUP ) );
         }
     }
 
@@ -20,6 +20,7 @@
 package org.apache.directory.server.core.api.interceptor.context;
 
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -28,6 +29,7 @@ import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
@@ -225,6 +227,29 @@ public interface OperationContext
     String getNextInterceptor();
 
 
+    /**
+     * Gets the next interceptor in the precompiled chain of interceptors. The
+     * position in the chain will be incremented.
+     * 
+     * <br>
+     * The default implementation looks up the interceptor returned by {@link #getNextInterceptor()}
+     * in the DirectoryService.
+     * 
+     * @return The next interceptor in the chain, or null if we have reached the end of the chain
+     */
+    default Interceptor getNextInterceptorInChain()
+    {
+        String name = getNextInterceptor();
+
+        if ( ( name == null ) || "FINAL".equals( name ) )
+        {
+            return null;
+        }
+
+        return getSession().getDirectoryService().getInterceptor( name );
+    }
+
+
     /**
      * Sets the list of interceptors to go through for an operation
      * 
@@ -233,6 +258,27 @@ public interface OperationContext
     void setInterceptors( List<String> interceptors );
 
 
+    /**
+     * Sets the precompiled chain of interceptors to go through for an operation.
+     * The array is shared with the other operations, it must not be modified.
+     * <br>
+     * The default implementation sets the list of the interceptors names.
+     * 
+     * @param interceptors The chain of interceptors
+     */
+    default void setInterceptors( Interceptor[] interceptors )
+    {
+        List<String> names = new ArrayList<>( interceptors.length );
+
+        for ( Interceptor interceptor : interceptors )
+        {
+            names.add( interceptor.getName() );
+        }
+
+        setInterceptors( names );
+    }
+
+
     /**
      * Gets the session associated with this operation.
      *
@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+
+
+/**
+ * A per thread pool of the operation contexts whose life is bounded by the operation
+ * call : the lookup and hasEntry contexts. Each thread keeps one context of each type,
+ * which is reinitialized when acquired, and cleared when released. A context acquired
+ * while the pooled one is in use (a nested operation) is simply allocated.
+ * <br>
+ * The other contexts are not pooled : the search contexts live as long as their cursor,
+ * and the contexts of the update operations are given to the event listeners, which are
+ * called asynchronously.
+ * <br>
+ * As the contexts are kept by the threads, the pool only helps when the operations are
+ * processed by a limited set of reused threads. When each LDAP request is processed by its
+ * own virtual thread, a context is never found in the pool : the LdapServer then disables
+ * the pooling for its DirectoryService (see {@link DirectoryService#setOperationContextPooling(boolean)}),
+ * and the contexts of this service are simply allocated.
+ * <br>
+ * When the <em>apacheds.operationContext.debug</em> system property is set to true, the
+ * contexts are never reused, and any use of a released context through the interceptor
+ * chain throws an IllegalStateException.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class OperationContextPool
+{
+    /** The system property enabling the detection of the use of released contexts */
+    public static final String DEBUG_PROPERTY = "apacheds.operationContext.debug";
+
+    /** Tells if we detect the use of released contexts instead of reusing them */
+    private static final boolean DEBUG = Boolean.getBoolean( DEBUG_PROPERTY );
+
+    /** The pooled lookup contexts */
+    private static final ThreadLocal<LookupOperationContext> LOOKUP_CONTEXTS = new ThreadLocal<>();
+
+    /** The pooled hasEntry contexts */
+    private static final ThreadLocal<HasEntryOperationContext> HAS_ENTRY_CONTEXTS = new ThreadLocal<>();
+
+
+    private OperationContextPool()
+    {
+    }
+
+
+    /**
+     * Gets a LookupOperationContext from the pool, or creates a new one.
+     *
+     * @param session The session to use
+     * @param dn The Entry's Dn we are looking for
+     * @param returningAttributes The attributes to return
+     * @return An initialized LookupOperationContext
+     */
+    public static LookupOperationContext acquireLookupContext( CoreSession session, Dn dn,
+        String... returningAttributes )
+    {
+        LookupOperationContext lookupContext = LOOKUP_CONTEXTS.get();
+
+        if ( lookupContext == null )
+        {
+            return new LookupOperationContext( session, dn, returningAttributes );
+        }
+
+        LOOKUP_CONTEXTS.remove();
+        lookupContext.reset( session, dn, returningAttributes );
+
+        return lookupContext;
+    }
+
+
+    /**
+     * Gives a LookupOperationContext back to the pool. It must not be used anymore.
+     *
+     * @param lookupContext The released context
+     */
+    public static void release( LookupOperationContext lookupContext )
+    {
+        checkNotReleased( lookupContext );
+        boolean pooling = isPooling( lookupContext );
+        lookupContext.release();
+
+        if ( pooling )
+        {
+            LOOKUP_CONTEXTS.set( lookupContext );
+        }
+    }
+
+
+    /**
+     * Gets a HasEntryOperationContext from the pool, or creates a new one.
+     *
+     * @param session The session to use
+     * @param entryDn The Entry Dn we want to know if it exists
+     * @return An initialized HasEntryOperationContext
+     */
+    public static HasEntryOperationContext acquireHasEntryContext( CoreSession session, Dn entryDn )
+    {
+        HasEntryOperationContext hasEntryContext = HAS_ENTRY_CONTEXTS.get();
+
+        if ( hasEntryContext == null )
+        {
+            return new HasEntryOperationContext( session, entryDn );
+        }
+
+        HAS_ENTRY_CONTEXTS.remove();
+        hasEntryContext.reset( session, entryDn );
+
+        return hasEntryContext;
+    }
+
+
+    /**
+     * Gives a HasEntryOperationContext back to the pool. It must not be used anymore.
+     *
+     * @param hasEntryContext The released context
+     */
+    public static void release( HasEntryOperationContext hasEntryContext )
+    {
+        checkNotReleased( hasEntryContext );
+        boolean pooling = isPooling( hasEntryContext );
+        hasEntryContext.release();
+
+        if ( pooling )
+        {
+            HAS_ENTRY_CONTEXTS.set( hasEntryContext );
+        }
+    }
+
+
+    /**
+     * Tells if a released context can be kept for the next operation of the thread, which
+     * is the case unless the debug mode is set, or the pooling is disabled for the
+     * DirectoryService of the context session.
+     */
+    private static boolean isPooling( AbstractOperationContext operationContext )
+    {
+        if ( DEBUG )
+        {
+            return false;
+        }
+
+        CoreSession session = operationContext.getSession();
+
+        if ( ( session == null ) || ( session.getDirectoryService() == null ) )
+        {
+            return true;
+        }
+
+        return session.getDirectoryService().isOperationContextPooling();
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the released contexts are never reused
+     */
+    public static boolean isDebug()
+    {
+        return DEBUG;
+    }
+
+
+    private static void checkNotReleased( AbstractOperationContext operationContext )
+    {
+        if ( operationContext.isReleased() )
+        {
+            throw new IllegalStateException( "The " + operationContext.getClass().getSimpleName()
+                + " has already been released" );
+        }
+    }
+}
@@ -71,7 +71,20 @@ public interface Partition
      * @return A write transaction instance
      */
     PartitionWriteTxn beginWriteTransaction();
-    
+
+
+    /**
+     * Tells if the read transactions of this partition work on their own snapshot of the
+     * data. The readers of such a partition don't take the partition read lock, and never
+     * wait for a writer.
+     *
+     * @return <tt>true</tt> if the readers don't need the partition lock. The default is <tt>false</tt>
+     */
+    default boolean isConcurrent()
+    {
+        return false;
+    }
+
 
     // -----------------------------------------------------------------------
     // C O N F I G U R A T I O N   M E T H O D S
@@ -143,6 +143,25 @@ public class SubentryCache implements Iterable<Dn>
     }
 
 
+    /**
+     * Tells if the cache contains at least one collectiveAttribute subentry
+     * 
+     * @return True if a collectiveAttribute Subentry is found
+     */
+    public boolean hasCollectiveSubentries()
+    {
+        for ( Subentry subentry : cache.values() )
+        {
+            if ( subentry.isCollectiveAdminRole() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
     /**
      * @return An Iterator over the Subentry's DNs 
      */
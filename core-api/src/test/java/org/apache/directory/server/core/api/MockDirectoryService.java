@@ -66,6 +66,9 @@ public class MockDirectoryService implements DirectoryService
     /** The schemaManager */
     SchemaManager schemaManager;
 
+    /** Tells if the operation contexts are pooled */
+    boolean operationContextPooling = true;
+
 
     public MockDirectoryService()
     {
@@ -426,6 +429,20 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    @Override
+    public boolean isOperationContextPooling()
+    {
+        return operationContextPooling;
+    }
+
+
+    @Override
+    public void setOperationContextPooling( boolean operationContextPooling )
+    {
+        this.operationContextPooling = operationContextPooling;
+    }
+
+
     public int getMaxPDUSize()
     {
         return Integer.MAX_VALUE;
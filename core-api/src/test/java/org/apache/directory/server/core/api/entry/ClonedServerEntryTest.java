@@ -22,7 +22,11 @@ package org.apache.directory.server.core.api.entry;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
@@ -146,4 +150,63 @@ public class ClonedServerEntryTest
         assertFalse( clonedServerEntryA1.equals( clonedServerEntryC1 ) );
         assertFalse( clonedServerEntryC1.equals( clonedServerEntryA1 ) );
     }
+
+
+    @Test
+    public void testCopyOnWriteGet() throws Exception
+    {
+        Entry original = new DefaultEntry( "dc=example,dc=com", "cn: test", "sn: test" );
+        Entry cloned = new ClonedServerEntry( original, true );
+
+        Attribute cn = cloned.get( "cn" );
+        assertNotSame( original.get( "cn" ), cn );
+
+        // Once copied, the attribute is not copied again
+        assertSame( cn, cloned.get( "cn" ) );
+
+        cn.add( "test2" );
+        assertTrue( cloned.contains( "cn", "test", "test2" ) );
+        assertFalse( original.contains( "cn", "test2" ) );
+    }
+
+
+    @Test
+    public void testCopyOnWriteModifications() throws Exception
+    {
+        Entry original = new DefaultEntry( "dc=example,dc=com", "cn: test", "sn: test", "ou: test" );
+        Attribute cn = original.get( "cn" );
+        Attribute sn = original.get( "sn" );
+        Entry cloned = new ClonedServerEntry( original, true );
+
+        cloned.add( "cn", "test2" );
+        cloned.remove( "sn", "test" );
+        cloned.removeAttributes( "ou" );
+        cloned.put( "description", "test" );
+
+        assertTrue( cloned.contains( "cn", "test", "test2" ) );
+        assertFalse( cloned.containsAttribute( "sn", "ou" ) );
+        assertTrue( cloned.containsAttribute( "description" ) );
+
+        assertSame( cn, original.get( "cn" ) );
+        assertSame( sn, original.get( "sn" ) );
+        assertEquals( 1, cn.size() );
+        assertEquals( 1, sn.size() );
+        assertTrue( original.containsAttribute( "ou" ) );
+        assertFalse( original.containsAttribute( "description" ) );
+    }
+
+
+    @Test
+    public void testCopyOnWriteClonedEntry() throws Exception
+    {
+        Entry original = new DefaultEntry( "dc=example,dc=com", "cn: test", "sn: test" );
+        ClonedServerEntry cloned = new ClonedServerEntry( original, true );
+
+        for ( Attribute attribute : cloned.getClonedEntry() )
+        {
+            assertNotSame( original.get( attribute.getUpId() ), attribute );
+        }
+
+        assertEquals( original, cloned );
+    }
 }
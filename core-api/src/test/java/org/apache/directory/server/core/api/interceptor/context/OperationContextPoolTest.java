@@ -0,0 +1,211 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.interceptor.context;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests for the OperationContextPool.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationContextPoolTest
+{
+    private static SchemaManager schemaManager;
+
+    private static CoreSession session;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = OperationContextPoolTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+
+        schemaManager = new DefaultSchemaManager( new LdifSchemaLoader( schemaRepository ) );
+        schemaManager.loadAllEnabled();
+
+        List<Throwable> errors = schemaManager.getErrors();
+
+        if ( errors.size() != 0 )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( errors ) );
+        }
+
+        MockDirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
+    @Test
+    public void testLookupContextReused() throws Exception
+    {
+        Dn dn1 = new Dn( schemaManager, "ou=system" );
+        Dn dn2 = new Dn( schemaManager, "ou=users,ou=system" );
+
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( session, dn1,
+            SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
+        lookupContext.setEntry( new DefaultEntry( dn1 ) );
+        lookupContext.setSyncreplLookup( true );
+        lookupContext.setTypesOnly( true );
+        OperationContextPool.release( lookupContext );
+
+        LookupOperationContext reused = OperationContextPool.acquireLookupContext( session, dn2, "cn" );
+
+        if ( OperationContextPool.isDebug() )
+        {
+            assertNotSame( lookupContext, reused );
+        }
+        else
+        {
+            assertSame( lookupContext, reused );
+        }
+
+        assertSame( session, reused.getSession() );
+        assertEquals( dn2, reused.getDn() );
+        assertNull( reused.getEntry() );
+        assertFalse( reused.isSyncreplLookup() );
+        assertFalse( reused.isTypesOnly() );
+        assertFalse( reused.isAllOperationalAttributes() );
+        assertEquals( 1, reused.getReturningAttributes().size() );
+        assertEquals( 0, reused.getCurrentInterceptor() );
+        assertNull( reused.getNextInterceptorInChain() );
+
+        OperationContextPool.release( reused );
+    }
+
+
+    @Test
+    public void testPoolingDisabled() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+        MockDirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        directoryService.setOperationContextPooling( false );
+        CoreSession noPoolingSession = new MockCoreSession( new LdapPrincipal(), directoryService );
+
+        HasEntryOperationContext hasEntryContext = OperationContextPool.acquireHasEntryContext( noPoolingSession,
+            dn );
+        OperationContextPool.release( hasEntryContext );
+
+        HasEntryOperationContext other = OperationContextPool.acquireHasEntryContext( noPoolingSession, dn );
+        assertNotSame( hasEntryContext, other );
+        assertTrue( hasEntryContext.isReleased() );
+        OperationContextPool.release( other );
+
+        // The pooling is still enabled for the other services
+        HasEntryOperationContext pooled = OperationContextPool.acquireHasEntryContext( session, dn );
+        OperationContextPool.release( pooled );
+
+        if ( !OperationContextPool.isDebug() )
+        {
+            assertSame( pooled, OperationContextPool.acquireHasEntryContext( session, dn ) );
+        }
+    }
+
+
+    @Test
+    public void testNestedAcquire() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+
+        HasEntryOperationContext outer = OperationContextPool.acquireHasEntryContext( session, dn );
+        HasEntryOperationContext inner = OperationContextPool.acquireHasEntryContext( session, dn );
+
+        assertNotSame( outer, inner );
+
+        OperationContextPool.release( inner );
+        OperationContextPool.release( outer );
+    }
+
+
+    @Test
+    public void testUseAfterRelease() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "ou=system" );
+
+        HasEntryOperationContext hasEntryContext = OperationContextPool.acquireHasEntryContext( session, dn );
+        OperationContextPool.release( hasEntryContext );
+
+        assertNull( hasEntryContext.getSession() );
+        assertNull( hasEntryContext.getDn() );
+
+        try
+        {
+            hasEntryContext.getNextInterceptorInChain();
+            fail();
+        }
+        catch ( IllegalStateException ise )
+        {
+            assertTrue( true );
+        }
+
+        try
+        {
+            OperationContextPool.release( hasEntryContext );
+            fail();
+        }
+        catch ( IllegalStateException ise )
+        {
+            assertTrue( true );
+        }
+
+        // Acquire it back, so that the pool is left in a usable state
+        OperationContextPool.release( OperationContextPool.acquireHasEntryContext( session, dn ) );
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.api.async;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the AsyncCoreSession operations
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "AsyncCoreSessionIT")
+@ApplyLdifs(
+    {
+        "dn: ou=async,ou=system",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: async",
+
+        "dn: cn=user1,ou=async,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user1",
+        "sn: user1",
+
+        "dn: cn=user2,ou=async,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user2",
+        "sn: user2",
+
+        "dn: cn=user3,ou=async,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user3",
+        "sn: user3" })
+public class AsyncCoreSessionIT extends AbstractLdapTestUnit
+{
+    private ExecutorService executor;
+
+    private AsyncCoreSession session;
+
+
+    /**
+     * A subscriber storing the received entries and signals
+     */
+    private static class TestSubscriber implements EntrySubscriber
+    {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private final CountDownLatch terminated = new CountDownLatch( 1 );
+
+        private volatile EntrySubscription subscription;
+
+        private volatile boolean completed;
+
+        private volatile Throwable error;
+
+
+        @Override
+        public void onSubscribe( EntrySubscription subscription )
+        {
+            this.subscription = subscription;
+        }
+
+
+        @Override
+        public void onNext( Entry entry )
+        {
+            synchronized ( entries )
+            {
+                entries.add( entry );
+                entries.notifyAll();
+            }
+        }
+
+
+        @Override
+        public void onError( Throwable throwable )
+        {
+            error = throwable;
+            terminated.countDown();
+        }
+
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+            terminated.countDown();
+        }
+
+
+        void awaitEntries( int nbEntries ) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 10000L;
+
+            synchronized ( entries )
+            {
+                while ( ( entries.size() < nbEntries ) && ( System.currentTimeMillis() < deadline ) )
+                {
+                    entries.wait( 100L );
+                }
+
+                assertEquals( nbEntries, entries.size() );
+            }
+        }
+
+
+        int getNbEntries()
+        {
+            synchronized ( entries )
+            {
+                return entries.size();
+            }
+        }
+    }
+
+
+    @Before
+    public void createSession()
+    {
+        executor = Executors.newFixedThreadPool( 2 );
+        session = new AsyncCoreSession( getService().getAdminSession(), executor );
+    }
+
+
+    @After
+    public void shutdownExecutor() throws Exception
+    {
+        executor.shutdown();
+        assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testAddModifyLookupDelete() throws Exception
+    {
+        Dn dn = new Dn( getService().getSchemaManager(), "cn=async,ou=async,ou=system" );
+        Entry entry = new DefaultEntry( getService().getSchemaManager(), dn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: async",
+            "sn: async" );
+
+        session.add( entry ).get();
+        session.modify( dn, new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "sn", "modified" ) )
+            .get();
+
+        Entry found = session.lookup( dn, "sn" ).get();
+
+        assertTrue( found.contains( "sn", "modified" ) );
+
+        session.delete( dn ).get();
+
+        assertFalse( getService().getAdminSession().exists( dn ) );
+    }
+
+
+    @Test
+    public void testFailedOperation() throws Exception
+    {
+        try
+        {
+            session.delete( new Dn( "cn=unknown,ou=async,ou=system" ) ).get();
+            fail();
+        }
+        catch ( ExecutionException ee )
+        {
+            assertTrue( ee.getCause() instanceof LdapNoSuchObjectException );
+        }
+    }
+
+
+    @Test
+    public void testSearchBackpressure() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        session.search( createSearchRequest(), subscriber );
+
+        // Nothing is read before being requested
+        Thread.sleep( 100L );
+        assertEquals( 0, subscriber.getNbEntries() );
+
+        subscriber.subscription.request( 2 );
+        subscriber.awaitEntries( 2 );
+
+        Thread.sleep( 100L );
+        assertEquals( 2, subscriber.getNbEntries() );
+        assertFalse( subscriber.completed );
+
+        subscriber.subscription.request( 10 );
+
+        assertTrue( subscriber.terminated.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( subscriber.completed );
+        assertNull( subscriber.error );
+
+        // The ou=async entry and its three children
+        assertEquals( 4, subscriber.getNbEntries() );
+    }
+
+
+    @Test
+    public void testSearchCancel() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        session.search( createSearchRequest(), subscriber );
+
+        subscriber.subscription.request( 1 );
+        subscriber.awaitEntries( 1 );
+        subscriber.subscription.cancel();
+        subscriber.subscription.request( 10 );
+
+        Thread.sleep( 100L );
+        assertEquals( 1, subscriber.getNbEntries() );
+        assertFalse( subscriber.completed );
+        assertNull( subscriber.error );
+    }
+
+
+    @Test
+    public void testSearchInvalidRequest() throws Exception
+    {
+        TestSubscriber subscriber = new TestSubscriber();
+        session.search( createSearchRequest(), subscriber );
+
+        subscriber.subscription.request( 0 );
+
+        assertTrue( subscriber.terminated.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( subscriber.error instanceof IllegalArgumentException );
+        assertEquals( 0, subscriber.getNbEntries() );
+    }
+
+
+    private SearchRequest createSearchRequest() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( "ou=async,ou=system" ) );
+        searchRequest.setFilter( "(objectClass=*)" );
+        searchRequest.setScope( SearchScope.SUBTREE );
+
+        return searchRequest;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.configuration;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the precompiled chains of interceptors
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "InterceptorChainIT-DS")
+public class InterceptorChainIT extends AbstractLdapTestUnit
+{
+    /**
+     * An interceptor only implementing the lookup operation
+     */
+    private static class LookupCountingInterceptor extends BaseInterceptor
+    {
+        private final AtomicInteger nbLookups = new AtomicInteger();
+
+
+        LookupCountingInterceptor()
+        {
+            super( "lookupCountingInterceptor" );
+        }
+
+
+        @Override
+        public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+        {
+            nbLookups.incrementAndGet();
+
+            return next( lookupContext );
+        }
+    }
+
+
+    /**
+     * Check that the chains contain the interceptors implementing the operation, in order
+     */
+    @Test
+    public void testChainsMatchInterceptors() throws Exception
+    {
+        for ( OperationEnum operation : OperationEnum.getOperations() )
+        {
+            List<String> names = getService().getInterceptors( operation );
+            Interceptor[] chain = getService().getInterceptorChain( operation );
+
+            assertEquals( names.size(), chain.length );
+
+            for ( int i = 0; i < chain.length; i++ )
+            {
+                assertNotNull( chain[i] );
+                assertEquals( names.get( i ), chain[i].getName() );
+            }
+        }
+    }
+
+
+    /**
+     * Check that the chains are rebuilt when an interceptor is added or removed
+     */
+    @Test
+    public void testChainsRebuiltOnAddAndRemove() throws Exception
+    {
+        LookupCountingInterceptor interceptor = new LookupCountingInterceptor();
+        int nbAddInterceptors = getService().getInterceptorChain( OperationEnum.ADD ).length;
+
+        getService().addLast( interceptor );
+
+        try
+        {
+            Interceptor[] lookupChain = getService().getInterceptorChain( OperationEnum.LOOKUP );
+
+            assertSame( interceptor, lookupChain[lookupChain.length - 1] );
+            assertEquals( nbAddInterceptors, getService().getInterceptorChain( OperationEnum.ADD ).length );
+
+            assertNotNull( getService().getAdminSession().lookup( new Dn( "ou=system" ) ) );
+            assertEquals( 1, interceptor.nbLookups.get() );
+        }
+        finally
+        {
+            getService().remove( interceptor.getName() );
+        }
+
+        for ( Interceptor remaining : getService().getInterceptorChain( OperationEnum.LOOKUP ) )
+        {
+            assertFalse( remaining == interceptor );
+        }
+    }
+
+
+    /**
+     * Check that the CollectiveAttributeInterceptor is only called by the reads when
+     * some collectiveAttribute subentries exist
+     */
+    @Test
+    public void testCollectiveInterceptorBypass() throws Exception
+    {
+        String collectiveInterceptor = InterceptorEnum.COLLECTIVE_ATTRIBUTE_INTERCEPTOR.getName();
+        CoreSession session = getService().getAdminSession();
+        Dn subentryDn = new Dn( "cn=testsubentry,ou=system" );
+
+        assertFalse( isInChain( OperationEnum.LOOKUP, collectiveInterceptor ) );
+        assertFalse( isInChain( OperationEnum.SEARCH, collectiveInterceptor ) );
+        assertTrue( isInChain( OperationEnum.ADD, collectiveInterceptor ) );
+
+        session.modify( new Dn( "ou=system" ), new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+            "administrativeRole", "collectiveAttributeSpecificArea" ) );
+        session.add( new DefaultEntry( getService().getSchemaManager(),
+            subentryDn,
+            "objectClass: top",
+            "objectClass: subentry",
+            "objectClass: collectiveAttributeSubentry",
+            "c-ou: configuration",
+            "subtreeSpecification: { base \"ou=configuration\" }",
+            "cn: testsubentry" ) );
+
+        assertTrue( isInChain( OperationEnum.LOOKUP, collectiveInterceptor ) );
+        assertTrue( isInChain( OperationEnum.SEARCH, collectiveInterceptor ) );
+        assertTrue( session.lookup( new Dn( "ou=configuration,ou=system" ) ).contains( "c-ou", "configuration" ) );
+
+        session.delete( subentryDn );
+
+        assertFalse( isInChain( OperationEnum.LOOKUP, collectiveInterceptor ) );
+        assertFalse( isInChain( OperationEnum.SEARCH, collectiveInterceptor ) );
+    }
+
+
+    private boolean isInChain( OperationEnum operation, String interceptorName )
+    {
+        for ( Interceptor interceptor : getService().getInterceptorChain( operation ) )
+        {
+            if ( interceptor.getName().equals( interceptorName ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
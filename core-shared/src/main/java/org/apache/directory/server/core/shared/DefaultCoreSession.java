@@ -90,6 +90,7 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContextPool;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
@@ -613,9 +614,16 @@ public class DefaultCoreSession implements CoreSession
     public Entry lookup( Dn dn, String... attrIds ) throws LdapException
     {
         OperationManager operationManager = directoryService.getOperationManager();
-        LookupOperationContext lookupContext = new LookupOperationContext( this, dn, attrIds );
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( this, dn, attrIds );
 
-        return operationManager.lookup( lookupContext );
+        try
+        {
+            return operationManager.lookup( lookupContext );
+        }
+        finally
+        {
+            OperationContextPool.release( lookupContext );
+        }
     }
 
 
@@ -626,14 +634,21 @@ public class DefaultCoreSession implements CoreSession
     public Entry lookup( Dn dn, Control[] controls, String... attrIds ) throws LdapException
     {
         OperationManager operationManager = directoryService.getOperationManager();
-        LookupOperationContext lookupContext = new LookupOperationContext( this, dn, attrIds );
+        LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( this, dn, attrIds );
 
-        if ( controls != null )
+        try
         {
-            lookupContext.addRequestControls( controls );
-        }
+            if ( controls != null )
+            {
+                lookupContext.addRequestControls( controls );
+            }
 
-        return operationManager.lookup( lookupContext );
+            return operationManager.lookup( lookupContext );
+        }
+        finally
+        {
+            OperationContextPool.release( lookupContext );
+        }
     }
 
 
@@ -1028,10 +1043,17 @@ public class DefaultCoreSession implements CoreSession
     @Override
     public boolean exists( Dn dn ) throws LdapException
     {
-        HasEntryOperationContext hasEntryContext = new HasEntryOperationContext( this, dn );
+        HasEntryOperationContext hasEntryContext = OperationContextPool.acquireHasEntryContext( this, dn );
         OperationManager operationManager = directoryService.getOperationManager();
 
-        return operationManager.hasEntry( hasEntryContext );
+        try
+        {
+            return operationManager.hasEntry( hasEntryContext );
+        }
+        finally
+        {
+            OperationContextPool.release( hasEntryContext );
+        }
     }
 
 
@@ -1514,22 +1536,29 @@ public class DefaultCoreSession implements CoreSession
     @Override
     public void endSessionTransaction( boolean commit ) throws IOException
     {
-        if ( commit )
+        try
         {
-            for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+            if ( commit )
             {
-                partitionTxn.getValue().commit();
+                for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+                {
+                    partitionTxn.getValue().commit();
+                }
             }
-        }
-        else
-        {
-            for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+            else
             {
-                partitionTxn.getValue().abort();
+                for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+                {
+                    partitionTxn.getValue().abort();
+                }
             }
         }
-        
-        hasSessionTransaction = false;
+        finally
+        {
+            // The next session transaction will start new partition transactions
+            transactionMap.clear();
+            hasSessionTransaction = false;
+        }
     }
 
 
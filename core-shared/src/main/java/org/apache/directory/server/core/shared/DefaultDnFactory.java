@@ -17,14 +17,17 @@
  *   under the License.
  *
  */
-
 package org.apache.directory.server.core.shared;
 
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.DnFactory;
 import org.slf4j.Logger;
@@ -32,10 +35,18 @@ import org.slf4j.LoggerFactory;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
 
 
 /**
  * The default Dn factory implementation.
+ * <br>
+ * The created DNs are cached, using the user provided DN as a key. When a DN is not
+ * in the cache, only its first RDN is parsed, and added to its parent DN. The parent is
+ * taken from the cache, or built by adding the missing RDNs to its nearest cached ancestor,
+ * and cached too, so the DNs of the sibling entries share the same parent's RDNs. The
+ * other ancestors are not cached. The cache size is bounded by an estimation of the memory
+ * used by the cached DNs.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -43,34 +54,63 @@ public class DefaultDnFactory implements DnFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger( DefaultDnFactory.class );
 
+    /** The average size of a cached DN, in bytes, used to compute the cache size */
+    public static final int AVERAGE_DN_BYTES = 512;
+
+    /** The estimated size of a cached DN, without its strings */
+    private static final int DN_OVERHEAD_BYTES = 64;
+
+    /** The estimated size of a RDN, without its strings */
+    private static final int RDN_OVERHEAD_BYTES = 160;
+
     /** The cache for DNs */
     private Cache<String, Dn> dnCache;
 
     /** The schema manager */
     private SchemaManager schemaManager;
 
-    /** Flag to enable stats */
-    private boolean enableStats = false;
-
     // stat counters
-    private int hitCount = 0;
-    private int missCount = 0;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
 
 
     /**
      * Instantiates a new default Dn factory.
      *
      * @param schemaManager The SchemaManager instance
-     * @param cacheSize The cache size used to store DNs
+     * @param cacheSize The cache size used to store DNs. The cache is bounded to
+     * <em>cacheSize</em> times {@link #AVERAGE_DN_BYTES} bytes
      */
     public DefaultDnFactory( SchemaManager schemaManager, int cacheSize )
     {
         this.schemaManager = schemaManager;
-        this.dnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 10L ) )
+        this.dnCache = Caffeine.newBuilder()
+            .maximumWeight( ( long ) cacheSize * AVERAGE_DN_BYTES )
+            .weigher( new Weigher<String, Dn>()
+            {
+                @Override
+                public int weigh( String key, Dn dn )
+                {
+                    return weight( key, dn );
+                }
+            } )
+            .expireAfterAccess( Duration.ofMinutes( 10L ) )
             .build();
     }
 
 
+    /**
+     * Estimates the memory used by a cache element. The parent's RDNs are shared with the
+     * parent DN, but we count them, as the parent may be evicted from the cache.
+     */
+    private static int weight( String key, Dn dn )
+    {
+        int weight = DN_OVERHEAD_BYTES + ( key.length() + dn.getName().length() + dn.getNormName().length() ) * 2;
+
+        return weight + dn.size() * RDN_OVERHEAD_BYTES;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -100,34 +140,158 @@ public class DefaultDnFactory implements DnFactory
         {
             LOG.debug( "Dn {} not found in the cache, creating", dn );
 
-            cachedDn = new Dn( schemaManager, dn );
+            cachedDn = parse( dn );
 
             if ( dnCache != null )
             {
                 dnCache.put( dn, cachedDn );
             }
 
-            if ( enableStats )
+            missCount.increment();
+        }
+        else
+        {
+            LOG.debug( "Dn {} found in the cache", dn );
+
+            hitCount.increment();
+        }
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( "Dn cache hit - {} , miss - {} and is normalized = {}", hitCount.sum(), missCount.sum(),
+                cachedDn.isSchemaAware() );
+        }
+
+        return cachedDn;
+    }
+
+
+    /**
+     * Parses a DN which is not in the cache. The first RDN is parsed, and added to its
+     * parent DN. If the resulting DN is not exactly the one the user provided (for
+     * instance if the RDNs are separated by a ';'), the whole DN is parsed.
+     */
+    private Dn parse( String dn ) throws LdapInvalidDnException
+    {
+        int separator = findRdnSeparator( dn );
+
+        if ( ( separator > 0 ) && ( dnCache != null ) )
+        {
+            try
             {
-                missCount++;
+                Dn parentDn = getParent( dn.substring( separator + 1 ) );
+                Dn createdDn = parentDn.add( new Rdn( schemaManager, dn.substring( 0, separator ) ) );
+
+                if ( createdDn.getName().equals( dn ) )
+                {
+                    return createdDn;
+                }
+            }
+            catch ( LdapInvalidDnException lide )
+            {
+                // The full parsing will report the error
+                LOG.debug( "Cannot create the Dn {} from its parent : {}", dn, lide.getMessage() );
             }
         }
-        else
+
+        return new Dn( schemaManager, dn );
+    }
+
+
+    /**
+     * Gets the parent of a DN which is not in the cache. If the parent is not in the cache
+     * either, we look for its nearest ancestor in the cache, walking up the RDNs, and add the
+     * missing RDNs to it, parsing them one by one. The parent is then cached, but not the
+     * intermediate DNs.
+     */
+    private Dn getParent( String parentName ) throws LdapInvalidDnException
+    {
+        Dn parentDn = dnCache.getIfPresent( parentName );
+
+        if ( parentDn != null )
         {
-            if ( enableStats )
+            hitCount.increment();
+
+            return parentDn;
+        }
+
+        // Collect the RDNs up to the nearest cached ancestor, or to the top RDN
+        List<String> rdns = new ArrayList<>();
+        String name = parentName;
+        Dn ancestor = null;
+
+        while ( ancestor == null )
+        {
+            int separator = findRdnSeparator( name );
+
+            if ( separator <= 0 )
             {
-                hitCount++;
+                ancestor = new Dn( schemaManager, name );
+            }
+            else
+            {
+                rdns.add( name.substring( 0, separator ) );
+                name = name.substring( separator + 1 );
+                ancestor = dnCache.getIfPresent( name );
             }
         }
 
-        LOG.debug( "Dn {} found in the cache", dn );
+        parentDn = ancestor;
 
-        if ( enableStats )
+        for ( int i = rdns.size() - 1; i >= 0; i-- )
         {
-            LOG.debug( "Dn cache hit - {} , miss - {} and is normalized = {}", hitCount, missCount, cachedDn.isSchemaAware() );
+            parentDn = parentDn.add( new Rdn( schemaManager, rdns.get( i ) ) );
         }
 
-        return cachedDn;
+        if ( !parentDn.getName().equals( parentName ) )
+        {
+            parentDn = new Dn( schemaManager, parentName );
+        }
+
+        dnCache.put( parentName, parentDn );
+
+        return parentDn;
+    }
+
+
+    /**
+     * Finds the position of the separator between the first RDN and the rest of the DN.
+     *
+     * @param dn The DN to split
+     * @return The separator position, or -1 if the DN has only one RDN
+     */
+    private static int findRdnSeparator( String dn )
+    {
+        boolean inQuotes = false;
+
+        for ( int pos = 0; pos < dn.length(); pos++ )
+        {
+            switch ( dn.charAt( pos ) )
+            {
+                case '\\':
+                    // Skip the escaped char
+                    pos++;
+                    break;
+
+                case '"':
+                    inQuotes = !inQuotes;
+                    break;
+
+                case ',':
+                case ';':
+                    if ( !inQuotes )
+                    {
+                        return pos;
+                    }
+
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return -1;
     }
 
 
@@ -159,4 +323,21 @@ public class DefaultDnFactory implements DnFactory
         return create( dn );
     }
 
+
+    /**
+     * @return The number of DNs found in the cache, including the parents of the parsed DNs
+     */
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return The number of DNs which had to be parsed
+     */
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
 }
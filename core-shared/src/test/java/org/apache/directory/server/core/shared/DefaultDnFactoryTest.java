@@ -0,0 +1,161 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.shared;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests for the DefaultDnFactory.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DefaultDnFactoryTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    /**
+     * Check that the created DNs are the same as the parsed ones
+     */
+    @Test
+    public void testCreate() throws Exception
+    {
+        DefaultDnFactory dnFactory = new DefaultDnFactory( schemaManager, 100 );
+
+        String[] dns =
+            {
+                "ou=system",
+                "cn=Foo,ou=system",
+                "CN = Foo , ou=system",
+                " cn=foo,ou=users,ou=system",
+                "cn=a\\,b,ou=system",
+                "cn=a+sn=b,ou=system",
+                "cn=\"a,b\",ou=system",
+                "2.5.4.3=foo,ou=system",
+                "cn=#41,ou=system",
+                "cn=foo\\\\,ou=system",
+                "cn=foo ,  ou = system ",
+                "cn=foo;ou=system"
+        };
+
+        for ( String dn : dns )
+        {
+            Dn expected = new Dn( schemaManager, dn );
+            Dn created = dnFactory.create( dn );
+
+            assertEquals( expected, created );
+            assertEquals( expected.getName(), created.getName() );
+            assertEquals( expected.getNormName(), created.getNormName() );
+            assertTrue( created.isSchemaAware() );
+            assertSame( created, dnFactory.create( dn ) );
+        }
+    }
+
+
+    /**
+     * Check that the sibling DNs share their parent's RDNs
+     */
+    @Test
+    public void testSharedParent() throws Exception
+    {
+        DefaultDnFactory dnFactory = new DefaultDnFactory( schemaManager, 100 );
+
+        Dn dn1 = dnFactory.create( "cn=test1,ou=users,ou=system" );
+        Dn dn2 = dnFactory.create( "cn=test2,ou=users,ou=system" );
+        Dn parent = dnFactory.create( "ou=users,ou=system" );
+
+        assertEquals( parent, dn1.getParent() );
+        assertSame( parent.getRdn(), dn1.getRdn( 1 ) );
+        assertSame( parent.getRdn(), dn2.getRdn( 1 ) );
+    }
+
+
+    /**
+     * Check that a deep DN is created without recursion, and that only the DN and its
+     * parent are cached
+     */
+    @Test
+    public void testDeepDn() throws Exception
+    {
+        // Big enough to hold the deep DNs
+        DefaultDnFactory dnFactory = new DefaultDnFactory( schemaManager, 10000 );
+        StringBuilder sb = new StringBuilder( "ou=system" );
+
+        for ( int i = 0; i < 2000; i++ )
+        {
+            sb.insert( 0, "ou=level" + i + "," );
+        }
+
+        String dn = sb.toString();
+        Dn created = dnFactory.create( dn );
+
+        assertEquals( new Dn( schemaManager, dn ), created );
+        assertEquals( dn, created.getName() );
+        assertEquals( 1, dnFactory.getMissCount() );
+
+        // The parent is cached
+        Dn parent = dnFactory.create( dn.substring( dn.indexOf( ',' ) + 1 ) );
+        assertSame( parent.getRdn(), created.getRdn( 1 ) );
+        assertEquals( 1, dnFactory.getMissCount() );
+
+        // The grand parent is not
+        dnFactory.create( parent.getParent().getName() );
+        assertEquals( 2, dnFactory.getMissCount() );
+    }
+
+
+    @Test
+    public void testStats() throws Exception
+    {
+        DefaultDnFactory dnFactory = new DefaultDnFactory( schemaManager, 100 );
+
+        dnFactory.create( "ou=system" );
+        dnFactory.create( "ou=system" );
+        dnFactory.create( "cn=test,ou=system" );
+
+        assertEquals( 2, dnFactory.getMissCount() );
+        assertEquals( 2, dnFactory.getHitCount() );
+    }
+
+
+    @Test( expected = LdapInvalidDnException.class )
+    public void testInvalidDn() throws Exception
+    {
+        new DefaultDnFactory( schemaManager, 100 ).create( "cn=test,ou=system," );
+    }
+}
@@ -182,6 +182,9 @@ public class DefaultDirectoryService implements DirectoryService
     /** A flag to tell if the userPassword attribute's value must be hidden */
     private boolean passwordHidden = false;
 
+    /** A flag to tell if the released operation contexts are kept for the next operation of the thread */
+    private volatile boolean operationContextPooling = true;
+
     /** The service's CSN factory */
     private CsnFactory csnFactory;
 
@@ -246,6 +249,12 @@ public class DefaultDirectoryService implements DirectoryService
     /** A map associating a list of interceptor to each operation */
     private Map<OperationEnum, List<String>> operationInterceptors;
 
+    /** The precompiled chains of interceptors, indexed by the OperationEnum ordinal */
+    private volatile Interceptor[][] interceptorChains;
+
+    /** Tells if the interceptors have been initialized, and can tell if they are active */
+    private volatile boolean interceptorsInitialized;
+
     /** The System partition */
     private Partition systemPartition;
 
@@ -472,7 +481,29 @@ public class DefaultDirectoryService implements DirectoryService
 
 
     /**
-     * Compute the list of  to call for each operation
+     * {@inheritDoc}
+     */
+    @Override
+    public Interceptor[] getInterceptorChain( OperationEnum operation )
+    {
+        return interceptorChains[operation.ordinal()];
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void refreshInterceptorChains()
+    {
+        initOperationsList();
+    }
+
+
+    /**
+     * Compute the list of interceptors to call for each operation, and the associated
+     * chains. Only the interceptors implementing an operation are part of its chain, and
+     * once they are initialized, only those having some work to do for this operation.
      */
     private void initOperationsList()
     {
@@ -480,7 +511,8 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            operationInterceptors = new ConcurrentHashMap<>();
+            Map<OperationEnum, List<String>> newOperationInterceptors = new ConcurrentHashMap<>();
+            Interceptor[][] newInterceptorChains = new Interceptor[OperationEnum.values().length][];
 
             for ( OperationEnum operation : OperationEnum.getOperations() )
             {
@@ -488,11 +520,29 @@ public class DefaultDirectoryService implements DirectoryService
 
                 for ( Interceptor interceptor : interceptors )
                 {
+                    if ( interceptorsInitialized && !interceptor.isActive( operation ) )
+                    {
+                        LOG.debug( "Bypassing the inactive {} interceptor for the {} operation",
+                            interceptor.getName(), operation.getMethodName() );
+                        continue;
+                    }
+
                     gatherInterceptors( interceptor, interceptor.getClass(), operation, operationList );
                 }
 
-                operationInterceptors.put( operation, operationList );
+                Interceptor[] chain = new Interceptor[operationList.size()];
+
+                for ( int i = 0; i < chain.length; i++ )
+                {
+                    chain[i] = interceptorNames.get( operationList.get( i ) );
+                }
+
+                newOperationInterceptors.put( operation, operationList );
+                newInterceptorChains[operation.ordinal()] = chain;
             }
+
+            operationInterceptors = newOperationInterceptors;
+            interceptorChains = newInterceptorChains;
         }
         finally
         {
@@ -558,30 +608,6 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        if ( position == -1 )
-                        {
-                            operationList.add( interceptor.getName() );
-                        }
-                        else
-                        {
-                            operationList.add( position, interceptor.getName() );
-                        }
-
-                        break;
-                    }
-                }
-            }
-
             interceptorNames.put( interceptor.getName(), interceptor );
 
             if ( position == -1 )
@@ -592,6 +618,9 @@ public class DefaultDirectoryService implements DirectoryService
             {
                 interceptors.add( position, interceptor );
             }
+
+            // Rebuild the chains, the interceptor position may differ for each operation
+            initOperationsList();
         }
         finally
         {
@@ -611,25 +640,10 @@ public class DefaultDirectoryService implements DirectoryService
 
         try
         {
-            for ( OperationEnum operation : OperationEnum.getOperations() )
-            {
-                List<String> operationList = operationInterceptors.get( operation );
-
-                Method[] methods = interceptor.getClass().getDeclaredMethods();
-
-                for ( Method method : methods )
-                {
-                    if ( method.getName().equals( operation.getMethodName() ) )
-                    {
-                        operationList.remove( interceptor.getName() );
-
-                        break;
-                    }
-                }
-            }
-
             interceptorNames.remove( interceptorName );
             interceptors.remove( interceptor );
+
+            initOperationsList();
         }
         finally
         {
@@ -676,6 +690,10 @@ public class DefaultDirectoryService implements DirectoryService
         {
             interceptor.init( this );
         }
+
+        // Now that the interceptors know their state, remove the inactive ones from the chains
+        interceptorsInitialized = true;
+        initOperationsList();
     }
 
 
@@ -964,7 +982,7 @@ public class DefaultDirectoryService implements DirectoryService
             bindContext.setDn( new Dn( schemaManager, principalDn ) );
         }
         
-        bindContext.setInterceptors( getInterceptors( OperationEnum.BIND ) );
+        bindContext.setInterceptors( getInterceptorChain( OperationEnum.BIND ) );
 
         operationManager.bind( bindContext );
 
@@ -1001,7 +1019,7 @@ public class DefaultDirectoryService implements DirectoryService
         }
 
         bindContext.setSaslMechanism( saslMechanism );
-        bindContext.setInterceptors( getInterceptors( OperationEnum.BIND ) );
+        bindContext.setInterceptors( getInterceptorChain( OperationEnum.BIND ) );
 
         operationManager.bind( bindContext );
 
@@ -1317,6 +1335,8 @@ public class DefaultDirectoryService implements DirectoryService
             interceptor.destroy();
         }
 
+        interceptorsInitialized = false;
+
         // --------------------------------------------------------------------
         // And shutdown the server
         // --------------------------------------------------------------------
@@ -2168,6 +2188,26 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOperationContextPooling()
+    {
+        return operationContextPooling;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOperationContextPooling( boolean operationContextPooling )
+    {
+        this.operationContextPooling = operationContextPooling;
+    }
+
+
     /**
      * @return The maximum allowed size for an incoming PDU
      */
@@ -2250,6 +2290,9 @@ public class DefaultDirectoryService implements DirectoryService
             {
                 interceptors.add( position, interceptor );
             }
+
+            interceptorNames.put( interceptor.getName(), interceptor );
+            initOperationsList();
         }
         finally
         {
@@ -22,9 +22,11 @@ package org.apache.directory.server.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
@@ -62,11 +64,13 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContextPool;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,8 +100,8 @@ public class DefaultOperationManager implements OperationManager
     /** The directory service instance */
     private final DirectoryService directoryService;
 
-    /** A lock used to protect against concurrent operations */
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock( true );
+    /** The locks used to protect the partitions against concurrent operations */
+    private final PartitionLockManager lockManager = new PartitionLockManager();
 
     public DefaultOperationManager( DirectoryService directoryService )
     {
@@ -110,7 +114,16 @@ public class DefaultOperationManager implements OperationManager
      */
     public ReadWriteLock getRWLock()
     {
-        return rwLock;
+        return lockManager.getServerLock();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ReadWriteLock getRWLock( Dn suffixDn )
+    {
+        return lockManager.getPartitionLock( suffixDn );
     }
 
 
@@ -119,7 +132,7 @@ public class DefaultOperationManager implements OperationManager
      */
     public void lockRead()
     {
-        rwLock.readLock().lock();
+        lockManager.getServerLock().readLock().lock();
     }
 
 
@@ -128,7 +141,7 @@ public class DefaultOperationManager implements OperationManager
      */
     public void lockWrite()
     {
-        rwLock.writeLock().lock();
+        lockManager.lockExclusive();
     }
 
 
@@ -137,7 +150,60 @@ public class DefaultOperationManager implements OperationManager
      */
     public void unlockWrite()
     {
-        rwLock.writeLock().unlock();
+        lockManager.unlockExclusive();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Dn> lockWrite( Collection<Dn> dns ) throws LdapException
+    {
+        // The partition locks are taken in the order of their normalized suffix
+        Map<String, Dn> suffixDns = new TreeMap<>();
+
+        for ( Dn dn : dns )
+        {
+            Partition partition;
+
+            try
+            {
+                partition = directoryService.getPartitionNexus().getPartition( dn );
+            }
+            catch ( LdapNoSuchObjectException lnsoe )
+            {
+                // The operation will fail, it won't update anything
+                continue;
+            }
+
+            Dn suffixDn = partition.getSuffixDn();
+
+            if ( ( partition instanceof SchemaPartition ) || ( suffixDn == null ) || suffixDn.isRootDse() )
+            {
+                // The whole server has to be locked
+                suffixDns.clear();
+                suffixDns.put( "", Dn.ROOT_DSE );
+                break;
+            }
+
+            suffixDns.put( suffixDn.getNormName(), suffixDn );
+        }
+
+        List<Dn> locked = new ArrayList<>( suffixDns.values() );
+        lockManager.lockWrite( locked );
+
+        return locked;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unlockWrite( List<Dn> suffixDns )
+    {
+        lockManager.unlockWrite( suffixDns );
     }
 
 
@@ -146,7 +212,65 @@ public class DefaultOperationManager implements OperationManager
      */
     public void unlockRead()
     {
-        rwLock.readLock().unlock();
+        lockManager.getServerLock().readLock().unlock();
+    }
+
+
+    /**
+     * Acquires a ReadLock on the partition an operation is done on. The readers of a
+     * concurrent partition work on their own snapshot, they don't take any lock.
+     */
+    private void lockRead( Partition partition ) throws LdapException
+    {
+        if ( !partition.isConcurrent() )
+        {
+            lockManager.lockRead( partition.getSuffixDn() );
+        }
+    }
+
+
+    /**
+     * Releases a ReadLock on the partition an operation is done on
+     */
+    private void unlockRead( Partition partition )
+    {
+        if ( !partition.isConcurrent() )
+        {
+            lockManager.unlockRead( partition.getSuffixDn() );
+        }
+    }
+
+
+    /**
+     * Acquires a WriteLock on the partition an operation is done on. An update
+     * of the schema impacts all the partitions, so it locks the whole server.
+     */
+    private void lockWrite( Partition partition ) throws LdapException
+    {
+        if ( partition instanceof SchemaPartition )
+        {
+            lockManager.lockExclusive();
+        }
+        else
+        {
+            lockManager.lockWrite( partition.getSuffixDn() );
+        }
+    }
+
+
+    /**
+     * Releases a WriteLock on the partition an operation is done on
+     */
+    private void unlockWrite( Partition partition )
+    {
+        if ( partition instanceof SchemaPartition )
+        {
+            lockManager.unlockExclusive();
+        }
+        else
+        {
+            lockManager.unlockWrite( partition.getSuffixDn() );
+        }
     }
 
 
@@ -169,11 +293,20 @@ public class DefaultOperationManager implements OperationManager
             // trouble reading the entry due to insufficient access rights
             CoreSession adminSession = opContext.getSession().getDirectoryService().getAdminSession();
 
-            LookupOperationContext lookupContext = new LookupOperationContext( adminSession, opContext.getDn(),
-                SchemaConstants.ALL_ATTRIBUTES_ARRAY );
-            lookupContext.setPartition( opContext.getPartition() );
-            lookupContext.setTransaction( opContext.getTransaction() );
-            Entry foundEntry = opContext.getSession().getDirectoryService().getPartitionNexus().lookup( lookupContext );
+            LookupOperationContext lookupContext = OperationContextPool.acquireLookupContext( adminSession,
+                opContext.getDn(), SchemaConstants.ALL_ATTRIBUTES_ARRAY );
+            Entry foundEntry;
+
+            try
+            {
+                lookupContext.setPartition( opContext.getPartition() );
+                lookupContext.setTransaction( opContext.getTransaction() );
+                foundEntry = opContext.getSession().getDirectoryService().getPartitionNexus().lookup( lookupContext );
+            }
+            finally
+            {
+                OperationContextPool.release( lookupContext );
+            }
 
             if ( foundEntry != null )
             {
@@ -335,6 +468,72 @@ public class DefaultOperationManager implements OperationManager
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkReferral( Dn dn, Dn newSuperiorDn, boolean referralIgnored ) throws LdapException
+    {
+        ensureStarted();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( directoryService.getSchemaManager(), dn );
+        }
+
+        if ( ( newSuperiorDn != null ) && !newSuperiorDn.isSchemaAware() )
+        {
+            newSuperiorDn = new Dn( directoryService.getSchemaManager(), newSuperiorDn );
+        }
+
+        ReferralManager referralManager = directoryService.getReferralManager();
+        referralManager.lockRead();
+
+        try
+        {
+            Entry parentEntry = referralManager.getParentReferral( dn );
+
+            if ( parentEntry != null )
+            {
+                // We have found a parent referral for the current Dn
+                Dn childDn = dn.getDescendantOf( parentEntry.getDn() );
+
+                if ( referralManager.isReferral( dn ) )
+                {
+                    // A referral can be updated if the ManageDsaIt flag is true
+                    if ( !referralIgnored )
+                    {
+                        throw buildReferralException( parentEntry, childDn );
+                    }
+                }
+                else if ( referralManager.hasParentReferral( dn ) )
+                {
+                    // We can't update an entry which has an ancestor referral
+                    if ( referralIgnored )
+                    {
+                        throw buildLdapPartialResultException( childDn );
+                    }
+                    else
+                    {
+                        throw buildReferralException( parentEntry, childDn );
+                    }
+                }
+            }
+
+            // Now, check the destination of a moved entry
+            if ( ( newSuperiorDn != null ) && ( referralManager.isReferral( newSuperiorDn )
+                || referralManager.hasParentReferral( newSuperiorDn ) ) )
+            {
+                throw new LdapAffectMultipleDsaException();
+            }
+        }
+        finally
+        {
+            referralManager.unlock();
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -396,9 +595,9 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // Call the Add method
-        Interceptor head = directoryService.getInterceptor( addContext.getNextInterceptor() );
+        Interceptor head = addContext.getNextInterceptorInChain();
 
-        lockWrite();
+        lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = addContext.getSession().getTransaction( partition ); 
@@ -455,7 +654,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -490,7 +689,7 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Delete method
-        Interceptor head = directoryService.getInterceptor( bindContext.getNextInterceptor() );
+        Interceptor head = bindContext.getNextInterceptorInChain();
 
         // Normalize the addContext Dn
         Dn dn = bindContext.getDn();
@@ -501,12 +700,11 @@ public class DefaultOperationManager implements OperationManager
             bindContext.setDn( dn );
         }
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 bindContext.setPartition( partition );
@@ -521,7 +719,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -612,16 +810,15 @@ public class DefaultOperationManager implements OperationManager
         compareContext.setOriginalEntry( getOriginalEntry( compareContext ) );
 
         // Call the Compare method
-        Interceptor head = directoryService.getInterceptor( compareContext.getNextInterceptor() );
+        Interceptor head = compareContext.getNextInterceptorInChain();
 
         boolean result = false;
 
-        lockRead();
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        lockRead( partition );
 
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 compareContext.setPartition( partition );
@@ -636,7 +833,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -729,7 +926,7 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // populate the context with the old entry
-        lockWrite();
+        lockWrite( partition );
 
         // Start a Write transaction right away
         PartitionTxn transaction = deleteContext.getSession().getTransaction( partition ); 
@@ -751,7 +948,7 @@ public class DefaultOperationManager implements OperationManager
             eagerlyPopulateFields( deleteContext );
 
             // Call the Delete method
-            Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
+            Interceptor head = deleteContext.getNextInterceptorInChain();
 
             head.delete( deleteContext );
 
@@ -791,7 +988,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -825,15 +1022,14 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( getRootDseContext.getNextInterceptor() );
+        Interceptor head = getRootDseContext.getNextInterceptorInChain();
         Entry root;
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
+        lockRead( partition );
+
         try
         {
-            lockRead();
-            
-            Partition partition = directoryService.getPartitionNexus().getPartition( Dn.ROOT_DSE );
-            
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 getRootDseContext.setPartition( partition );
@@ -848,7 +1044,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -884,12 +1080,10 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( hasEntryContext.getNextInterceptor() );
+        Interceptor head = hasEntryContext.getNextInterceptorInChain();
 
         boolean result = false;
 
-        lockRead();
-
         // Normalize the addContext Dn
         Dn dn = hasEntryContext.getDn();
         
@@ -899,10 +1093,11 @@ public class DefaultOperationManager implements OperationManager
             hasEntryContext.setDn( dn );
         }
 
+        Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+        lockRead( partition );
+
         try
         {
-            Partition partition = directoryService.getPartitionNexus().getPartition( dn );
-
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 hasEntryContext.setPartition( partition );
@@ -917,7 +1112,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockRead();
+            unlockRead( partition );
         }
 
         if ( IS_DEBUG )
@@ -953,7 +1148,7 @@ public class DefaultOperationManager implements OperationManager
 
         ensureStarted();
 
-        Interceptor head = directoryService.getInterceptor( lookupContext.getNextInterceptor() );
+        Interceptor head = lookupContext.getNextInterceptorInChain();
 
         Entry entry = null;
 
@@ -974,7 +1169,7 @@ public class DefaultOperationManager implements OperationManager
         {
             lookupContext.setTransaction( transaction );
 
-            lockRead();
+            lockRead( partition );
     
             try
             {
@@ -982,7 +1177,7 @@ public class DefaultOperationManager implements OperationManager
             }
             finally
             {
-                unlockRead();
+                unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1089,7 +1284,7 @@ public class DefaultOperationManager implements OperationManager
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         modifyContext.setPartition( partition );
         
-        lockWrite();
+        lockWrite( partition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = modifyContext.getSession().getTransaction( partition ); 
@@ -1112,7 +1307,7 @@ public class DefaultOperationManager implements OperationManager
             eagerlyPopulateFields( modifyContext );
 
             // Call the Modify method
-            Interceptor head = directoryService.getInterceptor( modifyContext.getNextInterceptor() );
+            Interceptor head = modifyContext.getNextInterceptorInChain();
 
             head.modify( modifyContext );
             
@@ -1152,7 +1347,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1260,12 +1455,12 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-        
         // Find the working partition
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         moveContext.setPartition( partition );
 
+        lockWrite( partition );
+
         // Start a Write transaction right away
         PartitionTxn transaction = moveContext.getSession().getTransaction( partition ); 
         
@@ -1287,7 +1482,7 @@ public class DefaultOperationManager implements OperationManager
             moveContext.setOriginalEntry( originalEntry );
 
             // Call the Move method
-            Interceptor head = directoryService.getInterceptor( moveContext.getNextInterceptor() );
+            Interceptor head = moveContext.getNextInterceptorInChain();
 
             head.move( moveContext );
             
@@ -1330,7 +1525,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1443,7 +1638,7 @@ public class DefaultOperationManager implements OperationManager
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         moveAndRenameContext.setPartition( partition );
 
-        lockWrite();
+        lockWrite( partition );
         
         // Start a Write transaction right away
         PartitionTxn transaction = moveAndRenameContext.getSession().getTransaction( partition ); 
@@ -1465,7 +1660,7 @@ public class DefaultOperationManager implements OperationManager
             moveAndRenameContext.setTransaction( transaction );
 
             // Call the MoveAndRename method
-            Interceptor head = directoryService.getInterceptor( moveAndRenameContext.getNextInterceptor() );
+            Interceptor head = moveAndRenameContext.getNextInterceptorInChain();
 
             head.moveAndRename( moveAndRenameContext );
 
@@ -1505,7 +1700,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1611,10 +1806,10 @@ public class DefaultOperationManager implements OperationManager
             directoryService.getReferralManager().unlock();
         }
 
-        lockWrite();
-
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
 
+        lockWrite( partition );
+
         // Start a Write transaction right away
         PartitionTxn transaction = renameContext.getSession().getTransaction( partition ); 
         
@@ -1663,7 +1858,7 @@ public class DefaultOperationManager implements OperationManager
             Entry originalEntry = getOriginalEntry( renameContext );
             renameContext.setOriginalEntry( originalEntry );
             renameContext.setModifiedEntry( originalEntry.clone() );
-            Interceptor head = directoryService.getInterceptor( renameContext.getNextInterceptor() );
+            Interceptor head = renameContext.getNextInterceptorInChain();
 
             // Start a Write transaction right away
             transaction = renameContext.getSession().getTransaction( partition ); 
@@ -1725,7 +1920,7 @@ public class DefaultOperationManager implements OperationManager
         }
         finally
         {
-            unlockWrite();
+            unlockWrite( partition );
         }
 
         if ( IS_DEBUG )
@@ -1815,7 +2010,7 @@ public class DefaultOperationManager implements OperationManager
         }
 
         // Call the Search method
-        Interceptor head = directoryService.getInterceptor( searchContext.getNextInterceptor() );
+        Interceptor head = searchContext.getNextInterceptorInChain();
 
         EntryFilteringCursor cursor = null;
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
@@ -1824,7 +2019,7 @@ public class DefaultOperationManager implements OperationManager
         {
             searchContext.setPartition( partition );
             searchContext.setTransaction( partitionTxn );
-            lockRead();
+            lockRead( partition );
     
             try
             {
@@ -1832,7 +2027,7 @@ public class DefaultOperationManager implements OperationManager
             }
             finally
             {
-                unlockRead();
+                unlockRead( partition );
             }
         }
         catch ( IOException ioe )
@@ -1874,7 +2069,7 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         // Call the Unbind method
-        Interceptor head = directoryService.getInterceptor( unbindContext.getNextInterceptor() );
+        Interceptor head = unbindContext.getNextInterceptorInChain();
 
         head.unbind( unbindContext );
 
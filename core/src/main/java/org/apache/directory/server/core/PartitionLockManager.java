@@ -0,0 +1,364 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * The locks protecting the partitions against concurrent operations. There are two levels of locks :
+ * <ul>
+ *   <li>a server lock, which is shared by all the operations done on a single partition, and
+ *   taken exclusively by the operations that impact every partition, like a schema update or a
+ *   shutdown</li>
+ *   <li>a lock per partition, identified by its suffix. The partition updates take it exclusively,
+ *   the reads share it</li>
+ * </ul>
+ * Hence an update in a partition does not block the reads done in another partition. The partition
+ * locks are also the locks used by the partitions to protect their own cursors.
+ * <br>
+ * The partition locks are created on demand. They are not fair : a reader does not get the lock
+ * when a writer is the first thread waiting for it, so the writers are not starved, but the readers
+ * don't wait behind each other.
+ * <br>
+ * The locks must always be taken in this order : the server lock first, then the partition lock.
+ * An operation done while another one holds a partition lock, like an interceptor updating another
+ * partition, takes a second partition lock : the partition locks must then be taken in the order of
+ * the normalized suffixes, the order used by {@link #lockExclusive()}. A thread asking for a partition
+ * lock which comes before one it already holds does not wait : it gets an exception if the lock is not
+ * available, instead of risking a deadlock with a thread taking the same locks in the right order, or
+ * stalling the partitions it holds. The exclusive lock must not be taken by a thread holding a
+ * partition lock.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class PartitionLockManager
+{
+    /** The server lock */
+    private final ReentrantReadWriteLock serverLock = new ReentrantReadWriteLock();
+
+    /** The partition locks, per normalized suffix */
+    private final ConcurrentMap<String, ReentrantReadWriteLock> partitionLocks = new ConcurrentHashMap<>();
+
+    /** The partition locks taken by the thread holding the server lock exclusively */
+    private List<Lock> exclusiveLocks;
+
+    /** The partition locks held by each thread, with their hold count, by normalized suffix */
+    private final ThreadLocal<TreeMap<String, Integer>> heldLocks = new ThreadLocal<TreeMap<String, Integer>>()
+    {
+        @Override
+        protected TreeMap<String, Integer> initialValue()
+        {
+            return new TreeMap<>();
+        }
+    };
+
+
+    /**
+     * @return The server lock
+     */
+    ReadWriteLock getServerLock()
+    {
+        return serverLock;
+    }
+
+
+    /**
+     * Gets the lock protecting a partition
+     *
+     * @param suffixDn The partition suffix
+     * @return The partition lock, or the server lock for the RootDSE
+     */
+    ReadWriteLock getPartitionLock( Dn suffixDn )
+    {
+        if ( ( suffixDn == null ) || suffixDn.isRootDse() )
+        {
+            return serverLock;
+        }
+
+        String key = suffixDn.getNormName();
+        ReentrantReadWriteLock lock = partitionLocks.get( key );
+
+        if ( lock == null )
+        {
+            ReentrantReadWriteLock newLock = new ReentrantReadWriteLock();
+            lock = partitionLocks.putIfAbsent( key, newLock );
+
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
+        }
+
+        return lock;
+    }
+
+
+    /**
+     * Acquires a read lock on a partition. Reading the RootDSE only takes the server read lock.
+     *
+     * @param suffixDn The partition suffix
+     * @throws LdapOtherException If the partition lock is taken out of order, and is not available
+     */
+    void lockRead( Dn suffixDn ) throws LdapOtherException
+    {
+        serverLock.readLock().lock();
+        ReadWriteLock partitionLock = getPartitionLock( suffixDn );
+
+        if ( partitionLock != serverLock )
+        {
+            try
+            {
+                lockPartition( suffixDn, partitionLock.readLock() );
+            }
+            catch ( LdapOtherException loe )
+            {
+                serverLock.readLock().unlock();
+
+                throw loe;
+            }
+        }
+    }
+
+
+    /**
+     * Releases a read lock on a partition
+     *
+     * @param suffixDn The partition suffix
+     */
+    void unlockRead( Dn suffixDn )
+    {
+        ReadWriteLock partitionLock = getPartitionLock( suffixDn );
+
+        if ( partitionLock != serverLock )
+        {
+            partitionLock.readLock().unlock();
+            released( suffixDn );
+        }
+
+        serverLock.readLock().unlock();
+    }
+
+
+    /**
+     * Acquires a write lock on a partition. Updating the RootDSE locks every partition.
+     *
+     * @param suffixDn The partition suffix
+     * @throws LdapOtherException If the partition lock is taken out of order, and is not available
+     */
+    void lockWrite( Dn suffixDn ) throws LdapOtherException
+    {
+        ReadWriteLock partitionLock = getPartitionLock( suffixDn );
+
+        if ( partitionLock == serverLock )
+        {
+            lockExclusive();
+        }
+        else
+        {
+            serverLock.readLock().lock();
+
+            try
+            {
+                lockPartition( suffixDn, partitionLock.writeLock() );
+            }
+            catch ( LdapOtherException loe )
+            {
+                serverLock.readLock().unlock();
+
+                throw loe;
+            }
+        }
+    }
+
+
+    /**
+     * Releases a write lock on a partition
+     *
+     * @param suffixDn The partition suffix
+     */
+    void unlockWrite( Dn suffixDn )
+    {
+        ReadWriteLock partitionLock = getPartitionLock( suffixDn );
+
+        if ( partitionLock == serverLock )
+        {
+            unlockExclusive();
+        }
+        else
+        {
+            partitionLock.writeLock().unlock();
+            released( suffixDn );
+            serverLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Acquires the write locks of several partitions. If one of them can't be acquired, the
+     * locks already taken are released.
+     *
+     * @param suffixDns The partition suffixes, in the order of their normalized names
+     * @throws LdapOtherException If a partition lock is taken out of order, and is not available
+     */
+    void lockWrite( List<Dn> suffixDns ) throws LdapOtherException
+    {
+        List<Dn> locked = new ArrayList<>( suffixDns.size() );
+
+        try
+        {
+            for ( Dn suffixDn : suffixDns )
+            {
+                lockWrite( suffixDn );
+                locked.add( suffixDn );
+            }
+        }
+        catch ( LdapOtherException loe )
+        {
+            unlockWrite( locked );
+
+            throw loe;
+        }
+    }
+
+
+    /**
+     * Releases the write locks of several partitions, in the reverse order
+     *
+     * @param suffixDns The partition suffixes
+     */
+    void unlockWrite( List<Dn> suffixDns )
+    {
+        for ( int i = suffixDns.size() - 1; i >= 0; i-- )
+        {
+            unlockWrite( suffixDns.get( i ) );
+        }
+    }
+
+
+    /**
+     * Takes a partition lock. The thread waits for the lock if it holds no other partition lock,
+     * or if the partition comes after all the partitions it holds. Otherwise the lock is only
+     * taken if it is available.
+     */
+    private void lockPartition( Dn suffixDn, Lock lock ) throws LdapOtherException
+    {
+        String key = suffixDn.getNormName();
+        TreeMap<String, Integer> held = heldLocks.get();
+
+        if ( held.isEmpty() || held.containsKey( key ) || ( key.compareTo( held.lastKey() ) > 0 ) )
+        {
+            lock.lock();
+        }
+        else
+        {
+            if ( !lock.tryLock() )
+            {
+                throw new LdapOtherException( "Cannot lock the partition " + suffixDn.getName()
+                    + " : it is locked by another operation, and it comes before the partition " + held.lastKey()
+                    + " already locked by this operation" );
+            }
+        }
+
+        Integer count = held.get( key );
+        held.put( key, ( count == null ) ? 1 : count + 1 );
+    }
+
+
+    /**
+     * Forgets a partition lock released by the current thread
+     */
+    private void released( Dn suffixDn )
+    {
+        String key = suffixDn.getNormName();
+        TreeMap<String, Integer> held = heldLocks.get();
+        Integer count = held.get( key );
+
+        if ( count == null )
+        {
+            return;
+        }
+
+        if ( count == 1 )
+        {
+            held.remove( key );
+        }
+        else
+        {
+            held.put( key, count - 1 );
+        }
+    }
+
+
+    /**
+     * Acquires the server lock exclusively, then the write lock of every partition, in the
+     * order of their suffixes. This lock is reentrant.
+     */
+    void lockExclusive()
+    {
+        serverLock.writeLock().lock();
+
+        if ( serverLock.getWriteHoldCount() == 1 )
+        {
+            // No other operation can take a partition lock now, but the partitions cursors can
+            Map<String, ReentrantReadWriteLock> sorted = new TreeMap<>( partitionLocks );
+            List<Lock> locks = new ArrayList<>( sorted.size() );
+
+            for ( ReentrantReadWriteLock partitionLock : sorted.values() )
+            {
+                partitionLock.writeLock().lock();
+                locks.add( partitionLock.writeLock() );
+            }
+
+            exclusiveLocks = locks;
+        }
+    }
+
+
+    /**
+     * Releases the locks taken by {@link #lockExclusive()}
+     */
+    void unlockExclusive()
+    {
+        if ( serverLock.getWriteHoldCount() == 1 )
+        {
+            for ( Lock lock : exclusiveLocks )
+            {
+                lock.unlock();
+            }
+
+            exclusiveLocks = null;
+        }
+
+        serverLock.writeLock().unlock();
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test for the PartitionLockManager class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionLockManagerTest
+{
+    private PartitionLockManager lockManager;
+    private ExecutorService executor;
+    private Dn partitionA;
+    private Dn partitionB;
+
+
+    @Before
+    public void init() throws Exception
+    {
+        lockManager = new PartitionLockManager();
+        executor = Executors.newSingleThreadExecutor();
+        partitionA = new Dn( "dc=a" );
+        partitionB = new Dn( "dc=b" );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Reads a partition in another thread
+     */
+    private Future<Boolean> readInOtherThread( final Dn suffixDn )
+    {
+        return executor.submit( new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws Exception
+            {
+                lockManager.lockRead( suffixDn );
+                lockManager.unlockRead( suffixDn );
+
+                return true;
+            }
+        } );
+    }
+
+
+    private boolean isBlocked( Future<Boolean> read ) throws Exception
+    {
+        try
+        {
+            read.get( 200, TimeUnit.MILLISECONDS );
+
+            return false;
+        }
+        catch ( TimeoutException te )
+        {
+            return true;
+        }
+    }
+
+
+    @Test
+    public void testWriteDoesNotBlockOtherPartitions() throws Exception
+    {
+        lockManager.lockWrite( partitionA );
+
+        try
+        {
+            assertTrue( readInOtherThread( partitionB ).get( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionA );
+        }
+    }
+
+
+    @Test
+    public void testWriteBlocksSamePartition() throws Exception
+    {
+        lockManager.lockWrite( partitionA );
+        Future<Boolean> read;
+
+        try
+        {
+            read = readInOtherThread( new Dn( "dc=a" ) );
+            assertTrue( isBlocked( read ) );
+
+            // The writer can read its own partition
+            lockManager.lockRead( partitionA );
+            lockManager.unlockRead( partitionA );
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionA );
+        }
+
+        assertTrue( read.get( 5, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testWriteSeveralPartitions() throws Exception
+    {
+        List<Dn> suffixDns = Arrays.asList( partitionA, partitionB );
+        lockManager.lockWrite( suffixDns );
+        Future<Boolean> read;
+
+        try
+        {
+            // The other partitions remain available
+            assertTrue( readInOtherThread( new Dn( "dc=c" ) ).get( 5, TimeUnit.SECONDS ) );
+
+            read = readInOtherThread( partitionB );
+            assertTrue( isBlocked( read ) );
+        }
+        finally
+        {
+            lockManager.unlockWrite( suffixDns );
+        }
+
+        assertTrue( read.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( 0, ( ( ReentrantReadWriteLock ) lockManager.getServerLock() ).getReadHoldCount() );
+    }
+
+
+    @Test
+    public void testExclusiveBlocksAllPartitions() throws Exception
+    {
+        // Create the partition lock before the exclusive lock is taken
+        assertSame( lockManager.getPartitionLock( partitionB ), lockManager.getPartitionLock( partitionB ) );
+
+        lockManager.lockExclusive();
+        Future<Boolean> read;
+
+        try
+        {
+            read = readInOtherThread( partitionB );
+            assertTrue( isBlocked( read ) );
+
+            // The exclusive lock is reentrant, and its owner can update any partition
+            lockManager.lockExclusive();
+            lockManager.lockWrite( partitionB );
+            lockManager.unlockWrite( partitionB );
+            lockManager.unlockExclusive();
+            assertTrue( isBlocked( read ) );
+        }
+        finally
+        {
+            lockManager.unlockExclusive();
+        }
+
+        assertTrue( read.get( 5, TimeUnit.SECONDS ) );
+
+        // All the partition locks have been released
+        assertTrue( lockManager.getPartitionLock( partitionB ).writeLock().tryLock() );
+        lockManager.getPartitionLock( partitionB ).writeLock().unlock();
+    }
+
+
+    @Test
+    public void testNestedLocksInOrder() throws Exception
+    {
+        lockManager.lockRead( partitionA );
+
+        try
+        {
+            // dc=b comes after dc=a : the lock is taken as usual
+            lockManager.lockWrite( partitionB );
+            lockManager.unlockWrite( partitionB );
+        }
+        finally
+        {
+            lockManager.unlockRead( partitionA );
+        }
+
+        // Everything has been released
+        assertTrue( lockManager.getPartitionLock( partitionA ).writeLock().tryLock() );
+        lockManager.getPartitionLock( partitionA ).writeLock().unlock();
+        assertTrue( lockManager.getPartitionLock( partitionB ).writeLock().tryLock() );
+        lockManager.getPartitionLock( partitionB ).writeLock().unlock();
+    }
+
+
+    @Test
+    public void testNestedLockOutOfOrderAvailable() throws Exception
+    {
+        lockManager.lockWrite( partitionB );
+
+        try
+        {
+            // dc=a comes before dc=b, but nobody holds it
+            lockManager.lockRead( partitionA );
+            lockManager.unlockRead( partitionA );
+        }
+        finally
+        {
+            lockManager.unlockWrite( partitionB );
+        }
+
+        assertEquals( 0, ( ( ReentrantReadWriteLock ) lockManager.getServerLock() ).getReadHoldCount() );
+    }
+
+
+    @Test
+    public void testNestedLockOutOfOrder() throws Exception
+    {
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        // Another thread updates dc=a
+        Future<Boolean> writer = executor.submit( new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws Exception
+            {
+                lockManager.lockWrite( partitionA );
+                locked.countDown();
+                release.await();
+                lockManager.unlockWrite( partitionA );
+
+                return true;
+            }
+        } );
+
+        assertTrue( locked.await( 5, TimeUnit.SECONDS ) );
+        lockManager.lockRead( partitionB );
+
+        try
+        {
+            // dc=a comes before dc=b : we don't wait for it
+            long start = System.nanoTime();
+
+            try
+            {
+                lockManager.lockRead( partitionA );
+                fail();
+            }
+            catch ( LdapOtherException loe )
+            {
+                // Expected
+            }
+
+            assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 1000L );
+
+            // dc=b is still locked
+            assertEquals( 1, ( ( ReentrantReadWriteLock ) lockManager.getPartitionLock( partitionB ) )
+                .getReadHoldCount() );
+        }
+        finally
+        {
+            lockManager.unlockRead( partitionB );
+            release.countDown();
+        }
+
+        assertTrue( writer.get( 5, TimeUnit.SECONDS ) );
+
+        // The failed attempt has not kept the server lock
+        assertEquals( 0, ( ( ReentrantReadWriteLock ) lockManager.getServerLock() ).getReadHoldCount() );
+
+        // And dc=a can be locked again without any time limit
+        lockManager.lockRead( partitionA );
+        lockManager.unlockRead( partitionA );
+    }
+}
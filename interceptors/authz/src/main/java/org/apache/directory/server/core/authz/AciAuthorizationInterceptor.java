@@ -1386,7 +1386,6 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         {
             // if attribute type scope access is not allowed then remove the attribute and continue
             AttributeType attributeType = attribute.getAttributeType();
-            Attribute attr = clonedEntry.get( attributeType );
 
             aciContext = new AciContext( schemaManager, opContext );
             aciContext.setUserGroupNames( userGroups );
@@ -1408,14 +1407,14 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
             List<Value> valueToRemove = new ArrayList<>();
 
             // attribute type scope is ok now let's determine value level scope
-            for ( Value value : attr )
+            for ( Value value : attribute )
             {
                 aciContext = new AciContext( schemaManager, opContext );
                 aciContext.setUserGroupNames( userGroups );
                 aciContext.setUserDn( userDn );
                 aciContext.setAuthenticationLevel( principal.getAuthenticationLevel() );
                 aciContext.setEntryDn( normName );
-                aciContext.setAttributeType( attr.getAttributeType() );
+                aciContext.setAttributeType( attributeType );
                 aciContext.setAttrValue( value );
                 aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
                 aciContext.setAciTuples( tuples );
@@ -1427,14 +1426,19 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 }
             }
 
-            for ( Value value : valueToRemove )
+            if ( valueToRemove.size() == attribute.size() )
             {
-                attr.remove( value );
+                attributeToRemove.add( attributeType );
             }
-
-            if ( attr.size() == 0 )
+            else if ( !valueToRemove.isEmpty() )
             {
-                attributeToRemove.add( attributeType );
+                // Get a modifiable attribute : the entry's attributes may be shared with the cache
+                Attribute attr = clonedEntry.get( attributeType );
+
+                for ( Value value : valueToRemove )
+                {
+                    attr.remove( value );
+                }
             }
         }
 
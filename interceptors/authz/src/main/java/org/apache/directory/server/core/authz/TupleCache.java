@@ -23,10 +23,10 @@ package org.apache.directory.server.core.authz;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.directory.SearchControls;
 
@@ -75,7 +75,7 @@ public class TupleCache
     private static final Logger LOG = LoggerFactory.getLogger( TupleCache.class );
 
     /** a map of strings to ACITuple collections */
-    private final Map<String, List<ACITuple>> tuples = new HashMap<>();
+    private final Map<String, List<ACITuple>> tuples = new ConcurrentHashMap<>();
 
     /** the directory service */
     private final DirectoryService directoryService;
@@ -297,6 +297,11 @@ public class TupleCache
 
     public void subentryRenamed( Dn oldName, Dn newName )
     {
-        tuples.put( newName.getNormName(), tuples.remove( oldName.getNormName() ) );
+        List<ACITuple> renamedTuples = tuples.remove( oldName.getNormName() );
+
+        if ( renamedTuples != null )
+        {
+            tuples.put( newName.getNormName(), renamedTuples );
+        }
     }
 }
@@ -388,7 +388,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public long getCurrentRevision()
+    public synchronized long getCurrentRevision()
     {
         return currentRevision;
     }
@@ -398,7 +398,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
     {
         currentRevision++;
         ChangeLogEvent event = new ChangeLogEvent( currentRevision, 
@@ -414,7 +414,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
     {
         currentRevision++;
         ChangeLogEvent event = new ChangeLogEvent( currentRevision, 
@@ -429,7 +429,7 @@ public class MemoryChangeLogStore implements TaggableChangeLogStore
      * {@inheritDoc}
      */
     @Override
-    public ChangeLogEvent lookup( long revision )
+    public synchronized ChangeLogEvent lookup( long revision )
     {
         if ( revision < 0 )
         {
@@ -41,6 +41,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaUtils;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilter;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -124,6 +125,26 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * The collective attributes are only injected in the read entries when some
+     * collectiveAttribute subentries exist. The checks done on add and modify are
+     * always needed.
+     */
+    @Override
+    public boolean isActive( OperationEnum operation )
+    {
+        switch ( operation )
+        {
+            case LOOKUP:
+            case SEARCH:
+                return directoryService.getSubentryCache().hasCollectiveSubentries();
+
+            default:
+                return true;
+        }
+    }
+
+
     // ------------------------------------------------------------------------
     // Interceptor Method Overrides
     // ------------------------------------------------------------------------
@@ -450,7 +471,6 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
                     continue;
                 }
 
-                Attribute subentryColAttr = subentry.get( attributeType );
                 Attribute entryColAttr = entry.get( attributeType );
 
                 /*
@@ -466,9 +486,9 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
                  *  Add all the collective attribute values in the subentry
                  *  to the currently processed collective attribute in the entry.
                  */
-                for ( Value subentryColVal : subentryColAttr )
+                for ( Value subentryColVal : attribute )
                 {
-                    LOG.debug( "Adding the {} collective attribute into the entry", subentryColAttr );
+                    LOG.debug( "Adding the {} collective attribute into the entry", attribute );
                     entryColAttr.add( subentryColVal.getString() );
                 }
             }
@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
@@ -96,6 +97,16 @@ public class JournalInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Nothing is logged when the journal is disabled.
+     */
+    @Override
+    public boolean isActive( OperationEnum operation )
+    {
+        return journalEnabled;
+    }
+
+
     /**
      * Log the operation, manage the logs rotations.
      */
@@ -40,6 +40,7 @@ import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -165,6 +166,16 @@ public class NumberIncrementingInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * The interceptor has nothing to increment if the holder entry has no integer attribute.
+     */
+    @Override
+    public boolean isActive( OperationEnum operation )
+    {
+        return !incMap.isEmpty();
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -955,6 +955,12 @@ public class SubentryInterceptor extends BaseInterceptor
             setSubtreeSpecification( subentry, entry );
             directoryService.getSubentryCache().addSubentry( dn, subentry );
 
+            if ( subentry.isCollectiveAdminRole() )
+            {
+                // The CollectiveAttributeInterceptor now has some work to do for the reads
+                directoryService.refreshInterceptorChains();
+            }
+
             // Now inject the subentry into the backend
             next( addContext );
 
@@ -1070,6 +1076,12 @@ public class SubentryInterceptor extends BaseInterceptor
             // Update the cache
             directoryService.getSubentryCache().removeSubentry( dn );
 
+            if ( removedSubentry.isCollectiveAdminRole() )
+            {
+                // It may have been the last collective subentry
+                directoryService.refreshInterceptorChains();
+            }
+
             // Now delete the subentry itself
             next( deleteContext );
         }
@@ -1123,6 +1135,7 @@ public class SubentryInterceptor extends BaseInterceptor
             Subentry subentry = directoryService.getSubentryCache().removeSubentry( dn );
             SubtreeSpecification ssOld = subentry.getSubtreeSpecification();
             SubtreeSpecification ssNew;
+            boolean wasCollective = subentry.isCollectiveAdminRole();
 
             try
             {
@@ -1139,6 +1152,11 @@ public class SubentryInterceptor extends BaseInterceptor
             subentry.setAdministrativeRoles( getSubentryTypes( entry, modifications ) );
             directoryService.getSubentryCache().addSubentry( dn, subentry );
 
+            if ( wasCollective != subentry.isCollectiveAdminRole() )
+            {
+                directoryService.refreshInterceptorChains();
+            }
+
             next( modifyContext );
 
             // search for all entries selected by the old SS and remove references to subentry
@@ -0,0 +1,656 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.directory.server.core.avltree.Marshaller;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * A sorted set of duplicate values, kept in the serialized form it is stored
+ * in the JDBM BTree. The values are only deserialized when they are read : a
+ * lookup is a binary search deserializing a handful of values, and adding or
+ * removing a value just moves bytes around.
+ * <p>
+ * Two layouts are used :
+ * <ul>
+ *   <li>UUIDs : the values are canonical entry UUIDs, each one stored on 16 bytes. The
+ *   bytes are ordered as the UUID strings, so the binary search compares bytes only.
+ *   <pre>[3][size (int)][uuid 0 (16 bytes)]...[uuid n-1 (16 bytes)]</pre>
+ *   The UUIDs are not delta encoded : the entry UUIDs are random, so the sorted UUIDs
+ *   of a key only share their first log2(n) bits, about one byte below the duplicate limit
+ *   (512 values by default). Saving this byte would cost the fixed width slots the binary
+ *   search and the cursors rely on to read a UUID directly at its position.</li>
+ *   <li>Values : the values are stored as serialized by the value marshaller, after
+ *   a table of their end offsets.
+ *   <pre>[2][size (int)][end 0 (int)]...[end n-1 (int)][value 0]...[value n-1]</pre></li>
+ * </ul>
+ * The ArrayTree serialized form used by previous versions is read too, and
+ * converted to the values layout.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DupsArray<V>
+{
+    /** The first byte of the legacy serialized ArrayTree */
+    static final byte ARRAY_TREE = 0;
+
+    /** The first byte of the values layout */
+    static final byte VALUES = 2;
+
+    /** The first byte of the UUIDs layout */
+    static final byte UUIDS = 3;
+
+    /** The size of the layout byte and of the number of values */
+    private static final int HEADER_SIZE = 5;
+
+    /** The size of a UUID in the UUIDs layout */
+    private static final int UUID_SIZE = UuidSerializer.UUID_SIZE;
+
+    /** The value comparator */
+    private final Comparator<V> comparator;
+
+    /** The value marshaller */
+    private final Marshaller<V> marshaller;
+
+    /** The serialized values */
+    private byte[] data;
+
+    /** The number of values */
+    private int size;
+
+
+    /**
+     * Creates an empty DupsArray.
+     *
+     * @param comparator The value comparator
+     * @param marshaller The value marshaller
+     * @param uuids If the values are entry UUIDs, compared as Strings
+     */
+    public DupsArray( Comparator<V> comparator, Marshaller<V> marshaller, boolean uuids )
+    {
+        this.comparator = comparator;
+        this.marshaller = marshaller;
+        data = new byte[HEADER_SIZE];
+        data[0] = uuids ? UUIDS : VALUES;
+        size = 0;
+    }
+
+
+    /**
+     * Creates a DupsArray from its serialized form.
+     *
+     * @param comparator The value comparator
+     * @param marshaller The value marshaller
+     * @param data The serialized form, which is not copied
+     * @throws IOException If the data are not a serialized DupsArray or ArrayTree
+     */
+    public DupsArray( Comparator<V> comparator, Marshaller<V> marshaller, byte[] data ) throws IOException
+    {
+        this.comparator = comparator;
+        this.marshaller = marshaller;
+
+        if ( ( data == null ) || ( data.length == 0 ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_439 ) );
+        }
+
+        switch ( data[0] )
+        {
+            case VALUES:
+            case UUIDS:
+                if ( data.length < HEADER_SIZE )
+                {
+                    throw new IOException( I18n.err( I18n.ERR_440 ) );
+                }
+
+                this.data = data;
+                size = readInt( data, 1 );
+                break;
+
+            case ARRAY_TREE:
+                readArrayTree( data );
+                break;
+
+            default:
+                throw new IOException( I18n.err( I18n.ERR_440 ) );
+        }
+    }
+
+
+    /**
+     * Tells if some bytes are a serialized DupsArray or ArrayTree
+     *
+     * @param data The bytes to check
+     * @return true if the data can be read as a DupsArray
+     */
+    static boolean isDupsArray( byte[] data )
+    {
+        return ( data != null ) && ( data.length > 0 )
+            && ( ( data[0] == VALUES ) || ( data[0] == UUIDS ) || ( data[0] == ARRAY_TREE ) );
+    }
+
+
+    /**
+     * Converts a serialized ArrayTree to the values layout, without deserializing the values.
+     * The ArrayTree layout is [0][size (int)][length 0 (int)][value 0]...
+     */
+    private void readArrayTree( byte[] arrayTree ) throws IOException
+    {
+        if ( arrayTree.length == 1 )
+        {
+            // An empty ArrayTree
+            data = new byte[HEADER_SIZE];
+            data[0] = VALUES;
+            size = 0;
+
+            return;
+        }
+
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( arrayTree ) );
+        in.readByte();
+        int nbValues = in.readInt();
+        int[] ends = new int[nbValues];
+        byte[][] values = new byte[nbValues][];
+        int count = 0;
+        int end = 0;
+
+        for ( int i = 0; i < nbValues; i++ )
+        {
+            int length = in.readInt();
+
+            // The ArrayTree stores a null value as an empty one, which is skipped
+            if ( length != 0 )
+            {
+                values[count] = new byte[length];
+                in.readFully( values[count] );
+                end += length;
+                ends[count] = end;
+                count++;
+            }
+        }
+
+        size = count;
+        data = new byte[HEADER_SIZE + size * 4 + end];
+        data[0] = VALUES;
+        writeInt( data, 1, size );
+        int valuePos = HEADER_SIZE + size * 4;
+
+        for ( int i = 0; i < size; i++ )
+        {
+            writeInt( data, HEADER_SIZE + i * 4, ends[i] );
+            System.arraycopy( values[i], 0, data, valuePos, values[i].length );
+            valuePos += values[i].length;
+        }
+    }
+
+
+    /**
+     * @return The serialized form of this DupsArray, which must not be modified
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+
+    /**
+     * @return The number of values
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return true if there is no value
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * @return true if the values are stored as 16 bytes UUIDs
+     */
+    boolean isUuids()
+    {
+        return data[0] == UUIDS;
+    }
+
+
+    /**
+     * Gets the value at a given position
+     *
+     * @param position The position, between 0 and size - 1
+     * @return The value
+     * @throws IOException If the value can't be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public V get( int position ) throws IOException
+    {
+        if ( ( position < 0 ) || ( position >= size ) )
+        {
+            throw new ArrayIndexOutOfBoundsException( position );
+        }
+
+        if ( isUuids() )
+        {
+            return ( V ) UuidSerializer.toUuid( data, HEADER_SIZE + position * UUID_SIZE );
+        }
+
+        int start = valueStart( position );
+
+        return marshaller.deserialize( Arrays.copyOfRange( data, start, valueEnd( position ) ) );
+    }
+
+
+    /**
+     * @return The smallest value, or null if there is no value
+     * @throws IOException If the value can't be deserialized
+     */
+    public V getFirst() throws IOException
+    {
+        return isEmpty() ? null : get( 0 );
+    }
+
+
+    /**
+     * @return The greatest value, or null if there is no value
+     * @throws IOException If the value can't be deserialized
+     */
+    public V getLast() throws IOException
+    {
+        return isEmpty() ? null : get( size - 1 );
+    }
+
+
+    /**
+     * Searches for a value
+     *
+     * @param value The value to search for
+     * @return The value position if it's present, otherwise (-(insertion point) - 1),
+     * the insertion point being the position of the first greater value
+     * @throws IOException If a value can't be deserialized
+     */
+    public int indexOf( V value ) throws IOException
+    {
+        byte[] uuid = isUuids() ? UuidSerializer.toBytes( value ) : null;
+        int low = 0;
+        int high = size - 1;
+
+        while ( low <= high )
+        {
+            int mid = ( low + high ) >>> 1;
+            int comparison;
+
+            if ( uuid != null )
+            {
+                comparison = compareUuid( HEADER_SIZE + mid * UUID_SIZE, uuid );
+            }
+            else
+            {
+                comparison = comparator.compare( get( mid ), value );
+            }
+
+            if ( comparison < 0 )
+            {
+                low = mid + 1;
+            }
+            else if ( comparison > 0 )
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+
+        return -( low + 1 );
+    }
+
+
+    /**
+     * Tells if a value is present
+     *
+     * @param value The value to search for
+     * @return true if the value is present
+     * @throws IOException If a value can't be deserialized
+     */
+    public boolean contains( V value ) throws IOException
+    {
+        return indexOf( value ) >= 0;
+    }
+
+
+    /**
+     * Gets the position of the first value greater than or equal to a given value
+     *
+     * @param value The value
+     * @return The position, or size if all the values are smaller
+     * @throws IOException If a value can't be deserialized
+     */
+    public int ceilingPosition( V value ) throws IOException
+    {
+        int position = indexOf( value );
+
+        return ( position >= 0 ) ? position : -( position + 1 );
+    }
+
+
+    /**
+     * Gets the position of the last value lower than or equal to a given value
+     *
+     * @param value The value
+     * @return The position, or -1 if all the values are greater
+     * @throws IOException If a value can't be deserialized
+     */
+    public int floorPosition( V value ) throws IOException
+    {
+        int position = indexOf( value );
+
+        return ( position >= 0 ) ? position : -( position + 1 ) - 1;
+    }
+
+
+    /**
+     * Gets the position of the first value strictly greater than a given value
+     *
+     * @param value The value
+     * @return The position, or -1 if all the values are lower or equal
+     * @throws IOException If a value can't be deserialized
+     */
+    public int getAfterPosition( V value ) throws IOException
+    {
+        int position = indexOf( value );
+        position = ( position >= 0 ) ? position + 1 : -( position + 1 );
+
+        return ( position < size ) ? position : -1;
+    }
+
+
+    /**
+     * Gets the position of the last value strictly lower than a given value
+     *
+     * @param value The value
+     * @return The position, or -1 if all the values are greater or equal
+     * @throws IOException If a value can't be deserialized
+     */
+    public int getBeforePosition( V value ) throws IOException
+    {
+        int position = indexOf( value );
+
+        return ( position >= 0 ) ? position - 1 : -( position + 1 ) - 1;
+    }
+
+
+    /**
+     * Finds the smallest value greater than or equal to a given value
+     *
+     * @param value The value
+     * @return The found value, or null if all the values are smaller
+     * @throws IOException If a value can't be deserialized
+     */
+    public V findGreaterOrEqual( V value ) throws IOException
+    {
+        int position = ceilingPosition( value );
+
+        return ( position < size ) ? get( position ) : null;
+    }
+
+
+    /**
+     * Finds the greatest value lower than or equal to a given value
+     *
+     * @param value The value
+     * @return The found value, or null if all the values are greater
+     * @throws IOException If a value can't be deserialized
+     */
+    public V findLessOrEqual( V value ) throws IOException
+    {
+        int position = floorPosition( value );
+
+        return ( position >= 0 ) ? get( position ) : null;
+    }
+
+
+    /**
+     * Adds a value, if it's not already present
+     *
+     * @param value The value to add
+     * @return true if the value has been added
+     * @throws IOException If the value can't be serialized
+     */
+    public boolean insert( V value ) throws IOException
+    {
+        int position = indexOf( value );
+
+        if ( position >= 0 )
+        {
+            return false;
+        }
+
+        position = -( position + 1 );
+
+        if ( isUuids() )
+        {
+            byte[] uuid = UuidSerializer.toBytes( value );
+
+            if ( uuid != null )
+            {
+                byte[] newData = new byte[data.length + UUID_SIZE];
+                int offset = HEADER_SIZE + position * UUID_SIZE;
+                System.arraycopy( data, 0, newData, 0, offset );
+                System.arraycopy( uuid, 0, newData, offset, UUID_SIZE );
+                System.arraycopy( data, offset, newData, offset + UUID_SIZE, data.length - offset );
+                writeInt( newData, 1, size + 1 );
+                data = newData;
+                size++;
+
+                return true;
+            }
+
+            // Not a canonical UUID : switch to the values layout
+            toValues();
+        }
+
+        byte[] bytes = marshaller.serialize( value );
+        int start = valueStart( position );
+        int length = bytes.length;
+        byte[] newData = new byte[data.length + 4 + length];
+        int endsEnd = HEADER_SIZE + size * 4;
+        int previousEnd = ( position == 0 ) ? 0 : readInt( data, HEADER_SIZE + ( position - 1 ) * 4 );
+
+        // The ends before the new value, then the new value end, then the shifted ends
+        System.arraycopy( data, 0, newData, 0, HEADER_SIZE + position * 4 );
+        writeInt( newData, HEADER_SIZE + position * 4, previousEnd + length );
+
+        for ( int i = position; i < size; i++ )
+        {
+            writeInt( newData, HEADER_SIZE + ( i + 1 ) * 4, readInt( data, HEADER_SIZE + i * 4 ) + length );
+        }
+
+        // The values, with the new value inserted
+        System.arraycopy( data, endsEnd, newData, endsEnd + 4, start - endsEnd );
+        System.arraycopy( bytes, 0, newData, start + 4, length );
+        System.arraycopy( data, start, newData, start + 4 + length, data.length - start );
+
+        writeInt( newData, 1, size + 1 );
+        data = newData;
+        size++;
+
+        return true;
+    }
+
+
+    /**
+     * Removes a value
+     *
+     * @param value The value to remove
+     * @return true if the value was present
+     * @throws IOException If a value can't be deserialized
+     */
+    public boolean remove( V value ) throws IOException
+    {
+        int position = indexOf( value );
+
+        if ( position < 0 )
+        {
+            return false;
+        }
+
+        if ( isUuids() )
+        {
+            byte[] newData = new byte[data.length - UUID_SIZE];
+            int offset = HEADER_SIZE + position * UUID_SIZE;
+            System.arraycopy( data, 0, newData, 0, offset );
+            System.arraycopy( data, offset + UUID_SIZE, newData, offset, data.length - offset - UUID_SIZE );
+            writeInt( newData, 1, size - 1 );
+            data = newData;
+            size--;
+
+            return true;
+        }
+
+        int start = valueStart( position );
+        int end = valueEnd( position );
+        int length = end - start;
+        byte[] newData = new byte[data.length - 4 - length];
+        int endsEnd = HEADER_SIZE + size * 4;
+
+        // The ends before the removed value, then the shifted ends
+        System.arraycopy( data, 0, newData, 0, HEADER_SIZE + position * 4 );
+
+        for ( int i = position + 1; i < size; i++ )
+        {
+            writeInt( newData, HEADER_SIZE + ( i - 1 ) * 4, readInt( data, HEADER_SIZE + i * 4 ) - length );
+        }
+
+        // The values, without the removed one
+        System.arraycopy( data, endsEnd, newData, endsEnd - 4, start - endsEnd );
+        System.arraycopy( data, end, newData, start - 4, data.length - end );
+
+        writeInt( newData, 1, size - 1 );
+        data = newData;
+        size--;
+
+        return true;
+    }
+
+
+    /**
+     * Converts the UUIDs layout to the values layout
+     */
+    @SuppressWarnings("unchecked")
+    private void toValues() throws IOException
+    {
+        byte[][] values = new byte[size][];
+        int total = 0;
+
+        for ( int i = 0; i < size; i++ )
+        {
+            values[i] = marshaller.serialize( ( V ) UuidSerializer.toUuid( data, HEADER_SIZE + i * UUID_SIZE ) );
+            total += values[i].length;
+        }
+
+        byte[] newData = new byte[HEADER_SIZE + size * 4 + total];
+        newData[0] = VALUES;
+        writeInt( newData, 1, size );
+        int valuePos = HEADER_SIZE + size * 4;
+        int end = 0;
+
+        for ( int i = 0; i < size; i++ )
+        {
+            end += values[i].length;
+            writeInt( newData, HEADER_SIZE + i * 4, end );
+            System.arraycopy( values[i], 0, newData, valuePos, values[i].length );
+            valuePos += values[i].length;
+        }
+
+        data = newData;
+    }
+
+
+    /**
+     * Gets the position of the first byte of a value, in the values layout
+     */
+    private int valueStart( int position )
+    {
+        int valuesStart = HEADER_SIZE + size * 4;
+
+        return ( position == 0 ) ? valuesStart : valuesStart + readInt( data, HEADER_SIZE + ( position - 1 ) * 4 );
+    }
+
+
+    /**
+     * Gets the position following the last byte of a value, in the values layout
+     */
+    private int valueEnd( int position )
+    {
+        return HEADER_SIZE + size * 4 + readInt( data, HEADER_SIZE + position * 4 );
+    }
+
+
+    /**
+     * Compares the stored UUID at a given offset with another UUID, as unsigned bytes
+     */
+    private int compareUuid( int offset, byte[] uuid )
+    {
+        for ( int i = 0; i < UUID_SIZE; i++ )
+        {
+            int comparison = ( data[offset + i] & 0xFF ) - ( uuid[i] & 0xFF );
+
+            if ( comparison != 0 )
+            {
+                return comparison;
+            }
+        }
+
+        return 0;
+    }
+
+
+    private static int readInt( byte[] bytes, int offset )
+    {
+        return ( ( bytes[offset] & 0xFF ) << 24 )
+            | ( ( bytes[offset + 1] & 0xFF ) << 16 )
+            | ( ( bytes[offset + 2] & 0xFF ) << 8 )
+            | ( bytes[offset + 3] & 0xFF );
+    }
+
+
+    private static void writeInt( byte[] bytes, int offset, int value )
+    {
+        bytes[offset] = ( byte ) ( value >>> 24 );
+        bytes[offset + 1] = ( byte ) ( value >>> 16 );
+        bytes[offset + 2] = ( byte ) ( value >>> 8 );
+        bytes[offset + 3] = ( byte ) value;
+    }
+}
@@ -20,13 +20,12 @@
 package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
-import org.apache.directory.server.core.avltree.ArrayTree;
 import org.apache.directory.server.i18n.I18n;
 
 
 /**
- * A wrapper around duplicate key values.  This class wraps either an AvlTree
- * or a BTreeRedirect.  The AvlTree and BTreeRedirect forms are used for the
+ * A wrapper around duplicate key values.  This class wraps either a DupsArray
+ * or a BTreeRedirect.  The DupsArray and BTreeRedirect forms are used for the
  * two value persistence mechanisms used to implement duplicate keys over JDBM
  * btrees.  
  *
@@ -34,20 +33,20 @@ import org.apache.directory.server.i18n.I18n;
  */
 public class DupsContainer<V>
 {
-    private final ArrayTree<V> arrayTree;
+    private final DupsArray<V> dupsArray;
     private final BTreeRedirect btreeRedirect;
 
 
-    DupsContainer( ArrayTree<V> arrayTree )
+    DupsContainer( DupsArray<V> dupsArray )
     {
-        this.arrayTree = arrayTree;
+        this.dupsArray = dupsArray;
         btreeRedirect = null;
     }
 
 
     DupsContainer( BTreeRedirect btreeRedirect )
     {
-        arrayTree = null;
+        dupsArray = null;
         this.btreeRedirect = btreeRedirect;
     }
 
@@ -58,20 +57,20 @@ public class DupsContainer<V>
     }
 
 
-    final boolean isArrayTree()
+    final boolean isDupsArray()
     {
-        return arrayTree != null;
+        return dupsArray != null;
     }
 
 
-    final ArrayTree<V> getArrayTree()
+    final DupsArray<V> getDupsArray()
     {
-        if ( arrayTree == null )
+        if ( dupsArray == null )
         {
             throw new IllegalStateException( I18n.err( I18n.ERR_570 ) );
         }
 
-        return arrayTree;
+        return dupsArray;
     }
 
 
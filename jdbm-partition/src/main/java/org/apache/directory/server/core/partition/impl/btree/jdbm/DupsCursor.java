@@ -31,8 +31,6 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
 import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.server.core.avltree.ArrayTree;
-import org.apache.directory.server.core.avltree.ArrayTreeCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -127,10 +125,10 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
             containerTuple.setBoth( containerCursor.get() );
             DupsContainer<V> values = containerTuple.getValue();
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
-                dupsCursor = new ArrayTreeCursor<>( set );
+                DupsArray<V> set = values.getDupsArray();
+                dupsCursor = new DupsArrayCursor<>( set );
             }
             else
             {
@@ -209,10 +207,10 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
             containerTuple.setBoth( containerCursor.get() );
             DupsContainer<V> values = containerTuple.getValue();
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
-                dupsCursor = new ArrayTreeCursor<>( set );
+                DupsArray<V> set = values.getDupsArray();
+                dupsCursor = new DupsArrayCursor<>( set );
             }
             else
             {
@@ -307,9 +305,9 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
             containerTuple.setBoth( containerCursor.get() );
             DupsContainer<V> values = containerTuple.getValue();
 
-            if ( containerTuple.getValue().isArrayTree() )
+            if ( containerTuple.getValue().isDupsArray() )
             {
-                dupsCursor = new ArrayTreeCursor<>( values.getArrayTree() );
+                dupsCursor = new DupsArrayCursor<>( values.getDupsArray() );
             }
             else
             {
@@ -355,10 +353,10 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
             containerTuple.setBoth( containerCursor.get() );
             DupsContainer<V> values = containerTuple.getValue();
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
-                dupsCursor = new ArrayTreeCursor<>( set );
+                DupsArray<V> set = values.getDupsArray();
+                dupsCursor = new DupsArrayCursor<>( set );
             }
             else
             {
@@ -432,10 +430,10 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
                 containerTuple.setBoth( containerCursor.get() );
                 DupsContainer<V> values = containerTuple.getValue();
 
-                if ( values.isArrayTree() )
+                if ( values.isDupsArray() )
                 {
-                    ArrayTree<V> set = values.getArrayTree();
-                    dupsCursor = new ArrayTreeCursor<>( set );
+                    DupsArray<V> set = values.getDupsArray();
+                    dupsCursor = new DupsArrayCursor<>( set );
                 }
                 else
                 {
@@ -507,10 +505,10 @@ class DupsCursor<K, V> extends AbstractCursor<Tuple<K, V>>
                 containerTuple.setBoth( containerCursor.get() );
                 DupsContainer<V> values = containerTuple.getValue();
 
-                if ( values.isArrayTree() )
+                if ( values.isDupsArray() )
                 {
-                    ArrayTree<V> set = values.getArrayTree();
-                    dupsCursor = new ArrayTreeCursor<>( set );
+                    DupsArray<V> set = values.getDupsArray();
+                    dupsCursor = new DupsArrayCursor<>( set );
                 }
                 else
                 {
@@ -27,8 +27,10 @@ import jdbm.RecordManager;
 import jdbm.helper.Serializer;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.xdbm.MasterTable;
 
 
@@ -39,6 +41,9 @@ import org.apache.directory.server.xdbm.MasterTable;
  */
 public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterTable
 {
+    /** The number of updates done on this table, used to detect the modifications done during a compaction */
+    private volatile long modificationCount;
+
     /**
      * Creates the master table using JDBM B+Trees for the backing store.
      *
@@ -74,4 +79,46 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
     {
         return UUID.randomUUID().toString();
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put( PartitionTxn transaction, String key, Entry value ) throws LdapException
+    {
+        modificationCount++;
+        super.put( transaction, key, value );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove( PartitionTxn transaction, String key, Entry value ) throws LdapException
+    {
+        modificationCount++;
+        super.remove( transaction, key, value );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove( PartitionTxn transaction, String key ) throws LdapException
+    {
+        modificationCount++;
+        super.remove( transaction, key );
+    }
+
+
+    /**
+     * @return The number of updates done on this table since it has been opened
+     */
+    public long getModificationCount()
+    {
+        return modificationCount;
+    }
 }
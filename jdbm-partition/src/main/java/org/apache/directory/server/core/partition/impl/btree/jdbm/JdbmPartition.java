@@ -21,13 +21,17 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
@@ -41,12 +45,15 @@ import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -62,6 +69,7 @@ import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.EntryCache;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
@@ -73,8 +81,6 @@ import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 
 import jdbm.RecordManager;
 import jdbm.helper.MRU;
@@ -96,21 +102,29 @@ public class JdbmPartition extends AbstractBTreePartition
 
     private static final String JDBM_DB_FILE_EXTN = ".db";
 
-    private static final FilenameFilter DB_FILTER = new FilenameFilter()
-    {
-        @Override
-        public boolean accept( File dir, String name )
-        {
-            // really important to filter master.db and master.lg files
-            return name.endsWith( JDBM_DB_FILE_EXTN ) && !name.startsWith( "master." );
-        }
-    };
-
     /** the JDBM record manager used by this database */
     private RecordManager recMan;
 
     /** the entry cache */
-    private Cache< String, Entry > entryCache;
+    private EntryCache entryCache;
+
+    /** The suffix of the record file written by a compaction, before it replaces the partition file */
+    private static final String COMPACTION_FILE_SUFFIX = ".compact";
+
+    /** The number of times a compaction is restarted when the partition has been modified before the swap */
+    private static final int MAX_COMPACTION_ATTEMPTS = 3;
+
+    /** Tells if a compaction is running */
+    private final AtomicBoolean compacting = new AtomicBoolean( false );
+
+    /** The number of records copied by the running compaction */
+    private volatile long compactionCopied;
+
+    /** The number of records the running compaction has to copy */
+    private volatile long compactionTotal;
+
+    /** The number of bytes reclaimed by the last compaction, -1 if no compaction has been done */
+    private volatile long reclaimedBytes = -1L;
 
 
     /**
@@ -137,20 +151,24 @@ public class JdbmPartition extends AbstractBTreePartition
     
     
     /**
-     * Rebuild the indexes 
+     * Rebuild the indexes, scanning the master table once. The index tuples are handed
+     * to a {@link ParallelIndexBuilder}, which builds every index in its own thread.
      */
-    private int rebuildIndexes( PartitionTxn partitionTxn ) throws LdapException, IOException
+    private int rebuildIndexes( List<Index<?, String>> indexes ) throws LdapException
     {
-        Cursor<Tuple<String, Entry>> cursor = getMasterTable().cursor();
+        System.out.println( "Re-building " + indexes.size() + " indices..." );
 
-        int masterTableCount = 0;
-        int repaired = 0;
+        ParallelIndexBuilder builder = new ParallelIndexBuilder( id, indexes );
+        Normalizer objectClassNormalizer = objectClassAT.getEquality().getNormalizer();
 
-        System.out.println( "Re-building indices..." );
+        // The alias indexes are updated once the RDN index is complete, as the alias targets are looked up
+        List<Entry> aliases = new ArrayList<>();
 
+        int masterTableCount = 0;
         boolean ctxEntryLoaded = false;
+        LdapException failure = null;
 
-        try
+        try ( Cursor<Tuple<String, Entry>> cursor = getMasterTable().cursor() )
         {
             while ( cursor.next() )
             {
@@ -162,8 +180,6 @@ public class JdbmPartition extends AbstractBTreePartition
                 
                 // Start with the RdnIndex
                 String parentId = entry.get( ApacheSchemaConstants.ENTRY_PARENT_ID_OID ).getString();
-                System.out.println( "Read entry " + entry.getDn() + " with ID " + id + " and parent ID " + parentId );
-
                 Dn dn = entry.getDn();
                 
                 ParentIdAndRdn parentIdAndRdn = null;
@@ -181,9 +197,8 @@ public class JdbmPartition extends AbstractBTreePartition
                 }
 
                 // Inject the parentIdAndRdn in the rdnIndex
-                rdnIdx.add( partitionTxn, parentIdAndRdn, id );
+                builder.add( rdnIdx, parentIdAndRdn, id );
                 
-                // Process the ObjectClass index
                 // Update the ObjectClass index
                 Attribute objectClass = entry.get( objectClassAT );
 
@@ -196,24 +211,22 @@ public class JdbmPartition extends AbstractBTreePartition
 
                 for ( Value value : objectClass )
                 {
-                    String valueStr = value.getString();
+                    String normalizedOc = objectClassNormalizer.normalize( value.getString() );
 
-                    if ( valueStr.equals( SchemaConstants.TOP_OC ) )
+                    if ( normalizedOc.equals( SchemaConstants.TOP_OC ) )
                     {
                         continue;
                     }
 
-                    objectClassIdx.add( partitionTxn, valueStr, id );
+                    builder.add( objectClassIdx, normalizedOc, id );
                 }
                 
                 // The Alias indexes
                 if ( objectClass.contains( SchemaConstants.ALIAS_OC ) )
                 {
-                    Attribute aliasAttr = entry.get( aliasedObjectNameAT );
-                    addAliasIndices( partitionTxn, id, dn, new Dn( schemaManager, aliasAttr.getString() ) );
+                    aliases.add( entry );
                 }
                 
-                // The entryCSN index
                 // Update the EntryCsn index
                 Attribute entryCsn = entry.get( entryCsnAT );
 
@@ -223,9 +236,8 @@ public class JdbmPartition extends AbstractBTreePartition
                     throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, msg );
                 }
 
-                entryCsnIdx.add( partitionTxn, entryCsn.getString(), id );
+                builder.add( entryCsnIdx, entryCsn.getString(), id );
 
-                // The AdministrativeRole index
                 // Update the AdministrativeRole index, if needed
                 if ( entry.containsAttribute( administrativeRoleAT ) )
                 {
@@ -234,14 +246,13 @@ public class JdbmPartition extends AbstractBTreePartition
 
                     for ( Value value : adminRoles )
                     {
-                        adminRoleIdx.add( partitionTxn, value.getString(), id );
+                        builder.add( adminRoleIdx, value.getString(), id );
                     }
 
                     // Adds only those attributes that are indexed
-                    presenceIdx.add( partitionTxn, administrativeRoleAT.getOid(), id );
+                    builder.add( presenceIdx, administrativeRoleAT.getOid(), id );
                 }
 
-                // And the user indexess
                 // Now work on the user defined userIndices
                 for ( Attribute attribute : entry )
                 {
@@ -252,31 +263,53 @@ public class JdbmPartition extends AbstractBTreePartition
                     {
                         Index<Object, String> idx = ( Index<Object, String> ) getUserIndex( attributeType );
 
-                        // here lookup by attributeId is OK since we got attributeId from
-                        // the entry via the enumeration - it's in there as is for sure
-
                         for ( Value value : attribute )
                         {
-                            idx.add( partitionTxn, value.getString(), id );
+                            builder.add( idx, value.getNormalized(), id );
                         }
 
                         // Adds only those attributes that are indexed
-                        presenceIdx.add( partitionTxn, attributeOid, id );
+                        builder.add( presenceIdx, attributeOid, id );
                     }
                 }
             }
-            
+        }
+        catch ( LdapException le )
+        {
+            failure = le;
         }
         catch ( Exception e )
         {
-            System.out.println( "Exiting after fetching entries " + repaired );
-            throw new LdapOtherException( e.getMessage(), e );
+            failure = new LdapOtherException( e.getMessage(), e );
         }
-        finally
+
+        // Always wait for the builder threads, even if the scan has failed
+        try
         {
-            cursor.close();
+            long tuples = builder.finish();
+            LOG.info( "Inserted {} tuples in the indexes of the partition {}", tuples, id );
         }
-        
+        catch ( LdapException le )
+        {
+            if ( failure == null )
+            {
+                failure = le;
+            }
+        }
+
+        if ( failure != null )
+        {
+            System.out.println( "Exiting after fetching entries " + masterTableCount );
+            throw failure;
+        }
+
+        for ( Entry alias : aliases )
+        {
+            String aliasId = alias.get( entryUuidAT ).getString();
+            Dn aliasTarget = new Dn( schemaManager, alias.get( aliasedObjectNameAT ).getString() );
+            addAliasIndices( null, aliasId, alias.getDn(), aliasTarget );
+        }
+
         return masterTableCount;
     }
     
@@ -322,60 +355,35 @@ public class JdbmPartition extends AbstractBTreePartition
     
     /**
      * {@inheritDoc}
+     * <br>
+     * The indexes are dropped and rebuilt from the master table. The records of the
+     * dropped B-trees are not reused, {@link #compact(DirectoryService)} reclaims them.
      */
     @Override
     protected void doRepair() throws LdapException
     {
-        BaseRecordManager base;
+        List<Index<?, String>> indexes = new ArrayList<>( systemIndices.values() );
+        indexes.addAll( userIndices.values() );
 
         try
         {
-            base = new BaseRecordManager( getPartitionPath().getPath() );
-            TransactionManager transactionManager = base.getTransactionManager();
-            transactionManager.setMaximumTransactionsInLog( 2000 );
-        }
-        catch ( IOException ioe )
-        {
-            throw new LdapOtherException( ioe.getMessage(), ioe );
-        }
-
-        // Find the underlying directories
-        File partitionDir = new File( getPartitionPath() );
-        
-        // get the names of the db files
-        List<String> indexDbFileNameList = Arrays.asList( partitionDir.list( DB_FILTER ) );
+            // Start from empty B-trees
+            for ( Index<?, String> index : indexes )
+            {
+                AttributeType indexAT = index.getAttribute();
+                recMan.setNamedObject( indexAT.getOid() + JdbmIndex.FORWARD_BTREE, 0L );
+                recMan.setNamedObject( indexAT.getOid() + JdbmIndex.REVERSE_BTREE, 0L );
 
-        // then add all index objects to a list
-        List<String> allIndices = new ArrayList<>();
+                ( ( JdbmIndex<?> ) index ).init( recMan, schemaManager, indexAT );
+            }
 
-        try
-        {
-            // Iterate on the declared indexes, deleting the old ones
-            for ( Index<?, String> index : getIndexedAttributes() )
+            if ( piarCache != null )
             {
-                // Index won't be initialized at this time, so lookup AT registry to get the OID
-                AttributeType indexAT = schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() );
-                String oid = indexAT.getOid();
-                allIndices.add( oid );
-                
-                // take the part after removing .db from the
-                String name = oid + JDBM_DB_FILE_EXTN;
-                
-                // if the name doesn't exist in the list of index DB files
-                // this is a new index and we need to build it
-                if ( indexDbFileNameList.contains( name ) )
-                {
-                    ( ( JdbmIndex<?> ) index ).close( null );
-                    
-                    File indexFile = new File( partitionDir, name );
-                    indexFile.delete();
-                    
-                    // Recreate the index
-                    ( ( JdbmIndex<?> ) index ).init( base, schemaManager, indexAT );
-                }
+                piarCache.invalidateAll();
             }
+
             // Ok, now, rebuild the indexes.
-            int masterTableCount = rebuildIndexes( null );
+            int masterTableCount = rebuildIndexes( indexes );
             
             // Now that the RdnIndex has been rebuilt, we have to update the nbChildren and nbDescendants values
             // We loop again on the MasterTable 
@@ -399,8 +407,6 @@ public class JdbmPartition extends AbstractBTreePartition
     {
         if ( !initialized )
         {
-            BaseRecordManager base;
-
             // setup optimizer and registries for parent
             if ( !optimizerEnabled )
             {
@@ -429,19 +435,10 @@ public class JdbmPartition extends AbstractBTreePartition
 
             try
             {
-                base = new BaseRecordManager( path );
-                TransactionManager transactionManager = base.getTransactionManager();
-                transactionManager.setMaximumTransactionsInLog( 2000 );
-                
-                // prevent the OOM when more than 50k users are loaded at a stretch
-                // adding this system property to make it configurable till JDBM gets replaced by Mavibot
-                String cacheSizeVal = System.getProperty( "jdbm.recman.cache.size", "100" );
-                
-                int recCacheSize = Integer.parseInt( cacheSizeVal );
-                
-                LOG.info( "Setting CacheRecondManager's cache size to {}", recCacheSize );
-                
-                recMan = new CacheRecordManager( base, new MRU( recCacheSize ) );
+                // Remove the files of a compaction which has been interrupted before the swap
+                deleteCompactionFiles( path + COMPACTION_FILE_SUFFIX );
+
+                recMan = openRecordManager( path );
             }
             catch ( IOException ioe )
             {
@@ -535,7 +532,7 @@ public class JdbmPartition extends AbstractBTreePartition
                 buildUserIndex( beginReadTransaction(), indexToBuild );
             }
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+            entryCache = createEntryCache();
 
             // Initialization of the context entry
             if ( ( suffixDn != null ) && ( contextEntry != null ) )
@@ -699,6 +696,424 @@ public class JdbmPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Creates the record manager storing the master table and the indexes.
+     */
+    private RecordManager openRecordManager( String path ) throws IOException
+    {
+        BaseRecordManager base = new BaseRecordManager( path );
+        TransactionManager transactionManager = base.getTransactionManager();
+        transactionManager.setMaximumTransactionsInLog( 2000 );
+
+        // prevent the OOM when more than 50k users are loaded at a stretch
+        // adding this system property to make it configurable till JDBM gets replaced by Mavibot
+        String cacheSizeVal = System.getProperty( "jdbm.recman.cache.size", "100" );
+
+        int recCacheSize = Integer.parseInt( cacheSizeVal );
+
+        LOG.info( "Setting CacheRecondManager's cache size to {}", recCacheSize );
+
+        return new CacheRecordManager( base, new MRU( recCacheSize ) );
+    }
+
+
+    /**
+     * Starts a compaction of the partition file in a background thread. See {@link #compact(DirectoryService)}.
+     *
+     * @param directoryService The DirectoryService the partition is registered in, null if it's not registered
+     * @return <code>false</code> if a compaction is already running
+     */
+    public boolean startCompaction( final DirectoryService directoryService )
+    {
+        if ( !initialized || compacting.get() )
+        {
+            return false;
+        }
+
+        Thread compactor = new Thread( "jdbm-compactor-" + id )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    compact( directoryService );
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "The compaction of the partition {} has failed", id, le );
+                }
+            }
+        };
+
+        compactor.setDaemon( true );
+        compactor.start();
+
+        return true;
+    }
+
+
+    /**
+     * Compacts the partition file. JDBM never gives back the space used by the deleted
+     * or updated records, so the file only grows. The live records of the master table
+     * and of every index are copied, in key order, into a new file, which then replaces
+     * the partition file.
+     * <br>
+     * The writes are suspended during the copy, the searches and lookups are not. The
+     * swap itself is done while holding the partition write lock of the OperationManager,
+     * so that no operation, including the binds updating the password policy attributes
+     * under the read lock, sees the files being replaced. The new file is moved over the
+     * partition file atomically : an interrupted compaction leaves the partition file
+     * untouched. The cursors opened before the swap must not be used after it.
+     * <br>
+     * The progress can be followed using {@link #getCompactionProgress()}. This method must
+     * not be called by a thread holding the partition lock.
+     *
+     * @param directoryService The DirectoryService the partition is registered in, null if it's not registered
+     * @return The number of bytes reclaimed
+     * @throws LdapException If a compaction is already running, or if it failed
+     */
+    public long compact( DirectoryService directoryService ) throws LdapException
+    {
+        if ( !initialized )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The partition " + id + " is not initialized" );
+        }
+
+        if ( !compacting.compareAndSet( false, true ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The partition " + id + " is already being compacted" );
+        }
+
+        try
+        {
+            for ( int attempt = 1; attempt <= MAX_COMPACTION_ATTEMPTS; attempt++ )
+            {
+                Long reclaimed = compactOnce( directoryService );
+
+                if ( reclaimed != null )
+                {
+                    reclaimedBytes = reclaimed;
+                    LOG.info( "Compacted the partition {}, {} bytes reclaimed", id, reclaimed );
+
+                    return reclaimed;
+                }
+
+                LOG.info( "The partition {} has been modified during the compaction, attempt {} of {}", id,
+                    attempt, MAX_COMPACTION_ATTEMPTS );
+            }
+
+            throw new LdapOtherException( "The partition " + id
+                + " has been modified during each compaction attempt" );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            compactionCopied = 0L;
+            compactionTotal = 0L;
+            compacting.set( false );
+        }
+    }
+
+
+    /**
+     * Copies the live records, then swaps the files if the partition has not been modified
+     * in between. Returns the reclaimed bytes, or null if the copy has to be done again.
+     */
+    private Long compactOnce( DirectoryService directoryService ) throws LdapException, IOException
+    {
+        String path = new File( getPartitionPath() ).getPath() + File.separator + id;
+        String compactionPath = path + COMPACTION_FILE_SUFFIX;
+
+        // The writers hold the write lock, and the password policy updates done under the read
+        // lock are detected using the modification count
+        ReadWriteLock lock = getOperationLock( directoryService );
+
+        long modificationCount;
+
+        deleteCompactionFiles( compactionPath );
+        lock.readLock().lock();
+
+        try
+        {
+            sync();
+            modificationCount = ( ( JdbmMasterTable ) master ).getModificationCount();
+            copyRecords( compactionPath );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+
+        try
+        {
+            synchronized ( this )
+            {
+                if ( ( ( JdbmMasterTable ) master ).getModificationCount() != modificationCount )
+                {
+                    deleteCompactionFiles( compactionPath );
+
+                    return null;
+                }
+
+                long before = fileSize( path + JDBM_DB_FILE_EXTN ) + fileSize( path + ".lg" );
+                long after = fileSize( compactionPath + JDBM_DB_FILE_EXTN );
+
+                swapRecordFile( path, compactionPath );
+
+                return before - after;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Copies the master table and the indexes into a new record file
+     */
+    private void copyRecords( String compactionPath ) throws LdapException, IOException
+    {
+        List<Index<?, String>> indexes = new ArrayList<>( systemIndices.values() );
+        indexes.addAll( userIndices.values() );
+
+        long total = master.count( null );
+
+        for ( Index<?, String> index : indexes )
+        {
+            JdbmIndex<?> jdbmIndex = ( JdbmIndex<?> ) index;
+            total += jdbmIndex.forward.count( null );
+
+            if ( jdbmIndex.reverse != null )
+            {
+                total += jdbmIndex.reverse.count( null );
+            }
+        }
+
+        compactionCopied = 0L;
+        compactionTotal = total;
+
+        // The file is closed at the end of the copy, a journal is not needed
+        BaseRecordManager target = new BaseRecordManager( compactionPath );
+        target.disableTransactions();
+
+        try
+        {
+            copyTable( ( JdbmMasterTable ) master, new JdbmMasterTable( target, schemaManager ) );
+
+            for ( Index<?, String> index : indexes )
+            {
+                JdbmIndex<?> jdbmIndex = ( JdbmIndex<?> ) index;
+                JdbmIndex<?> copy = createIndexCopy( jdbmIndex );
+                copy.init( target, schemaManager, jdbmIndex.getAttribute() );
+
+                copyTable( jdbmIndex.forward, copy.forward );
+
+                if ( jdbmIndex.reverse != null )
+                {
+                    copyTable( jdbmIndex.reverse, copy.reverse );
+                }
+            }
+
+            target.commit();
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+
+
+    /**
+     * Creates an empty index with the same configuration as the given index
+     */
+    private JdbmIndex<?> createIndexCopy( JdbmIndex<?> index )
+    {
+        JdbmIndex<?> copy;
+
+        if ( index instanceof JdbmRdnIndex )
+        {
+            copy = new JdbmRdnIndex();
+        }
+        else if ( index instanceof JdbmDnIndex )
+        {
+            copy = new JdbmDnIndex( index.getAttributeId() );
+        }
+        else
+        {
+            copy = new JdbmIndex( index.getAttributeId(), index.hasReverse() );
+        }
+
+        copy.setNumDupLimit( index.getNumDupLimit() );
+
+        if ( index.getWkDirPath() != null )
+        {
+            copy.setWkDirPath( index.getWkDirPath() );
+        }
+
+        return copy;
+    }
+
+
+    /**
+     * Copies all the tuples of a table, in key order
+     */
+    @SuppressWarnings("unchecked")
+    private void copyTable( JdbmTable<?, ?> source, JdbmTable<?, ?> target ) throws LdapException
+    {
+        JdbmTable<Object, Object> to = ( JdbmTable<Object, Object> ) target;
+
+        try ( Cursor<? extends Tuple<?, ?>> cursor = source.cursor() )
+        {
+            while ( cursor.next() )
+            {
+                Tuple<?, ?> tuple = cursor.get();
+                to.put( null, tuple.getKey(), tuple.getValue() );
+                compactionCopied++;
+            }
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Replaces the partition file by the compacted one, and reopens the master table and
+     * the indexes on it. Called while holding the write lock.
+     */
+    private void swapRecordFile( String path, String compactionPath ) throws LdapException, IOException
+    {
+        // Flush the journal into the partition file, so that it can be dropped
+        sync();
+        recMan.close();
+
+        try
+        {
+            Files.deleteIfExists( Paths.get( path + ".lg" ) );
+            Files.move( Paths.get( compactionPath + JDBM_DB_FILE_EXTN ), Paths.get( path + JDBM_DB_FILE_EXTN ),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally
+        {
+            // Whether the move has been done or not, reopen the partition file
+            deleteCompactionFiles( compactionPath );
+            recMan = openRecordManager( path );
+            openTables();
+        }
+    }
+
+
+    /**
+     * Reopens the master table and the indexes on the record manager
+     */
+    private void openTables() throws LdapException, IOException
+    {
+        master = new JdbmMasterTable( recMan, schemaManager );
+
+        for ( Index<?, String> index : systemIndices.values() )
+        {
+            ( ( JdbmIndex<?> ) index ).init( recMan, schemaManager, index.getAttribute() );
+        }
+
+        for ( Index<?, String> index : userIndices.values() )
+        {
+            ( ( JdbmIndex<?> ) index ).init( recMan, schemaManager, index.getAttribute() );
+        }
+    }
+
+
+    /**
+     * Called once the record manager has been rolled back : the B-trees held by the tables
+     * still have the roots and sizes written by the aborted transaction, so they are reloaded
+     * from the last committed state. The cached entries and DNs may also have been updated
+     * by the aborted transaction, they are dropped. Called while holding the write lock.
+     *
+     * @throws IOException If the tables can't be reloaded
+     */
+    void rollback() throws IOException
+    {
+        try
+        {
+            openTables();
+        }
+        catch ( LdapException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+
+        if ( entryCache != null )
+        {
+            entryCache.invalidateAll();
+        }
+
+        invalidateDnCaches();
+    }
+
+
+    /**
+     * Removes the files written by a compaction
+     */
+    private void deleteCompactionFiles( String compactionPath ) throws IOException
+    {
+        Files.deleteIfExists( Paths.get( compactionPath + JDBM_DB_FILE_EXTN ) );
+        Files.deleteIfExists( Paths.get( compactionPath + ".lg" ) );
+    }
+
+
+    private static long fileSize( String path ) throws IOException
+    {
+        Path file = Paths.get( path );
+
+        return Files.exists( file ) ? Files.size( file ) : 0L;
+    }
+
+
+    /**
+     * @return <code>true</code> if a compaction is running
+     */
+    public boolean isCompacting()
+    {
+        return compacting.get();
+    }
+
+
+    /**
+     * @return The percentage of the records copied by the running compaction, 0 if none is running
+     */
+    public int getCompactionProgress()
+    {
+        long total = compactionTotal;
+
+        if ( total <= 0L )
+        {
+            return 0;
+        }
+
+        return ( int ) Math.min( 100L, compactionCopied * 100L / total );
+    }
+
+
+    /**
+     * @return The number of bytes reclaimed by the last compaction, -1 if the partition
+     * has not been compacted since it has been initialized
+     */
+    public long getReclaimedBytes()
+    {
+        return reclaimedBytes;
+    }
+
+
     /**
      * Builds user defined indexes on a attributes by browsing all the entries present in master db
      * 
@@ -876,7 +1291,7 @@ public class JdbmPartition extends AbstractBTreePartition
         {
             if ( entryCache != null )
             {
-                entryCache.invalidateAll();
+                entryCache.close();
             }
         }
 
@@ -949,8 +1364,18 @@ public class JdbmPartition extends AbstractBTreePartition
                 || ( opCtx instanceof MoveAndRenameOperationContext )
                 || ( opCtx instanceof RenameOperationContext ) )
             {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
+                // Only the renamed entry has changed : its descendants are cached by ID,
+                // and get their new DN when they are fetched
+                Entry entry = opCtx.getEntry();
+
+                if ( ( entry != null ) && entry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
+                {
+                    entryCache.invalidate( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+                }
+                else
+                {
+                    entryCache.invalidateAll();
+                }
             }
             else if ( opCtx instanceof DeleteOperationContext )
             {
@@ -969,7 +1394,7 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public Entry lookupCache( String id )
     {
-        return ( entryCache != null ) ? entryCache.getIfPresent( id ) : null;
+        return ( entryCache != null ) ? entryCache.get( id ) : null;
     }
 
 
@@ -1002,6 +1427,6 @@ public class JdbmPartition extends AbstractBTreePartition
     @Override
     public PartitionWriteTxn beginWriteTransaction()
     {
-        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite() );
+        return new JdbmPartitionWriteTxn( recMan, isSyncOnWrite(), this );
     }
 }
@@ -40,6 +40,9 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     /** A flag used to flush data immediately or not */
     private boolean syncOnWrite = false;
     
+    /** The partition to reload when the transaction is aborted, if any */
+    private JdbmPartition partition;
+    
     /**
      * Create an instance of JdbmPartitionWriteTxn
      * 
@@ -53,6 +56,21 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     }
     
     
+    /**
+     * Create an instance of JdbmPartitionWriteTxn for a partition, which tables will
+     * be reloaded if the transaction is aborted.
+     * 
+     * @param recordManager The RecordManager instance
+     * @param syncOnWrite If we want to data to be flushed on each write
+     * @param partition The partition the transaction is done on
+     */
+    public JdbmPartitionWriteTxn( RecordManager recordManager, boolean syncOnWrite, JdbmPartition partition )
+    {
+        this( recordManager, syncOnWrite );
+        this.partition = partition;
+    }
+    
+    
     /**
      * {@inheritDoc}
      */
@@ -88,6 +106,11 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     public void abort() throws IOException
     {
         recordManager.rollback();
+        
+        if ( partition != null )
+        {
+            partition.rollback();
+        }
     }
 
 
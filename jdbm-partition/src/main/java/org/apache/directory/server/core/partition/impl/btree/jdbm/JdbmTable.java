@@ -38,16 +38,14 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.SynchronizedLRUMap;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
-import org.apache.directory.server.core.avltree.ArrayMarshaller;
-import org.apache.directory.server.core.avltree.ArrayTree;
-import org.apache.directory.server.core.avltree.ArrayTreeCursor;
+import org.apache.directory.server.core.avltree.DefaultMarshaller;
 import org.apache.directory.server.core.avltree.Marshaller;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractTable;
-import org.apache.directory.server.xdbm.KeyTupleArrayCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,7 +76,10 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     private final Serializer valueSerializer;
 
     /** A marshaller used to serialize/deserialize values stored in the Table */
-    Marshaller<ArrayTree<V>> marshaller;
+    Marshaller<V> marshaller;
+
+    /** Tells if the values are entry UUIDs, which are stored on 16 bytes in the DupsArrays */
+    private final boolean uuidValues;
 
 
     // ------------------------------------------------------------------------
@@ -91,7 +92,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
      *
      * @param schemaManager The server schemaManager
      * @param name the name of the table
-     * @param numDupLimit the size limit of duplicates before switching to BTrees for values instead of AvlTrees
+     * @param numDupLimit the size limit of duplicates before switching to BTrees for values instead of DupsArrays
      * @param manager the record manager to be used for this table
      * @param keyComparator a key comparator
      * @param valueComparator a value comparator
@@ -119,14 +120,15 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
         if ( valueSerializer != null )
         {
-            marshaller = new ArrayMarshaller<>( valueComparator,
-                new MarshallerSerializerBridge<V>( valueSerializer ) );
+            marshaller = new MarshallerSerializerBridge<>( valueSerializer );
         }
         else
         {
-            marshaller = new ArrayMarshaller<>( valueComparator );
+            marshaller = ( Marshaller<V> ) DefaultMarshaller.INSTANCE;
         }
 
+        uuidValues = ( valueSerializer == UuidSerializer.INSTANCE ) && ( valueComparator instanceof UuidComparator );
+
         this.numDupLimit = numDupLimit;
         this.recMan = manager;
         this.valueSerializer = valueSerializer;
@@ -136,7 +138,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         if ( recId == 0 ) // Create new main BTree
         {
             // we do not use the value serializer in the btree since duplicates will use
-            // either BTreeRedirect objects or AvlTree objects whose marshalling is
+            // either BTreeRedirect objects or DupsArray objects whose marshalling is
             // explicitly managed by this code.  Value serialization is delegated to these
             // marshallers.
 
@@ -180,6 +182,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         this.recMan = manager;
 
         this.valueSerializer = valueSerializer;
+        this.uuidValues = false;
 
         this.allowsDuplicates = false;
 
@@ -232,9 +235,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                return values.getArrayTree().size();
+                return values.getDupsArray().size();
             }
 
             return getBTree( values.getBTreeRedirect() ).size();
@@ -271,16 +274,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
-
-                if ( set.getFirst() == null )
-                {
-                    return null;
-                }
-
-                return set.getFirst();
+                return values.getDupsArray().getFirst();
             }
 
             // Handle values if they are stored in another BTree
@@ -320,9 +316,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         {
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
+                DupsArray<V> set = values.getDupsArray();
                 V result = set.findGreaterOrEqual( val );
                 return result != null;
             }
@@ -359,9 +355,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         {
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
+                DupsArray<V> set = values.getDupsArray();
                 V result = set.findLessOrEqual( val );
                 return result != null;
             }
@@ -484,9 +480,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                return values.getArrayTree().find( value ) != null;
+                return values.getDupsArray().contains( value );
             }
 
             return getBTree( values.getBTreeRedirect() ).find( value ) != null;
@@ -555,12 +551,11 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
-                replaced = set.insert( value );
-
-                if ( replaced != null )// if the value already present returns the same value
+                DupsArray<V> set = values.getDupsArray();
+                // if the value is already present, there is nothing to do
+                if ( !set.insert( value ) )
                 {
                     return;
                 }
@@ -578,7 +573,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                 }
                 else
                 {
-                    bt.insert( key, ( V ) marshaller.serialize( set ), true );
+                    bt.insert( key, ( V ) set.getData(), true );
 
                     if ( LOG.isDebugEnabled() )
                     {
@@ -657,12 +652,12 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
             DupsContainer<V> values = getDupsContainer( ( byte[] ) bt.find( key ) );
 
-            if ( values.isArrayTree() )
+            if ( values.isDupsArray() )
             {
-                ArrayTree<V> set = values.getArrayTree();
+                DupsArray<V> set = values.getDupsArray();
 
                 // If removal succeeds then remove if set is empty else replace it
-                if ( set.remove( value ) != null )
+                if ( set.remove( value ) )
                 {
                     if ( set.isEmpty() )
                     {
@@ -670,7 +665,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                     }
                     else
                     {
-                        bt.insert( key, ( V ) marshaller.serialize( set ), true );
+                        bt.insert( key, ( V ) set.getData(), true );
                     }
 
                     count--;
@@ -691,12 +686,12 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
             {
                 /*
                  * If we drop below the duplicate limit then we revert from using
-                 * a Jdbm BTree to using an in memory AvlTree.
+                 * a Jdbm BTree to using a DupsArray.
                  */
                 if ( tree.size() <= numDupLimit )
                 {
-                    ArrayTree<V> avlTree = convertToArrayTree( tree );
-                    bt.insert( key, ( V ) marshaller.serialize( avlTree ), true );
+                    DupsArray<V> array = convertToDupsArray( tree );
+                    bt.insert( key, ( V ) array.getData(), true );
                     recMan.delete( tree.getRecordId() );
                 }
 
@@ -774,7 +769,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
             }
             else
             {
-                ArrayTree<V> set = marshaller.deserialize( serialized );
+                DupsArray<V> set = new DupsArray<>( valueComparator, marshaller, serialized );
                 this.count -= set.size();
 
                 if ( LOG.isDebugEnabled() )
@@ -839,9 +834,9 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                 return new KeyTupleBTreeCursor<>( tree, key, valueComparator );
             }
     
-            ArrayTree<V> set = marshaller.deserialize( serialized );
+            DupsArray<V> set = new DupsArray<>( valueComparator, marshaller, serialized );
     
-            return new KeyTupleArrayCursor<>( set, key );
+            return new KeyTupleDupsArrayCursor<>( set, key );
         }
         catch ( IOException ioe )
         {
@@ -884,7 +879,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
                 return new KeyBTreeCursor<>( tree, valueComparator );
             }
     
-            return new ArrayTreeCursor<>( marshaller.deserialize( serialized ) );
+            return new DupsArrayCursor<>( new DupsArray<>( valueComparator, marshaller, serialized ) );
         }
         catch ( IOException ioe )
         {
@@ -906,7 +901,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     }
 
 
-    public Marshaller<ArrayTree<V>> getMarshaller()
+    public Marshaller<V> getMarshaller()
     {
         return marshaller;
     }
@@ -942,7 +937,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
     {
         if ( serialized == null )
         {
-            return new DupsContainer<>( new ArrayTree<V>( valueComparator ) );
+            return new DupsContainer<>( new DupsArray<V>( valueComparator, marshaller, uuidValues ) );
         }
 
         if ( BTreeRedirectMarshaller.isRedirect( serialized ) )
@@ -960,7 +955,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
         try
         {
-            return new DupsContainer<>( marshaller.deserialize( serialized ) );
+            return new DupsContainer<>( new DupsArray<>( valueComparator, marshaller, serialized ) );
         }
         catch ( IOException ioe )
         {
@@ -1035,22 +1030,22 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
 
 
     @SuppressWarnings("unchecked")
-    private ArrayTree<V> convertToArrayTree( BTree bTree ) throws IOException
+    private DupsArray<V> convertToDupsArray( BTree bTree ) throws IOException
     {
-        ArrayTree<V> avlTree = new ArrayTree<>( valueComparator );
+        DupsArray<V> array = new DupsArray<>( valueComparator, marshaller, uuidValues );
         TupleBrowser browser = bTree.browse();
         jdbm.helper.Tuple tuple = new jdbm.helper.Tuple();
 
         while ( browser.getNext( tuple ) )
         {
-            avlTree.insert( ( V ) tuple.getKey() );
+            array.insert( ( V ) tuple.getKey() );
         }
 
-        return avlTree;
+        return array;
     }
 
 
-    private BTree<V, K> convertToBTree( ArrayTree<V> arrayTree ) throws IOException, CursorException, LdapException
+    private BTree<V, K> convertToBTree( DupsArray<V> array ) throws IOException, CursorException, LdapException
     {
         BTree<V, K> bTree;
 
@@ -1063,7 +1058,7 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
             bTree = new BTree<>( recMan, valueComparator );
         }
 
-        try ( Cursor<V> keys = new ArrayTreeCursor<>( arrayTree ) )
+        try ( Cursor<V> keys = new DupsArrayCursor<>( array ) )
         {
             keys.beforeFirst();
     
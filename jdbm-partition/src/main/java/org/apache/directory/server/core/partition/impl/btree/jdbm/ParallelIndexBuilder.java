@@ -0,0 +1,306 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.xdbm.Index;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Rebuilds a set of JDBM indexes in parallel. The master table is scanned once by the
+ * caller, which hands each (key, entry ID) tuple to the index it belongs to. Every index
+ * has its own builder thread, which sorts the tuples it receives before inserting them,
+ * so that the B-tree pages are filled in key order instead of being updated at random.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ParallelIndexBuilder
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelIndexBuilder.class );
+
+    /** The number of tuples handed at once to a builder thread */
+    private static final int BATCH_SIZE = 1024;
+
+    /** The number of batches waiting for a builder thread */
+    private static final int QUEUE_SIZE = 16;
+
+    /** The number of tuples a builder thread sorts before inserting them */
+    private static final int SORT_SIZE = 64 * 1024;
+
+    /** The batch telling a builder thread that the scan is done */
+    private static final List<Tuple<Object, String>> END = new ArrayList<>( 0 );
+
+    /** The builders, per index */
+    private final Map<Index<?, String>, Builder> builders = new IdentityHashMap<>();
+
+    /** The builder threads */
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates a ParallelIndexBuilder, and starts a builder thread per index.
+     *
+     * @param partitionId The ID of the partition the indexes belong to
+     * @param indexes The indexes to build. They must be empty.
+     */
+    ParallelIndexBuilder( final String partitionId, Collection<Index<?, String>> indexes )
+    {
+        executor = Executors.newFixedThreadPool( Math.max( 1, indexes.size() ), new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "index-builder-" + partitionId + "-"
+                    + counter.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        for ( Index<?, String> index : indexes )
+        {
+            Builder builder = new Builder( ( JdbmIndex<?> ) index );
+            builder.future = executor.submit( builder );
+            builders.put( index, builder );
+        }
+    }
+
+
+    /**
+     * Adds a tuple to an index. The tuples of the indexes which are not being built are ignored.
+     *
+     * @param index The index
+     * @param key The indexed key
+     * @param id The entry ID
+     * @throws LdapException If the builder thread can't be reached
+     */
+    <K> void add( Index<K, String> index, K key, String id ) throws LdapException
+    {
+        Builder builder = builders.get( index );
+
+        if ( builder == null )
+        {
+            return;
+        }
+
+        builder.batch.add( new Tuple<Object, String>( key, id ) );
+
+        if ( builder.batch.size() >= BATCH_SIZE )
+        {
+            builder.send( builder.batch );
+            builder.batch = new ArrayList<>( BATCH_SIZE );
+        }
+    }
+
+
+    /**
+     * Hands the remaining tuples to the builder threads, and waits for them to be done.
+     *
+     * @return The number of inserted tuples
+     * @throws LdapException If one of the indexes can't be built
+     */
+    long finish() throws LdapException
+    {
+        try
+        {
+            for ( Builder builder : builders.values() )
+            {
+                builder.send( builder.batch );
+                builder.send( END );
+            }
+
+            long total = 0L;
+
+            for ( Builder builder : builders.values() )
+            {
+                total += builder.future.get();
+            }
+
+            return total;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof LdapException )
+            {
+                throw ( LdapException ) cause;
+            }
+
+            throw new LdapOtherException( cause.getMessage(), cause );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Inserts the tuples of an index, sorted by key.
+     */
+    private static class Builder implements Callable<Long>
+    {
+        /** The index to build */
+        private final JdbmIndex<?> index;
+
+        /** The order in which the tuples are inserted */
+        private final Comparator<Tuple<Object, String>> order;
+
+        /** The batches sent by the scanning thread */
+        private final BlockingQueue<List<Tuple<Object, String>>> queue = new ArrayBlockingQueue<>( QUEUE_SIZE );
+
+        /** The tuples the scanning thread has not sent yet */
+        private List<Tuple<Object, String>> batch = new ArrayList<>( BATCH_SIZE );
+
+        /** The result of the builder thread */
+        private Future<Long> future;
+
+
+        @SuppressWarnings("unchecked")
+        Builder( JdbmIndex<?> index )
+        {
+            this.index = index;
+            final Comparator<Object> keyComparator = ( Comparator<Object> ) index.forward.getKeyComparator();
+
+            order = new Comparator<Tuple<Object, String>>()
+            {
+                @Override
+                public int compare( Tuple<Object, String> tuple1, Tuple<Object, String> tuple2 )
+                {
+                    return keyComparator.compare( tuple1.getKey(), tuple2.getKey() );
+                }
+            };
+        }
+
+
+        private void send( List<Tuple<Object, String>> tuples ) throws LdapException
+        {
+            try
+            {
+                queue.put( tuples );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+
+                throw new LdapOtherException( ie.getMessage(), ie );
+            }
+        }
+
+
+        @Override
+        public Long call() throws Exception
+        {
+            List<Tuple<Object, String>> pending = new ArrayList<>();
+            Exception failure = null;
+            long inserted = 0L;
+
+            while ( true )
+            {
+                List<Tuple<Object, String>> tuples = queue.take();
+
+                if ( tuples == END )
+                {
+                    break;
+                }
+
+                // Keep on draining the queue after a failure, so that the scanning thread is never blocked
+                if ( failure != null )
+                {
+                    continue;
+                }
+
+                pending.addAll( tuples );
+
+                if ( pending.size() >= SORT_SIZE )
+                {
+                    try
+                    {
+                        inserted += insert( pending );
+                    }
+                    catch ( Exception e )
+                    {
+                        LOG.error( "Failed to build the index {}", index.getAttributeId(), e );
+                        failure = e;
+                    }
+                }
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+
+            return inserted + insert( pending );
+        }
+
+
+        @SuppressWarnings("unchecked")
+        private long insert( List<Tuple<Object, String>> pending ) throws LdapException
+        {
+            Collections.sort( pending, order );
+            JdbmIndex<Object> target = ( JdbmIndex<Object> ) index;
+
+            for ( Tuple<Object, String> tuple : pending )
+            {
+                target.add( null, tuple.getKey(), tuple.getValue() );
+            }
+
+            int size = pending.size();
+            pending.clear();
+
+            return size;
+        }
+    }
+}
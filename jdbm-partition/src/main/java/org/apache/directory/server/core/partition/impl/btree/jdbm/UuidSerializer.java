@@ -26,7 +26,15 @@ import jdbm.helper.Serializer;
 
 
 /**
- * A {@link Serializer} for UUIDs
+ * A {@link Serializer} for the entry UUIDs used as identifiers in the master table and
+ * in the indexes. A canonical UUID (lower case, with dashes) is stored on 17 bytes, a
+ * marker byte followed by the 16 bytes of the UUID, instead of the 72 bytes of its String
+ * form, which makes the B-tree pages much denser.
+ * <br>
+ * Any other String is stored using the {@link StringSerializer}, which is also the way
+ * UUIDs were stored by previous versions. The StringSerializer writes 2 bytes per char,
+ * so its records always have an even length : a record with an odd length can only be
+ * a compact UUID.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -35,15 +43,39 @@ public class UuidSerializer implements Serializer
     private static final long serialVersionUID = 237756689544852128L;
     public static final UuidSerializer INSTANCE = new UuidSerializer();
 
+    /** The size of a canonical UUID bytes */
+    static final int UUID_SIZE = 16;
+
+    /** The marker starting a serialized canonical UUID */
+    private static final byte COMPACT_MARKER = 0x01;
+
+    /** The size of a serialized canonical UUID : the marker and the UUID bytes */
+    private static final int COMPACT_SIZE = UUID_SIZE + 1;
+
+    /** The size of a UUID string */
+    private static final int UUID_STRING_SIZE = 36;
+
+    /** The hexadecimal digits */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
 
     /**
      * {@inheritDoc}
      */
     public byte[] serialize( Object o ) throws IOException
     {
-        String uuid = ( String ) o;
+        byte[] bytes = toBytes( o );
+
+        if ( bytes != null )
+        {
+            byte[] serialized = new byte[COMPACT_SIZE];
+            serialized[0] = COMPACT_MARKER;
+            System.arraycopy( bytes, 0, serialized, 1, UUID_SIZE );
 
-        return StringSerializer.INSTANCE.serialize( uuid );
+            return serialized;
+        }
+
+        return StringSerializer.INSTANCE.serialize( o );
     }
 
 
@@ -52,6 +84,98 @@ public class UuidSerializer implements Serializer
      */
     public Object deserialize( byte[] bytes ) throws IOException
     {
+        if ( ( bytes.length & 1 ) != 0 )
+        {
+            if ( ( bytes.length != COMPACT_SIZE ) || ( bytes[0] != COMPACT_MARKER ) )
+            {
+                throw new IOException( "Invalid serialized UUID, " + bytes.length + " bytes" );
+            }
+
+            return toUuid( bytes, 1 );
+        }
+
         return StringSerializer.INSTANCE.deserialize( bytes );
     }
+
+
+    /**
+     * Converts a canonical UUID (lower case, with dashes) to 16 bytes
+     *
+     * @param value The UUID
+     * @return The UUID bytes, or null if the value is not a canonical UUID
+     */
+    static byte[] toBytes( Object value )
+    {
+        if ( !( value instanceof String ) || ( ( ( String ) value ).length() != UUID_STRING_SIZE ) )
+        {
+            return null;
+        }
+
+        String uuid = ( String ) value;
+        byte[] bytes = new byte[UUID_SIZE];
+        int pos = 0;
+
+        for ( int i = 0; i < UUID_STRING_SIZE; i++ )
+        {
+            char c = uuid.charAt( i );
+
+            if ( ( i == 8 ) || ( i == 13 ) || ( i == 18 ) || ( i == 23 ) )
+            {
+                if ( c != '-' )
+                {
+                    return null;
+                }
+
+                continue;
+            }
+
+            int digit;
+
+            if ( ( c >= '0' ) && ( c <= '9' ) )
+            {
+                digit = c - '0';
+            }
+            else if ( ( c >= 'a' ) && ( c <= 'f' ) )
+            {
+                digit = c - 'a' + 10;
+            }
+            else
+            {
+                return null;
+            }
+
+            bytes[pos >> 1] |= ( byte ) ( ( pos & 1 ) == 0 ? digit << 4 : digit );
+            pos++;
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Converts 16 bytes to a canonical UUID
+     *
+     * @param bytes The buffer containing the UUID
+     * @param offset The position of the UUID in the buffer
+     * @return The canonical UUID
+     */
+    static String toUuid( byte[] bytes, int offset )
+    {
+        char[] chars = new char[UUID_STRING_SIZE];
+        int pos = 0;
+
+        for ( int i = 0; i < UUID_SIZE; i++ )
+        {
+            if ( ( i == 4 ) || ( i == 6 ) || ( i == 8 ) || ( i == 10 ) )
+            {
+                chars[pos++] = '-';
+            }
+
+            int b = bytes[offset + i] & 0xFF;
+            chars[pos++] = HEX_DIGITS[b >> 4];
+            chars[pos++] = HEX_DIGITS[b & 0x0F];
+        }
+
+        return new String( chars );
+    }
 }
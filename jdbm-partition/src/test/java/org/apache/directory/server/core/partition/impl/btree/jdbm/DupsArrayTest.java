@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.directory.server.core.avltree.ArrayMarshaller;
+import org.apache.directory.server.core.avltree.ArrayTree;
+import org.apache.directory.server.core.avltree.DefaultMarshaller;
+import org.apache.directory.server.core.avltree.Marshaller;
+import org.junit.Test;
+
+
+/**
+ * Tests the DupsArray.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DupsArrayTest
+{
+    private static final Comparator<Integer> INT_COMPARATOR = new Comparator<Integer>()
+    {
+        public int compare( Integer i1, Integer i2 )
+        {
+            return i1.compareTo( i2 );
+        }
+    };
+
+    private static final Comparator<String> STRING_COMPARATOR = new Comparator<String>()
+    {
+        public int compare( String s1, String s2 )
+        {
+            return s1.compareTo( s2 );
+        }
+    };
+
+    private static final Marshaller<String> UUID_MARSHALLER =
+        new MarshallerSerializerBridge<>( UuidSerializer.INSTANCE );
+
+
+    @SuppressWarnings("unchecked")
+    private static Marshaller<Integer> intMarshaller()
+    {
+        return ( Marshaller<Integer> ) ( Marshaller<?> ) DefaultMarshaller.INSTANCE;
+    }
+
+
+    @Test
+    public void testValues() throws Exception
+    {
+        DupsArray<Integer> array = new DupsArray<>( INT_COMPARATOR, intMarshaller(), false );
+
+        assertTrue( array.isEmpty() );
+        assertNull( array.getFirst() );
+
+        int[] values = new int[]
+            { 12, 3, 25, 0, 7, 30, 5 };
+
+        for ( int value : values )
+        {
+            assertTrue( array.insert( value ) );
+        }
+
+        assertFalse( array.insert( 7 ) );
+        assertEquals( 7, array.size() );
+        assertEquals( 0, ( int ) array.getFirst() );
+        assertEquals( 30, ( int ) array.getLast() );
+        assertEquals( 3, array.indexOf( 7 ) );
+        assertEquals( -4, array.indexOf( 6 ) );
+        assertEquals( 12, ( int ) array.findGreaterOrEqual( 8 ) );
+        assertEquals( 7, ( int ) array.findLessOrEqual( 8 ) );
+        assertNull( array.findGreaterOrEqual( 31 ) );
+        assertNull( array.findLessOrEqual( -1 ) );
+        assertEquals( 4, array.getAfterPosition( 7 ) );
+        assertEquals( 2, array.getBeforePosition( 7 ) );
+        assertEquals( -1, array.getAfterPosition( 30 ) );
+        assertEquals( -1, array.getBeforePosition( 0 ) );
+
+        assertTrue( array.remove( 0 ) );
+        assertTrue( array.remove( 12 ) );
+        assertTrue( array.remove( 30 ) );
+        assertFalse( array.remove( 30 ) );
+
+        // Reload the serialized form
+        DupsArray<Integer> reloaded = new DupsArray<>( INT_COMPARATOR, intMarshaller(), array.getData() );
+        assertEquals( 4, reloaded.size() );
+
+        int[] expected = new int[]
+            { 3, 5, 7, 25 };
+
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertEquals( expected[i], ( int ) reloaded.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testUuids() throws Exception
+    {
+        DupsArray<String> array = new DupsArray<>( STRING_COMPARATOR, UUID_MARSHALLER, true );
+        List<String> uuids = new ArrayList<>();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            String uuid = UUID.randomUUID().toString();
+            uuids.add( uuid );
+            assertTrue( array.insert( uuid ) );
+        }
+
+        Collections.sort( uuids );
+
+        assertTrue( array.isUuids() );
+        assertEquals( 5 + 100 * 16, array.getData().length );
+
+        for ( int i = 0; i < uuids.size(); i++ )
+        {
+            assertEquals( uuids.get( i ), array.get( i ) );
+            assertEquals( i, array.indexOf( uuids.get( i ) ) );
+        }
+
+        assertTrue( array.remove( uuids.get( 50 ) ) );
+        assertFalse( array.contains( uuids.get( 50 ) ) );
+
+        DupsArray<String> reloaded = new DupsArray<>( STRING_COMPARATOR, UUID_MARSHALLER, array.getData() );
+        assertEquals( 99, reloaded.size() );
+        assertEquals( uuids.get( 51 ), reloaded.get( 50 ) );
+    }
+
+
+    @Test
+    public void testNonCanonicalUuid() throws Exception
+    {
+        DupsArray<String> array = new DupsArray<>( STRING_COMPARATOR, UUID_MARSHALLER, true );
+        array.insert( "00000000-0000-0000-0000-000000000002" );
+        array.insert( "00000000-0000-0000-0000-000000000000" );
+
+        // An upper case UUID can't be stored on 16 bytes
+        array.insert( "00000000-0000-0000-0000-00000000000A" );
+
+        assertFalse( array.isUuids() );
+        assertEquals( 3, array.size() );
+        assertEquals( "00000000-0000-0000-0000-000000000000", array.get( 0 ) );
+        assertEquals( "00000000-0000-0000-0000-000000000002", array.get( 1 ) );
+        assertEquals( "00000000-0000-0000-0000-00000000000A", array.get( 2 ) );
+    }
+
+
+    @Test
+    public void testLegacyArrayTree() throws Exception
+    {
+        ArrayTree<Integer> tree = new ArrayTree<>( INT_COMPARATOR );
+        ArrayMarshaller<Integer> arrayMarshaller = new ArrayMarshaller<>( INT_COMPARATOR );
+
+        assertEquals( 0, new DupsArray<>( INT_COMPARATOR, intMarshaller(),
+            arrayMarshaller.serialize( tree ) ).size() );
+
+        tree.insert( 5 );
+        tree.insert( 1 );
+        tree.insert( 3 );
+
+        DupsArray<Integer> array = new DupsArray<>( INT_COMPARATOR, intMarshaller(), arrayMarshaller.serialize( tree ) );
+
+        assertEquals( 3, array.size() );
+        assertEquals( 1, ( int ) array.get( 0 ) );
+        assertEquals( 3, ( int ) array.get( 1 ) );
+        assertEquals( 5, ( int ) array.get( 2 ) );
+        assertEquals( DupsArray.VALUES, array.getData()[0] );
+
+        assertTrue( array.insert( 4 ) );
+        assertEquals( 2, array.indexOf( 4 ) );
+    }
+
+
+    @Test
+    public void testUuidBytesOrder() throws Exception
+    {
+        String[] uuids = new String[]
+            {
+                "00000000-0000-0000-0000-000000000000",
+                "0000000f-0000-0000-0000-000000000000",
+                "7fffffff-ffff-ffff-ffff-ffffffffffff",
+                "80000000-0000-0000-0000-000000000000",
+                "ffffffff-ffff-ffff-ffff-ffffffffffff"
+            };
+
+        for ( int i = 1; i < uuids.length; i++ )
+        {
+            byte[] lower = UuidSerializer.toBytes( uuids[i - 1] );
+            byte[] upper = UuidSerializer.toBytes( uuids[i] );
+            int comparison = 0;
+
+            for ( int j = 0; ( j < lower.length ) && ( comparison == 0 ); j++ )
+            {
+                comparison = ( lower[j] & 0xFF ) - ( upper[j] & 0xFF );
+            }
+
+            assertTrue( comparison < 0 );
+        }
+
+        assertNull( UuidSerializer.toBytes( "not an UUID" ) );
+        assertArrayEquals( new byte[16], UuidSerializer.toBytes( uuids[0] ) );
+    }
+}
@@ -198,7 +198,7 @@ public class DupsContainerCursorTest
 
         Tuple<String, DupsContainer<String>> tuple = cursor.get();
         assertEquals( "1", tuple.getKey() );
-        assertEquals( "1", tuple.getValue().getArrayTree().getFirst() );
+        assertEquals( "1", tuple.getValue().getDupsArray().getFirst() );
 
         cursor.beforeFirst();
         assertFalse( cursor.previous() );
@@ -224,13 +224,13 @@ public class DupsContainerCursorTest
 
         Tuple<String, DupsContainer<String>> tuple = cursor.get();
         assertEquals( "3", tuple.getKey() );
-        assertEquals( "3", tuple.getValue().getArrayTree().getFirst() );
+        assertEquals( "3", tuple.getValue().getDupsArray().getFirst() );
 
         cursor.before( new Tuple<String, DupsContainer<String>>( "7", null ) );
         cursor.next();
         tuple = cursor.get();
         assertEquals( "7", tuple.getKey() );
-        assertEquals( "7", tuple.getValue().getArrayTree().getFirst() );
+        assertEquals( "7", tuple.getValue().getDupsArray().getFirst() );
 
         cursor.last();
         cursor.next();
@@ -243,7 +243,7 @@ public class DupsContainerCursorTest
         cursor.next();
         tuple = cursor.get();
         assertEquals( "1", tuple.getKey() );
-        assertEquals( "1", tuple.getValue().getArrayTree().getFirst() );
+        assertEquals( "1", tuple.getValue().getDupsArray().getFirst() );
 
         cursor.afterLast();
         assertFalse( cursor.next() );
@@ -259,7 +259,7 @@ public class DupsContainerCursorTest
         cursor.next(); // this moves onto tuple with key 2
         tuple = cursor.get();
         assertEquals( "2", tuple.getKey() );
-        assertEquals( "2", tuple.getValue().getArrayTree().getFirst() );
+        assertEquals( "2", tuple.getValue().getDupsArray().getFirst() );
         cursor.close();
     }
 
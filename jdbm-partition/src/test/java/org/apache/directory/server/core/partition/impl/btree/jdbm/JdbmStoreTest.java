@@ -28,9 +28,12 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -40,6 +43,8 @@ import java.util.UUID;
 import org.apache.directory.api.util.FileUtils;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
@@ -49,6 +54,7 @@ import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
@@ -73,6 +79,7 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.StoreUtils;
 import org.junit.After;
@@ -269,6 +276,329 @@ public class JdbmStoreTest
     }
 
 
+    /**
+     * Tests that the entries are served from the off-heap cache when it's enabled
+     */
+    @Test
+    public void testOffHeapEntryCache() throws Exception
+    {
+        Path wkdir2 = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_db2" );
+
+        JdbmPartition store2 = new JdbmPartition( schemaManager, dnFactory );
+        store2.setId( "example2" );
+        store2.setEntryCacheMemory( 1024L * 1024L );
+        store2.setPartitionPath( wkdir2.toFile().toURI() );
+        store2.setSyncOnWrite( false );
+        store2.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+        store2.addIndex( new JdbmIndex( SchemaConstants.UID_AT_OID, false ) );
+        store2.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        store2.initialize();
+
+        StoreUtils.loadExampleData( store2, schemaManager );
+
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String id = store2.getEntryId( partitionTxn, dn );
+        assertNull( store2.lookupCache( id ) );
+
+        Entry fetched = store2.fetch( partitionTxn, id, dn );
+        Entry cached = store2.lookupCache( id );
+        assertNotNull( cached );
+        assertEquals( "WAlkeR", cached.get( "sn" ).getString() );
+
+        // The second fetch is served from the cache
+        assertEquals( fetched, store2.fetch( partitionTxn, id, dn ) );
+
+        store2.destroy( partitionTxn );
+    }
+
+
+    /**
+     * Tests that a backup of a partition can be opened as a partition
+     */
+    @Test
+    public void testBackup() throws Exception
+    {
+        Path wkdir2 = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_db2" );
+        Path backupDir = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_backup" );
+
+        try
+        {
+            JdbmPartition store2 = new JdbmPartition( schemaManager, dnFactory );
+            store2.setId( "example2" );
+            store2.setPartitionPath( wkdir2.toFile().toURI() );
+            store2.setSyncOnWrite( false );
+            store2.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            store2.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            store2.initialize();
+
+            StoreUtils.loadExampleData( store2, schemaManager );
+
+            long copied = store2.backup( null, backupDir.toFile() );
+            assertTrue( copied > 0 );
+
+            // The target directory is not empty anymore
+            try
+            {
+                store2.backup( null, backupDir.toFile() );
+                fail();
+            }
+            catch ( LdapUnwillingToPerformException lutpe )
+            {
+                // Expected
+            }
+
+            store2.destroy( partitionTxn );
+
+            // Open the copy
+            JdbmPartition backup = new JdbmPartition( schemaManager, dnFactory );
+            backup.setId( "example2" );
+            backup.setPartitionPath( backupDir.toFile().toURI() );
+            backup.setSyncOnWrite( false );
+            backup.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            backup.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            backup.initialize();
+
+            PartitionTxn backupTxn = backup.beginReadTransaction();
+            assertEquals( 11, backup.count( backupTxn ) );
+            assertEquals( 11, backup.getRdnIndex().count( backupTxn ) );
+
+            // The three entries under ou=Sales have ou: Sales
+            @SuppressWarnings("unchecked")
+            Index<String, String> ouIndex = ( Index<String, String> ) backup.getUserIndex( OU_AT );
+            assertEquals( 3, ouIndex.count( backupTxn, OU_AT.getEquality().getNormalizer().normalize( "Sales" ) ) );
+
+            backup.destroy( backupTxn );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( wkdir2.toFile() );
+            FileUtils.deleteDirectory( backupDir.toFile() );
+        }
+    }
+
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        Path wkdir2 = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_db2" );
+
+        try
+        {
+            JdbmPartition store2 = new JdbmPartition( schemaManager, dnFactory );
+            store2.setId( "example2" );
+            store2.setPartitionPath( wkdir2.toFile().toURI() );
+            store2.setSyncOnWrite( false );
+            store2.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            store2.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            store2.initialize();
+
+            StoreUtils.loadExampleData( store2, schemaManager );
+            assertEquals( -1L, store2.getReclaimedBytes() );
+
+            // Grow the file, updating the same entry with bigger and bigger values
+            Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+
+            for ( int i = 1; i <= 200; i++ )
+            {
+                Modification replace = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, SN_AT,
+                    Strings.getUUID( i ).toString() + new String( new char[i * 16] ).replace( '\0', 'x' ) );
+                store2.modify( partitionTxn, dn, replace );
+            }
+
+            long reclaimed = store2.compact( null );
+            assertTrue( reclaimed > 0 );
+            assertEquals( reclaimed, store2.getReclaimedBytes() );
+            assertFalse( store2.isCompacting() );
+            assertEquals( 0, store2.getCompactionProgress() );
+
+            assertEquals( 11, store2.count( partitionTxn ) );
+            assertEquals( 11, store2.getRdnIndex().count( partitionTxn ) );
+
+            // The three entries under ou=Sales have ou: Sales
+            @SuppressWarnings("unchecked")
+            Index<String, String> ouIndex = ( Index<String, String> ) store2.getUserIndex( OU_AT );
+            String sales = OU_AT.getEquality().getNormalizer().normalize( "Sales" );
+            assertEquals( 3, ouIndex.count( partitionTxn, sales ) );
+
+            // The partition can still be read and updated
+            Entry entry = store2.fetch( partitionTxn, store2.getEntryId( partitionTxn, dn ), dn );
+            assertTrue( entry.get( "sn" ).getString().endsWith( "xxx" ) );
+
+            Modification replace = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, SN_AT, "Walker" );
+            store2.modify( partitionTxn, dn, replace );
+
+            store2.destroy( partitionTxn );
+
+            // And the compacted file is the partition file
+            JdbmPartition reopened = new JdbmPartition( schemaManager, dnFactory );
+            reopened.setId( "example2" );
+            reopened.setPartitionPath( wkdir2.toFile().toURI() );
+            reopened.setSyncOnWrite( false );
+            reopened.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            reopened.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            reopened.initialize();
+
+            assertEquals( 11, reopened.count( partitionTxn ) );
+            assertEquals( 11, reopened.getRdnIndex().count( partitionTxn ) );
+            assertFalse( new File( wkdir2.toFile(), "example2.compact.db" ).exists() );
+
+            reopened.destroy( partitionTxn );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( wkdir2.toFile() );
+        }
+    }
+
+
+    @Test
+    public void testRepair() throws Exception
+    {
+        Path wkdir2 = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_db2" );
+
+        try
+        {
+            JdbmPartition store2 = new JdbmPartition( schemaManager, dnFactory );
+            store2.setId( "example2" );
+            store2.setPartitionPath( wkdir2.toFile().toURI() );
+            store2.setSyncOnWrite( false );
+            store2.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            store2.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            store2.initialize();
+
+            StoreUtils.loadExampleData( store2, schemaManager );
+
+            @SuppressWarnings("unchecked")
+            Index<String, String> ouIndex = ( Index<String, String> ) store2.getUserIndex( OU_AT );
+            String sales = OU_AT.getEquality().getNormalizer().normalize( "Sales" );
+            String suffixId = store2.getSuffixId( partitionTxn );
+            ParentIdAndRdn suffix = store2.getRdnIndex().reverseLookup( partitionTxn, suffixId );
+            long aliases = store2.getAliasIndex().count( partitionTxn );
+            long subAliases = store2.getSubAliasIndex().count( partitionTxn );
+            long persons = store2.getObjectClassIndex().count( partitionTxn, "person" );
+
+            store2.repair();
+
+            assertEquals( 11, store2.count( partitionTxn ) );
+            assertEquals( 11, store2.getRdnIndex().count( partitionTxn ) );
+            assertEquals( 3, ouIndex.count( partitionTxn, sales ) );
+            assertEquals( aliases, store2.getAliasIndex().count( partitionTxn ) );
+            assertEquals( subAliases, store2.getSubAliasIndex().count( partitionTxn ) );
+            assertEquals( persons, store2.getObjectClassIndex().count( partitionTxn, "person" ) );
+
+            // The children and descendants counters have been computed again
+            ParentIdAndRdn repaired = store2.getRdnIndex().reverseLookup( partitionTxn, suffixId );
+            assertEquals( suffix.getNbChildren(), repaired.getNbChildren() );
+            assertEquals( suffix.getNbDescendants(), repaired.getNbDescendants() );
+            assertEquals( 10, repaired.getNbDescendants() );
+
+            Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+            Entry entry = store2.fetch( partitionTxn, store2.getEntryId( partitionTxn, dn ), dn );
+            assertEquals( "WAlkeR", entry.get( "sn" ).getString() );
+
+            store2.destroy( partitionTxn );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( wkdir2.toFile() );
+        }
+    }
+
+
+    @Test
+    public void testBulkLoad() throws Exception
+    {
+        Path wkdir2 = Files.createTempDirectory( JdbmIndexTest.class.getSimpleName() + "_db2" );
+
+        try
+        {
+            // Export the example data, the parents before their children
+            List<Entry> entries = new ArrayList<Entry>();
+            Cursor<Tuple<String, Entry>> cursor = partition.getMasterTable().cursor();
+
+            while ( cursor.next() )
+            {
+                String id = cursor.get().getKey();
+                Dn dn = partition.getEntryDn( partitionTxn, id );
+                entries.add( partition.fetch( partitionTxn, id, dn ).clone() );
+            }
+
+            cursor.close();
+
+            Collections.sort( entries, new Comparator<Entry>()
+            {
+                @Override
+                public int compare( Entry entry1, Entry entry2 )
+                {
+                    return entry1.getDn().size() - entry2.getDn().size();
+                }
+            } );
+
+            JdbmPartition store2 = new JdbmPartition( schemaManager, dnFactory );
+            store2.setId( "example2" );
+            store2.setPartitionPath( wkdir2.toFile().toURI() );
+            store2.setSyncOnWrite( false );
+            store2.addIndex( new JdbmIndex( SchemaConstants.OU_AT_OID, false ) );
+            store2.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+            store2.initialize();
+
+            // Keep only 2 tuples in memory, so that the indexes are sorted on disk
+            assertEquals( 11, store2.bulkLoad( entries.iterator(), wkdir2.toFile(), 2 ) );
+
+            // The partition is not empty anymore
+            try
+            {
+                store2.bulkLoad( entries.iterator(), wkdir2.toFile(), 2 );
+                fail();
+            }
+            catch ( LdapUnwillingToPerformException lutpe )
+            {
+                // Expected
+            }
+
+            PartitionTxn txn2 = store2.beginReadTransaction();
+            Index<String, String> ouIndex = ( Index<String, String> ) store2.getUserIndex( OU_AT );
+            String sales = OU_AT.getEquality().getNormalizer().normalize( "Sales" );
+
+            assertEquals( 11, store2.count( txn2 ) );
+            assertEquals( 11, store2.getRdnIndex().count( txn2 ) );
+            assertEquals( 3, ouIndex.count( txn2, sales ) );
+            assertEquals( partition.getAliasIndex().count( partitionTxn ), store2.getAliasIndex().count( txn2 ) );
+            assertEquals( partition.getSubAliasIndex().count( partitionTxn ),
+                store2.getSubAliasIndex().count( txn2 ) );
+            assertEquals( partition.getObjectClassIndex().count( partitionTxn, "person" ),
+                store2.getObjectClassIndex().count( txn2, "person" ) );
+
+            String suffixId = store2.getSuffixId( txn2 );
+            ParentIdAndRdn suffix = store2.getRdnIndex().reverseLookup( txn2, suffixId );
+            assertEquals( 3, suffix.getNbChildren() );
+            assertEquals( 10, suffix.getNbDescendants() );
+
+            Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+            String id = store2.getEntryId( txn2, dn );
+            assertEquals( partition.getEntryId( partitionTxn, dn ), id );
+            assertEquals( "WAlkeR", store2.fetch( txn2, id, dn ).get( "sn" ).getString() );
+
+            // No sort file is left behind
+            assertEquals( 0, wkdir2.toFile().listFiles( new FilenameFilter()
+            {
+                @Override
+                public boolean accept( File dir, String name )
+                {
+                    return name.endsWith( ".run" );
+                }
+            } ).length );
+
+            txn2.close();
+            store2.destroy( txn2 );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( wkdir2.toFile() );
+        }
+    }
+
+
     @Test
     public void testSimplePropertiesUnlocked() throws Exception
     {
@@ -797,6 +1127,42 @@ public class JdbmStoreTest
     }
 
 
+    /**
+     * Tests that the cached DNs of the descendants of a renamed or moved entry are updated
+     */
+    @Test
+    public void testRenameAndMoveUpdateDescendantDns() throws Exception
+    {
+        String walkerId = partition.getEntryId( partitionTxn,
+            new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." ) );
+        String danielsId = partition.getEntryId( partitionTxn,
+            new Dn( schemaManager, "cn=Jack Daniels,ou=Engineering,o=Good Times Co." ) );
+
+        // Get the DNs cached
+        assertEquals( "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co.",
+            partition.fetch( partitionTxn, walkerId ).getDn().getName() );
+        assertEquals( "cn=Jack Daniels,ou=Engineering,o=Good Times Co.",
+            partition.fetch( partitionTxn, danielsId ).getDn().getName() );
+
+        Dn salesDn = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+        partition.rename( partitionTxn, salesDn, new Rdn( schemaManager, "ou=Marketing" ), false, null );
+
+        assertEquals( "cn=JOhnny WAlkeR,ou=Marketing,o=Good Times Co.",
+            partition.fetch( partitionTxn, walkerId ).getDn().getName() );
+        assertEquals( "cn=Jack Daniels,ou=Engineering,o=Good Times Co.",
+            partition.fetch( partitionTxn, danielsId ).getDn().getName() );
+
+        Dn marketingDn = new Dn( schemaManager, "ou=Marketing,o=Good Times Co." );
+        Dn engineeringDn = new Dn( schemaManager, "ou=Engineering,o=Good Times Co." );
+        partition.move( partitionTxn, marketingDn, engineeringDn, engineeringDn.add( marketingDn.getRdn() ), null );
+
+        assertEquals( "cn=JOhnny WAlkeR,ou=Marketing,ou=Engineering,o=Good Times Co.",
+            partition.fetch( partitionTxn, walkerId ).getDn().getName() );
+        assertEquals( "cn=Jack Daniels,ou=Engineering,o=Good Times Co.",
+            partition.fetch( partitionTxn, danielsId ).getDn().getName() );
+    }
+
+
     @Test
     public void testModifyAdd() throws Exception
     {
@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+
+
+/**
+ * Tests the UuidSerializer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class UuidSerializerTest
+{
+    @Test
+    public void testCanonicalUuids() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            String uuid = UUID.randomUUID().toString();
+            byte[] serialized = serializer.serialize( uuid );
+            assertEquals( 17, serialized.length );
+            assertEquals( uuid, serializer.deserialize( serialized ) );
+        }
+
+        String root = Strings.getUUID( 0L );
+        assertEquals( root, serializer.deserialize( serializer.serialize( root ) ) );
+    }
+
+
+    @Test
+    public void testOtherStrings() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        // Not canonical : upper case, no dashes, not an UUID
+        String[] values = new String[]
+            {
+                Strings.toUpperCaseAscii( UUID.randomUUID().toString() ),
+                UUID.randomUUID().toString().replace( "-", "" ),
+                "not an UUID",
+                "",
+                // Serialized on 16 bytes by the StringSerializer, like an UUID bytes
+                "8charsID"
+            };
+
+        for ( String value : values )
+        {
+            byte[] serialized = serializer.serialize( value );
+            assertEquals( value, serializer.deserialize( serialized ) );
+        }
+    }
+
+
+    @Test
+    public void testPreviousFormat() throws IOException
+    {
+        // UUIDs were stored as Strings by previous versions
+        String uuid = UUID.randomUUID().toString();
+        byte[] serialized = StringSerializer.INSTANCE.serialize( uuid );
+
+        assertEquals( uuid, UuidSerializer.INSTANCE.deserialize( serialized ) );
+    }
+}
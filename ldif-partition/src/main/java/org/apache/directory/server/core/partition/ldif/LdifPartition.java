@@ -20,15 +20,38 @@
 package org.apache.directory.server.core.partition.ldif;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
@@ -104,6 +127,30 @@ public class LdifPartition extends AbstractLdifPartition
     private static final boolean CREATE = Boolean.TRUE;
     private static final boolean DELETE = Boolean.FALSE;
 
+    /** The extension of the file containing the snapshot of the parsed entries */
+    private static final String SNAPSHOT_EXTN = ".snapshot";
+
+    /** The version of the snapshot format */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** Tells if the parsed entries are kept in a snapshot reused at startup when no LDIF file has changed */
+    private boolean snapshotCacheEnabled = false;
+
+    /** The delay between two flushes of the modified entries, in ms. 0 means each modification is written at once */
+    private long flushInterval = 0L;
+
+    /** The LDIF content of the modified entries waiting to be written, by file */
+    private Map<File, String> pendingWrites = new LinkedHashMap<>();
+
+    /** The lock protecting the pending writes */
+    private final Object pendingLock = new Object();
+
+    /** The lock serializing the flushes, so that an older content never overwrites a newer one */
+    private final Object flushLock = new Object();
+
+    /** The executor periodically flushing the pending writes */
+    private ScheduledExecutorService flusher;
+
     /** A filter used to pick all the directories */
     private FileFilter dirFilter = new FileFilter()
     {
@@ -171,6 +218,11 @@ public class LdifPartition extends AbstractLdifPartition
 
             super.doInit();
 
+            if ( flushInterval > 0L )
+            {
+                startFlusher();
+            }
+
             // Create the context entry now, if it does not exists, or load the
             // existing entries
             if ( suffixDirectory.exists() )
@@ -306,6 +358,97 @@ public class LdifPartition extends AbstractLdifPartition
     }
 
 
+    /**
+     * @return <tt>true</tt> if the parsed entries are kept in a snapshot reused at startup
+     */
+    public boolean isSnapshotCacheEnabled()
+    {
+        return snapshotCacheEnabled;
+    }
+
+
+    /**
+     * Enables or disables the snapshot cache. When enabled, the entries parsed at startup are
+     * saved in a binary snapshot stored next to the suffix directory, and the next startup reads
+     * them back from this snapshot instead of parsing the LDIF files, as long as no LDIF file has
+     * been added, removed or modified in the meantime.
+     *
+     * @param snapshotCacheEnabled <tt>true</tt> to enable the snapshot cache
+     */
+    public void setSnapshotCacheEnabled( boolean snapshotCacheEnabled )
+    {
+        checkInitialized( "snapshotCacheEnabled" );
+        this.snapshotCacheEnabled = snapshotCacheEnabled;
+    }
+
+
+    /**
+     * @return The delay between two flushes of the modified entries, in milliseconds
+     */
+    public long getFlushInterval()
+    {
+        return flushInterval;
+    }
+
+
+    /**
+     * Sets the delay between two flushes of the modified entries. When this delay is above 0,
+     * a modified entry is not written immediately : it is queued, a later modification of the
+     * same entry replaces the queued content, and the queue is written in batches. The queue is
+     * also flushed by {@link #sync()}, before any delete, move or rename, and on shutdown.
+     * The default value, 0, writes each modification synchronously.
+     *
+     * @param flushInterval The delay between two flushes, in milliseconds
+     */
+    public void setFlushInterval( long flushInterval )
+    {
+        checkInitialized( "flushInterval" );
+        this.flushInterval = flushInterval;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sync() throws LdapException
+    {
+        flushPendingWrites();
+
+        super.sync();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDestroy( PartitionTxn partitionTxn ) throws LdapException
+    {
+        try
+        {
+            if ( flusher != null )
+            {
+                // Let the running flush complete
+                flusher.shutdown();
+                flusher.awaitTermination( 1, TimeUnit.MINUTES );
+                flusher = null;
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        finally
+        {
+            flushPendingWrites();
+        }
+
+        super.doDestroy( partitionTxn );
+    }
+
+
     //-------------------------------------------------------------------------
     // Operations
     //-------------------------------------------------------------------------
@@ -327,6 +470,9 @@ public class LdifPartition extends AbstractLdifPartition
     @Override
     public Entry delete( PartitionTxn partitionTxn, String id ) throws LdapException
     {
+        // A pending write would recreate the deleted file
+        flushPendingWrites();
+
         Entry deletedEntry = super.delete( partitionTxn, id );
 
         if ( deletedEntry != null )
@@ -381,8 +527,19 @@ public class LdifPartition extends AbstractLdifPartition
         // just overwrite the existing file
         Dn dn = modifyContext.getDn();
 
-        // And write it back on disk
-        
+        // And write it back on disk, or queue it
+        if ( flushInterval > 0L )
+        {
+            String ldif = LdifUtils.convertToLdif( modifiedEntry, true );
+
+            synchronized ( pendingLock )
+            {
+                pendingWrites.put( getFile( dn, DELETE ), ldif );
+            }
+
+            return;
+        }
+
         try ( Writer fw = Files.newBufferedWriter( getFile( dn, DELETE ).toPath(), StandardCharsets.UTF_8 ) )
         {
             fw.write( LdifUtils.convertToLdif( modifiedEntry, true ) );
@@ -400,6 +557,9 @@ public class LdifPartition extends AbstractLdifPartition
     @Override
     public void move( MoveOperationContext moveContext ) throws LdapException
     {
+        // The files are moved : write the pending modifications first
+        flushPendingWrites();
+
         PartitionTxn partitionTxn = moveContext.getTransaction();
         Dn oldDn = moveContext.getDn();
         String id = getEntryId( partitionTxn, oldDn );
@@ -426,6 +586,9 @@ public class LdifPartition extends AbstractLdifPartition
     @Override
     public void moveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
+        // The files are moved : write the pending modifications first
+        flushPendingWrites();
+
         PartitionTxn partitionTxn = moveAndRenameContext.getTransaction(); 
         Dn oldDn = moveAndRenameContext.getDn();
         String id = getEntryId( partitionTxn, oldDn );
@@ -453,6 +616,9 @@ public class LdifPartition extends AbstractLdifPartition
     @Override
     public void rename( RenameOperationContext renameContext ) throws LdapException
     {
+        // The files are moved : write the pending modifications first
+        flushPendingWrites();
+
         PartitionTxn partitionTxn = renameContext.getTransaction(); 
         Dn oldDn = renameContext.getDn();
         String entryId = getEntryId( partitionTxn, oldDn );
@@ -553,111 +719,389 @@ public class LdifPartition extends AbstractLdifPartition
      * NOTE: this dir setup is just to ease the testing of this partition, this needs to be
      * replaced with some kind of bootstrapping the default config from a jar file and
      * write to the FS in LDIF format
+     * <br>
+     * The loading is done in three stages : the directory walk submits each LDIF file to a
+     * ForkJoin pool as soon as it is found, the pool parses the files and creates the schema
+     * aware entries in parallel, and the calling thread adds the parsed entries in the walk
+     * order, so that a parent is always added before its children.
+     * <br>
+     * If the snapshot cache is enabled, and if no LDIF file has been added, removed or modified
+     * since the snapshot was written, the entries are read back from the snapshot instead.
      *
      * @throws Exception
      */
-    private void loadEntries( File entryDir ) throws LdapException
+    private void loadEntries( File partitionDir ) throws LdapException
     {
-        LOG.debug( "Processing dir {}", entryDir.getName() );
+        List<File> files = new ArrayList<>();
 
-        // First, load the entries
-        File[] entries = entryDir.listFiles( entryFilter );
+        if ( snapshotCacheEnabled )
+        {
+            listEntryFiles( partitionDir, files, null, null );
 
-        if ( ( entries != null ) && ( entries.length != 0 ) )
+            if ( loadSnapshot( partitionDir, files ) )
+            {
+                return;
+            }
+        }
+
+        List<Entry> loadedEntries = snapshotCacheEnabled ? new ArrayList<Entry>() : null;
+        List<Future<Entry>> parsedEntries = new ArrayList<>();
+        ForkJoinPool parser = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+
+        try
         {
-            LdifReader ldifReader = new LdifReader( schemaManager );
+            if ( snapshotCacheEnabled )
+            {
+                for ( File file : files )
+                {
+                    parsedEntries.add( parser.submit( new LdifFileParser( file ) ) );
+                }
+            }
+            else
+            {
+                listEntryFiles( partitionDir, files, parsedEntries, parser );
+            }
 
-            for ( File entry : entries )
+            // The single insert stage : the entries are added in the walk order
+            for ( Future<Entry> parsedEntry : parsedEntries )
             {
-                LOG.debug( "parsing ldif file {}", entry.getName() );
-                List<LdifEntry> ldifEntries = ldifReader.parseLdifFile( entry.getAbsolutePath() );
-                
+                Entry serverEntry;
+
                 try
                 {
-                    ldifReader.close();
+                    serverEntry = parsedEntry.get();
                 }
-                catch ( IOException ioe )
+                catch ( InterruptedException ie )
                 {
-                    throw new LdapOtherException( ioe.getMessage(), ioe );
+                    Thread.currentThread().interrupt();
+                    throw new LdapOtherException( ie.getMessage(), ie );
                 }
-
-                if ( ( ldifEntries != null ) && !ldifEntries.isEmpty() )
+                catch ( ExecutionException ee )
                 {
-                    // this ldif will have only one entry
-                    LdifEntry ldifEntry = ldifEntries.get( 0 );
-                    LOG.debug( "Adding entry {}", ldifEntry );
-
-                    Entry serverEntry = new DefaultEntry( schemaManager, ldifEntry.getEntry() );
-
-                    if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) )
+                    if ( ee.getCause() instanceof LdapException )
                     {
-                        serverEntry.put( SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString() );
+                        throw ( LdapException ) ee.getCause();
                     }
 
-                    if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
-                    {
-                        serverEntry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
-                    }
+                    throw new LdapOtherException( ee.getCause().getMessage(), ee.getCause() );
+                }
 
-                    // call add on the wrapped partition not on the self
-                    AddOperationContext addContext = new AddOperationContext( null, serverEntry );
-                    PartitionTxn partitionTxn = beginWriteTransaction();
-                    
-                    try
-                    {
-                        addContext.setTransaction( partitionTxn );
-                        addContext.setPartition( this );
-                    
-                        super.add( addContext );
-                        
-                        partitionTxn.commit();
-                    }
-                    catch ( LdapException le )
-                    {
-                        try
-                        {
-                            partitionTxn.abort();
-                        }
-                        catch ( IOException ioe )
-                        {
-                            throw new LdapOtherException( ioe.getMessage(), ioe );
-                        }
-                        
-                        throw le;
-                    }
-                    catch ( IOException ioe )
+                if ( serverEntry != null )
+                {
+                    addLoadedEntry( serverEntry );
+
+                    if ( loadedEntries != null )
                     {
-                        try
-                        {
-                            partitionTxn.abort();
-                        }
-                        catch ( IOException ioe2 )
-                        {
-                            throw new LdapOtherException( ioe2.getMessage(), ioe2 );
-                        }
-                        
-                        throw new LdapOtherException( ioe.getMessage(), ioe );
+                        loadedEntries.add( serverEntry );
                     }
                 }
             }
+        }
+        finally
+        {
+            parser.shutdownNow();
+        }
 
+        if ( snapshotCacheEnabled )
+        {
+            writeSnapshot( partitionDir, files, loadedEntries );
         }
-        else
+    }
+
+
+    /**
+     * Walks the directory tree, gathering the LDIF files in the order their entries have
+     * to be added : the entries of a directory come before the entries stored in its
+     * sub-directories. When a parser is provided, each file is submitted to it as soon as
+     * it has been found.
+     */
+    private void listEntryFiles( File entryDir, List<File> files, List<Future<Entry>> parsedEntries,
+        ForkJoinPool parser )
+    {
+        LOG.debug( "Processing dir {}", entryDir.getName() );
+
+        // First, the entries
+        File[] entries = entryDir.listFiles( entryFilter );
+
+        if ( ( entries == null ) || ( entries.length == 0 ) )
         {
             // If we don't have ldif files, we won't have sub-directories
             return;
         }
 
+        for ( File entry : entries )
+        {
+            files.add( entry );
+
+            if ( parser != null )
+            {
+                parsedEntries.add( parser.submit( new LdifFileParser( entry ) ) );
+            }
+        }
+
         // Second, recurse on the sub directories
         File[] dirs = entryDir.listFiles( dirFilter );
 
         if ( ( dirs != null ) && ( dirs.length != 0 ) )
         {
-            for ( File f : dirs )
+            for ( File dir : dirs )
+            {
+                listEntryFiles( dir, files, parsedEntries, parser );
+            }
+        }
+    }
+
+
+    /**
+     * The parse stage : reads the single entry stored in a LDIF file, and makes it schema aware.
+     * Each task uses its own LdifReader, as the reader is not thread safe.
+     */
+    private class LdifFileParser implements Callable<Entry>
+    {
+        /** The LDIF file to parse */
+        private final File file;
+
+
+        LdifFileParser( File file )
+        {
+            this.file = file;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry call() throws LdapException
+        {
+            LOG.debug( "parsing ldif file {}", file.getName() );
+            List<LdifEntry> ldifEntries;
+
+            try ( LdifReader ldifReader = new LdifReader( schemaManager ) )
+            {
+                ldifEntries = ldifReader.parseLdifFile( file.getAbsolutePath() );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            if ( ( ldifEntries == null ) || ldifEntries.isEmpty() )
+            {
+                return null;
+            }
+
+            // this ldif will have only one entry
+            LdifEntry ldifEntry = ldifEntries.get( 0 );
+
+            return new DefaultEntry( schemaManager, ldifEntry.getEntry() );
+        }
+    }
+
+
+    /**
+     * Adds a loaded entry into the underlying in-memory store.
+     */
+    private void addLoadedEntry( Entry serverEntry ) throws LdapException
+    {
+        LOG.debug( "Adding entry {}", serverEntry );
+
+        if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) )
+        {
+            serverEntry.put( SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString() );
+        }
+
+        if ( !serverEntry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
+        {
+            serverEntry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+        }
+
+        // call add on the wrapped partition not on the self
+        AddOperationContext addContext = new AddOperationContext( null, serverEntry );
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        try
+        {
+            addContext.setTransaction( partitionTxn );
+            addContext.setPartition( this );
+
+            super.add( addContext );
+
+            partitionTxn.commit();
+        }
+        catch ( LdapException le )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            throw le;
+        }
+        catch ( IOException ioe )
+        {
+            try
+            {
+                partitionTxn.abort();
+            }
+            catch ( IOException ioe2 )
+            {
+                throw new LdapOtherException( ioe2.getMessage(), ioe2 );
+            }
+
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * @return The file containing the snapshot of the parsed entries
+     */
+    private File getSnapshotFile( File partitionDir )
+    {
+        return new File( partitionDir, suffixDirectory.getName() + SNAPSHOT_EXTN );
+    }
+
+
+    /**
+     * Loads the entries from the snapshot, if it exists and if it has been built from the
+     * exact same set of LDIF files, with unchanged modification times and sizes.
+     *
+     * @return <tt>true</tt> if the entries have been loaded from the snapshot
+     */
+    private boolean loadSnapshot( File partitionDir, List<File> files ) throws LdapException
+    {
+        File snapshotFile = getSnapshotFile( partitionDir );
+
+        if ( !snapshotFile.exists() )
+        {
+            return false;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+
+        try ( ObjectInputStream in = new ObjectInputStream( new BufferedInputStream(
+            Files.newInputStream( snapshotFile.toPath() ) ) ) )
+        {
+            if ( in.readInt() != SNAPSHOT_VERSION )
+            {
+                LOG.info( "Ignoring the snapshot {}, its format is not supported", snapshotFile );
+
+                return false;
+            }
+
+            int nbFiles = in.readInt();
+
+            if ( nbFiles != files.size() )
+            {
+                LOG.debug( "The LDIF files have been added or removed since the snapshot {}", snapshotFile );
+
+                return false;
+            }
+
+            Map<String, File> currentFiles = new HashMap<>();
+
+            for ( File file : files )
+            {
+                currentFiles.put( getRelativePath( partitionDir, file ), file );
+            }
+
+            for ( int i = 0; i < nbFiles; i++ )
+            {
+                File file = currentFiles.get( in.readUTF() );
+                long lastModified = in.readLong();
+                long length = in.readLong();
+
+                if ( ( file == null ) || ( file.lastModified() != lastModified ) || ( file.length() != length ) )
+                {
+                    LOG.debug( "The LDIF files have been modified since the snapshot {}", snapshotFile );
+
+                    return false;
+                }
+            }
+
+            int nbEntries = in.readInt();
+
+            for ( int i = 0; i < nbEntries; i++ )
+            {
+                Entry entry = new DefaultEntry( schemaManager );
+                entry.readExternal( in );
+                entries.add( entry );
+            }
+        }
+        catch ( IOException | ClassNotFoundException e )
+        {
+            LOG.warn( "Cannot read the snapshot {}, the LDIF files will be parsed : {}", snapshotFile,
+                e.getMessage() );
+
+            return false;
+        }
+
+        LOG.debug( "Loading {} entries from the snapshot {}", entries.size(), snapshotFile );
+
+        for ( Entry entry : entries )
+        {
+            addLoadedEntry( entry );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes a snapshot of the loaded entries, along with the modification times and sizes
+     * of the LDIF files they have been read from. The snapshot is written in a temporary file
+     * which then replaces the previous snapshot, so that a crash never leaves a partial snapshot.
+     */
+    private void writeSnapshot( File partitionDir, List<File> files, List<Entry> entries )
+    {
+        File snapshotFile = getSnapshotFile( partitionDir );
+        File tmpFile = new File( partitionDir, snapshotFile.getName() + ".tmp" );
+
+        try
+        {
+            try ( ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream(
+                Files.newOutputStream( tmpFile.toPath() ) ) ) )
             {
-                loadEntries( f );
+                out.writeInt( SNAPSHOT_VERSION );
+                out.writeInt( files.size() );
+
+                for ( File file : files )
+                {
+                    out.writeUTF( getRelativePath( partitionDir, file ) );
+                    out.writeLong( file.lastModified() );
+                    out.writeLong( file.length() );
+                }
+
+                out.writeInt( entries.size() );
+
+                for ( Entry entry : entries )
+                {
+                    entry.writeExternal( out );
+                }
             }
+
+            Files.move( tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
         }
+        catch ( IOException ioe )
+        {
+            // The snapshot is only a cache : the next startup will simply parse the LDIF files
+            LOG.warn( "Cannot write the snapshot {} : {}", snapshotFile, ioe.getMessage() );
+            deleteFile( tmpFile );
+        }
+    }
+
+
+    /**
+     * @return The path of a LDIF file, relative to the partition directory
+     */
+    private String getRelativePath( File partitionDir, File file )
+    {
+        return partitionDir.toPath().relativize( file.toPath() ).toString();
     }
 
 
@@ -878,6 +1322,162 @@ public class LdifPartition extends AbstractLdifPartition
     }
 
 
+    /**
+     * Starts the thread periodically flushing the pending writes.
+     */
+    private void startFlusher()
+    {
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread newThread = Executors.defaultThreadFactory().newThread( runnable );
+                newThread.setName( "LdifPartition-flusher-" + getId() );
+                newThread.setDaemon( true );
+
+                return newThread;
+            }
+        };
+
+        flusher = Executors.newSingleThreadScheduledExecutor( threadFactory );
+
+        flusher.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    flushPendingWrites();
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Cannot flush the modified entries of the partition {} : {}", getId(),
+                        le.getMessage() );
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Writes all the pending modified entries. Each file is written in a temporary file which
+     * is flushed to disk and then replaces it, so that a crash never leaves a truncated entry.
+     * The directories containing the renamed files are flushed last. A write which fails is
+     * kept in the queue, unless a newer content has been queued for the same file meanwhile.
+     */
+    private void flushPendingWrites() throws LdapException
+    {
+        synchronized ( flushLock )
+        {
+            Map<File, String> writes;
+
+            synchronized ( pendingLock )
+            {
+                if ( pendingWrites.isEmpty() )
+                {
+                    return;
+                }
+
+                writes = pendingWrites;
+                pendingWrites = new LinkedHashMap<>();
+            }
+
+            LOG.debug( "Flushing {} modified entries", writes.size() );
+            IOException error = null;
+            Set<File> directories = new HashSet<>();
+
+            for ( Map.Entry<File, String> write : writes.entrySet() )
+            {
+                File file = write.getKey();
+
+                try
+                {
+                    writeFile( file, write.getValue() );
+                    directories.add( file.getParentFile() );
+                }
+                catch ( IOException ioe )
+                {
+                    synchronized ( pendingLock )
+                    {
+                        if ( !pendingWrites.containsKey( file ) )
+                        {
+                            pendingWrites.put( file, write.getValue() );
+                        }
+                    }
+
+                    if ( error == null )
+                    {
+                        error = ioe;
+                    }
+                }
+            }
+
+            // The renames are only durable once the directories are flushed
+            for ( File directory : directories )
+            {
+                syncDirectory( directory );
+            }
+
+            if ( error != null )
+            {
+                throw new LdapOtherException( error.getMessage(), error );
+            }
+        }
+    }
+
+
+    /**
+     * Writes a LDIF content in a temporary file, forces it to disk, and renames it to the given file.
+     */
+    private void writeFile( File file, String ldif ) throws IOException
+    {
+        File tmpFile = new File( file.getPath() + ".tmp" );
+
+        try ( FileChannel channel = FileChannel.open( tmpFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( Strings.getBytesUtf8( ldif ) );
+
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+
+            channel.force( true );
+        }
+
+        try
+        {
+            Files.move( tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException amnse )
+        {
+            Files.move( tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+
+    /**
+     * Flushes a directory to disk, so that the files renamed in it survive a crash. Some
+     * platforms (Windows) can't open a directory, the rename is then only as durable as
+     * the file system makes it.
+     */
+    private void syncDirectory( File directory )
+    {
+        try ( FileChannel channel = FileChannel.open( directory.toPath(), StandardOpenOption.READ ) )
+        {
+            channel.force( true );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.debug( "Cannot flush the directory {} : {}", directory, ioe.getMessage() );
+        }
+    }
+
+
     /**
      * Write the new entry on disk. It does not exist, as this has been checked
      * by the ExceptionInterceptor.
@@ -23,20 +23,39 @@ package org.apache.directory.server.core.partition.ldif;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.ldif.LdifUtils;
@@ -60,6 +79,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A Partition implementation backed by a single LDIF file.
+ * <p>
+ * By default, the whole LDIF file is rewritten after each update. In append-only
+ * mode, the updates are instead appended as LDIF change records to a change log
+ * stored next to the LDIF file (&lt;file&gt;.&lt;generation&gt;.log). Once enough
+ * changes have been logged, a new LDIF file is written in the background, and the
+ * change logs it contains are deleted. The LDIF file starts with a
+ * <code># generation: n</code> comment, telling that it contains all the changes
+ * logged before generation n. On startup, the LDIF file is loaded, then the change
+ * logs are replayed.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -77,6 +105,36 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     /** lock for serializing the operations on the backing LDIF file */
     private Object lock = new Object();
 
+    /** The default number of logged changes triggering a compaction */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    /** The extension of the change log files */
+    private static final String LOG_EXTN = ".log";
+
+    /** The comment starting an LDIF file written in append-only mode */
+    private static final String GENERATION_HEADER = "# generation: ";
+
+    /** flag to log the changes instead of re-writing the whole LDIF file, default is set to false */
+    private boolean appendOnly = false;
+
+    /** the number of logged changes after which the LDIF file is compacted */
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** the current change log, in append-only mode */
+    private RandomAccessFile changeLog;
+
+    /** the generation of the current change log */
+    private long generation;
+
+    /** the number of changes logged since the last compaction */
+    private int nbLoggedChanges;
+
+    /** the executor compacting the LDIF file in the background */
+    private ExecutorService compactor;
+
+    /** tells if a compaction is running */
+    private boolean compacting = false;
+
     private static final Logger LOG = LoggerFactory.getLogger( SingleFileLdifPartition.class );
 
 
@@ -136,7 +194,264 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
 
             super.doInit();
 
+            long snapshotGeneration = readGeneration();
+
             loadEntries();
+
+            if ( appendOnly )
+            {
+                initChangeLog( snapshotGeneration );
+            }
+        }
+    }
+
+
+    /**
+     * Reads the generation of the LDIF file, from its first line
+     *
+     * @return The generation, or 0 if the LDIF file has not been written in append-only mode
+     */
+    private long readGeneration() throws LdapException
+    {
+        try
+        {
+            String firstLine = ldifFile.readLine();
+            ldifFile.seek( 0 );
+
+            if ( ( firstLine != null ) && firstLine.startsWith( GENERATION_HEADER ) )
+            {
+                return Long.parseLong( firstLine.substring( GENERATION_HEADER.length() ).trim() );
+            }
+
+            return 0L;
+        }
+        catch ( IOException | NumberFormatException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Replays the change logs which are not contained in the LDIF file, and deletes the others.
+     * The changes will then be logged in a new change log.
+     *
+     * @param snapshotGeneration The generation of the LDIF file
+     */
+    private void initChangeLog( long snapshotGeneration ) throws LdapException
+    {
+        TreeMap<Long, File> changeLogs = getChangeLogs();
+        generation = snapshotGeneration;
+        nbLoggedChanges = 0;
+
+        for ( Map.Entry<Long, File> changeLogFile : changeLogs.entrySet() )
+        {
+            if ( changeLogFile.getKey() < snapshotGeneration )
+            {
+                // Those changes are already in the LDIF file
+                deleteChangeLog( changeLogFile.getValue() );
+            }
+            else
+            {
+                nbLoggedChanges += replay( changeLogFile.getValue() );
+
+                // Don't append to a log which may end with a partially written change
+                generation = changeLogFile.getKey() + 1;
+            }
+        }
+
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread newThread = Executors.defaultThreadFactory().newThread( runnable );
+                newThread.setName( "SingleFileLdifPartition-compactor-" + getId() );
+                newThread.setDaemon( true );
+
+                return newThread;
+            }
+        };
+
+        compactor = Executors.newSingleThreadExecutor( threadFactory );
+
+        if ( nbLoggedChanges >= compactionThreshold )
+        {
+            synchronized ( lock )
+            {
+                compact( beginReadTransaction(), false );
+            }
+        }
+    }
+
+
+    /**
+     * @return The change log files, sorted by generation
+     */
+    private TreeMap<Long, File> getChangeLogs()
+    {
+        File partitionFile = new File( getPartitionPath() );
+        String prefix = partitionFile.getName() + ".";
+        TreeMap<Long, File> changeLogs = new TreeMap<>();
+        File[] files = partitionFile.getAbsoluteFile().getParentFile().listFiles();
+
+        if ( files == null )
+        {
+            return changeLogs;
+        }
+
+        for ( File file : files )
+        {
+            String name = file.getName();
+
+            if ( name.startsWith( prefix ) && name.endsWith( LOG_EXTN ) )
+            {
+                try
+                {
+                    changeLogs.put( Long.parseLong( name.substring( prefix.length(),
+                        name.length() - LOG_EXTN.length() ) ), file );
+                }
+                catch ( NumberFormatException nfe )
+                {
+                    // Not a change log
+                }
+            }
+        }
+
+        return changeLogs;
+    }
+
+
+    /**
+     * @return The change log file of a given generation
+     */
+    private File getChangeLogFile( long changeLogGeneration )
+    {
+        return new File( new File( getPartitionPath() ).getPath() + "." + changeLogGeneration + LOG_EXTN );
+    }
+
+
+    private void deleteChangeLog( File changeLogFile )
+    {
+        if ( !changeLogFile.delete() )
+        {
+            LOG.warn( "Cannot delete the change log {}", changeLogFile );
+        }
+    }
+
+
+    /**
+     * Applies the changes of a change log to the partition
+     *
+     * @param changeLogFile The change log
+     * @return The number of applied changes
+     */
+    private int replay( File changeLogFile ) throws LdapException
+    {
+        int nbChanges = 0;
+        PartitionTxn partitionTxn = beginWriteTransaction();
+
+        try ( LdifReader reader = new LdifReader( changeLogFile, schemaManager ) )
+        {
+            for ( LdifEntry change : reader )
+            {
+                replay( partitionTxn, change );
+                nbChanges++;
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        catch ( RuntimeException re )
+        {
+            // The log may end with a change which has not been completely written
+            LOG.warn( "Cannot read the change log {} after {} changes : {}", changeLogFile, nbChanges,
+                re.getMessage() );
+        }
+
+        LOG.debug( "Replayed {} changes from {}", nbChanges, changeLogFile );
+
+        return nbChanges;
+    }
+
+
+    /**
+     * Applies a logged change to the partition, without logging it again
+     */
+    private void replay( PartitionTxn partitionTxn, LdifEntry change ) throws LdapException
+    {
+        Dn dn = change.getDn();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( schemaManager, dn );
+        }
+
+        switch ( change.getChangeType() )
+        {
+            case Add:
+                Entry entry = new DefaultEntry( schemaManager, change.getEntry() );
+                addMandatoryOpAt( entry );
+
+                AddOperationContext addContext = new AddOperationContext( null, entry );
+                addContext.setPartition( this );
+                addContext.setTransaction( partitionTxn );
+
+                super.add( addContext );
+
+                if ( dn.equals( suffixDn ) )
+                {
+                    contextEntry = entry;
+                }
+
+                break;
+
+            case Delete:
+                super.delete( partitionTxn, getEntryId( partitionTxn, dn ) );
+                break;
+
+            case Modify:
+                List<Modification> mods = new ArrayList<>();
+
+                for ( Modification mod : change.getModifications() )
+                {
+                    Attribute attribute = mod.getAttribute();
+
+                    if ( attribute.getAttributeType() == null )
+                    {
+                        attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry(
+                            attribute.getUpId() ), attribute );
+                    }
+
+                    mods.add( new DefaultModification( mod.getOperation(), attribute ) );
+                }
+
+                modify( partitionTxn, dn, mods.toArray( new Modification[]
+                    {} ) );
+                break;
+
+            case ModRdn:
+            case ModDn:
+                Rdn newRdn = new Rdn( schemaManager, change.getNewRdn() );
+
+                if ( !newRdn.equals( dn.getRdn() ) )
+                {
+                    Entry renamed = fetch( partitionTxn, getEntryId( partitionTxn, dn ) );
+                    rename( partitionTxn, dn, newRdn, change.isDeleteOldRdn(), renamed );
+                    dn = dn.getParent().add( newRdn );
+                }
+
+                if ( change.getNewSuperior() != null )
+                {
+                    Dn newSuperiorDn = new Dn( schemaManager, change.getNewSuperior() );
+                    move( partitionTxn, dn, newSuperiorDn, newSuperiorDn.add( dn.getRdn() ), null );
+                }
+
+                break;
+
+            default:
+                throw new LdapOtherException( "Unexpected change in the change log : " + change );
         }
     }
 
@@ -220,8 +535,22 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
                 }
             }
 
-            dirty = true;
-            rewritePartitionData( addContext.getTransaction() );
+            if ( appendOnly )
+            {
+                Entry added = addContext.getEntry().clone();
+
+                // Don't write the EntryDN attribute
+                added.removeAttributes( entryDnAT );
+
+                LdifEntry change = new LdifEntry( added );
+                change.setChangeType( ChangeType.Add );
+                logChange( addContext.getTransaction(), change );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( addContext.getTransaction() );
+            }
         }
     }
 
@@ -252,8 +581,24 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
                 throw new LdapOperationException( e.getMessage(), e );
             }
 
-            dirty = true;
-            rewritePartitionData( partitionTxn );
+            if ( appendOnly )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Modify );
+                change.setDn( modifyContext.getDn() );
+
+                for ( Modification modification : modifyContext.getModItems() )
+                {
+                    change.addModification( modification );
+                }
+
+                logChange( partitionTxn, change );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( partitionTxn );
+            }
         }
     }
 
@@ -267,8 +612,21 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         synchronized ( lock )
         {
             super.rename( renameContext );
-            dirty = true;
-            rewritePartitionData( renameContext.getTransaction() );
+
+            if ( appendOnly )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModRdn );
+                change.setDn( renameContext.getDn() );
+                change.setNewRdn( renameContext.getNewRdn().getName() );
+                change.setDeleteOldRdn( renameContext.getDeleteOldRdn() );
+                logChange( renameContext.getTransaction(), change, renameContext.getModifiedEntry() );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( renameContext.getTransaction() );
+            }
         }
     }
 
@@ -282,8 +640,22 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         synchronized ( lock )
         {
             super.move( moveContext );
-            dirty = true;
-            rewritePartitionData( moveContext.getTransaction() );
+
+            if ( appendOnly )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModDn );
+                change.setDn( moveContext.getDn() );
+                change.setNewRdn( moveContext.getDn().getRdn().getName() );
+                change.setDeleteOldRdn( false );
+                change.setNewSuperior( moveContext.getNewSuperior().getName() );
+                logChange( moveContext.getTransaction(), change, moveContext.getModifiedEntry() );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( moveContext.getTransaction() );
+            }
         }
     }
 
@@ -297,8 +669,22 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         synchronized ( lock )
         {
             super.moveAndRename( opContext );
-            dirty = true;
-            rewritePartitionData( opContext.getTransaction() );
+
+            if ( appendOnly )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.ModDn );
+                change.setDn( opContext.getDn() );
+                change.setNewRdn( opContext.getNewRdn().getName() );
+                change.setDeleteOldRdn( opContext.getDeleteOldRdn() );
+                change.setNewSuperior( opContext.getNewSuperiorDn().getName() );
+                logChange( opContext.getTransaction(), change, opContext.getModifiedEntry() );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( opContext.getTransaction() );
+            }
         }
     }
 
@@ -308,9 +694,21 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     {
         synchronized ( lock )
         {
+            Dn dn = appendOnly ? buildEntryDn( partitionTxn, id ) : null;
             Entry deletedEntry = super.delete( partitionTxn, id );
-            dirty = true;
-            rewritePartitionData( partitionTxn );
+
+            if ( appendOnly )
+            {
+                LdifEntry change = new LdifEntry();
+                change.setChangeType( ChangeType.Delete );
+                change.setDn( dn );
+                logChange( partitionTxn, change );
+            }
+            else
+            {
+                dirty = true;
+                rewritePartitionData( partitionTxn );
+            }
 
             return deletedEntry;
         }
@@ -336,29 +734,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             {
                 ldifFile.setLength( 0 ); // wipe the file clean
 
-                String suffixId = getEntryId( partitionTxn, suffixDn );
-
-                if ( suffixId == null )
-                {
-                    contextEntry = null;
-                    return;
-                }
-
-                ParentIdAndRdn suffixEntry = rdnIdx.reverseLookup( partitionTxn, suffixId );
-
-                if ( suffixEntry != null )
-                {
-                    Entry entry = master.get( partitionTxn, suffixId );
-
-                    // Don't write the EntryDN attribute
-                    entry.removeAttributes( entryDnAT );
-
-                    entry.setDn( suffixDn );
-
-                    appendLdif( entry );
-
-                    appendRecursive( partitionTxn, suffixId, suffixEntry.getNbChildren() );
-                }
+                appendEntries( partitionTxn, null );
 
                 dirty = false;
             }
@@ -374,7 +750,43 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
     }
 
 
-    private void appendRecursive( PartitionTxn partitionTxn, String id, int nbSibbling ) throws Exception
+    /**
+     * Writes all the entries of the partition, starting with the context entry, either to the
+     * LDIF file or to a list.
+     *
+     * @param partitionTxn The transaction to use
+     * @param snapshot The list the entries are added to, or null to write them to the LDIF file
+     */
+    private void appendEntries( PartitionTxn partitionTxn, List<String> snapshot ) throws Exception
+    {
+        String suffixId = getEntryId( partitionTxn, suffixDn );
+
+        if ( suffixId == null )
+        {
+            contextEntry = null;
+            return;
+        }
+
+        ParentIdAndRdn suffixEntry = rdnIdx.reverseLookup( partitionTxn, suffixId );
+
+        if ( suffixEntry != null )
+        {
+            Entry entry = master.get( partitionTxn, suffixId );
+
+            // Don't write the EntryDN attribute
+            entry.removeAttributes( entryDnAT );
+
+            entry.setDn( suffixDn );
+
+            appendLdif( entry, snapshot );
+
+            appendRecursive( partitionTxn, suffixId, suffixEntry.getNbChildren(), snapshot );
+        }
+    }
+
+
+    private void appendRecursive( PartitionTxn partitionTxn, String id, int nbSibbling, List<String> snapshot )
+        throws Exception
     {
         // Start with the root
         Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = rdnIdx.forwardCursor( partitionTxn );
@@ -393,7 +805,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
             // Remove the EntryDn
             entry.removeAttributes( SchemaConstants.ENTRY_DN_AT );
 
-            appendLdif( entry );
+            appendLdif( entry, snapshot );
 
             countChildren++;
 
@@ -402,7 +814,7 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
 
             if ( nbChildren > 0 )
             {
-                appendRecursive( partitionTxn, childId, nbChildren );
+                appendRecursive( partitionTxn, childId, nbChildren, snapshot );
             }
         }
 
@@ -414,14 +826,263 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
      * append data to the LDIF file
      *
      * @param entry the entry to be written
+     * @param snapshot the list the entry is added to, or null to write it to the LDIF file
      * @throws LdapException
      */
-    private void appendLdif( Entry entry ) throws IOException
+    private void appendLdif( Entry entry, List<String> snapshot ) throws IOException
     {
         synchronized ( lock )
         {
             String ldif = LdifUtils.convertToLdif( entry );
-            ldifFile.write( Strings.getBytesUtf8( ldif + "\n" ) );
+
+            if ( snapshot != null )
+            {
+                snapshot.add( ldif );
+            }
+            else
+            {
+                ldifFile.write( Strings.getBytesUtf8( ldif + "\n" ) );
+            }
+        }
+    }
+
+
+    /**
+     * Appends a change to the change log, and starts a compaction if enough changes have been logged.
+     *
+     * @param partitionTxn The transaction to use
+     * @param change The change to log
+     */
+    private void logChange( PartitionTxn partitionTxn, LdifEntry change ) throws LdapException
+    {
+        logChange( partitionTxn, change, null );
+    }
+
+
+    /**
+     * Appends a rename or move to the change log. The operational attributes updated by the
+     * operation are logged too, as replaying the operation won't update them.
+     *
+     * @param partitionTxn The transaction to use
+     * @param change The change to log
+     * @param modifiedEntry The modified entry, if any
+     */
+    private void logChange( PartitionTxn partitionTxn, LdifEntry change, Entry modifiedEntry ) throws LdapException
+    {
+        synchronized ( lock )
+        {
+            try
+            {
+                if ( changeLog == null )
+                {
+                    changeLog = new RandomAccessFile( getChangeLogFile( generation ), "rws" );
+                    changeLog.seek( changeLog.length() );
+                }
+
+                StringBuilder sb = new StringBuilder();
+                sb.append( LdifUtils.convertToLdif( change ) ).append( '\n' );
+                nbLoggedChanges++;
+
+                if ( modifiedEntry != null )
+                {
+                    LdifEntry opAttrsChange = new LdifEntry();
+                    opAttrsChange.setChangeType( ChangeType.Modify );
+                    opAttrsChange.setDn( getEntryDn( partitionTxn, modifiedEntry ) );
+
+                    for ( String opAttr : new String[]
+                        { SchemaConstants.ENTRY_CSN_AT, SchemaConstants.MODIFIERS_NAME_AT,
+                            SchemaConstants.MODIFY_TIMESTAMP_AT } )
+                    {
+                        Attribute attribute = modifiedEntry.get( opAttr );
+
+                        if ( attribute != null )
+                        {
+                            opAttrsChange.addModification( ModificationOperation.REPLACE_ATTRIBUTE, attribute );
+                        }
+                    }
+
+                    if ( !opAttrsChange.getModifications().isEmpty() )
+                    {
+                        sb.append( LdifUtils.convertToLdif( opAttrsChange ) ).append( '\n' );
+                        nbLoggedChanges++;
+                    }
+                }
+
+                changeLog.write( Strings.getBytesUtf8( sb.toString() ) );
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapOtherException( ioe.getMessage(), ioe );
+            }
+
+            if ( nbLoggedChanges >= compactionThreshold )
+            {
+                compact( partitionTxn, false );
+            }
+        }
+    }
+
+
+    /**
+     * @return The current DN of a renamed or moved entry
+     */
+    private Dn getEntryDn( PartitionTxn partitionTxn, Entry entry ) throws LdapException
+    {
+        Attribute entryUuid = entry.get( SchemaConstants.ENTRY_UUID_AT );
+
+        if ( entryUuid == null )
+        {
+            return entry.getDn();
+        }
+
+        return buildEntryDn( partitionTxn, entryUuid.getString() );
+    }
+
+
+    /**
+     * Starts writing a new LDIF file in the background, containing the current entries. The
+     * following changes are logged in a new change log. This method must be called while
+     * holding the lock.
+     *
+     * @param partitionTxn The transaction to use
+     * @param force If false, nothing is done when a compaction is already running
+     * @return The compaction result, or null if a compaction is already running
+     */
+    private Future<Void> compact( PartitionTxn partitionTxn, boolean force ) throws LdapException
+    {
+        if ( compacting && !force )
+        {
+            return null;
+        }
+
+        final long snapshotGeneration = generation + 1;
+        final List<String> snapshot = new ArrayList<>();
+
+        try
+        {
+            // Get the entries in memory : the LDIF file will be written without holding the lock
+            appendEntries( partitionTxn, snapshot );
+
+            if ( changeLog != null )
+            {
+                changeLog.close();
+                changeLog = null;
+            }
+        }
+        catch ( LdapException le )
+        {
+            throw le;
+        }
+        catch ( Exception e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+
+        generation = snapshotGeneration;
+        nbLoggedChanges = 0;
+        compacting = true;
+
+        return compactor.submit( new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                try
+                {
+                    writeSnapshot( snapshotGeneration, snapshot );
+
+                    return null;
+                }
+                catch ( Exception e )
+                {
+                    LOG.error( "Cannot compact the LDIF file {}", getPartitionPath(), e );
+
+                    throw e;
+                }
+                finally
+                {
+                    synchronized ( lock )
+                    {
+                        compacting = false;
+                    }
+                }
+            }
+        } );
+    }
+
+
+    /**
+     * Writes a new LDIF file, then deletes the change logs it contains.
+     *
+     * @param snapshotGeneration The generation of the first change log which is not in the LDIF file
+     * @param snapshot The entries
+     */
+    private void writeSnapshot( long snapshotGeneration, List<String> snapshot ) throws IOException
+    {
+        File partitionFile = new File( getPartitionPath() );
+        File tmpFile = new File( partitionFile.getPath() + ".tmp" );
+
+        try ( FileOutputStream out = new FileOutputStream( tmpFile ) )
+        {
+            out.write( Strings.getBytesUtf8( GENERATION_HEADER + snapshotGeneration + "\n" ) );
+
+            for ( String ldif : snapshot )
+            {
+                out.write( Strings.getBytesUtf8( ldif + "\n" ) );
+            }
+
+            out.getFD().sync();
+        }
+
+        // The LDIF file is replaced at once : if we crash before, the previous
+        // LDIF file and the change logs will be used
+        Files.move( tmpFile.toPath(), partitionFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE );
+
+        for ( Map.Entry<Long, File> changeLogFile : getChangeLogs().headMap( snapshotGeneration ).entrySet() )
+        {
+            deleteChangeLog( changeLogFile.getValue() );
+        }
+
+        LOG.debug( "Compacted the LDIF file {} up to generation {}", partitionFile, snapshotGeneration );
+    }
+
+
+    /**
+     * Writes the current entries to the LDIF file, and deletes the change logs. This is
+     * done in the background after each {@link #getCompactionThreshold()} changes, but
+     * can be forced using this method. It does nothing if the partition is not in
+     * append-only mode.
+     *
+     * @throws LdapException If the LDIF file can't be written
+     */
+    public void compact() throws LdapException
+    {
+        if ( !appendOnly || ( compactor == null ) )
+        {
+            return;
+        }
+
+        Future<Void> compaction;
+
+        synchronized ( lock )
+        {
+            // The compactions are executed one after the other, this one will wait for the running one
+            compaction = compact( beginReadTransaction(), true );
+        }
+
+        try
+        {
+            compaction.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new LdapOtherException( ee.getCause().getMessage(), ee.getCause() );
         }
     }
 
@@ -509,8 +1170,29 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         
         try
         {
+            if ( compactor != null )
+            {
+                // Let the running compaction complete
+                compactor.shutdown();
+                compactor.awaitTermination( 1, TimeUnit.MINUTES );
+            }
+
+            synchronized ( lock )
+            {
+                if ( changeLog != null )
+                {
+                    changeLog.close();
+                    changeLog = null;
+                }
+            }
+
             ldifFile.close();
         }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
         catch ( IOException ioe )
         {
             throw new LdapOtherException( ioe.getMessage(), ioe );
@@ -533,4 +1215,52 @@ public class SingleFileLdifPartition extends AbstractLdifPartition
         // save data if found dirty 
         rewritePartitionData( partitionTxn );
     }
+
+
+    /**
+     * @return true if the changes are logged instead of re-writing the whole LDIF file
+     */
+    public boolean isAppendOnly()
+    {
+        return appendOnly;
+    }
+
+
+    /**
+     * Enables or disables the append-only mode, where the changes are appended to a change log,
+     * the LDIF file being rewritten in the background after {@link #getCompactionThreshold()} changes.
+     * This must be set before the partition is initialized.
+     *
+     * @param appendOnly flag to enable/disable the append-only mode
+     */
+    public void setAppendOnly( boolean appendOnly )
+    {
+        checkInitialized( "appendOnly" );
+        this.appendOnly = appendOnly;
+    }
+
+
+    /**
+     * @return the number of logged changes after which the LDIF file is rewritten, in append-only mode
+     */
+    public int getCompactionThreshold()
+    {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Sets the number of logged changes after which the LDIF file is rewritten, in append-only mode.
+     *
+     * @param compactionThreshold the number of logged changes
+     */
+    public void setCompactionThreshold( int compactionThreshold )
+    {
+        if ( compactionThreshold < 1 )
+        {
+            throw new IllegalArgumentException( "The compaction threshold must be positive" );
+        }
+
+        this.compactionThreshold = compactionThreshold;
+    }
 }
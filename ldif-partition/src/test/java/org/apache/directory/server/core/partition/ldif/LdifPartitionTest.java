@@ -28,6 +28,8 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,7 +43,10 @@ import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.FilterParser;
@@ -68,6 +73,7 @@ import org.apache.directory.server.core.api.interceptor.context.AddOperationCont
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.ModDnAva;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
@@ -772,6 +778,180 @@ public class LdifPartitionTest
     }
 
 
+    /**
+     * Test that the entries are reloaded from the LDIF files, parents before children
+     */
+    @Test
+    public void testLdifReloadEntries() throws Exception
+    {
+        injectEntries();
+
+        LdifPartition reloaded = reloadPartition( false );
+
+        try ( PartitionTxn partitionTxn = reloaded.beginReadTransaction() )
+        {
+            for ( String dn : new String[]
+                { "ou=test,ou=system", "dc=child1,ou=test,ou=system", "dc=child2,ou=test,ou=system",
+                    "dc=grandChild11,dc=child1,ou=test,ou=system", "dc=grandChild12,dc=child1,ou=test,ou=system",
+                    "dc=greatGrandChild111,dc=grandChild11,dc=child1,ou=test,ou=system" } )
+            {
+                assertNotNull( reloaded.getEntryId( partitionTxn, new Dn( schemaManager, dn ) ) );
+            }
+
+            String childId = reloaded.getEntryId( partitionTxn, new Dn( schemaManager,
+                "dc=grandChild11,dc=child1,ou=test,ou=system" ) );
+            assertEquals( 1L, reloaded.getChildCount( partitionTxn, childId ) );
+        }
+
+        assertFalse( new File( wkdir, "ou=test,ou=system.snapshot" ).exists() );
+    }
+
+
+    /**
+     * Test that the snapshot cache is used when the LDIF files are unchanged, and ignored otherwise
+     */
+    @Test
+    public void testLdifSnapshotCache() throws Exception
+    {
+        injectEntries();
+
+        Dn childDn = new Dn( schemaManager, "dc=child2,ou=test,ou=system" );
+        File childFile = new File( wkdir, "ou=test,ou=system/dc=child2.ldif" );
+        File snapshotFile = new File( wkdir, "ou=test,ou=system.snapshot" );
+
+        // The first load parses the files, and writes the snapshot
+        String originalUuid = getEntryUuid( reloadPartition( true ), childDn );
+        assertTrue( snapshotFile.exists() );
+
+        // Change the file content, keeping its size and its modification time : the
+        // snapshot is used, so we still get the original value
+        long lastModified = childFile.lastModified();
+        String content = new String( Files.readAllBytes( childFile.toPath() ), StandardCharsets.UTF_8 );
+        String modifiedUuid = UUID.randomUUID().toString();
+        Files.write( childFile.toPath(), content.replace( originalUuid, modifiedUuid ).getBytes(
+            StandardCharsets.UTF_8 ) );
+        assertTrue( childFile.setLastModified( lastModified ) );
+
+        assertEquals( originalUuid, getEntryUuid( reloadPartition( true ), childDn ) );
+
+        // Now, touch the file : the snapshot is ignored and the file is parsed again
+        assertTrue( childFile.setLastModified( lastModified + 10000L ) );
+
+        assertEquals( modifiedUuid, getEntryUuid( reloadPartition( true ), childDn ) );
+
+        // The snapshot has been rewritten, and a partition without cache parses the files
+        assertEquals( modifiedUuid, getEntryUuid( reloadPartition( true ), childDn ) );
+        assertEquals( modifiedUuid, getEntryUuid( reloadPartition( false ), childDn ) );
+    }
+
+
+    /**
+     * Test that the modifications are queued when a flush interval is set, and written on sync,
+     * before a delete and on shutdown
+     */
+    @Test
+    public void testLdifWriteBehind() throws Exception
+    {
+        CoreSession session = injectEntries();
+
+        LdifPartition writeBehind = new LdifPartition( schemaManager, dnFactory );
+        writeBehind.setId( "test-ldif" );
+        writeBehind.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
+        writeBehind.setSchemaManager( schemaManager );
+        writeBehind.setPartitionPath( wkdir.toURI() );
+
+        // A long interval, so that only the explicit flushes write the files
+        writeBehind.setFlushInterval( 3600000L );
+        writeBehind.initialize();
+
+        Dn child1Dn = new Dn( schemaManager, "dc=child1,ou=test,ou=system" );
+        Dn child2Dn = new Dn( schemaManager, "dc=child2,ou=test,ou=system" );
+        File child1File = new File( wkdir, "ou=test,ou=system/dc=child1.ldif" );
+        File child2File = new File( wkdir, "ou=test,ou=system/dc=child2.ldif" );
+
+        // Two modifications of the same entry are coalesced
+        modifyDescription( writeBehind, session, child2Dn, "first" );
+        modifyDescription( writeBehind, session, child2Dn, "second" );
+
+        assertFalse( readFile( child2File ).contains( "description" ) );
+
+        writeBehind.sync();
+
+        assertFalse( readFile( child2File ).contains( "first" ) );
+        assertTrue( readFile( child2File ).contains( "description: second" ) );
+
+        // A pending write is not allowed to recreate a deleted entry
+        modifyDescription( writeBehind, session, child2Dn, "third" );
+
+        try ( PartitionTxn partitionTxn = writeBehind.beginWriteTransaction() )
+        {
+            writeBehind.delete( partitionTxn, writeBehind.getEntryId( partitionTxn, child2Dn ) );
+        }
+
+        writeBehind.sync();
+        assertFalse( child2File.exists() );
+
+        // The pending writes are flushed on shutdown
+        modifyDescription( writeBehind, session, child1Dn, "fourth" );
+        assertFalse( readFile( child1File ).contains( "description" ) );
+
+        writeBehind.destroy( null );
+
+        assertTrue( readFile( child1File ).contains( "description: fourth" ) );
+        assertFalse( new File( wkdir, "ou=test,ou=system/dc=child1.ldif.tmp" ).exists() );
+    }
+
+
+    private void modifyDescription( LdifPartition ldifPartition, CoreSession session, Dn dn, String description )
+        throws Exception
+    {
+        List<Modification> modifications = new ArrayList<>();
+        modifications.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+            schemaManager.lookupAttributeTypeRegistry( "description" ), description ) );
+
+        ModifyOperationContext modifyContext = new ModifyOperationContext( session, dn, modifications );
+        modifyContext.setPartition( ldifPartition );
+
+        try ( PartitionTxn partitionTxn = ldifPartition.beginWriteTransaction() )
+        {
+            modifyContext.setTransaction( partitionTxn );
+            ldifPartition.modify( modifyContext );
+        }
+    }
+
+
+    private String readFile( File file ) throws Exception
+    {
+        return new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+    }
+
+
+    private LdifPartition reloadPartition( boolean snapshotCacheEnabled ) throws Exception
+    {
+        LdifPartition reloaded = new LdifPartition( schemaManager, dnFactory );
+        reloaded.setId( "test-ldif" );
+        reloaded.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
+        reloaded.setSchemaManager( schemaManager );
+        reloaded.setPartitionPath( wkdir.toURI() );
+        reloaded.setSnapshotCacheEnabled( snapshotCacheEnabled );
+        reloaded.initialize();
+
+        return reloaded;
+    }
+
+
+    private String getEntryUuid( LdifPartition ldifPartition, Dn dn ) throws Exception
+    {
+        try ( PartitionTxn partitionTxn = ldifPartition.beginReadTransaction() )
+        {
+            String id = ldifPartition.getEntryId( partitionTxn, dn );
+            Entry entry = ldifPartition.fetch( partitionTxn, id );
+
+            return entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+        }
+    }
+
+
     private CoreSession injectEntries() throws Exception
     {
         Dn adminDn = new Dn( schemaManager, "uid=admin,ou=system" );
@@ -247,12 +247,64 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    /**
+     * creates an append-only partition from the current ldif file and its change logs
+     *
+     * @param compactionThreshold the number of logged changes before the ldif file is compacted
+     * @return the ldif partition after loading all the data
+     * @throws Exception
+     */
+    private SingleFileLdifPartition createAppendOnlyPartition( int compactionThreshold ) throws Exception
+    {
+        SingleFileLdifPartition partition = new SingleFileLdifPartition( schemaManager, dnFactory );
+        partition.setId( "test-ldif" );
+        partition.setPartitionPath( ldifFileInUse.toURI() );
+        partition.setSuffixDn( new Dn( schemaManager, "ou=test,ou=system" ) );
+        partition.setSchemaManager( schemaManager );
+        partition.setAppendOnly( true );
+        partition.setCompactionThreshold( compactionThreshold );
+        partition.initialize();
+
+        return partition;
+    }
+
+
+    private File[] getChangeLogs()
+    {
+        return ldifFileInUse.getParentFile().listFiles( new java.io.FilenameFilter()
+        {
+            @Override
+            public boolean accept( File dir, String name )
+            {
+                return name.startsWith( ldifFileInUse.getName() + "." ) && name.endsWith( ".log" );
+            }
+        } );
+    }
+
+
     private SingleFileLdifPartition reloadPartition() throws Exception
     {
         return createPartition( ldifFileInUse.getAbsolutePath(), false );
     }
 
 
+    /**
+     * Reads back an entry as it is stored in the partition. A lookup is not used, as
+     * looking up the context entry stores the context CSN in it.
+     */
+    private Entry lookupStored( SingleFileLdifPartition partition, Dn dn ) throws LdapException
+    {
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            return partition.fetch( partitionTxn, partition.getEntryId( partitionTxn, dn ), dn );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
     private void assertExists( SingleFileLdifPartition partition, Entry entry ) throws LdapException
     {
         LookupOperationContext opCtx = new LookupOperationContext( mockSession, SchemaConstants.ALL_ATTRIBUTES_ARRAY );
@@ -515,8 +567,11 @@ public class SingleFileLdifPartitionTest
 
         partition.modify( modOpCtx );
 
-        long ctxEntryLen = getEntryLdifLen( contextEntry );
-        long entry1Len = getEntryLdifLen( entry1 );
+        // The partition doesn't modify the caller's entries : the file offsets are
+        // computed from the stored entries
+        long ctxEntryLen = getEntryLdifLen( lookupStored( partition, contextEntry.getDn() ) );
+        Entry storedEntry1 = lookupStored( partition, entry1.getDn() );
+        long entry1Len = getEntryLdifLen( storedEntry1 );
 
         file.seek( ctxEntryLen );
 
@@ -529,9 +584,9 @@ public class SingleFileLdifPartitionTest
         LdifEntry ldifEntry = reader.parseLdif( ldif ).get( 0 );
 
         // Remove the EntryDN
-        entry1.removeAttributes( "entryDn" );
+        storedEntry1.removeAttributes( "entryDn" );
 
-        assertEquals( entry1, new DefaultEntry( schemaManager, ldifEntry.getEntry() ) );
+        assertEquals( storedEntry1, new DefaultEntry( schemaManager, ldifEntry.getEntry() ) );
 
         //"description: desc of entry1\n"
 
@@ -555,7 +610,8 @@ public class SingleFileLdifPartitionTest
 
         file.seek( ctxEntryLen );
 
-        entry1Len = getEntryLdifLen( entry1 );
+        storedEntry1 = lookupStored( partition, entry1.getDn() );
+        entry1Len = getEntryLdifLen( storedEntry1 );
         entry1Data = new byte[( int ) entry1Len];
 
         file.read( entry1Data );
@@ -565,14 +621,17 @@ public class SingleFileLdifPartitionTest
         ldifEntry = reader.parseLdif( ldif ).get( 0 );
 
         // Remove the EntryDN
-        entry1.removeAttributes( "entryDn" );
+        storedEntry1.removeAttributes( "entryDn" );
 
-        assertEquals( entry1, new DefaultEntry( schemaManager, ldifEntry.getEntry() ) );
+        assertEquals( storedEntry1, new DefaultEntry( schemaManager, ldifEntry.getEntry() ) );
+
+        Entry storedContextEntry = lookupStored( partition, contextEntry.getDn() );
+        Entry storedEntry2 = lookupStored( partition, entry2.getDn() );
 
         partition = reloadPartition();
-        assertExists( partition, contextEntry );
-        assertExists( partition, entry1 );
-        assertExists( partition, entry2 );
+        assertExists( partition, storedContextEntry );
+        assertExists( partition, storedEntry1 );
+        assertExists( partition, storedEntry2 );
 
         file.close();
     }
@@ -1397,6 +1456,166 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    @Test
+    public void testAppendOnlyReplay() throws Exception
+    {
+        SingleFileLdifPartition partition = createAppendOnlyPartition( 1000 );
+
+        AddOperationContext addCtx = new AddOperationContext( mockSession );
+        addCtx.setEntry( contextEntry );
+        addCtx.setPartition( partition );
+        addCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.add( addCtx );
+
+        Entry child1 = createEntry( "cn=child1,ou=test,ou=system" );
+        child1.put( "ObjectClass", "top", "person" );
+        child1.put( "cn", "child1" );
+        child1.put( "sn", "child1" );
+        addCtx.setEntry( child1 );
+
+        partition.add( addCtx );
+
+        Entry child2 = createEntry( "cn=child2,ou=test,ou=system" );
+        child2.put( "ObjectClass", "top", "person" );
+        child2.put( "cn", "child2" );
+        child2.put( "sn", "child2" );
+        addCtx.setEntry( child2 );
+
+        partition.add( addCtx );
+
+        Entry grandChild = createEntry( "cn=grandChild,cn=child1,ou=test,ou=system" );
+        grandChild.put( "ObjectClass", "top", "person" );
+        grandChild.put( "cn", "grandChild" );
+        grandChild.put( "sn", "grandChild" );
+        addCtx.setEntry( grandChild );
+
+        partition.add( addCtx );
+
+        Entry deleted = createEntry( "cn=deleted,ou=test,ou=system" );
+        deleted.put( "ObjectClass", "top", "person" );
+        deleted.put( "cn", "deleted" );
+        deleted.put( "sn", "deleted" );
+        addCtx.setEntry( deleted );
+
+        partition.add( addCtx );
+
+        // Modify child2
+        ModifyOperationContext modOpCtx = new ModifyOperationContext( mockSession );
+        List<Modification> modItems = new ArrayList<Modification>();
+        Attribute attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "description" ) );
+        attribute.add( "this is description" );
+        modItems.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, attribute ) );
+        modOpCtx.setModItems( modItems );
+        modOpCtx.setDn( child2.getDn() );
+        modOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.modify( modOpCtx );
+
+        // Rename child1, then move it under child2
+        RenameOperationContext renameOpCtx = new RenameOperationContext( mockSession, child1.getDn(),
+            new Rdn( schemaManager, "cn=renamed" ), true );
+        renameOpCtx.setPartition( partition );
+        renameOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.rename( renameOpCtx );
+
+        MoveOperationContext moveOpCtx = new MoveOperationContext( mockSession,
+            new Dn( schemaManager, "cn=renamed,ou=test,ou=system" ), child2.getDn() );
+        moveOpCtx.setPartition( partition );
+        moveOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.move( moveOpCtx );
+
+        DeleteOperationContext delCtx = new DeleteOperationContext( mockSession );
+        delCtx.setDn( deleted.getDn() );
+        delCtx.setPartition( partition );
+        delCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.delete( delCtx );
+
+        // The LDIF file has not been written, only the change log
+        assertEquals( 0L, ldifFileInUse.length() );
+        assertEquals( 1, getChangeLogs().length );
+
+        partition = createAppendOnlyPartition( 1000 );
+
+        assertExists( partition, contextEntry );
+        assertExists( partition, "cn=renamed,cn=child2,ou=test,ou=system" );
+        assertExists( partition, "cn=grandChild,cn=renamed,cn=child2,ou=test,ou=system" );
+        assertNotExists( partition, createEntry( "cn=child1,ou=test,ou=system" ) );
+        assertNotExists( partition, deleted );
+
+        String id = partition.getEntryId( partition.beginReadTransaction(), child2.getDn() );
+        Entry fetched = partition.fetch( partition.beginReadTransaction(), id );
+        assertTrue( fetched.contains( "description", "this is description" ) );
+
+        id = partition.getEntryId( partition.beginReadTransaction(),
+            new Dn( schemaManager, "cn=renamed,cn=child2,ou=test,ou=system" ) );
+        fetched = partition.fetch( partition.beginReadTransaction(), id );
+        assertTrue( fetched.contains( "cn", "renamed" ) );
+        assertFalse( fetched.contains( "cn", "child1" ) );
+    }
+
+
+    @Test
+    public void testAppendOnlyCompaction() throws Exception
+    {
+        SingleFileLdifPartition partition = createAppendOnlyPartition( 3 );
+
+        AddOperationContext addCtx = new AddOperationContext( mockSession );
+        addCtx.setEntry( contextEntry );
+        addCtx.setPartition( partition );
+        addCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.add( addCtx );
+
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            Entry entry = createEntry( "cn=child" + i + ",ou=test,ou=system" );
+            entry.put( "ObjectClass", "top", "person" );
+            entry.put( "cn", "child" + i );
+            entry.put( "sn", "child" + i );
+            addCtx.setEntry( entry );
+
+            partition.add( addCtx );
+            entries.add( entry );
+        }
+
+        // Wait for the background compactions, and compact the remaining changes
+        partition.compact();
+
+        assertEquals( 0, getChangeLogs().length );
+
+        try ( RandomAccessFile file = new RandomAccessFile( ldifFileInUse, "r" ) )
+        {
+            assertTrue( file.readLine().startsWith( "# generation: " ) );
+        }
+
+        // A change logged after the compaction
+        DeleteOperationContext delCtx = new DeleteOperationContext( mockSession );
+        delCtx.setDn( entries.get( 0 ).getDn() );
+        delCtx.setPartition( partition );
+        delCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.delete( delCtx );
+
+        assertEquals( 1, getChangeLogs().length );
+
+        partition = createAppendOnlyPartition( 3 );
+
+        assertExists( partition, contextEntry );
+        assertNotExists( partition, entries.get( 0 ) );
+
+        for ( int i = 1; i < 10; i++ )
+        {
+            assertExists( partition, entries.get( i ) );
+        }
+    }
+
+
     private SingleFileLdifPartition injectEntries() throws Exception
     {
         SingleFileLdifPartition partition = createPartition( null, true );
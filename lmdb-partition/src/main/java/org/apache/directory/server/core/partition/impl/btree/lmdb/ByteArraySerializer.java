@@ -0,0 +1,87 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.util.Comparator;
+
+
+/**
+ * A pass-through serializer for byte[] elements. As the serialized form is the element
+ * itself, its comparator is directly registered in LMDB.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ByteArraySerializer implements LmdbSerializer<byte[]>
+{
+    /** The byte[] comparator */
+    private final Comparator<byte[]> comparator;
+
+
+    /**
+     * Creates a new instance of ByteArraySerializer.
+     *
+     * @param comparator The byte[] comparator
+     */
+    public ByteArraySerializer( Comparator<byte[]> comparator )
+    {
+        this.comparator = comparator;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( byte[] element )
+    {
+        return element;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] deserialize( byte[] bytes )
+    {
+        return bytes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<byte[]> getComparator()
+    {
+        return comparator;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<byte[]> getBytesComparator()
+    {
+        return comparator;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+
+/**
+ * Helper methods used to exchange the serialized keys and values with LMDB. LMDB reads
+ * and writes the data through direct buffers : each thread reuses one buffer for the
+ * keys, and one for the values, instead of allocating new ones for each access.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class LmdbBuffers
+{
+    /** The index of the key buffer */
+    private static final int KEY = 0;
+
+    /** The index of the value buffer */
+    private static final int VALUE = 1;
+
+    /** The initial size of the buffers */
+    private static final int INITIAL_SIZE = 512;
+
+    /** The buffers used by each thread */
+    private static final ThreadLocal<ByteBuffer[]> BUFFERS = new ThreadLocal<ByteBuffer[]>()
+    {
+        @Override
+        protected ByteBuffer[] initialValue()
+        {
+            return new ByteBuffer[]
+                { ByteBuffer.allocateDirect( INITIAL_SIZE ), ByteBuffer.allocateDirect( INITIAL_SIZE ) };
+        }
+    };
+
+
+    private LmdbBuffers()
+    {
+    }
+
+
+    /**
+     * Copies the given bytes into the thread buffer, which is grown if needed
+     *
+     * @param index The buffer index
+     * @param bytes The bytes to copy
+     * @return The thread buffer, ready to be read
+     */
+    private static ByteBuffer fill( int index, byte[] bytes )
+    {
+        ByteBuffer[] buffers = BUFFERS.get();
+        ByteBuffer buffer = buffers[index];
+
+        if ( buffer.capacity() < bytes.length )
+        {
+            int capacity = buffer.capacity();
+
+            while ( capacity < bytes.length )
+            {
+                capacity <<= 1;
+            }
+
+            buffer = ByteBuffer.allocateDirect( capacity );
+            buffers[index] = buffer;
+        }
+
+        buffer.clear();
+        buffer.put( bytes ).flip();
+
+        return buffer;
+    }
+
+
+    /**
+     * Gets a buffer containing a serialized key. It's valid until the next call
+     * done by the same thread.
+     *
+     * @param bytes The serialized key
+     * @return A direct buffer containing the key
+     */
+    static ByteBuffer key( byte[] bytes )
+    {
+        return fill( KEY, bytes );
+    }
+
+
+    /**
+     * Gets a buffer containing a serialized value. It's valid until the next call
+     * done by the same thread.
+     *
+     * @param bytes The serialized value
+     * @return A direct buffer containing the value
+     */
+    static ByteBuffer value( byte[] bytes )
+    {
+        return fill( VALUE, bytes );
+    }
+
+
+    /**
+     * Copies the content of a buffer returned by LMDB. Those buffers are only valid
+     * until the next operation in the transaction.
+     *
+     * @param buffer The buffer to read
+     * @return The buffer content, or null if the buffer is null
+     */
+    static byte[] toBytes( ByteBuffer buffer )
+    {
+        if ( buffer == null )
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get( bytes );
+
+        return bytes;
+    }
+
+
+    /**
+     * Compares two byte arrays the way LMDB does by default (unsigned lexicographic order)
+     *
+     * @param bytes1 The first array
+     * @param bytes2 The second array
+     * @return a negative value, 0 or a positive value if the first array is lower, equal,
+     * or greater than the second array
+     */
+    static int compare( byte[] bytes1, byte[] bytes2 )
+    {
+        int length = Math.min( bytes1.length, bytes2.length );
+
+        for ( int i = 0; i < length; i++ )
+        {
+            int comp = ( bytes1[i] & 0xFF ) - ( bytes2[i] & 0xFF );
+
+            if ( comp != 0 )
+            {
+                return comp;
+            }
+        }
+
+        return bytes1.length - bytes2.length;
+    }
+
+
+    /**
+     * Creates a comparator LMDB can call, from a comparator on the serialized form.
+     *
+     * @param comparator The comparator on the serialized form
+     * @return The comparator to register in LMDB
+     */
+    static Comparator<ByteBuffer> comparator( final Comparator<byte[]> comparator )
+    {
+        return new Comparator<ByteBuffer>()
+        {
+            @Override
+            public int compare( ByteBuffer buffer1, ByteBuffer buffer2 )
+            {
+                return comparator.compare( toBytes( buffer1 ), toBytes( buffer2 ) );
+            }
+        };
+    }
+}
@@ -0,0 +1,665 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.SeekOp;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Cursor over the Tuples of a LMDB table. If the table allows duplicate values,
+ * we will browse each value and return a Tuple for each one of them. The cursor
+ * can also be limited to the values of a single key.
+ * <br>
+ * The LMDB cursor is opened on the first move. If the thread is running a write
+ * transaction, it's opened in this transaction, and it will be closed when the
+ * transaction is committed or aborted. Otherwise, the cursor uses its own read
+ * transaction, which is released when the cursor is closed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class LmdbCursor<K, V> extends AbstractCursor<Tuple<K, V>>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( "CURSOR" );
+
+    /** The cursor positions */
+    private enum Position
+    {
+        BEFORE_FIRST,
+        BEFORE_CURRENT,
+        ON_CURRENT,
+        AFTER_LAST
+    }
+
+    /** The table we are building a cursor over */
+    private final LmdbTable<K, V> table;
+
+    /** The transaction the cursor has been created in */
+    private final PartitionTxn partitionTxn;
+
+    /** The key the cursor is limited to, if any */
+    private final K key;
+
+    /** The serialized key the cursor is limited to, if any */
+    private byte[] keyBytes;
+
+    /** The LMDB cursor, once opened */
+    private org.lmdbjava.Cursor<ByteBuffer> cursor;
+
+    /** The read transaction we have opened, if any */
+    private Txn<ByteBuffer> readTxn;
+
+    /** The partition read transaction sharing its snapshot with us, if any */
+    private LmdbPartitionReadTxn partitionReadTxn;
+
+    /** The write transaction we are browsing, if any */
+    private LmdbPartitionWriteTxn writeTxn;
+
+    /** The current position */
+    private Position position = Position.BEFORE_FIRST;
+
+    /** The tuple which will be returned */
+    private Tuple<K, V> returnedTuple;
+
+
+    /**
+     * Creates a Cursor over the tuples of a LMDB table.
+     *
+     * @param table the LMDB Table to build a Cursor over
+     * @param partitionTxn The transaction we are running in
+     */
+    LmdbCursor( LmdbTable<K, V> table, PartitionTxn partitionTxn )
+    {
+        this( table, partitionTxn, null );
+    }
+
+
+    /**
+     * Creates a Cursor over the tuples of a LMDB table with a given key.
+     *
+     * @param table the LMDB Table to build a Cursor over
+     * @param partitionTxn The transaction we are running in
+     * @param key The key the cursor is limited to, or null
+     */
+    LmdbCursor( LmdbTable<K, V> table, PartitionTxn partitionTxn, K key )
+    {
+        LOG_CURSOR.debug( "Creating LmdbCursor {}", this );
+        this.table = table;
+        this.partitionTxn = partitionTxn;
+        this.key = key;
+
+        if ( ( partitionTxn instanceof LmdbPartitionReadTxn )
+            && ( ( ( LmdbPartitionReadTxn ) partitionTxn ).getEnvironment() == table.getEnvironment() ) )
+        {
+            // Keep the snapshot until we are closed, as the search returns us after
+            // having closed its transaction
+            partitionReadTxn = ( LmdbPartitionReadTxn ) partitionTxn;
+            partitionReadTxn.addCursor();
+        }
+    }
+
+
+    /**
+     * Gets the LMDB cursor, opening it if needed.
+     *
+     * @return The LMDB cursor
+     * @throws LdapException If the cursor can't be opened
+     */
+    private org.lmdbjava.Cursor<ByteBuffer> getCursor() throws LdapException
+    {
+        if ( cursor == null )
+        {
+            if ( ( key != null ) && ( keyBytes == null ) )
+            {
+                keyBytes = table.serializeKey( key );
+            }
+
+            LmdbEnvironment environment = table.getEnvironment();
+            writeTxn = environment.getWriteTxn( partitionTxn );
+
+            if ( writeTxn != null )
+            {
+                cursor = table.getDbi().openCursor( writeTxn.getTxn() );
+                writeTxn.addCursor( this );
+            }
+            else
+            {
+                Txn<ByteBuffer> txn = null;
+
+                if ( partitionReadTxn != null )
+                {
+                    txn = partitionReadTxn.getTxn();
+                }
+
+                if ( txn == null )
+                {
+                    readTxn = environment.getEnv().txnRead();
+                    txn = readTxn;
+                }
+
+                cursor = table.getDbi().openCursor( txn );
+            }
+        }
+
+        return cursor;
+    }
+
+
+    /**
+     * Sets the current position, and the tuple if we are on an element.
+     *
+     * @param found If the LMDB cursor is on an element
+     * @param onFound The position to set if it is
+     * @param notFound The position to set if it's not
+     * @return true if we are on an element
+     * @throws LdapException If the element can't be read
+     */
+    private boolean setPosition( boolean found, Position onFound, Position notFound ) throws LdapException
+    {
+        returnedTuple = null;
+
+        if ( found )
+        {
+            position = onFound;
+
+            if ( position == Position.ON_CURRENT )
+            {
+                K currentKey = key;
+
+                if ( currentKey == null )
+                {
+                    currentKey = table.deserializeKey( LmdbBuffers.toBytes( cursor.key() ) );
+                }
+
+                V currentValue = table.deserializeValue( LmdbBuffers.toBytes( cursor.val() ) );
+                returnedTuple = new Tuple<>( currentKey, currentValue );
+            }
+        }
+        else
+        {
+            position = notFound;
+        }
+
+        return found;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return position == Position.ON_CURRENT;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        byte[] elementKey = table.serializeKey( element.getKey() );
+        byte[] elementValue = element.getValue() == null ? null : table.serializeValue( element.getValue() );
+
+        try
+        {
+            getCursor();
+
+            if ( key != null )
+            {
+                int comparison = table.compareKeys( elementKey, keyBytes );
+
+                if ( comparison < 0 )
+                {
+                    setPosition( false, null, Position.BEFORE_FIRST );
+                }
+                else if ( comparison > 0 )
+                {
+                    setPosition( false, null, Position.AFTER_LAST );
+                }
+                else if ( elementValue == null )
+                {
+                    setPosition( false, null, Position.BEFORE_FIRST );
+                }
+                else
+                {
+                    setPosition( moveTo( keyBytes, elementValue, SeekOp.MDB_GET_BOTH_RANGE ),
+                        Position.BEFORE_CURRENT, Position.AFTER_LAST );
+                }
+
+                return;
+            }
+
+            if ( table.isDupsEnabled() && ( elementValue != null ) )
+            {
+                // The first value of this key which is greater or equal
+                if ( moveTo( elementKey, elementValue, SeekOp.MDB_GET_BOTH_RANGE ) )
+                {
+                    setPosition( true, Position.BEFORE_CURRENT, null );
+
+                    return;
+                }
+
+                // All the values are lower : move to the next key
+                setPosition( seekAfterKey( elementKey ), Position.BEFORE_CURRENT, Position.AFTER_LAST );
+
+                return;
+            }
+
+            setPosition( moveTo( elementKey, GetOp.MDB_SET_RANGE ), Position.BEFORE_CURRENT,
+                Position.AFTER_LAST );
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        byte[] elementKey = table.serializeKey( element.getKey() );
+        byte[] elementValue = element.getValue() == null ? null : table.serializeValue( element.getValue() );
+
+        try
+        {
+            getCursor();
+
+            if ( key != null )
+            {
+                int comparison = table.compareKeys( elementKey, keyBytes );
+
+                if ( comparison < 0 )
+                {
+                    setPosition( false, null, Position.BEFORE_FIRST );
+                }
+                else if ( ( comparison > 0 ) || ( elementValue == null ) )
+                {
+                    setPosition( false, null, Position.AFTER_LAST );
+                }
+                else if ( moveTo( keyBytes, elementValue, SeekOp.MDB_GET_BOTH_RANGE ) )
+                {
+                    boolean found = true;
+
+                    if ( Arrays.equals( elementValue, LmdbBuffers.toBytes( cursor.val() ) ) )
+                    {
+                        found = cursor.seek( SeekOp.MDB_NEXT_DUP );
+                    }
+
+                    setPosition( found, Position.BEFORE_CURRENT, Position.AFTER_LAST );
+                }
+                else
+                {
+                    setPosition( false, null, Position.AFTER_LAST );
+                }
+
+                return;
+            }
+
+            if ( table.isDupsEnabled() && ( elementValue != null ) )
+            {
+                if ( moveTo( elementKey, elementValue, SeekOp.MDB_GET_BOTH_RANGE ) )
+                {
+                    boolean found = true;
+
+                    // Skip the element itself : the next value, or the next key
+                    if ( Arrays.equals( elementValue, LmdbBuffers.toBytes( cursor.val() ) ) )
+                    {
+                        found = cursor.next();
+                    }
+
+                    setPosition( found, Position.BEFORE_CURRENT, Position.AFTER_LAST );
+
+                    return;
+                }
+            }
+
+            setPosition( seekAfterKey( elementKey ), Position.BEFORE_CURRENT, Position.AFTER_LAST );
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * Moves the LMDB cursor to a key
+     *
+     * @param keyBytes The serialized key
+     * @param op The positioning operation
+     * @return true if the cursor is on an element
+     */
+    private boolean moveTo( byte[] keyBytes, GetOp op )
+    {
+        return cursor.get( LmdbBuffers.key( keyBytes ), op );
+    }
+
+
+    /**
+     * Moves the LMDB cursor to a key and a value
+     *
+     * @param keyBytes The serialized key
+     * @param valueBytes The serialized value
+     * @param op The positioning operation
+     * @return true if the cursor is on an element
+     */
+    private boolean moveTo( byte[] keyBytes, byte[] valueBytes, SeekOp op )
+    {
+        return cursor.get( LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ), op );
+    }
+
+
+    /**
+     * Moves the LMDB cursor to the first key greater than the given key
+     *
+     * @param elementKey The serialized key
+     * @return true if there is such a key
+     */
+    private boolean seekAfterKey( byte[] elementKey )
+    {
+        if ( !moveTo( elementKey, GetOp.MDB_SET_RANGE ) )
+        {
+            return false;
+        }
+
+        if ( table.compareKeys( elementKey, LmdbBuffers.toBytes( cursor.key() ) ) == 0 )
+        {
+            return cursor.seek( SeekOp.MDB_NEXT_NODUP );
+        }
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setPosition( false, null, Position.BEFORE_FIRST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setPosition( false, null, Position.AFTER_LAST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            getCursor();
+            boolean found;
+
+            switch ( position )
+            {
+                case BEFORE_FIRST:
+                    found = false;
+                    break;
+
+                case AFTER_LAST:
+                    if ( key != null )
+                    {
+                        found = moveTo( keyBytes, GetOp.MDB_SET_KEY ) && cursor.seek( SeekOp.MDB_LAST_DUP );
+                    }
+                    else
+                    {
+                        found = cursor.last();
+                    }
+
+                    break;
+
+                default:
+                    if ( key != null )
+                    {
+                        found = cursor.seek( SeekOp.MDB_PREV_DUP );
+                    }
+                    else
+                    {
+                        found = cursor.prev();
+                    }
+
+                    break;
+            }
+
+            return setPosition( found, Position.ON_CURRENT, Position.BEFORE_FIRST );
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        try
+        {
+            getCursor();
+            boolean found;
+
+            switch ( position )
+            {
+                case BEFORE_FIRST:
+                    if ( key != null )
+                    {
+                        found = moveTo( keyBytes, GetOp.MDB_SET_KEY );
+                    }
+                    else
+                    {
+                        found = cursor.first();
+                    }
+
+                    break;
+
+                case BEFORE_CURRENT:
+                    // The LMDB cursor is already on the element
+                    found = true;
+                    break;
+
+                case AFTER_LAST:
+                    found = false;
+                    break;
+
+                default:
+                    if ( key != null )
+                    {
+                        found = cursor.seek( SeekOp.MDB_NEXT_DUP );
+                    }
+                    else
+                    {
+                        found = cursor.next();
+                    }
+
+                    break;
+            }
+
+            return setPosition( found, Position.ON_CURRENT, Position.AFTER_LAST );
+        }
+        catch ( LmdbException le )
+        {
+            throw new CursorException( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tuple<K, V> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( position == Position.ON_CURRENT )
+        {
+            return returnedTuple;
+        }
+
+        throw new InvalidCursorPositionException();
+    }
+
+
+    /**
+     * Closes the LMDB cursor because the write transaction it has been opened in is
+     * about to be committed or aborted. The cursor can't be used anymore.
+     */
+    void detach()
+    {
+        LOG_CURSOR.debug( "Detaching LmdbCursor {}", this );
+        closeCursor();
+
+        try
+        {
+            super.close();
+        }
+        catch ( IOException ioe )
+        {
+            LOG_CURSOR.warn( "Failed to close the cursor {}", this, ioe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        LOG_CURSOR.debug( "Closing LmdbCursor {}", this );
+        super.close();
+        closeCursor();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        LOG_CURSOR.debug( "Closing LmdbCursor {}", this );
+        super.close( cause );
+        closeCursor();
+    }
+
+
+    /**
+     * Close the LMDB cursor, and the read transaction we have opened or shared
+     */
+    private void closeCursor()
+    {
+        if ( cursor != null )
+        {
+            cursor.close();
+            cursor = null;
+        }
+
+        if ( writeTxn != null )
+        {
+            writeTxn.removeCursor( this );
+            writeTxn = null;
+        }
+
+        if ( readTxn != null )
+        {
+            readTxn.close();
+            readTxn = null;
+        }
+
+        if ( partitionReadTxn != null )
+        {
+            partitionReadTxn.removeCursor();
+            partitionReadTxn = null;
+        }
+    }
+}
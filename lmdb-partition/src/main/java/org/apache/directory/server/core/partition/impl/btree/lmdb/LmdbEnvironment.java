@@ -0,0 +1,380 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.Env;
+import org.lmdbjava.EnvFlags;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The LMDB environment shared by all the tables of a partition. It wraps the LMDB
+ * <code>Env</code>, and keeps track of the transactions used by the tables :
+ * <ul>
+ *   <li>LMDB allows only one write transaction at a time. The write transaction started
+ *   by a thread is remembered, so that any table accessed by this thread (even with a
+ *   read transaction) works on the data it has modified.</li>
+ *   <li>The read transactions are recycled per thread (using LMDB reset/renew), as they
+ *   are used for every single lookup done outside of a write transaction.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbEnvironment
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LmdbEnvironment.class );
+
+    /** The underlying LMDB environment */
+    private final Env<ByteBuffer> env;
+
+    /** Tells if each commit is flushed to disk by LMDB */
+    private final boolean syncOnCommit;
+
+    /** The write transaction started by the current thread, if any */
+    private final ThreadLocal<LmdbPartitionWriteTxn> activeWriteTxn = new ThreadLocal<>();
+
+    /** The read transaction kept by the current thread */
+    private final ThreadLocal<ReadSlot> readSlot = new ThreadLocal<>();
+
+    /** All the read transactions kept by the threads, to be closed with the environment */
+    private final Set<ReadSlot> readSlots = ConcurrentHashMap.newKeySet();
+
+    /** The databases we have opened */
+    private final List<Dbi<ByteBuffer>> databases = new ArrayList<>();
+
+
+    /**
+     * A read transaction, which is reset when released and renewed when reused
+     */
+    private static class ReadSlot
+    {
+        /** The recycled read transaction */
+        private Txn<ByteBuffer> txn;
+
+        /** Tells if the transaction is currently used */
+        private boolean inUse;
+    }
+
+
+    /**
+     * Opens a LMDB environment in the given directory.
+     *
+     * @param directory The directory which will contain the LMDB files
+     * @param mapSize The maximum size of the database
+     * @param maxDbs The maximum number of databases (tables) in the environment
+     * @param maxReaders The maximum number of concurrent read transactions
+     * @param syncOnCommit If each commit must be flushed to disk. Otherwise the
+     * database stays consistent, but the last commits may be lost on a system crash
+     */
+    public LmdbEnvironment( File directory, long mapSize, int maxDbs, int maxReaders, boolean syncOnCommit )
+    {
+        this.syncOnCommit = syncOnCommit;
+
+        EnvFlags[] flags;
+
+        if ( syncOnCommit )
+        {
+            flags = new EnvFlags[]
+                { EnvFlags.MDB_NOTLS };
+        }
+        else
+        {
+            flags = new EnvFlags[]
+                { EnvFlags.MDB_NOTLS, EnvFlags.MDB_NOMETASYNC };
+        }
+
+        env = Env.create()
+            .setMapSize( mapSize )
+            .setMaxDbs( maxDbs )
+            .setMaxReaders( maxReaders )
+            .open( directory, flags );
+
+        LOG.debug( "Opened the LMDB environment in {}", directory );
+    }
+
+
+    /**
+     * Opens (or creates) a database in this environment.
+     *
+     * @param name The database name
+     * @param comparator The key comparator. If null, the keys are ordered using their bytes
+     * @param allowDuplicates If the database allows more than one value per key
+     * @return The opened database
+     */
+    public synchronized Dbi<ByteBuffer> openDbi( String name, Comparator<byte[]> comparator, boolean allowDuplicates )
+    {
+        DbiFlags[] flags;
+
+        if ( allowDuplicates )
+        {
+            flags = new DbiFlags[]
+                { DbiFlags.MDB_CREATE, DbiFlags.MDB_DUPSORT };
+        }
+        else
+        {
+            flags = new DbiFlags[]
+                { DbiFlags.MDB_CREATE };
+        }
+
+        Dbi<ByteBuffer> dbi;
+
+        if ( comparator == null )
+        {
+            dbi = env.openDbi( name, flags );
+        }
+        else
+        {
+            // The comparator is registered in LMDB, which will call it for each key comparison
+            dbi = env.openDbi( name, LmdbBuffers.comparator( comparator ), true, flags );
+        }
+
+        databases.add( dbi );
+
+        return dbi;
+    }
+
+
+    /**
+     * @return The names of the databases stored in this environment
+     */
+    public List<String> getDbiNames()
+    {
+        List<String> names = new ArrayList<>();
+
+        for ( byte[] name : env.getDbiNames() )
+        {
+            names.add( Strings.utf8ToString( name ) );
+        }
+
+        return names;
+    }
+
+
+    /**
+     * @return The underlying LMDB environment
+     */
+    public Env<ByteBuffer> getEnv()
+    {
+        return env;
+    }
+
+
+    /**
+     * @return The maximum size of a key, and of a value when duplicates are allowed
+     */
+    public int getMaxKeySize()
+    {
+        return env.getMaxKeySize();
+    }
+
+
+    /**
+     * @return true if LMDB flushes each commit to disk
+     */
+    public boolean isSyncOnCommit()
+    {
+        return syncOnCommit;
+    }
+
+
+    /**
+     * @return The write transaction started by the current thread, if any
+     */
+    LmdbPartitionWriteTxn getActiveWriteTxn()
+    {
+        return activeWriteTxn.get();
+    }
+
+
+    /**
+     * Sets the write transaction started by the current thread
+     * 
+     * @param writeTxn The write transaction, or null when it's done
+     */
+    void setActiveWriteTxn( LmdbPartitionWriteTxn writeTxn )
+    {
+        if ( writeTxn == null )
+        {
+            activeWriteTxn.remove();
+        }
+        else
+        {
+            activeWriteTxn.set( writeTxn );
+        }
+    }
+
+
+    /**
+     * Gets the write transaction a table operation must be done in : either the given
+     * transaction if it's a write transaction on this environment, or the write
+     * transaction the current thread has started.
+     *
+     * @param partitionTxn The transaction given to the table
+     * @return The write transaction to use, or null if there is none
+     */
+    LmdbPartitionWriteTxn getWriteTxn( PartitionTxn partitionTxn )
+    {
+        if ( partitionTxn instanceof LmdbPartitionWriteTxn )
+        {
+            LmdbPartitionWriteTxn writeTxn = ( LmdbPartitionWriteTxn ) partitionTxn;
+
+            if ( ( writeTxn.getEnvironment() == this ) && !writeTxn.isClosed() )
+            {
+                return writeTxn.getOwner();
+            }
+        }
+
+        return activeWriteTxn.get();
+    }
+
+
+    /**
+     * Gets a read transaction. The current thread's recycled transaction is returned if
+     * it's not already used, otherwise a new transaction is started. The transaction
+     * must be released using {@link #releaseReadTxn(Txn)}.
+     *
+     * @return A read transaction
+     */
+    Txn<ByteBuffer> acquireReadTxn()
+    {
+        ReadSlot slot = readSlot.get();
+
+        if ( slot == null )
+        {
+            slot = new ReadSlot();
+            slot.txn = env.txnRead();
+            slot.inUse = true;
+            readSlot.set( slot );
+            readSlots.add( slot );
+
+            return slot.txn;
+        }
+
+        if ( slot.inUse )
+        {
+            return env.txnRead();
+        }
+
+        slot.txn.renew();
+        slot.inUse = true;
+
+        return slot.txn;
+    }
+
+
+    /**
+     * Releases a read transaction obtained with {@link #acquireReadTxn()}
+     *
+     * @param txn The transaction to release
+     */
+    void releaseReadTxn( Txn<ByteBuffer> txn )
+    {
+        ReadSlot slot = readSlot.get();
+
+        if ( ( slot != null ) && ( slot.txn == txn ) )
+        {
+            txn.reset();
+            slot.inUse = false;
+        }
+        else
+        {
+            txn.close();
+        }
+    }
+
+
+    /**
+     * Flushes the data committed so far to disk.
+     */
+    public void sync()
+    {
+        env.sync( true );
+    }
+
+
+    /**
+     * Closes the environment. A write transaction left opened by the current thread
+     * is aborted.
+     */
+    public synchronized void close()
+    {
+        LmdbPartitionWriteTxn writeTxn = activeWriteTxn.get();
+
+        if ( writeTxn != null )
+        {
+            try
+            {
+                writeTxn.abort();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to abort the pending write transaction", ioe );
+            }
+        }
+
+        for ( ReadSlot slot : readSlots )
+        {
+            // A reset transaction has to be renewed to be released by LMDB
+            if ( !slot.inUse )
+            {
+                slot.txn.renew();
+            }
+
+            slot.txn.close();
+        }
+
+        readSlots.clear();
+
+        for ( Dbi<ByteBuffer> dbi : databases )
+        {
+            dbi.close();
+        }
+
+        databases.clear();
+
+        env.close();
+    }
+
+
+    /**
+     * @return true if the environment has been closed
+     */
+    public boolean isClosed()
+    {
+        return env.isClosed();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.lmdbjava.Txn;
+
+
+/**
+ * The LMDB partition read transaction. All the tables read with this transaction share
+ * one LMDB read transaction, so a search sees a single snapshot of the partition. The
+ * LMDB transaction is started when a table is first read.
+ * <br>
+ * A search returns its cursors once the partition transaction has been closed, so the
+ * LMDB transaction is kept until the cursors created with this transaction are closed
+ * too. A table read after that uses its own read transaction.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionReadTxn extends PartitionReadTxn
+{
+    /** The LMDB environment */
+    private final LmdbEnvironment environment;
+
+    /** The LMDB transaction, once started */
+    private Txn<ByteBuffer> txn;
+
+    /** The number of cursors created with this transaction and not yet closed */
+    private int nbCursors;
+
+    /** Tells if the partition transaction has been closed */
+    private boolean closed;
+
+    /** Tells if the LMDB transaction has been released */
+    private boolean released;
+
+
+    /**
+     * Create an instance of LmdbPartitionReadTxn
+     *
+     * @param environment The LMDB environment
+     */
+    public LmdbPartitionReadTxn( LmdbEnvironment environment )
+    {
+        this.environment = environment;
+    }
+
+
+    /**
+     * @return The LMDB environment this transaction is working on
+     */
+    LmdbEnvironment getEnvironment()
+    {
+        return environment;
+    }
+
+
+    /**
+     * @return The LMDB transaction, started if needed, or null if it has been released
+     */
+    synchronized Txn<ByteBuffer> getTxn()
+    {
+        if ( released )
+        {
+            return null;
+        }
+
+        if ( txn == null )
+        {
+            txn = environment.getEnv().txnRead();
+        }
+
+        return txn;
+    }
+
+
+    /**
+     * Tells if the given LMDB transaction is the one shared by this transaction
+     *
+     * @param lmdbTxn The LMDB transaction
+     * @return true if it's ours
+     */
+    synchronized boolean owns( Txn<ByteBuffer> lmdbTxn )
+    {
+        return ( txn != null ) && ( txn == lmdbTxn );
+    }
+
+
+    /**
+     * Registers a cursor created with this transaction. The LMDB transaction won't be
+     * released before the cursor is closed.
+     */
+    synchronized void addCursor()
+    {
+        nbCursors++;
+    }
+
+
+    /**
+     * Unregisters a cursor which has been closed
+     */
+    synchronized void removeCursor()
+    {
+        nbCursors--;
+        releaseIfUnused();
+    }
+
+
+    /**
+     * Ends the LMDB transaction once the partition transaction and all its cursors
+     * are closed.
+     */
+    private void releaseIfUnused()
+    {
+        if ( closed && ( nbCursors == 0 ) && !released )
+        {
+            released = true;
+
+            if ( txn != null )
+            {
+                txn.close();
+                txn = null;
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closed = true;
+        releaseIfUnused();
+    }
+}
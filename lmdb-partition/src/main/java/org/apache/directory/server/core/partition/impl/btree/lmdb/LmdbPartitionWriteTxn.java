@@ -0,0 +1,285 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.Txn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+
+/**
+ * The LMDB partition write transaction. The underlying LMDB write transaction is
+ * started when the first table is accessed, and all the updates done on the master
+ * table and the indexes are committed, or aborted, at once.
+ * <br>
+ * LMDB allows only one write transaction at a time, so if the thread already has
+ * a write transaction running, this transaction joins it : the outer transaction
+ * will commit or abort all the updates.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbPartitionWriteTxn extends PartitionWriteTxn
+{
+    /** The LMDB environment */
+    private final LmdbEnvironment environment;
+
+    /** The partition entry cache */
+    private final Cache<String, Entry> entryCache;
+
+    /** A flag used to flush data immediately or not */
+    private final boolean syncOnWrite;
+
+    /** The LMDB transaction, once started */
+    private Txn<ByteBuffer> txn;
+
+    /** The transaction we have joined, if the thread already had one running */
+    private LmdbPartitionWriteTxn outer;
+
+    /** The cursors opened on this transaction */
+    private final List<LmdbCursor<?, ?>> cursors = new ArrayList<>();
+
+    /** Tells if the transaction has been committed or aborted */
+    private boolean closed = false;
+
+
+    /**
+     * Create an instance of LmdbPartitionWriteTxn
+     *
+     * @param environment The LMDB environment
+     * @param entryCache The partition entry cache
+     * @param syncOnWrite If we want to data to be flushed on each write
+     */
+    public LmdbPartitionWriteTxn( LmdbEnvironment environment, Cache<String, Entry> entryCache, boolean syncOnWrite )
+    {
+        this.environment = environment;
+        this.entryCache = entryCache;
+        this.syncOnWrite = syncOnWrite;
+    }
+
+
+    /**
+     * @return The LMDB environment this transaction is working on
+     */
+    LmdbEnvironment getEnvironment()
+    {
+        return environment;
+    }
+
+
+    /**
+     * Gets the transaction owning the LMDB transaction, starting it if needed :
+     * this transaction, or the one we have joined.
+     *
+     * @return The transaction owning the LMDB transaction
+     */
+    LmdbPartitionWriteTxn getOwner()
+    {
+        if ( outer != null )
+        {
+            if ( !outer.isClosed() )
+            {
+                return outer;
+            }
+
+            // The transaction we had joined is done, we need our own
+            outer = null;
+        }
+
+        if ( txn == null )
+        {
+            LmdbPartitionWriteTxn active = environment.getActiveWriteTxn();
+
+            if ( ( active != null ) && ( active != this ) )
+            {
+                outer = active;
+
+                return outer;
+            }
+
+            txn = environment.getEnv().txnWrite();
+            environment.setActiveWriteTxn( this );
+        }
+
+        return this;
+    }
+
+
+    /**
+     * @return The LMDB transaction, started if needed
+     */
+    Txn<ByteBuffer> getTxn()
+    {
+        return getOwner().txn;
+    }
+
+
+    /**
+     * Registers a cursor opened on this transaction. It will be closed before the
+     * transaction is committed or aborted, as LMDB requires.
+     *
+     * @param cursor The opened cursor
+     */
+    void addCursor( LmdbCursor<?, ?> cursor )
+    {
+        cursors.add( cursor );
+    }
+
+
+    /**
+     * Unregisters a cursor which has been closed
+     *
+     * @param cursor The closed cursor
+     */
+    void removeCursor( LmdbCursor<?, ?> cursor )
+    {
+        cursors.remove( cursor );
+    }
+
+
+    /**
+     * Closes the cursors left opened on this transaction
+     */
+    private void closeCursors()
+    {
+        for ( LmdbCursor<?, ?> cursor : new ArrayList<>( cursors ) )
+        {
+            cursor.detach();
+        }
+
+        cursors.clear();
+    }
+
+
+    /**
+     * Ends the LMDB transaction, if we own it.
+     */
+    private void release()
+    {
+        if ( txn != null )
+        {
+            txn.close();
+            txn = null;
+            environment.setActiveWriteTxn( null );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+
+        // If we have joined another transaction, it will commit for us
+        if ( txn == null )
+        {
+            return;
+        }
+
+        try
+        {
+            closeCursors();
+            txn.commit();
+        }
+        catch ( LmdbException le )
+        {
+            throw new IOException( le.getMessage(), le );
+        }
+        finally
+        {
+            release();
+        }
+
+        if ( syncOnWrite && !environment.isSyncOnCommit() )
+        {
+            environment.sync();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+
+        try
+        {
+            if ( txn != null )
+            {
+                closeCursors();
+            }
+        }
+        finally
+        {
+            // Closing the LMDB transaction without committing it discards the updates
+            release();
+
+            // The cache may contain entries which have not been committed
+            if ( entryCache != null )
+            {
+                entryCache.invalidateAll();
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        commit();
+    }
+}
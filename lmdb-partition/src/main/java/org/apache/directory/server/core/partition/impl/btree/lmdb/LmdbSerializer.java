@@ -0,0 +1,71 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.util.Comparator;
+
+
+/**
+ * Converts the keys and values stored in an LMDB database to and from their
+ * byte[] representation.
+ *
+ * @param <T> The type of the serialized element
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LmdbSerializer<T>
+{
+    /**
+     * Serialize an element
+     *
+     * @param element The element to serialize
+     * @return The serialized element
+     * @throws IOException If the element can't be serialized
+     */
+    byte[] serialize( T element ) throws IOException;
+
+
+    /**
+     * Deserialize an element
+     *
+     * @param bytes The serialized element
+     * @return The deserialized element
+     * @throws IOException If the element can't be deserialized
+     */
+    T deserialize( byte[] bytes ) throws IOException;
+
+
+    /**
+     * @return The comparator used to order the deserialized elements, or null if
+     * the elements have no order
+     */
+    Comparator<T> getComparator();
+
+
+    /**
+     * Gives the comparator LMDB has to use to order the serialized elements when used
+     * as keys. When null, LMDB uses its native lexicographic byte order, which must
+     * then be consistent with {@link #getComparator()}.
+     *
+     * @return The comparator for serialized elements, or null
+     */
+    Comparator<byte[]> getBytesComparator();
+}
@@ -0,0 +1,886 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.cursor.SingletonCursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractTable;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.GetOp;
+import org.lmdbjava.LmdbException;
+import org.lmdbjava.PutFlags;
+import org.lmdbjava.SeekOp;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A LMDB Table. It extends the default Apache DS Table, when LMDB is the underlying
+ * database. Each table is a named database in the partition LMDB environment. When
+ * the table allows duplicate values, they are stored sorted (MDB_DUPSORT), and
+ * compared using their serialized form.
+ * <br>
+ * The operations are done in the partition write transaction if there is one, otherwise
+ * the reads are done in a short lived read transaction, and the writes are committed
+ * immediately.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LmdbTable<K, V> extends AbstractTable<K, V>
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LmdbTable.class );
+
+    /** The LMDB environment */
+    protected final LmdbEnvironment environment;
+
+    /** The LMDB database */
+    private final Dbi<ByteBuffer> dbi;
+
+    /** The key serializer */
+    private final LmdbSerializer<K> keySerializer;
+
+    /** The value serializer */
+    private final LmdbSerializer<V> valueSerializer;
+
+    /** The comparator LMDB uses for the keys, null if it uses their bytes */
+    private final Comparator<byte[]> bytesComparator;
+
+
+    /**
+     * Creates a new instance of LmdbTable.
+     *
+     * @param environment The LMDB environment
+     * @param schemaManager The SchemaManager
+     * @param name The Table name
+     * @param keySerializer The Key serializer
+     * @param valueSerializer The Value serializer
+     * @param allowDuplicates If the table allows duplicate values
+     */
+    public LmdbTable( LmdbEnvironment environment, SchemaManager schemaManager, String name,
+        LmdbSerializer<K> keySerializer, LmdbSerializer<V> valueSerializer, boolean allowDuplicates )
+    {
+        super( schemaManager, name, keySerializer.getComparator(), valueSerializer.getComparator() );
+        this.environment = environment;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.allowsDuplicates = allowDuplicates;
+        bytesComparator = keySerializer.getBytesComparator();
+
+        dbi = environment.openDbi( name, bytesComparator, allowDuplicates );
+    }
+
+
+    /**
+     * Gets the transaction to read the table in : the write transaction if there is
+     * one, the partition read transaction if it's still opened, a read transaction
+     * otherwise. It must be released with {@link #endRead(PartitionTxn, Txn)}.
+     *
+     * @param partitionTxn The transaction we are running in
+     * @return The transaction to use
+     */
+    Txn<ByteBuffer> beginRead( PartitionTxn partitionTxn )
+    {
+        LmdbPartitionWriteTxn writeTxn = environment.getWriteTxn( partitionTxn );
+
+        if ( writeTxn != null )
+        {
+            return writeTxn.getTxn();
+        }
+
+        if ( partitionTxn instanceof LmdbPartitionReadTxn )
+        {
+            LmdbPartitionReadTxn readTxn = ( LmdbPartitionReadTxn ) partitionTxn;
+
+            if ( readTxn.getEnvironment() == environment )
+            {
+                Txn<ByteBuffer> txn = readTxn.getTxn();
+
+                if ( txn != null )
+                {
+                    return txn;
+                }
+            }
+        }
+
+        return environment.acquireReadTxn();
+    }
+
+
+    /**
+     * Releases a transaction obtained with {@link #beginRead(PartitionTxn)}
+     *
+     * @param partitionTxn The transaction we are running in
+     * @param txn The transaction to release
+     */
+    void endRead( PartitionTxn partitionTxn, Txn<ByteBuffer> txn )
+    {
+        if ( ( partitionTxn instanceof LmdbPartitionReadTxn ) && ( ( LmdbPartitionReadTxn ) partitionTxn ).owns( txn ) )
+        {
+            // The partition read transaction will release it
+            return;
+        }
+
+        if ( txn.isReadOnly() )
+        {
+            environment.releaseReadTxn( txn );
+        }
+    }
+
+
+    /**
+     * Gets the write transaction the updates must be done in. If we aren't running in a
+     * write transaction, a new one is started, which will be committed by
+     * {@link #endWrite(Txn, boolean)}.
+     *
+     * @param partitionTxn The transaction we are running in
+     * @return The transaction to use
+     */
+    private Txn<ByteBuffer> beginWrite( PartitionTxn partitionTxn )
+    {
+        LmdbPartitionWriteTxn writeTxn = environment.getWriteTxn( partitionTxn );
+
+        if ( writeTxn != null )
+        {
+            return writeTxn.getTxn();
+        }
+
+        return environment.getEnv().txnWrite();
+    }
+
+
+    /**
+     * Ends an update. The transaction is committed if it has been started by
+     * {@link #beginWrite(PartitionTxn)}, and closed. It's left untouched if it's
+     * the partition write transaction.
+     *
+     * @param txn The transaction
+     * @param success If the update was successful
+     */
+    private void endWrite( Txn<ByteBuffer> txn, boolean success )
+    {
+        LmdbPartitionWriteTxn writeTxn = environment.getActiveWriteTxn();
+
+        if ( ( writeTxn != null ) && ( writeTxn.getTxn() == txn ) )
+        {
+            return;
+        }
+
+        try
+        {
+            if ( success )
+            {
+                txn.commit();
+            }
+        }
+        finally
+        {
+            txn.close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try
+        {
+            return dbi.get( txn, LmdbBuffers.key( keyBytes ) ) != null;
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn partitionTxn, K key, V value ) throws LdapException
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return false;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        byte[] valueBytes = serializeValue( value );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try
+        {
+            if ( allowsDuplicates )
+            {
+                try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+                {
+                    return cursor.get( LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ),
+                        SeekOp.MDB_GET_BOTH );
+                }
+            }
+            else
+            {
+                return Arrays.equals( valueBytes, LmdbBuffers.toBytes( dbi.get( txn, LmdbBuffers.key( keyBytes ) ) ) );
+            }
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            return cursor.get( LmdbBuffers.key( keyBytes ), GetOp.MDB_SET_RANGE );
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            if ( !cursor.get( LmdbBuffers.key( keyBytes ), GetOp.MDB_SET_RANGE ) )
+            {
+                // All the keys are lower than the given key
+                return cursor.last();
+            }
+
+            // Test for equality first since it satisfies both greater/less than
+            if ( compareKeys( LmdbBuffers.toBytes( cursor.key() ), keyBytes ) == 0 )
+            {
+                return true;
+            }
+
+            // The found key is greater, check if there is one before it
+            return cursor.prev();
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn partitionTxn, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_593 ) );
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        byte[] valueBytes = serializeValue( val );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            return cursor.get( LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ),
+                SeekOp.MDB_GET_BOTH_RANGE );
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn partitionTxn, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            throw new UnsupportedOperationException( I18n.err( I18n.ERR_593 ) );
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        byte[] valueBytes = serializeValue( val );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            // The key is positioned on its first (and lowest) value
+            if ( !cursor.get( LmdbBuffers.key( keyBytes ), GetOp.MDB_SET_KEY ) )
+            {
+                return false;
+            }
+
+            return LmdbBuffers.compare( LmdbBuffers.toBytes( cursor.val() ), valueBytes ) <= 0;
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V get( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+        byte[] valueBytes;
+
+        try
+        {
+            valueBytes = LmdbBuffers.toBytes( dbi.get( txn, LmdbBuffers.key( keyBytes ) ) );
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+
+        if ( valueBytes == null )
+        {
+            return null;
+        }
+
+        return deserializeValue( valueBytes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( PartitionTxn partitionTxn, K key, V value ) throws LdapException
+    {
+        if ( ( value == null ) || ( key == null ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_594 ) );
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        byte[] valueBytes = serializeValue( value );
+        Txn<ByteBuffer> txn = beginWrite( partitionTxn );
+        boolean success = false;
+
+        try
+        {
+            if ( allowsDuplicates )
+            {
+                // Don't store the same value twice
+                dbi.put( txn, LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ), PutFlags.MDB_NODUPDATA );
+            }
+            else
+            {
+                dbi.put( txn, LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ) );
+            }
+
+            success = true;
+        }
+        catch ( LmdbException le )
+        {
+            LOG.error( I18n.err( I18n.ERR_131, key, name ), le );
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endWrite( txn, success );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginWrite( partitionTxn );
+        boolean success = false;
+
+        try
+        {
+            // This removes all the values if we allow duplicates
+            dbi.delete( txn, LmdbBuffers.key( keyBytes ) );
+            success = true;
+        }
+        catch ( LmdbException le )
+        {
+            LOG.error( I18n.err( I18n.ERR_133, key, name ), le );
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endWrite( txn, success );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove( PartitionTxn partitionTxn, K key, V value ) throws LdapException
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        byte[] valueBytes = serializeValue( value );
+        Txn<ByteBuffer> txn = beginWrite( partitionTxn );
+        boolean success = false;
+
+        try
+        {
+            if ( allowsDuplicates )
+            {
+                dbi.delete( txn, LmdbBuffers.key( keyBytes ), LmdbBuffers.value( valueBytes ) );
+            }
+            else if ( Arrays.equals( valueBytes, LmdbBuffers.toBytes( dbi.get( txn, LmdbBuffers.key( keyBytes ) ) ) ) )
+            {
+                // We only remove the key if it's associated with the given value
+                dbi.delete( txn, LmdbBuffers.key( keyBytes ) );
+            }
+
+            success = true;
+        }
+        catch ( LmdbException le )
+        {
+            LOG.error( I18n.err( I18n.ERR_132, key, value, name ), le );
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endWrite( txn, success );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor()
+    {
+        return new LmdbCursor<>( this, null );
+    }
+
+
+    /**
+     * Creates a Cursor over all the tuples of this table, which will see the updates done
+     * in the given transaction if it's a write transaction.
+     *
+     * @param partitionTxn The transaction we are running in
+     * @return A Cursor over the table tuples
+     */
+    public Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn )
+    {
+        return new LmdbCursor<>( this, partitionTxn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        if ( !allowsDuplicates )
+        {
+            V value = get( partitionTxn, key );
+
+            if ( value == null )
+            {
+                return new EmptyCursor<>();
+            }
+
+            return new SingletonCursor<>( new Tuple<K, V>( key, value ) );
+        }
+
+        return new LmdbCursor<>( this, partitionTxn, key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<V> valueCursor( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        if ( !allowsDuplicates )
+        {
+            V value = get( partitionTxn, key );
+
+            if ( value == null )
+            {
+                return new EmptyCursor<>();
+            }
+
+            return new SingletonCursor<>( value );
+        }
+
+        return new LmdbValueCursor<>( new LmdbCursor<>( this, partitionTxn, key ), key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn partitionTxn ) throws LdapException
+    {
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try
+        {
+            return dbi.stat( txn ).entries;
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return 0;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            return has( partitionTxn, key ) ? 1 : 0;
+        }
+
+        byte[] keyBytes = serializeKey( key );
+        Txn<ByteBuffer> txn = beginRead( partitionTxn );
+
+        try ( org.lmdbjava.Cursor<ByteBuffer> cursor = dbi.openCursor( txn ) )
+        {
+            if ( cursor.get( LmdbBuffers.key( keyBytes ), GetOp.MDB_SET_KEY ) )
+            {
+                return cursor.count();
+            }
+
+            return 0;
+        }
+        catch ( LmdbException le )
+        {
+            throw new LdapOtherException( le.getMessage(), le );
+        }
+        finally
+        {
+            endRead( partitionTxn, txn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long greaterThanCount( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        // take a best guess
+        return Math.min( count( partitionTxn ), 10L );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lessThanCount( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        // take a best guess
+        return Math.min( count( partitionTxn ), 10L );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( PartitionTxn partitionTxn ) throws LdapException
+    {
+        // The database is closed with the environment
+    }
+
+
+    /**
+     * @return The LMDB environment
+     */
+    LmdbEnvironment getEnvironment()
+    {
+        return environment;
+    }
+
+
+    /**
+     * @return The LMDB database
+     */
+    Dbi<ByteBuffer> getDbi()
+    {
+        return dbi;
+    }
+
+
+    /**
+     * Compares two serialized keys the way LMDB does
+     *
+     * @param key1 The first key
+     * @param key2 The second key
+     * @return a negative value, 0 or a positive value if the first key is lower, equal, or greater
+     * than the second key
+     */
+    int compareKeys( byte[] key1, byte[] key2 )
+    {
+        if ( bytesComparator == null )
+        {
+            return LmdbBuffers.compare( key1, key2 );
+        }
+
+        return bytesComparator.compare( key1, key2 );
+    }
+
+
+    /**
+     * Serialize a key
+     *
+     * @param key The key to serialize
+     * @return The serialized key
+     * @throws LdapException If the key can't be serialized
+     */
+    byte[] serializeKey( K key ) throws LdapException
+    {
+        try
+        {
+            return keySerializer.serialize( key );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Serialize a value
+     *
+     * @param value The value to serialize
+     * @return The serialized value
+     * @throws LdapException If the value can't be serialized
+     */
+    byte[] serializeValue( V value ) throws LdapException
+    {
+        try
+        {
+            return valueSerializer.serialize( value );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Deserialize a key
+     *
+     * @param bytes The serialized key
+     * @return The key
+     * @throws LdapException If the key can't be deserialized
+     */
+    K deserializeKey( byte[] bytes ) throws LdapException
+    {
+        try
+        {
+            return keySerializer.deserialize( bytes );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Deserialize a value
+     *
+     * @param bytes The serialized value
+     * @return The value
+     * @throws LdapException If the value can't be deserialized
+     */
+    V deserializeValue( byte[] bytes ) throws LdapException
+    {
+        try
+        {
+            return valueSerializer.deserialize( bytes );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "LMDB table :\n" ).append( super.toString() );
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Serialize;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Serialize and deserialize a ParentIdAndRdn. The serialized form starts with the
+ * elements the ParentIdAndRdn are ordered on (the parent ID and the RDNs normalized
+ * names), so that LMDB can compare two keys without deserializing the RDNs.
+ * <br><br>
+ * <b>This class must *not* be used outside of the server.</b>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParentIdAndRdnSerializer implements LmdbSerializer<ParentIdAndRdn>
+{
+    /** the logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ParentIdAndRdnSerializer.class );
+
+    /** The ParentIdAndRdn comparator */
+    private static final Comparator<ParentIdAndRdn> COMPARATOR = new Comparator<ParentIdAndRdn>()
+    {
+        @Override
+        public int compare( ParentIdAndRdn parentIdAndRdn1, ParentIdAndRdn parentIdAndRdn2 )
+        {
+            return parentIdAndRdn1.compareTo( parentIdAndRdn2 );
+        }
+    };
+
+    /**
+     * The comparator registered in LMDB. It reads the parent ID, the number of RDNs and
+     * the RDNs normalized names from the serialized form, which is enough to order
+     * the ParentIdAndRdn the same way {@link ParentIdAndRdn#compareTo(ParentIdAndRdn)} does.
+     */
+    private static final Comparator<byte[]> BYTES_COMPARATOR = new Comparator<byte[]>()
+    {
+        @Override
+        public int compare( byte[] bytes1, byte[] bytes2 )
+        {
+            // The parent IDs first
+            byte[] parentId1 = Serialize.deserializeBytes( bytes1, 0 );
+            byte[] parentId2 = Serialize.deserializeBytes( bytes2, 0 );
+
+            int comp = Strings.utf8ToString( parentId1 ).compareTo( Strings.utf8ToString( parentId2 ) );
+
+            if ( comp != 0 )
+            {
+                return comp;
+            }
+
+            // Then the number of RDNs. A ParentIdAndRdn without RDN, used to browse the
+            // children of a given entry, is always before them.
+            int pos1 = 4 + parentId1.length;
+            int pos2 = 4 + parentId2.length;
+            int nbRdns1 = Serialize.deserializeInt( bytes1, pos1 );
+            int nbRdns2 = Serialize.deserializeInt( bytes2, pos2 );
+
+            if ( nbRdns1 != nbRdns2 )
+            {
+                return nbRdns1 - nbRdns2;
+            }
+
+            pos1 += 4;
+            pos2 += 4;
+
+            // And finally the RDNs normalized names
+            for ( int i = 0; i < nbRdns1; i++ )
+            {
+                byte[] normName1 = Serialize.deserializeBytes( bytes1, pos1 );
+                byte[] normName2 = Serialize.deserializeBytes( bytes2, pos2 );
+
+                comp = Strings.utf8ToString( normName1 ).compareTo( Strings.utf8ToString( normName2 ) );
+
+                if ( comp != 0 )
+                {
+                    return comp;
+                }
+
+                pos1 += 4 + normName1.length;
+                pos2 += 4 + normName2.length;
+            }
+
+            return 0;
+        }
+    };
+
+    /** The schemaManager reference */
+    private final SchemaManager schemaManager;
+
+
+    /**
+     * Creates a new instance of ParentIdAndRdnSerializer.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     */
+    public ParentIdAndRdnSerializer( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * This is the place where we serialize ParentIdAndRdn. The format is the following :<br>
+     * <ul>
+     * <li>the parent ID</li>
+     * <li>the number of RDNs</li>
+     * <li>the normalized name of each RDN</li>
+     * <li>each RDN</li>
+     * <li>the number of children</li>
+     * <li>the number of descendants</li>
+     * </ul>
+     * 
+     * @param parentIdAndRdn The element to serialize
+     * @return the byte[] containing the serialized element
+     * @throws IOException If the serialization failed
+     */
+    @Override
+    public byte[] serialize( ParentIdAndRdn parentIdAndRdn ) throws IOException
+    {
+        int bufferSize = 1024;
+
+        while ( bufferSize > 0 )
+        {
+            // allocate a big enough buffer for most of the cases
+            byte[] buffer = new byte[bufferSize];
+
+            try
+            {
+                // The parentId first
+                int pos = Serialize.serialize( Strings.getBytesUtf8( parentIdAndRdn.getParentId() ), buffer, 0 );
+
+                // The number of RDN (we may have more than one)
+                Rdn[] rdns = parentIdAndRdn.getRdns();
+
+                if ( rdns == null )
+                {
+                    rdns = new Rdn[0];
+                }
+
+                pos = Serialize.serialize( rdns.length, buffer, pos );
+
+                // The RDNs normalized names, used to order the keys
+                for ( Rdn rdn : rdns )
+                {
+                    String normName = rdn.getNormName();
+
+                    if ( normName == null )
+                    {
+                        normName = rdn.getName();
+                    }
+
+                    pos = Serialize.serialize( Strings.getBytesUtf8( normName ), buffer, pos );
+                }
+
+                // The RDNs themselves
+                for ( Rdn rdn : rdns )
+                {
+                    pos = rdn.serialize( buffer, pos );
+                }
+
+                // The number of children
+                pos = Serialize.serialize( parentIdAndRdn.getNbChildren(), buffer, pos );
+
+                // The number of descendants
+                pos = Serialize.serialize( parentIdAndRdn.getNbDescendants(), buffer, pos );
+
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( ">------------------------------------------------" );
+                    LOG.debug( "Serialize {}", parentIdAndRdn );
+                }
+
+                // Copy the serialized data
+                byte[] result = new byte[pos];
+                System.arraycopy( buffer, 0, result, 0, pos );
+
+                return result;
+            }
+            catch ( ArrayIndexOutOfBoundsException aioobe )
+            {
+                // Bad luck, try with a bigger buffer
+                bufferSize += bufferSize;
+            }
+        }
+
+        // No reason we should reach this point
+        throw new IOException( I18n.err( I18n.ERR_134, parentIdAndRdn ) );
+    }
+
+
+    /**
+     *  Deserialize a ParentIdAndRdn.
+     *  
+     *  @param bytes the byte array containing the serialized ParentIdAndRdn
+     *  @return An instance of a ParentIdAndRdn object 
+     *  @throws IOException if we can't deserialize the ParentIdAndRdn
+     */
+    @Override
+    public ParentIdAndRdn deserialize( byte[] bytes ) throws IOException
+    {
+        try
+        {
+            ParentIdAndRdn parentIdAndRdn = new ParentIdAndRdn();
+
+            // Read the parent ID
+            byte[] parentIdBytes = Serialize.deserializeBytes( bytes, 0 );
+            int pos = 4 + parentIdBytes.length;
+            parentIdAndRdn.setParentId( Strings.utf8ToString( parentIdBytes ) );
+
+            // Read the number of rdns, if any
+            int nbRdns = Serialize.deserializeInt( bytes, pos );
+            pos += 4;
+
+            // Skip the normalized names
+            for ( int i = 0; i < nbRdns; i++ )
+            {
+                pos += 4 + Serialize.deserializeInt( bytes, pos );
+            }
+
+            Rdn[] rdns = new Rdn[nbRdns];
+
+            for ( int i = 0; i < nbRdns; i++ )
+            {
+                Rdn rdn = new Rdn( schemaManager );
+                pos = rdn.deserialize( bytes, pos );
+                rdns[i] = rdn;
+            }
+
+            parentIdAndRdn.setRdns( rdns );
+
+            // Read the number of children and descendants
+            int nbChildren = Serialize.deserializeInt( bytes, pos );
+            pos += 4;
+
+            int nbDescendants = Serialize.deserializeInt( bytes, pos );
+
+            parentIdAndRdn.setNbChildren( nbChildren );
+            parentIdAndRdn.setNbDescendants( nbDescendants );
+
+            return parentIdAndRdn;
+        }
+        catch ( LdapInvalidAttributeValueException liave )
+        {
+            LOG.error( I18n.err( I18n.ERR_134, liave.getLocalizedMessage() ) );
+            throw new IOException( liave.getLocalizedMessage(), liave );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<ParentIdAndRdn> getComparator()
+    {
+        return COMPARATOR;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<byte[]> getBytesComparator()
+    {
+        return BYTES_COMPARATOR;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * A comparator on serialized elements, which deserializes them and delegates the
+ * comparison to the element comparator. It is registered in LMDB for the keys which
+ * can't be ordered using their byte representation.
+ *
+ * @param <T> The type of the serialized element
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SerializedComparator<T> implements Comparator<byte[]>
+{
+    /** The serializer used to read back the elements */
+    private final LmdbSerializer<T> serializer;
+
+    /** The comparator used on the deserialized elements */
+    private final Comparator<T> comparator;
+
+
+    /**
+     * Creates a new instance of SerializedComparator.
+     *
+     * @param serializer The element serializer
+     * @param comparator The element comparator
+     */
+    public SerializedComparator( LmdbSerializer<T> serializer, Comparator<T> comparator )
+    {
+        this.serializer = serializer;
+        this.comparator = comparator;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compare( byte[] bytes1, byte[] bytes2 )
+    {
+        try
+        {
+            return comparator.compare( serializer.deserialize( bytes1 ), serializer.deserialize( bytes2 ) );
+        }
+        catch ( IOException ioe )
+        {
+            // This is called back from LMDB, we can't throw a checked exception here
+            throw new IllegalStateException( I18n.err( I18n.ERR_134, ioe.getLocalizedMessage() ), ioe );
+        }
+    }
+}
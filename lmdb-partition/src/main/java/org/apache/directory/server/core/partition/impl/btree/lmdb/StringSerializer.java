@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.lmdb;
+
+
+import java.util.Comparator;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Serialize and deserialize a String, using its UTF-8 encoding.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StringSerializer implements LmdbSerializer<String>
+{
+    /** The natural order comparator */
+    private static final Comparator<String> NATURAL_ORDER = new Comparator<String>()
+    {
+        @Override
+        public int compare( String string1, String string2 )
+        {
+            return string1.compareTo( string2 );
+        }
+    };
+
+    /**
+     * A serializer for Strings using their natural order. It is meant to be used for
+     * ASCII data, like the entry IDs, for which the UTF-8 byte order is the natural order.
+     */
+    public static final StringSerializer INSTANCE = new StringSerializer();
+
+    /** The String comparator */
+    private final Comparator<String> comparator;
+
+    /** The comparator registered in LMDB, if the natural byte order is not enough */
+    private final Comparator<byte[]> bytesComparator;
+
+
+    /**
+     * Creates a StringSerializer using the native LMDB byte order.
+     */
+    private StringSerializer()
+    {
+        comparator = NATURAL_ORDER;
+        bytesComparator = null;
+    }
+
+
+    /**
+     * Creates a StringSerializer which orders the Strings using the given comparator.
+     *
+     * @param comparator The String comparator
+     */
+    public StringSerializer( Comparator<String> comparator )
+    {
+        this.comparator = comparator;
+        bytesComparator = new SerializedComparator<>( this, comparator );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( String element )
+    {
+        return Strings.getBytesUtf8( element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String deserialize( byte[] bytes )
+    {
+        return Strings.utf8ToString( bytes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<String> getComparator()
+    {
+        return comparator;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<byte[]> getBytesComparator()
+    {
+        return bytesComparator;
+    }
+}
@@ -56,6 +56,7 @@ import org.apache.directory.server.core.api.partition.PartitionReadTxn;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
 import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.EntryCache;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
@@ -66,8 +67,6 @@ import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 
 
 /**
@@ -95,7 +94,7 @@ public class MavibotPartition extends AbstractBTreePartition
     private RecordManager recordMan;
 
     /** the entry cache */
-    private Cache< String, Entry > entryCache;
+    private EntryCache entryCache;
 
 
     public MavibotPartition( SchemaManager schemaManager, DnFactory dnFactory )
@@ -229,7 +228,7 @@ public class MavibotPartition extends AbstractBTreePartition
                         deleteUnusedIndexFiles( allIndices, allIndexDbFiles );
             */
 
-            entryCache = Caffeine.newBuilder().maximumSize( cacheSize ).build();
+            entryCache = createEntryCache();
 
             // We are done !
             initialized = true;
@@ -320,7 +319,7 @@ public class MavibotPartition extends AbstractBTreePartition
         {
             if ( entryCache != null )
             {
-                entryCache.invalidateAll();
+                entryCache.close();
             }
         }
 
@@ -444,7 +443,7 @@ public class MavibotPartition extends AbstractBTreePartition
     @Override
     public Entry lookupCache( String id )
     {
-        return ( entryCache != null ) ? entryCache.getIfPresent( id ) : null;
+        return ( entryCache != null ) ? entryCache.get( id ) : null;
     }
 
 
@@ -492,8 +491,18 @@ public class MavibotPartition extends AbstractBTreePartition
             else if ( ( opCtx instanceof MoveOperationContext ) || ( opCtx instanceof MoveAndRenameOperationContext )
                 || ( opCtx instanceof RenameOperationContext ) )
             {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
+                // Only the renamed entry has changed : its descendants are cached by ID,
+                // and get their new DN when they are fetched
+                Entry entry = opCtx.getEntry();
+
+                if ( ( entry != null ) && entry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
+                {
+                    entryCache.invalidate( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+                }
+                else
+                {
+                    entryCache.invalidateAll();
+                }
             }
             else if ( opCtx instanceof DeleteOperationContext )
             {
@@ -531,6 +540,6 @@ public class MavibotPartition extends AbstractBTreePartition
     @Override
     public PartitionWriteTxn beginWriteTransaction()
     {
-        return new PartitionWriteTxn();
+        return new MavibotPartitionWriteTxn( entryCache );
     }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.mavibot;
+
+import java.io.IOException;
+
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+import org.apache.directory.server.core.partition.impl.btree.EntryCache;
+
+/**
+ * The Mavibot partition write transaction. Mavibot 1.0 applies every B-tree
+ * update in its own revision, so all the updates done by an operation (master
+ * table and indexes) are already in the file when we reach the commit, and they
+ * can't be rolled back. The commit has nothing left to do, the abort drops the
+ * entry cache so that the entries it holds can't differ from the stored ones.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MavibotPartitionWriteTxn extends PartitionWriteTxn
+{
+    /** The partition entry cache */
+    private EntryCache entryCache;
+
+    /** Tells if the transaction has been committed or aborted */
+    private boolean closed = false;
+
+    /**
+     * Create an instance of MavibotPartitionWriteTxn
+     *
+     * @param entryCache The partition entry cache
+     */
+    public MavibotPartitionWriteTxn( EntryCache entryCache )
+    {
+        this.entryCache = entryCache;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        closed = true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+
+        // The B-tree revisions that have already been written can't be rolled back,
+        // but we must not keep serving cached entries that might not match them
+        if ( entryCache != null )
+        {
+            entryCache.invalidateAll();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        commit();
+    }
+}
@@ -747,6 +747,32 @@ public class MavibotStoreTest
     }
 
 
+    @Test
+    public void testWriteTxnCommitAndAbort() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+        String id = store.getEntryId( partitionTxn, dn );
+        Modification add = new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, SN_AT, "Walker" );
+
+        PartitionTxn writeTxn = store.beginWriteTransaction();
+        assertFalse( writeTxn.isClosed() );
+        store.modify( writeTxn, dn, add );
+        writeTxn.commit();
+        assertTrue( writeTxn.isClosed() );
+
+        // The committed modification is visible, and the entry is cached
+        store.fetch( partitionTxn, id, dn );
+        assertNotNull( store.lookupCache( id ) );
+
+        // An aborted transaction must not leave a cached entry behind
+        writeTxn = store.beginWriteTransaction();
+        writeTxn.abort();
+        assertTrue( writeTxn.isClosed() );
+        assertNull( store.lookupCache( id ) );
+        assertTrue( store.fetch( partitionTxn, id, dn ).get( "sn" ).contains( "Walker" ) );
+    }
+
+
     @Test
     public void testModifyReplace() throws Exception
     {
@@ -21,6 +21,7 @@ package org.apache.directory.server.ldap;
 
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -29,6 +30,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.net.ssl.KeyManagerFactory;
 
@@ -144,6 +147,9 @@ public class LdapServer extends DirectoryBackedService
     /** The default maximum time limit. */
     private static final int MAX_TIME_LIMIT_DEFAULT = 10000;
 
+    /** The default maximum number of update requests buffered in a transaction. */
+    public static final int MAX_TRANSACTION_REQUESTS_DEFAULT = 1000;
+
     /** The default service pid. */
     private static final String SERVICE_PID_DEFAULT = "org.apache.directory.server.ldap";
 
@@ -171,6 +177,9 @@ public class LdapServer extends DirectoryBackedService
     /** The maximum size for an incoming PDU */
     private int maxPDUSize = Integer.MAX_VALUE;
 
+    /** The maximum number of update requests buffered in a transaction (RFC 5805) */
+    private int maxTransactionRequests = MAX_TRANSACTION_REQUESTS_DEFAULT;
+
     /** If LDAPS is activated : the external Keystore file, if defined */
     private String keystoreFile;
 
@@ -240,6 +249,15 @@ public class LdapServer extends DirectoryBackedService
 
     private List<IoFilterChainBuilder> chainBuilders = new ArrayList<>();
 
+    /** Tells if each request is processed by its own thread, instead of a thread from a bounded pool */
+    private boolean threadPerRequest;
+
+    /** The executors processing the requests, one per transport */
+    private List<ExecutorService> requestExecutors = new ArrayList<>();
+
+    /** Tells if we have disabled the pooling of the operation contexts of the DirectoryService */
+    private boolean operationContextPoolingDisabled;
+
     /** The handler responsible for the replication */
     private ReplicationRequestHandler replicationReqHandler;
 
@@ -465,10 +483,11 @@ public class LdapServer extends DirectoryBackedService
                 .getProtocolCodecFactory() ) );
 
             // Now inject an ExecutorFilter for the write operations
-            // We use the same number of thread than the number of IoProcessor
-            // (NOTE : this has to be double checked)
+            ExecutorService requestExecutor = createRequestExecutor( transport );
+            requestExecutors.add( requestExecutor );
+
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+                requestExecutor, IoEventType.MESSAGE_RECEIVED ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -588,12 +607,71 @@ public class LdapServer extends DirectoryBackedService
         {
             LOG.warn( "Failed to sent NoD.", e );
         }
+        finally
+        {
+            // Let the pending requests complete, but don't accept new ones
+            for ( ExecutorService requestExecutor : requestExecutors )
+            {
+                requestExecutor.shutdown();
+            }
+
+            requestExecutors.clear();
+
+            if ( operationContextPoolingDisabled )
+            {
+                getDirectoryService().setOperationContextPooling( true );
+                operationContextPoolingDisabled = false;
+            }
+        }
 
         started = false;
         LOG.info( "Ldap service stopped." );
     }
 
 
+    /**
+     * Creates the executor processing the requests received on a transport. By default,
+     * a bounded pool of threads is used. If each request has to be processed by its own
+     * thread, we use virtual threads when the JVM supports them. Otherwise, we fall back
+     * to the bounded pool : a platform thread per request would let a burst of requests
+     * create an unlimited number of threads.
+     *
+     * @param transport The transport
+     * @return The executor to use
+     */
+    private ExecutorService createRequestExecutor( Transport transport )
+    {
+        if ( !threadPerRequest )
+        {
+            // We use the same number of thread than the number of IoProcessor
+            // (NOTE : this has to be double checked)
+            return new UnorderedThreadPoolExecutor( transport.getNbThreads() );
+        }
+
+        try
+        {
+            // The virtual threads are only available starting with Java 21
+            Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            LOG.info( "The LDAP requests received on port {} will be processed by virtual threads",
+                transport.getPort() );
+
+            // A virtual thread never processes a second operation, it would never reuse a pooled context
+            getDirectoryService().setOperationContextPooling( false );
+            operationContextPoolingDisabled = true;
+
+            return ( ExecutorService ) factory.invoke( null );
+        }
+        catch ( ReflectiveOperationException roe )
+        {
+            LOG.info( "The virtual threads are not available, the LDAP requests received on port {} "
+                + "will be processed by a pool of {} threads", transport.getPort(), transport.getNbThreads() );
+
+            return new UnorderedThreadPoolExecutor( transport.getNbThreads() );
+        }
+    }
+
+
     private void startNetwork( Transport transport, IoFilterChainBuilder chainBuilder ) throws Exception
     {
         if ( transport.getBackLog() < 0 )
@@ -850,6 +928,35 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Sets the mode used to process the requests. When set to true, each request is
+     * processed by its own virtual thread when the JVM supports them (Java 21 and later),
+     * so that slow operations don't prevent the other sessions requests from being processed.
+     * Otherwise, the requests are processed by a pool of threads, which size is the
+     * transport's number of threads. This must be set before the server is started.
+     * <br>
+     * The JDBM tables, the AVL tables and the off-heap entry cache protect their data with
+     * synchronized blocks. Before Java 24, a virtual thread blocked or doing I/O in such a
+     * block pins its carrier thread, so the requests reading a JDBM partition don't scale
+     * beyond the number of carrier threads.
+     *
+     * @param threadPerRequest true to process each request in its own thread
+     */
+    public void setThreadPerRequest( boolean threadPerRequest )
+    {
+        this.threadPerRequest = threadPerRequest;
+    }
+
+
+    /**
+     * @return true if each request is processed in its own thread
+     */
+    public boolean isThreadPerRequest()
+    {
+        return threadPerRequest;
+    }
+
+
     /**
      * Gets whether or not TLS secured connections are required to perform
      * operations on this LdapServer.
@@ -1675,6 +1782,35 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The maximum number of update requests a transaction can buffer
+     */
+    public int getMaxTransactionRequests()
+    {
+        return maxTransactionRequests;
+    }
+
+
+    /**
+     * Set the maximum number of update requests a transaction (RFC 5805) can buffer. The
+     * requests sent once the transaction is full are rejected with an adminLimitExceeded result.
+     * The partitions updated by a transaction are locked while its requests are applied, so
+     * this limit also bounds the time their reads and updates wait for a commit.
+     *
+     * @param maxTransactionRequests A positive number of requests. A negative or null value will
+     * be transformed to {@link #MAX_TRANSACTION_REQUESTS_DEFAULT}
+     */
+    public void setMaxTransactionRequests( int maxTransactionRequests )
+    {
+        if ( maxTransactionRequests <= 0 )
+        {
+            maxTransactionRequests = MAX_TRANSACTION_REQUESTS_DEFAULT;
+        }
+
+        this.maxTransactionRequests = maxTransactionRequests;
+    }
+
+
     /**
      * @return the number of seconds pinger thread sleeps between subsequent pings
      */
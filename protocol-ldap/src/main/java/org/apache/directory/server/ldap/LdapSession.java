@@ -22,8 +22,11 @@ package org.apache.directory.server.ldap;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
@@ -33,6 +36,8 @@ import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.message.AbandonableRequest;
 import org.apache.directory.api.ldap.model.message.BindStatus;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.LdapPrincipal;
@@ -96,6 +101,12 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The identifier of the pending transaction (RFC 5805), if any */
+    private byte[] transactionId;
+
+    /** The update requests buffered in the pending transaction */
+    private List<Request> transactionRequests;
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -581,6 +592,78 @@ public class LdapSession
     }
 
 
+    /**
+     * Starts a transaction (RFC 5805) : the update requests carrying its identifier
+     * will be buffered until the transaction is ended.
+     *
+     * @param transactionId The transaction identifier
+     * @return <tt>false</tt> if a transaction is already pending in this session
+     */
+    public synchronized boolean startTransaction( byte[] transactionId )
+    {
+        if ( this.transactionId != null )
+        {
+            return false;
+        }
+
+        this.transactionId = transactionId;
+        transactionRequests = new ArrayList<>();
+
+        return true;
+    }
+
+
+    /**
+     * Buffers an update request in the pending transaction
+     *
+     * @param transactionId The identifier of the transaction the request is part of
+     * @param request The update request
+     * @param maxRequests The maximum number of requests a transaction can buffer
+     * @return {@link ResultCodeEnum#SUCCESS} if the request has been buffered,
+     * {@link ResultCodeEnum#UNWILLING_TO_PERFORM} if there is no pending transaction with this
+     * identifier, or {@link ResultCodeEnum#ADMIN_LIMIT_EXCEEDED} if the transaction is full
+     */
+    public synchronized ResultCodeEnum addTransactionRequest( byte[] transactionId, Request request, int maxRequests )
+    {
+        if ( ( this.transactionId == null ) || !Arrays.equals( this.transactionId, transactionId ) )
+        {
+            return ResultCodeEnum.UNWILLING_TO_PERFORM;
+        }
+
+        if ( transactionRequests.size() >= maxRequests )
+        {
+            return ResultCodeEnum.ADMIN_LIMIT_EXCEEDED;
+        }
+
+        transactionRequests.add( request );
+
+        return ResultCodeEnum.SUCCESS;
+    }
+
+
+    /**
+     * Ends the pending transaction. It's up to the caller to apply or drop the returned
+     * requests.
+     *
+     * @param transactionId The identifier of the ended transaction
+     * @return The buffered update requests, in the order they were received, or null if
+     * there is no pending transaction with this identifier
+     */
+    public synchronized List<Request> endTransaction( byte[] transactionId )
+    {
+        if ( ( this.transactionId == null ) || !Arrays.equals( this.transactionId, transactionId ) )
+        {
+            return null;
+        }
+
+        List<Request> requests = transactionRequests;
+        this.transactionId = null;
+        transactionRequests = null;
+
+        return requests;
+    }
+
+
     /**
      * The principal and remote address associated with this session.
      * @see Object#toString()
@@ -22,20 +22,28 @@ package org.apache.directory.server.ldap.handlers;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecification;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapReferralException;
 import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.AddRequest;
 import org.apache.directory.api.ldap.model.message.BindRequest;
 import org.apache.directory.api.ldap.model.message.BindResponse;
 import org.apache.directory.api.ldap.model.message.BindResponseImpl;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.Referral;
 import org.apache.directory.api.ldap.model.message.ReferralImpl;
 import org.apache.directory.api.ldap.model.message.Request;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
@@ -206,7 +214,12 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
             if ( ldapSession.isAuthenticated() )
             {
                 coreSession = ldapSession.getCoreSession();
-                handle( ldapSession, message );
+
+                if ( !bufferTransactionRequest( ldapSession, message ) )
+                {
+                    handle( ldapSession, message );
+                }
+
                 return;
             }
 
@@ -221,11 +234,107 @@ public abstract class LdapRequestHandler<T extends Request> implements MessageHa
                 return;
             }
 
-            handle( ldapSession, message );
+            if ( !bufferTransactionRequest( ldapSession, message ) )
+            {
+                handle( ldapSession, message );
+            }
         }
     }
 
 
+    /**
+     * Buffers an update request carrying a TransactionSpecification control (RFC 5805) in
+     * the pending transaction of the session. The request is checked first the way its
+     * handler would do it : a request which can't be applied locally (Root DSE rename, entry
+     * under a referral) is rejected, and so is a request exceeding the transaction size limit.
+     * Otherwise the client is told the request has been accepted, it will be applied when the
+     * transaction is committed.
+     *
+     * @param ldapSession The associated session
+     * @param message The received request
+     * @return <tt>true</tt> if the request has been handled as part of a transaction
+     */
+    private boolean bufferTransactionRequest( LdapSession ldapSession, T message )
+    {
+        Dn dn;
+        Dn newSuperiorDn = null;
+
+        if ( message instanceof AddRequest )
+        {
+            dn = ( ( AddRequest ) message ).getEntryDn();
+        }
+        else if ( message instanceof ModifyRequest )
+        {
+            dn = ( ( ModifyRequest ) message ).getName();
+        }
+        else if ( message instanceof DeleteRequest )
+        {
+            dn = ( ( DeleteRequest ) message ).getName();
+        }
+        else if ( message instanceof ModifyDnRequest )
+        {
+            dn = ( ( ModifyDnRequest ) message ).getName();
+            newSuperiorDn = ( ( ModifyDnRequest ) message ).getNewSuperior();
+        }
+        else
+        {
+            return false;
+        }
+
+        Control control = message.getControl( TransactionSpecification.OID );
+
+        if ( !( control instanceof TransactionSpecification ) )
+        {
+            return false;
+        }
+
+        ResultResponseRequest request = ( ResultResponseRequest ) message;
+        ResultResponse response = request.getResultResponse();
+        LdapResult result = response.getLdapResult();
+
+        if ( ( message instanceof ModifyDnRequest ) && dn.isEmpty() )
+        {
+            // it is not allowed to modify the name of the Root DSE
+            result.setResultCode( ResultCodeEnum.PROTOCOL_ERROR );
+            result.setDiagnosticMessage( "Modify Dn is not allowed on Root DSE." );
+            ldapSession.getIoSession().write( response );
+
+            return true;
+        }
+
+        try
+        {
+            getLdapServer().getDirectoryService().getOperationManager().checkReferral( dn, newSuperiorDn,
+                message.hasControl( ManageDsaIT.OID ) );
+        }
+        catch ( Exception e )
+        {
+            handleException( ldapSession, request, response, e );
+
+            return true;
+        }
+
+        ResultCodeEnum resultCode = ldapSession.addTransactionRequest(
+            ( ( TransactionSpecification ) control ).getIdentifier(), message,
+            getLdapServer().getMaxTransactionRequests() );
+        result.setResultCode( resultCode );
+
+        if ( resultCode == ResultCodeEnum.UNWILLING_TO_PERFORM )
+        {
+            result.setDiagnosticMessage( "Unknown transaction identifier" );
+        }
+        else if ( resultCode == ResultCodeEnum.ADMIN_LIMIT_EXCEEDED )
+        {
+            result.setDiagnosticMessage( "The transaction can't buffer more than "
+                + getLdapServer().getMaxTransactionRequests() + " requests" );
+        }
+
+        ldapSession.getIoSession().write( response );
+
+        return true;
+    }
+
+
     /**
      * Handle a Ldap message associated with a session
      *
@@ -20,25 +20,52 @@
 package org.apache.directory.server.ldap.handlers.extended;
 
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequest;
 import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionResponse;
 import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionResponseImpl;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.UpdateControls;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapProtocolErrorException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.ldap.ExtendedOperationHandler;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.handlers.request.ModifyDnRequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * An handler to manage the EndTransaction extended request operation
+ * An handler to manage the EndTransaction extended request operation. On a commit, the
+ * update requests buffered in the transaction are applied in the order they were received,
+ * in a single write transaction per partition, and each partition is committed (and its
+ * log synced) once. The partitions the requests update are locked in the meantime, so their
+ * reads and updates wait for the whole transaction, the other partitions remain available. If
+ * one of the requests fails, all the partitions are rolled back, and the response gives the
+ * failed request's message ID.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -72,12 +99,25 @@ public class EndTransactionHandler implements ExtendedOperationHandler<ExtendedR
     {
         LOG.debug( "EndTransaction requested" );
         
-        // We need to create a new transaction ID for the current session.
-        // If the current session is already processing a transaction, we will return an error
-        CoreSession coreSession = session.getCoreSession();
-        coreSession.endSessionTransaction( ( ( EndTransactionRequest ) req ).getCommit() );
+        EndTransactionRequest endTransactionRequest = ( EndTransactionRequest ) req;
+        EndTransactionResponse endTransactionResponse = new EndTransactionResponseImpl( req.getMessageId(),
+            ResultCodeEnum.SUCCESS );
+        List<Request> requests = session.endTransaction( endTransactionRequest.getTransactionId() );
 
-        EndTransactionResponse endTransactionResponse = new EndTransactionResponseImpl( req.getMessageId() );
+        if ( requests == null )
+        {
+            endTransactionResponse.getLdapResult().setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            endTransactionResponse.getLdapResult().setDiagnosticMessage( "Unknown transaction identifier" );
+        }
+        else if ( endTransactionRequest.getCommit() )
+        {
+            commit( session.getCoreSession(), requests, endTransactionResponse );
+        }
+        else
+        {
+            // Nothing has been written yet, just drop the requests
+            LOG.debug( "Transaction aborted, {} requests dropped", requests.size() );
+        }
 
         // Store the StartTransaction request name in the response, to be able to
         // encode the response properly.
@@ -90,6 +130,143 @@ public class EndTransactionHandler implements ExtendedOperationHandler<ExtendedR
     }
 
 
+    /**
+     * Applies the buffered requests in a session transaction, and commits it if they all succeed.
+     */
+    private void commit( CoreSession coreSession, List<Request> requests,
+        EndTransactionResponse endTransactionResponse ) throws LdapException
+    {
+        OperationManager operationManager = coreSession.getDirectoryService().getOperationManager();
+        Request current = null;
+        List<Dn> dns = new ArrayList<>( requests.size() );
+
+        for ( Request request : requests )
+        {
+            dns.add( getDn( request ) );
+
+            if ( ( request instanceof ModifyDnRequest ) && ( ( ModifyDnRequest ) request ).getNewSuperior() != null )
+            {
+                dns.add( ( ( ModifyDnRequest ) request ).getNewSuperior() );
+            }
+        }
+
+        // The JDBM partitions have a single transaction : we don't let another update of the
+        // partitions we update commit our pending changes before we are done.
+        List<Dn> lockedSuffixes = operationManager.lockWrite( dns );
+
+        try
+        {
+            coreSession.beginSessionTransaction();
+
+            try
+            {
+                for ( Request request : requests )
+                {
+                    current = request;
+                    apply( coreSession, request );
+                }
+            }
+            catch ( LdapException le )
+            {
+                LOG.debug( "Transaction rolled back on request {}", current.getMessageId(), le );
+                coreSession.endSessionTransaction( false );
+
+                LdapResult result = endTransactionResponse.getLdapResult();
+                result.setResultCode( ( le instanceof LdapOperationException )
+                    ? ( ( LdapOperationException ) le ).getResultCode()
+                    : ResultCodeEnum.getBestEstimate( le, current.getType() ) );
+                result.setDiagnosticMessage( le.getMessage() );
+                endTransactionResponse.setFailedMessageId( current.getMessageId() );
+
+                return;
+            }
+
+            coreSession.endSessionTransaction( true );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            operationManager.unlockWrite( lockedSuffixes );
+        }
+
+        // Return the controls produced by the updates
+        for ( Request request : requests )
+        {
+            List<Control> controls = new ArrayList<>(
+                ( ( ResultResponseRequest ) request ).getResultResponse().getControls().values() );
+
+            if ( !controls.isEmpty() )
+            {
+                UpdateControls updateControls = new UpdateControls();
+                updateControls.setMessageId( request.getMessageId() );
+                updateControls.setControls( controls );
+                endTransactionResponse.getUpdateControls().add( updateControls );
+            }
+        }
+    }
+
+
+    /**
+     * @return The Dn of the entry a buffered update request is done on
+     */
+    private Dn getDn( Request request )
+    {
+        if ( request instanceof AddRequest )
+        {
+            return ( ( AddRequest ) request ).getEntryDn();
+        }
+        else if ( request instanceof ModifyRequest )
+        {
+            return ( ( ModifyRequest ) request ).getName();
+        }
+        else if ( request instanceof DeleteRequest )
+        {
+            return ( ( DeleteRequest ) request ).getName();
+        }
+        else
+        {
+            return ( ( ModifyDnRequest ) request ).getName();
+        }
+    }
+
+
+    /**
+     * Applies a buffered update request
+     */
+    private void apply( CoreSession coreSession, Request request ) throws LdapException
+    {
+        if ( request instanceof AddRequest )
+        {
+            coreSession.add( ( AddRequest ) request );
+        }
+        else if ( request instanceof ModifyRequest )
+        {
+            coreSession.modify( ( ModifyRequest ) request );
+        }
+        else if ( request instanceof DeleteRequest )
+        {
+            coreSession.delete( ( DeleteRequest ) request );
+        }
+        else
+        {
+            ModifyDnRequest modifyDnRequest = ( ModifyDnRequest ) request;
+
+            if ( modifyDnRequest.getName().isEmpty() )
+            {
+                throw new LdapProtocolErrorException( "Modify Dn is not allowed on Root DSE." );
+            }
+
+            if ( !ModifyDnRequestHandler.modifyDn( coreSession, modifyDnRequest ) )
+            {
+                throw new LdapEntryAlreadyExistsException( "Attempt to move entry onto itself." );
+            }
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.AbstractExtendedOperationFactory;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * The codec factory for the partition backup extended operation. The request and
+ * response values are opaque byte arrays : the request value is the UTF-8 encoded
+ * partition ID, followed by a line feed and by the backup directory, the response value
+ * is the number of copied bytes. It has to be registered on both sides of the connection.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionBackupFactory extends AbstractExtendedOperationFactory
+{
+    /**
+     * Creates a new instance of PartitionBackupFactory.
+     *
+     * @param codec The codec for this factory.
+     */
+    public PartitionBackupFactory( LdapApiService codec )
+    {
+        super( codec, PartitionBackupHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * Registers the partition backup factory into a codec, if it's not already registered
+     *
+     * @param codec The codec to update
+     */
+    public static void register( LdapApiService codec )
+    {
+        if ( !codec.isExtendedRequestRegistered( PartitionBackupHandler.EXTENSION_OID ) )
+        {
+            PartitionBackupFactory factory = new PartitionBackupFactory( codec );
+            codec.registerExtendedRequest( factory );
+            codec.registerExtendedResponse( factory );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExtendedRequest newRequest()
+    {
+        return new OpaqueExtendedRequest( PartitionBackupHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * Creates a partition backup request
+     *
+     * @param partitionId The ID of the partition to backup
+     * @param targetDirectory The directory, on the server, where the files will be copied
+     * @return The extended request to send
+     */
+    public ExtendedRequest newRequest( String partitionId, String targetDirectory )
+    {
+        return new OpaqueExtendedRequest( PartitionBackupHandler.EXTENSION_OID,
+            Strings.getBytesUtf8( partitionId + '\n' + targetDirectory ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExtendedResponse newResponse()
+    {
+        return new OpaqueExtendedResponse( PartitionBackupHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeValue( Asn1Buffer buffer, ExtendedRequest extendedRequest )
+    {
+        byte[] value = ( ( OpaqueExtendedRequest ) extendedRequest ).getRequestValue();
+
+        if ( value != null )
+        {
+            buffer.put( value );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decodeValue( ExtendedRequest extendedRequest, byte[] requestValue )
+    {
+        ( ( OpaqueExtendedRequest ) extendedRequest ).setRequestValue( requestValue );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeValue( Asn1Buffer buffer, ExtendedResponse extendedResponse )
+    {
+        byte[] value = ( ( OpaqueExtendedResponse ) extendedResponse ).getResponseValue();
+
+        if ( value != null )
+        {
+            buffer.put( value );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decodeValue( ExtendedResponse extendedResponse, byte[] responseValue )
+    {
+        ( ( OpaqueExtendedResponse ) extendedResponse ).setResponseValue( responseValue );
+    }
+}
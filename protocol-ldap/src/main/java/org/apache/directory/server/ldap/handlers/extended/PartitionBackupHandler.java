@@ -0,0 +1,201 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An handler for the partition backup extended operation. It writes a consistent copy
+ * of the files of a partition into a directory of the server, while the server is running
+ * (see {@link AbstractBTreePartition#backup(DirectoryService, File)}).
+ * <br>
+ * The request value is the UTF-8 encoded partition ID, followed by a line feed and by the
+ * path of the backup directory on the server. The response value is the number of copied
+ * bytes (see {@link PartitionBackupFactory}). Only an administrator can request a backup.
+ * <br>
+ * The backup is written into any directory the server process can write in, so the handler
+ * is disabled in the default configuration.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionBackupHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    private static final Logger LOG = LoggerFactory.getLogger( PartitionBackupHandler.class );
+
+    /** The partition backup extended operation OID */
+    public static final String EXTENSION_OID = "1.3.6.1.4.1.18060.0.1.10";
+
+    public static final Set<String> EXTENSION_OIDS;
+
+    static
+    {
+        Set<String> set = new HashSet<>( 1 );
+        set.add( EXTENSION_OID );
+        EXTENSION_OIDS = Collections.unmodifiableSet( set );
+    }
+
+    /** The LDAP server */
+    private LdapServer ldapServer;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleExtendedOperation( LdapSession requestor, ExtendedRequest req ) throws Exception
+    {
+        OpaqueExtendedResponse response = new OpaqueExtendedResponse( req.getMessageId(), EXTENSION_OID );
+        LdapResult result = response.getLdapResult();
+
+        if ( !requestor.getCoreSession().isAnAdministrator() )
+        {
+            LOG.info( "Rejected a partition backup requested by {}",
+                requestor.getCoreSession().getEffectivePrincipal().getName() );
+            result.setResultCode( ResultCodeEnum.INSUFFICIENT_ACCESS_RIGHTS );
+            requestor.getIoSession().write( response );
+
+            return;
+        }
+
+        byte[] value = ( req instanceof OpaqueExtendedRequest ) ? ( ( OpaqueExtendedRequest ) req ).getRequestValue()
+            : null;
+        String request = ( value == null ) ? "" : Strings.utf8ToString( value );
+        int separator = request.indexOf( '\n' );
+
+        if ( separator <= 0 )
+        {
+            result.setResultCode( ResultCodeEnum.PROTOCOL_ERROR );
+            result.setDiagnosticMessage( "Expected a partition ID and a directory, separated by a line feed" );
+            requestor.getIoSession().write( response );
+
+            return;
+        }
+
+        String partitionId = request.substring( 0, separator );
+        File targetDirectory = new File( request.substring( separator + 1 ) );
+        AbstractBTreePartition partition = getPartition( partitionId );
+
+        if ( partition == null )
+        {
+            result.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            result.setDiagnosticMessage( "No B-tree partition with the ID " + partitionId );
+            requestor.getIoSession().write( response );
+
+            return;
+        }
+
+        try
+        {
+            long copied = partition.backup( ldapServer.getDirectoryService(), targetDirectory );
+            result.setResultCode( ResultCodeEnum.SUCCESS );
+            response.setResponseValue( Strings.getBytesUtf8( Long.toString( copied ) ) );
+        }
+        catch ( LdapOperationException loe )
+        {
+            LOG.error( "Failed to backup the partition {} into {}", partitionId, targetDirectory, loe );
+            result.setResultCode( loe.getResultCode() );
+            result.setDiagnosticMessage( loe.getMessage() );
+        }
+        catch ( LdapException le )
+        {
+            LOG.error( "Failed to backup the partition {} into {}", partitionId, targetDirectory, le );
+            result.setResultCode( ResultCodeEnum.OTHER );
+            result.setDiagnosticMessage( le.getMessage() );
+        }
+
+        requestor.getIoSession().write( response );
+    }
+
+
+    /**
+     * Finds a B-tree partition using its ID
+     */
+    private AbstractBTreePartition getPartition( String partitionId )
+    {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        List<Partition> partitions = new ArrayList<>( directoryService.getPartitions() );
+        partitions.add( directoryService.getSystemPartition() );
+
+        for ( Partition partition : partitions )
+        {
+            if ( ( partition instanceof AbstractBTreePartition ) && partitionId.equals( partition.getId() ) )
+            {
+                return ( AbstractBTreePartition ) partition;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLdapServer( LdapServer ldapServer )
+    {
+        this.ldapServer = ldapServer;
+
+        // The LDAP server decodes the requests using the default codec
+        PartitionBackupFactory.register( LdapApiServiceFactory.getSingleton() );
+    }
+}
@@ -23,13 +23,16 @@ package org.apache.directory.server.ldap.handlers.extended;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
 import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionRequest;
 import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionResponse;
 import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionResponseImpl;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
 import org.apache.directory.api.ldap.model.message.ExtendedResponse;
-import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.ldap.ExtendedOperationHandler;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
@@ -40,7 +43,9 @@ import jdbm.helper.Conversion;
 
 
 /**
- * An handler to manage the StartTransaction extended request operation
+ * An handler to manage the StartTransaction extended request operation. The update
+ * requests carrying the returned identifier in a TransactionSpecification control are
+ * buffered in the LdapSession, until the EndTransaction request applies or drops them.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -56,6 +61,9 @@ public class StartTransactionHandler implements ExtendedOperationHandler<Extende
         EXTENSION_OIDS = Collections.unmodifiableSet( set );
     }
 
+    /** The last transaction identifier */
+    private final AtomicLong transactionIds = new AtomicLong( 0L );
+
 
     /**
      * {@inheritDoc}
@@ -75,12 +83,23 @@ public class StartTransactionHandler implements ExtendedOperationHandler<Extende
         
         // We need to create a new transaction ID for the current session.
         // If the current session is already processing a transaction, we will return an error
-        CoreSession coreSession = session.getCoreSession();
-        long transactionId = coreSession.beginSessionTransaction();
+        byte[] transactionId = Conversion.convertToByteArray( transactionIds.incrementAndGet() );
+        StartTransactionResponse startTransactionResponse;
+
+        if ( session.startTransaction( transactionId ) )
+        {
+            startTransactionResponse = new StartTransactionResponseImpl( req.getMessageId(), transactionId );
+        }
+        else
+        {
+            // The codec can't encode a response without identifier, and the constructor
+            // only accepts the Cancel result codes
+            startTransactionResponse = new StartTransactionResponseImpl( req.getMessageId(), Strings.EMPTY_BYTES );
+            startTransactionResponse.getLdapResult().setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            startTransactionResponse.getLdapResult().setDiagnosticMessage(
+                "A transaction is already pending in this session" );
+        }
 
-        StartTransactionResponse startTransactionResponse = new StartTransactionResponseImpl( 
-                req.getMessageId(), Conversion.convertToByteArray( transactionId ) );
-        
         // Store the StartTransaction request name in the response, to be able to
         // encode the response properly.
         // Kurt Zeilenga should have set a responseName to make it easier to 
@@ -106,5 +125,7 @@ public class StartTransactionHandler implements ExtendedOperationHandler<Extende
      */
     public void setLdapServer( LdapServer ldapServer )
     {
+        // The LDAP server decodes the controls using the default codec
+        TransactionSpecificationFactory.register( LdapApiServiceFactory.getSingleton() );
     }
 }
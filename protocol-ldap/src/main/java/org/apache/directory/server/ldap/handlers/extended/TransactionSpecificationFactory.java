@@ -0,0 +1,102 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.AbstractControlFactory;
+import org.apache.directory.api.ldap.codec.api.ControlFactory;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecification;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecificationImpl;
+import org.apache.directory.api.ldap.model.message.Control;
+
+
+/**
+ * The codec factory for the TransactionSpecification control (RFC 5805). The control
+ * value is the transaction identifier, as returned by the StartTransaction extended
+ * operation. The factory provided by the LDAP API neither encodes nor decodes it, so
+ * this one replaces it. It has to be registered on both sides of the connection.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TransactionSpecificationFactory extends AbstractControlFactory<TransactionSpecification>
+{
+    /**
+     * Creates a new instance of TransactionSpecificationFactory.
+     *
+     * @param codec The codec for this factory.
+     */
+    public TransactionSpecificationFactory( LdapApiService codec )
+    {
+        super( codec, TransactionSpecification.OID );
+    }
+
+
+    /**
+     * Registers the TransactionSpecification factory into a codec, if it's not already registered
+     *
+     * @param codec The codec to update
+     */
+    public static void register( LdapApiService codec )
+    {
+        ControlFactory<?> factory = codec.getRequestControlFactories().get( TransactionSpecification.OID );
+
+        if ( !( factory instanceof TransactionSpecificationFactory ) )
+        {
+            codec.registerRequestControl( new TransactionSpecificationFactory( codec ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TransactionSpecification newControl()
+    {
+        return new TransactionSpecificationImpl();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeValue( Asn1Buffer buffer, Control control )
+    {
+        byte[] identifier = ( ( TransactionSpecification ) control ).getIdentifier();
+
+        if ( identifier != null )
+        {
+            buffer.put( identifier );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decodeValue( Control control, byte[] controlBytes )
+    {
+        ( ( TransactionSpecification ) control ).setIdentifier( controlBytes );
+    }
+}
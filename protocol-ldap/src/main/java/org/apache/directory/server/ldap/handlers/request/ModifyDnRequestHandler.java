@@ -20,6 +20,7 @@
 package org.apache.directory.server.ldap.handlers.request;
 
 
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.LdapResult;
 import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
 import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
@@ -77,32 +78,7 @@ public class ModifyDnRequestHandler extends LdapRequestHandler<ModifyDnRequest>
 
         try
         {
-            SchemaManager schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
-            Dn newRdn = new Dn( schemaManager, modifyDnRequest.getNewRdn().getName() );
-
-            Dn oldRdn = new Dn( schemaManager, modifyDnRequest.getName().getRdn().getName() );
-
-            boolean rdnChanged = modifyDnRequest.getNewRdn() != null && !newRdn.equals( oldRdn );
-
-            CoreSession coreSession = session.getCoreSession();
-
-            if ( rdnChanged )
-            {
-                if ( modifyDnRequest.getNewSuperior() != null )
-                {
-                    coreSession.moveAndRename( modifyDnRequest );
-                }
-                else
-                {
-                    coreSession.rename( modifyDnRequest );
-                }
-            }
-            else if ( modifyDnRequest.getNewSuperior() != null )
-            {
-                modifyDnRequest.setNewRdn( null );
-                coreSession.move( modifyDnRequest );
-            }
-            else
+            if ( !modifyDn( session.getCoreSession(), modifyDnRequest ) )
             {
                 result.setDiagnosticMessage( "Attempt to move entry onto itself." );
                 result.setResultCode( ResultCodeEnum.ENTRY_ALREADY_EXISTS );
@@ -120,4 +96,47 @@ public class ModifyDnRequestHandler extends LdapRequestHandler<ModifyDnRequest>
             handleException( session, modifyDnRequest, modifyDnResponse, e );
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Applies a ModifyDN request : depending on its new Rdn and its new superior, it's
+     * a rename, a move, or both.
+     *
+     * @param coreSession The session the operation is done in
+     * @param modifyDnRequest The ModifyDN request
+     * @return <tt>false</tt> if the request would move the entry onto itself
+     * @throws LdapException If the operation failed
+     */
+    public static boolean modifyDn( CoreSession coreSession, ModifyDnRequest modifyDnRequest ) throws LdapException
+    {
+        SchemaManager schemaManager = coreSession.getDirectoryService().getSchemaManager();
+        Dn newRdn = new Dn( schemaManager, modifyDnRequest.getNewRdn().getName() );
+
+        Dn oldRdn = new Dn( schemaManager, modifyDnRequest.getName().getRdn().getName() );
+
+        boolean rdnChanged = modifyDnRequest.getNewRdn() != null && !newRdn.equals( oldRdn );
+
+        if ( rdnChanged )
+        {
+            if ( modifyDnRequest.getNewSuperior() != null )
+            {
+                coreSession.moveAndRename( modifyDnRequest );
+            }
+            else
+            {
+                coreSession.rename( modifyDnRequest );
+            }
+        }
+        else if ( modifyDnRequest.getNewSuperior() != null )
+        {
+            modifyDnRequest.setNewRdn( null );
+            coreSession.move( modifyDnRequest );
+        }
+        else
+        {
+            return false;
+        }
+
+        return true;
+    }
+}
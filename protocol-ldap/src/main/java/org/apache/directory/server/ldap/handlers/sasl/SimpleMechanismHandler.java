@@ -63,7 +63,7 @@ public class SimpleMechanismHandler implements MechanismHandler
         bindContext.setDn( bindRequest.getDn() );
         bindContext.setCredentials( bindRequest.getCredentials() );
         bindContext.setInterceptors( ldapSession.getLdapServer().getDirectoryService()
-            .getInterceptors( OperationEnum.BIND ) );
+            .getInterceptorChain( OperationEnum.BIND ) );
 
         // Stores the request controls into the operation context
         LdapProtocolUtils.setRequestControls( bindContext, bindRequest );
@@ -167,7 +167,7 @@ public final class ExternalSaslServer extends AbstractSaslServer
                 bindContext.setSaslMechanism( getMechanismName() );
                 bindContext.setSaslAuthId( getBindRequest().getName() );
                 bindContext.setIoSession( ldapSession.getIoSession() );
-                bindContext.setInterceptors( directoryService.getInterceptors( OperationEnum.BIND ) );
+                bindContext.setInterceptors( directoryService.getInterceptorChain( OperationEnum.BIND ) );
 
                 operationManager.bind( bindContext );
 
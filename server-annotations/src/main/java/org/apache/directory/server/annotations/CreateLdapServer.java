@@ -74,6 +74,10 @@ public @interface CreateLdapServer
     boolean allowAnonymousAccess() default false;
 
 
+    /** @return Tells if each request is processed by its own thread. */
+    boolean threadPerRequest() default false;
+
+
     /** @return The external keyStore file to use, default to the empty string */
     String keyStore() default "";
 
@@ -141,6 +141,8 @@ public final class ServerAnnotationProcessor
             // Propagate the anonymous flag to the DS
             directoryService.setAllowAnonymousAccess( createLdapServer.allowAnonymousAccess() );
 
+            ldapServer.setThreadPerRequest( createLdapServer.threadPerRequest() );
+
             ldapServer.setSaslHost( createLdapServer.saslHost() );
 
             ldapServer.setSaslPrincipal( createLdapServer.saslPrincipal() );
@@ -0,0 +1,108 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.integ.ServerIntegrationUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the processing of each request by its own thread.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(threadPerRequest = true, transports =
+    { @CreateTransport(protocol = "LDAP", nbThreads = 1) })
+public class ThreadPerRequestIT extends AbstractLdapTestUnit
+{
+    private static final int NB_CLIENTS = 8;
+
+    private static final int NB_LOOKUPS = 50;
+
+
+    /**
+     * Run some lookups concurrently, while the transport has only one thread
+     */
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        assertTrue( getLdapServer().isThreadPerRequest() );
+
+        ExecutorService clients = Executors.newFixedThreadPool( NB_CLIENTS );
+        List<Future<Integer>> results = new ArrayList<>();
+
+        try
+        {
+            for ( int i = 0; i < NB_CLIENTS; i++ )
+            {
+                results.add( clients.submit( new Callable<Integer>()
+                {
+                    @Override
+                    public Integer call() throws Exception
+                    {
+                        int nbFound = 0;
+
+                        try ( LdapConnection connection = ServerIntegrationUtils.getAdminConnection(
+                            getLdapServer() ) )
+                        {
+                            for ( int j = 0; j < NB_LOOKUPS; j++ )
+                            {
+                                Entry entry = connection.lookup( "uid=admin,ou=system", "cn" );
+                                assertNotNull( entry );
+                                nbFound++;
+                            }
+                        }
+
+                        return nbFound;
+                    }
+                } ) );
+            }
+
+            for ( Future<Integer> result : results )
+            {
+                assertEquals( NB_LOOKUPS, result.get().intValue() );
+            }
+        }
+        finally
+        {
+            clients.shutdown();
+        }
+    }
+}
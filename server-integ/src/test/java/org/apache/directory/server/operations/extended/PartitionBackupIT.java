@@ -0,0 +1,158 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.operations.extended;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.handlers.extended.PartitionBackupFactory;
+import org.apache.directory.server.ldap.handlers.extended.PartitionBackupHandler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the partition backup extended operation
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(
+    transports =
+        { @CreateTransport(protocol = "LDAP") },
+    extendedOpHandlers =
+        { PartitionBackupHandler.class })
+@CreateDS(enableChangeLog = false, name = "PartitionBackupIT")
+public class PartitionBackupIT extends AbstractLdapTestUnit
+{
+    /**
+     * Test that the system partition can be copied while the server is running
+     */
+    @Test
+    public void testBackupSystemPartition() throws Exception
+    {
+        File backupDir = Files.createTempDirectory( "PartitionBackupIT" ).toFile();
+
+        try ( LdapConnection adminConnection = getAdminNetworkConnection( getLdapServer() ) )
+        {
+            PartitionBackupFactory factory = new PartitionBackupFactory( adminConnection.getCodecService() );
+            ExtendedResponse response = adminConnection.extended(
+                factory.newRequest( "system", backupDir.getAbsolutePath() ) );
+
+            assertEquals( ResultCodeEnum.SUCCESS, response.getLdapResult().getResultCode() );
+            assertTrue( response instanceof OpaqueExtendedResponse );
+
+            long copied = Long.parseLong( Strings.utf8ToString(
+                ( ( OpaqueExtendedResponse ) response ).getResponseValue() ) );
+            assertEquals( sizeOf( backupDir.toPath() ), copied );
+            assertTrue( copied > 0 );
+        }
+        finally
+        {
+            delete( backupDir.toPath() );
+        }
+    }
+
+
+    /**
+     * Test that a backup of an unknown partition is rejected
+     */
+    @Test
+    public void testBackupUnknownPartition() throws Exception
+    {
+        File backupDir = Files.createTempDirectory( "PartitionBackupIT" ).toFile();
+
+        try ( LdapConnection adminConnection = getAdminNetworkConnection( getLdapServer() ) )
+        {
+            PartitionBackupFactory factory = new PartitionBackupFactory( adminConnection.getCodecService() );
+            ExtendedResponse response = adminConnection.extended(
+                factory.newRequest( "unknown", backupDir.getAbsolutePath() ) );
+
+            assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM, response.getLdapResult().getResultCode() );
+            assertEquals( 0, backupDir.list().length );
+        }
+        finally
+        {
+            delete( backupDir.toPath() );
+        }
+    }
+
+
+    private static long sizeOf( Path directory ) throws IOException
+    {
+        long size = 0L;
+
+        try ( Stream<Path> paths = Files.walk( directory ) )
+        {
+            for ( Path path : ( Iterable<Path> ) paths::iterator )
+            {
+                if ( Files.isRegularFile( path ) )
+                {
+                    size += Files.size( path );
+                }
+            }
+        }
+
+        return size;
+    }
+
+
+    private static void delete( Path directory ) throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+
+        try ( Stream<Path> walk = Files.walk( directory ) )
+        {
+            for ( Path path : ( Iterable<Path> ) walk::iterator )
+            {
+                paths.add( path );
+            }
+        }
+
+        // Children first
+        Collections.reverse( paths );
+
+        for ( Path path : paths )
+        {
+            Files.deleteIfExists( path );
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.operations.extended;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecification;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecificationImpl;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequest;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionResponse;
+import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionResponse;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.handlers.extended.EndTransactionHandler;
+import org.apache.directory.server.ldap.handlers.extended.StartTransactionHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the RFC 5805 transactions : the StartTransaction and EndTransaction extended
+ * operations, and the updates carrying a TransactionSpecification control.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(
+    name = "TransactionDS",
+    partitions =
+        {
+            @CreatePartition(
+                name = "example",
+                suffix = "dc=example,dc=com",
+                contextEntry = @ContextEntry(
+                    entryLdif =
+                    "dn: dc=example,dc=com\n" +
+                        "dc: example\n" +
+                        "objectClass: top\n" +
+                        "objectClass: domain\n\n"))
+    },
+    enableChangeLog = false)
+@CreateLdapServer(
+    transports =
+        { @CreateTransport(protocol = "LDAP") },
+    extendedOpHandlers =
+        { StartTransactionHandler.class, EndTransactionHandler.class })
+public class TransactionIT extends AbstractLdapTestUnit
+{
+    private LdapConnection connection;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        connection = getAdminNetworkConnection( getLdapServer() );
+    }
+
+
+    @After
+    public void shutdown() throws Exception
+    {
+        connection.close();
+    }
+
+
+    /**
+     * Test that the updates are only visible once the transaction is committed
+     */
+    @Test
+    public void testCommit() throws Exception
+    {
+        byte[] transactionId = startTransaction();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=commit" + i + ",dc=example,dc=com" ) );
+        }
+
+        ModifyRequest modifyRequest = new ModifyRequestImpl();
+        modifyRequest.setName( new Dn( "ou=commit0,dc=example,dc=com" ) );
+        modifyRequest.addModification( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+            "description", "modified in a transaction" ) );
+        modifyRequest.addControl( createControl( transactionId ) );
+        assertEquals( ResultCodeEnum.SUCCESS, connection.modify( modifyRequest ).getLdapResult().getResultCode() );
+
+        // Nothing has been applied yet
+        assertNull( connection.lookup( "ou=commit0,dc=example,dc=com" ) );
+
+        EndTransactionResponse response = endTransaction( transactionId, true );
+
+        assertEquals( ResultCodeEnum.SUCCESS, response.getLdapResult().getResultCode() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertNotNull( connection.lookup( "ou=commit" + i + ",dc=example,dc=com" ) );
+        }
+
+        assertTrue( connection.lookup( "ou=commit0,dc=example,dc=com" ).contains( "description",
+            "modified in a transaction" ) );
+    }
+
+
+    /**
+     * Test that the updates are dropped when the transaction is aborted
+     */
+    @Test
+    public void testAbort() throws Exception
+    {
+        byte[] transactionId = startTransaction();
+
+        assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=abort,dc=example,dc=com" ) );
+
+        EndTransactionResponse response = endTransaction( transactionId, false );
+
+        assertEquals( ResultCodeEnum.SUCCESS, response.getLdapResult().getResultCode() );
+        assertNull( connection.lookup( "ou=abort,dc=example,dc=com" ) );
+    }
+
+
+    /**
+     * Test that a failing update rolls back the whole transaction
+     */
+    @Test
+    public void testFailedUpdate() throws Exception
+    {
+        byte[] transactionId = startTransaction();
+
+        assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=failed1,dc=example,dc=com" ) );
+        assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=failed2,dc=example,dc=com" ) );
+
+        // The parent does not exist
+        AddRequest addRequest = createAddRequest( transactionId, "ou=failed3,ou=missing,dc=example,dc=com" );
+        assertEquals( ResultCodeEnum.SUCCESS, connection.add( addRequest ).getLdapResult().getResultCode() );
+
+        EndTransactionResponse response = endTransaction( transactionId, true );
+
+        assertEquals( ResultCodeEnum.NO_SUCH_OBJECT, response.getLdapResult().getResultCode() );
+        assertEquals( addRequest.getMessageId(), response.getFailedMessageId() );
+        assertNull( connection.lookup( "ou=failed1,dc=example,dc=com" ) );
+        assertNull( connection.lookup( "ou=failed2,dc=example,dc=com" ) );
+
+        // The partition is still usable
+        connection.add( new DefaultEntry( "ou=failed1,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: failed1" ) );
+        assertNotNull( connection.lookup( "ou=failed1,dc=example,dc=com" ) );
+        connection.delete( "ou=failed1,dc=example,dc=com" );
+    }
+
+
+    /**
+     * Test that a failing update rolls back the deletes and renames done before it
+     */
+    @Test
+    public void testFailedUpdateAfterDeleteAndRename() throws Exception
+    {
+        connection.add( new DefaultEntry( "ou=deleted,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: deleted" ) );
+        connection.add( new DefaultEntry( "ou=renamed,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: renamed" ) );
+
+        byte[] transactionId = startTransaction();
+
+        DeleteRequest deleteRequest = new DeleteRequestImpl();
+        deleteRequest.setName( new Dn( "ou=deleted,dc=example,dc=com" ) );
+        deleteRequest.addControl( createControl( transactionId ) );
+        assertEquals( ResultCodeEnum.SUCCESS, connection.delete( deleteRequest ).getLdapResult().getResultCode() );
+
+        ModifyDnRequest modifyDnRequest = new ModifyDnRequestImpl();
+        modifyDnRequest.setName( new Dn( "ou=renamed,dc=example,dc=com" ) );
+        modifyDnRequest.setNewRdn( new Rdn( "ou=newName" ) );
+        modifyDnRequest.setDeleteOldRdn( true );
+        modifyDnRequest.addControl( createControl( transactionId ) );
+        assertEquals( ResultCodeEnum.SUCCESS, connection.modifyDn( modifyDnRequest ).getLdapResult().getResultCode() );
+
+        // The parent does not exist
+        AddRequest addRequest = createAddRequest( transactionId, "ou=failed,ou=missing,dc=example,dc=com" );
+        assertEquals( ResultCodeEnum.SUCCESS, connection.add( addRequest ).getLdapResult().getResultCode() );
+
+        EndTransactionResponse response = endTransaction( transactionId, true );
+
+        assertEquals( ResultCodeEnum.NO_SUCH_OBJECT, response.getLdapResult().getResultCode() );
+        assertEquals( addRequest.getMessageId(), response.getFailedMessageId() );
+
+        // Neither the delete nor the rename have been kept
+        assertNotNull( connection.lookup( "ou=deleted,dc=example,dc=com" ) );
+        assertNotNull( connection.lookup( "ou=renamed,dc=example,dc=com" ) );
+        assertNull( connection.lookup( "ou=newName,dc=example,dc=com" ) );
+
+        connection.delete( "ou=deleted,dc=example,dc=com" );
+        connection.delete( "ou=renamed,dc=example,dc=com" );
+    }
+
+
+    /**
+     * Test that the updates without the control are applied right away
+     */
+    @Test
+    public void testUpdateOutsideTransaction() throws Exception
+    {
+        byte[] transactionId = startTransaction();
+
+        assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=inside,dc=example,dc=com" ) );
+        connection.add( new DefaultEntry( "ou=outside,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: outside" ) );
+
+        assertNotNull( connection.lookup( "ou=outside,dc=example,dc=com" ) );
+        assertNull( connection.lookup( "ou=inside,dc=example,dc=com" ) );
+
+        endTransaction( transactionId, false );
+
+        assertNull( connection.lookup( "ou=inside,dc=example,dc=com" ) );
+        connection.delete( "ou=outside,dc=example,dc=com" );
+    }
+
+
+    /**
+     * Test the transaction identifier checks
+     */
+    @Test
+    public void testUnknownTransaction() throws Exception
+    {
+        byte[] transactionId = startTransaction();
+        byte[] unknownId = new byte[]
+            { 0x7F, 0x7F };
+
+        // A second transaction can't be started in the session
+        ExtendedResponse startResponse = connection.extended( new StartTransactionRequestImpl() );
+        assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM, startResponse.getLdapResult().getResultCode() );
+
+        assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM, add( unknownId, "ou=unknown,dc=example,dc=com" ) );
+        assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM,
+            endTransaction( unknownId, true ).getLdapResult().getResultCode() );
+
+        assertEquals( ResultCodeEnum.SUCCESS, endTransaction( transactionId, true ).getLdapResult().getResultCode() );
+        assertNull( connection.lookup( "ou=unknown,dc=example,dc=com" ) );
+    }
+
+
+    /**
+     * Test that a transaction can't buffer more requests than the configured limit
+     */
+    @Test
+    public void testTransactionLimit() throws Exception
+    {
+        getLdapServer().setMaxTransactionRequests( 3 );
+
+        try
+        {
+            byte[] transactionId = startTransaction();
+
+            for ( int i = 0; i < 3; i++ )
+            {
+                assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=limit" + i + ",dc=example,dc=com" ) );
+            }
+
+            assertEquals( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED, add( transactionId, "ou=limit3,dc=example,dc=com" ) );
+
+            assertEquals( ResultCodeEnum.SUCCESS,
+                endTransaction( transactionId, true ).getLdapResult().getResultCode() );
+
+            for ( int i = 0; i < 3; i++ )
+            {
+                assertNotNull( connection.lookup( "ou=limit" + i + ",dc=example,dc=com" ) );
+            }
+
+            assertNull( connection.lookup( "ou=limit3,dc=example,dc=com" ) );
+        }
+        finally
+        {
+            getLdapServer().setMaxTransactionRequests( LdapServer.MAX_TRANSACTION_REQUESTS_DEFAULT );
+        }
+    }
+
+
+    /**
+     * Test that the requests which can't be applied are rejected when they are buffered
+     */
+    @Test
+    public void testRejectedRequests() throws Exception
+    {
+        connection.add( new DefaultEntry( "ou=remote,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: referral",
+            "objectClass: extensibleObject",
+            "ou: remote",
+            "ref: ldap://remote.example.com/ou=remote,dc=example,dc=com" ) );
+
+        try
+        {
+            byte[] transactionId = startTransaction();
+
+            // The entry is under a referral
+            AddRequest addRequest = createAddRequest( transactionId, "ou=child,ou=remote,dc=example,dc=com" );
+            LdapResult result = connection.add( addRequest ).getLdapResult();
+            assertEquals( ResultCodeEnum.REFERRAL, result.getResultCode() );
+            assertTrue( result.getReferral().getLdapUrls().contains(
+                "ldap://remote.example.com/ou=child,ou=remote,dc=example,dc=com" ) );
+
+            // The entry can't be moved under a referral
+            ModifyDnRequest modifyDnRequest = new ModifyDnRequestImpl();
+            modifyDnRequest.setName( new Dn( "ou=moved,dc=example,dc=com" ) );
+            modifyDnRequest.setNewRdn( new Rdn( "ou=moved" ) );
+            modifyDnRequest.setNewSuperior( new Dn( "ou=remote,dc=example,dc=com" ) );
+            modifyDnRequest.setDeleteOldRdn( true );
+            modifyDnRequest.addControl( createControl( transactionId ) );
+            assertEquals( ResultCodeEnum.AFFECTS_MULTIPLE_DSAS,
+                connection.modifyDn( modifyDnRequest ).getLdapResult().getResultCode() );
+
+            // The other requests are still accepted
+            assertEquals( ResultCodeEnum.SUCCESS, add( transactionId, "ou=accepted,dc=example,dc=com" ) );
+            assertEquals( ResultCodeEnum.SUCCESS,
+                endTransaction( transactionId, true ).getLdapResult().getResultCode() );
+            assertNotNull( connection.lookup( "ou=accepted,dc=example,dc=com" ) );
+        }
+        finally
+        {
+            DeleteRequest deleteRequest = new DeleteRequestImpl();
+            deleteRequest.setName( new Dn( "ou=remote,dc=example,dc=com" ) );
+            deleteRequest.addControl( new ManageDsaITImpl() );
+            connection.delete( deleteRequest );
+        }
+    }
+
+
+    private byte[] startTransaction() throws Exception
+    {
+        StartTransactionResponse response = ( StartTransactionResponse ) connection.extended(
+            new StartTransactionRequestImpl() );
+
+        assertEquals( ResultCodeEnum.SUCCESS, response.getLdapResult().getResultCode() );
+
+        return response.getTransactionId();
+    }
+
+
+    private EndTransactionResponse endTransaction( byte[] transactionId, boolean commit ) throws Exception
+    {
+        EndTransactionRequest request = new EndTransactionRequestImpl();
+        request.setTransactionId( transactionId );
+        request.setCommit( commit );
+
+        return ( EndTransactionResponse ) connection.extended( request );
+    }
+
+
+    private ResultCodeEnum add( byte[] transactionId, String dn ) throws Exception
+    {
+        return connection.add( createAddRequest( transactionId, dn ) ).getLdapResult().getResultCode();
+    }
+
+
+    private AddRequest createAddRequest( byte[] transactionId, String dn ) throws Exception
+    {
+        Dn entryDn = new Dn( dn );
+        AddRequest addRequest = new AddRequestImpl();
+        addRequest.setEntry( new DefaultEntry( entryDn,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou", entryDn.getRdn().getValue() ) );
+        addRequest.addControl( createControl( transactionId ) );
+
+        return addRequest;
+    }
+
+
+    private TransactionSpecification createControl( byte[] transactionId )
+    {
+        TransactionSpecification control = new TransactionSpecificationImpl();
+        control.setIdentifier( transactionId );
+
+        return control;
+    }
+}
@@ -49,5 +49,8 @@ ADS_CONTROLS="-Dapacheds.controls="
 
 ADS_EXTENDED_OPERATIONS="-Dapacheds.extendedOperations="
 
+# The LMDB partition needs these options on Java 9 and later (Java 8 rejects them)
+#JAVA_OPTS="$JAVA_OPTS --add-opens=java.base/java.nio=ALL-UNNAMED --add-opens=java.base/sun.nio.ch=ALL-UNNAMED"
+
 # default is start
 java -Xms1024m -Xmx2048m $JAVA_OPTS $ADS_CONTROLS $ADS_EXTENDED_OPERATIONS -Dlog4j.configuration=file:./target/instance/conf/log4j.properties -Dapacheds.log.dir=./target/instance/log -jar $JAR ./target/instance
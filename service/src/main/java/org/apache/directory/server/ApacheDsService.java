@@ -140,6 +140,9 @@ public class ApacheDsService
 
     private boolean isSchemaPartitionFirstExtraction = false;
 
+    /** The number of index tuples kept in memory, per index, when importing an LDIF file */
+    private static final int IMPORT_TUPLES_IN_MEMORY = 100000;
+
 
     /**
      * Starts various services configured according to the
@@ -293,6 +296,46 @@ public class ApacheDsService
     }
 
 
+    /**
+     * Loads the entries of a LDIF file into an empty partition, without going through the interceptors.
+     * Precondition is that this service was started before. The LDIF file must list the parents before
+     * their children, and must not contain change records. It is parsed by several threads, see
+     * {@link ParallelLdifReader}.
+     *
+     * @param instanceLayout the on disk location's layout of the instance
+     * @param partitionId The ID of the partition to load
+     * @param ldifFile The LDIF file to import
+     * @return The number of imported entries
+     * @throws Exception If the import failed
+     */
+    public long importLdif( InstanceLayout instanceLayout, String partitionId, File ldifFile ) throws Exception
+    {
+        AbstractBTreePartition btreePartition = null;
+
+        for ( Partition partition : getDirectoryService().getPartitions() )
+        {
+            if ( partitionId.equals( partition.getId() ) && ( partition instanceof AbstractBTreePartition ) )
+            {
+                btreePartition = ( AbstractBTreePartition ) partition;
+                break;
+            }
+        }
+
+        if ( btreePartition == null )
+        {
+            throw new IllegalArgumentException( "No B-tree partition with the ID " + partitionId );
+        }
+
+        // The LDIF file is parsed by several threads, the partition is written by this one
+        int nbThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 );
+
+        try ( ParallelLdifReader entries = new ParallelLdifReader( ldifFile, schemaManager, nbThreads ) )
+        {
+            return btreePartition.bulkLoad( entries, instanceLayout.getCacheDirectory(), IMPORT_TUPLES_IN_MEMORY );
+        }
+    }
+
+
     /**
      * Initialize the schema Manager by loading the schema LDIF files
      * 
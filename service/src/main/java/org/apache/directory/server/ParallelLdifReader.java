@@ -0,0 +1,323 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.ldif.LdapLdifException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+
+/**
+ * Reads the entries of a LDIF file using several threads. The file is cut into chunks
+ * of records, on the empty lines separating them. Each chunk is parsed, and its entries
+ * made schema aware, by a pool of threads, while the entries of the previous chunks are
+ * consumed. The entries are returned in the file order.
+ * <br>
+ * The file must contain entries only, not change records.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelLdifReader implements Iterator<Entry>, Closeable
+{
+    /** The number of records per chunk */
+    private static final int CHUNK_SIZE = 1000;
+
+    /** The LDIF file reader */
+    private final BufferedReader reader;
+
+    /** The SchemaManager, if the entries have to be schema aware */
+    private final SchemaManager schemaManager;
+
+    /** The parser threads */
+    private final ExecutorService executor;
+
+    /** The chunks being parsed, in the file order */
+    private final Deque<Future<List<Entry>>> pending = new ArrayDeque<>();
+
+    /** The maximum number of chunks being parsed, which limits the memory used */
+    private final int maxPending;
+
+    /** The entries of the current chunk */
+    private Iterator<Entry> current = Collections.<Entry>emptyIterator();
+
+    /** The number of lines read so far */
+    private int lineNumber;
+
+    /** Tells if the whole file has been read */
+    private boolean endOfFile;
+
+
+    /**
+     * Creates a new instance of ParallelLdifReader.
+     *
+     * @param file The LDIF file
+     * @param schemaManager The SchemaManager, or null if the entries don't have to be schema aware
+     * @param nbThreads The number of parser threads
+     * @throws IOException If the file can't be opened
+     */
+    public ParallelLdifReader( File file, SchemaManager schemaManager, int nbThreads ) throws IOException
+    {
+        this.reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 );
+        this.schemaManager = schemaManager;
+        this.maxPending = Math.max( 1, nbThreads ) * 2;
+
+        executor = Executors.newFixedThreadPool( Math.max( 1, nbThreads ), new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "ldif-parser-" + counter.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws UncheckedIOException If the file can't be read
+     * @throws IllegalArgumentException If the file contains an invalid record
+     */
+    @Override
+    public boolean hasNext()
+    {
+        while ( !current.hasNext() )
+        {
+            submitChunks();
+
+            Future<List<Entry>> chunk = pending.poll();
+
+            if ( chunk == null )
+            {
+                return false;
+            }
+
+            current = getEntries( chunk ).iterator();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        return current.next();
+    }
+
+
+    /**
+     * Reads chunks from the file, until enough of them are being parsed
+     */
+    private void submitChunks()
+    {
+        try
+        {
+            while ( !endOfFile && ( pending.size() < maxPending ) )
+            {
+                int firstLine = lineNumber + 1;
+                String chunk = readChunk();
+
+                if ( chunk == null )
+                {
+                    endOfFile = true;
+                }
+                else
+                {
+                    pending.add( executor.submit( new Parser( chunk, firstLine ) ) );
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException( ioe );
+        }
+    }
+
+
+    /**
+     * Reads the next CHUNK_SIZE records. The records are separated by empty lines.
+     *
+     * @return The records, or null if the end of the file has been reached
+     */
+    private String readChunk() throws IOException
+    {
+        StringBuilder chunk = new StringBuilder();
+        int nbRecords = 0;
+        boolean inRecord = false;
+        String line;
+
+        while ( ( line = reader.readLine() ) != null )
+        {
+            lineNumber++;
+            chunk.append( line ).append( '\n' );
+
+            if ( !line.isEmpty() )
+            {
+                inRecord = true;
+            }
+            else if ( inRecord )
+            {
+                inRecord = false;
+                nbRecords++;
+
+                if ( nbRecords == CHUNK_SIZE )
+                {
+                    break;
+                }
+            }
+        }
+
+        return ( ( nbRecords > 0 ) || inRecord ) ? chunk.toString() : null;
+    }
+
+
+    private List<Entry> getEntries( Future<List<Entry>> chunk )
+    {
+        try
+        {
+            return chunk.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException( "Interrupted while parsing the LDIF file", ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+
+            throw new IllegalArgumentException( cause.getMessage(), cause );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        executor.shutdownNow();
+        reader.close();
+    }
+
+
+    /**
+     * Parses a chunk of records
+     */
+    private class Parser implements Callable<List<Entry>>
+    {
+        /** The records */
+        private final String chunk;
+
+        /** The line of the file the chunk starts at */
+        private final int firstLine;
+
+
+        Parser( String chunk, int firstLine )
+        {
+            this.chunk = chunk;
+            this.firstLine = firstLine;
+        }
+
+
+        @Override
+        public List<Entry> call() throws Exception
+        {
+            try ( LdifReader ldifReader = new LdifReader( schemaManager ) )
+            {
+                List<LdifEntry> ldifEntries = ldifReader.parseLdif( chunk );
+                List<Entry> entries = new ArrayList<>( ldifEntries.size() );
+
+                for ( LdifEntry ldifEntry : ldifEntries )
+                {
+                    if ( !ldifEntry.isEntry() )
+                    {
+                        throw new LdapLdifException( "The record " + ldifEntry.getDn()
+                            + " is a change record, in the chunk starting at line " + firstLine );
+                    }
+
+                    Entry entry = ldifEntry.getEntry();
+
+                    if ( ( schemaManager != null ) && !entry.isSchemaAware() )
+                    {
+                        entry = new DefaultEntry( schemaManager, entry );
+                    }
+
+                    entries.add( entry );
+                }
+
+                return entries;
+            }
+            catch ( LdapLdifException lle )
+            {
+                throw new IllegalArgumentException( "Invalid LDIF in the chunk starting at line " + firstLine
+                    + " : " + lle.getMessage(), lle );
+            }
+        }
+    }
+}
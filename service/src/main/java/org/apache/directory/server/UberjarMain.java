@@ -17,6 +17,7 @@
 package org.apache.directory.server;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
@@ -30,9 +31,18 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.UUID;
 
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.util.Network;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.ldap.handlers.extended.PartitionBackupFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +60,12 @@ public class UberjarMain
     /** The key of the property use to specify the shutdown port */
     private static final String PROPERTY_SHUTDOWN_PORT = "apacheds.shutdown.port";
 
+    /** The properties used to connect to the server when requesting a backup */
+    private static final String PROPERTY_BACKUP_HOST = "apacheds.backup.host";
+    private static final String PROPERTY_BACKUP_PORT = "apacheds.backup.port";
+    private static final String PROPERTY_BACKUP_USER = "apacheds.backup.user";
+    private static final String PROPERTY_BACKUP_PASSWORD = "apacheds.backup.password";
+
     /** The ApacheDS service */
     private ApacheDsService service;
 
@@ -68,7 +84,7 @@ public class UberjarMain
         }
 
         String instanceDirectory = args[0];
-        Action action = ( args.length == 2 ) ? Action.fromString( args[1] ) : Action.START;
+        Action action = ( args.length >= 2 ) ? Action.fromString( args[1] ) : Action.START;
 
         UberjarMain instance = new UberjarMain();
         
@@ -101,6 +117,32 @@ public class UberjarMain
                 
                 break;
 
+            case BACKUP :
+                // Ask the running server to copy a partition
+                if ( args.length != 4 )
+                {
+                    throw new IllegalArgumentException(
+                        "Usage : <instance directory> backup <partition id> <backup directory>" );
+                }
+
+                LOG.debug( "Backing up the partition {}", args[2] );
+                backup( args[2], args[3] );
+
+                break;
+
+            case IMPORT :
+                // Load a LDIF file into an empty partition, the server being stopped
+                if ( args.length != 4 )
+                {
+                    throw new IllegalArgumentException(
+                        "Usage : <instance directory> import <partition id> <LDIF file>" );
+                }
+
+                LOG.debug( "Importing {} into the partition {}", args[3], args[2] );
+                instance.importLdif( instanceDirectory, args[2], args[3] );
+
+                break;
+
             default:
                 throw new IllegalArgumentException( "Unexpected action " + action );
         }
@@ -208,6 +250,106 @@ public class UberjarMain
     }
     
 
+    /**
+     * Loads a LDIF file into an empty partition. The server must not be running.
+     *
+     * @param instanceDirectory The directory containing the server instance
+     * @param partitionId The ID of the partition to load
+     * @param ldifFile The LDIF file to import
+     */
+    public void importLdif( String instanceDirectory, String partitionId, String ldifFile )
+    {
+        InstanceLayout layout = new InstanceLayout( instanceDirectory );
+
+        // Creating ApacheDS service
+        service = new ApacheDsService();
+
+        try
+        {
+            System.out.println( "Starting the service." );
+            // must start servers otherwise stop() won't work
+            service.start( layout, true );
+            System.out.println( "Service started." );
+        }
+        catch ( Exception e )
+        {
+            LOG.error( "Failed to start the service.", e );
+            return;
+        }
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            long imported = service.importLdif( layout, partitionId, new File( ldifFile ) );
+            long duration = Math.max( 1L, System.currentTimeMillis() - start );
+
+            System.out.println( "Imported " + imported + " entries into the partition " + partitionId + " in "
+                + duration + " ms (" + ( imported * 1000L / duration ) + " entries/s)" );
+        }
+        catch ( Exception e )
+        {
+            LOG.error( "Failed to import the LDIF file.", e );
+            stop();
+            System.exit( 1 );
+        }
+
+        // Stop the service
+        stop();
+    }
+
+
+    /**
+     * Asks the running server to write a consistent copy of a partition into a
+     * directory, using the partition backup extended operation. The server is
+     * reached on the loopback interface and port 10389, unless the
+     * apacheds.backup.host and apacheds.backup.port properties say otherwise.
+     * The apacheds.backup.password property must contain the administrator password.
+     *
+     * @param partitionId The ID of the partition to backup
+     * @param backupDirectory The directory where the partition files will be copied
+     * @throws Exception If the backup failed
+     */
+    private static void backup( String partitionId, String backupDirectory ) throws Exception
+    {
+        String password = System.getProperty( PROPERTY_BACKUP_PASSWORD );
+
+        if ( password == null )
+        {
+            throw new IllegalArgumentException( "The " + PROPERTY_BACKUP_PASSWORD + " property is missing" );
+        }
+
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( System.getProperty( PROPERTY_BACKUP_HOST, Network.LOOPBACK_HOSTNAME ) );
+        config.setLdapPort( Integer.getInteger( PROPERTY_BACKUP_PORT, 10389 ) );
+        config.setName( System.getProperty( PROPERTY_BACKUP_USER, ServerDNConstants.ADMIN_SYSTEM_DN ) );
+        config.setCredentials( password );
+
+        try ( LdapConnection connection = new LdapNetworkConnection( config ) )
+        {
+            connection.bind();
+            PartitionBackupFactory.register( connection.getCodecService() );
+            PartitionBackupFactory factory = new PartitionBackupFactory( connection.getCodecService() );
+
+            // The directory is resolved here, as we are expected to run on the server host
+            ExtendedResponse response = connection.extended(
+                factory.newRequest( partitionId, new File( backupDirectory ).getAbsolutePath() ) );
+            LdapResult result = response.getLdapResult();
+
+            if ( result.getResultCode() != ResultCodeEnum.SUCCESS )
+            {
+                System.err.println( "The backup of the partition " + partitionId + " failed : "
+                    + result.getResultCode() + " " + result.getDiagnosticMessage() );
+                System.exit( 1 );
+            }
+
+            String copied = ( response instanceof OpaqueExtendedResponse )
+                ? Strings.utf8ToString( ( ( OpaqueExtendedResponse ) response ).getResponseValue() ) : "?";
+            System.out.println( "Copied " + copied + " bytes from the partition " + partitionId + " into "
+                + backupDirectory );
+        }
+    }
+
+
     public void stop()
     {
         if ( service != null )
@@ -321,7 +463,7 @@ public class UberjarMain
     
     private enum Action
     {
-        START, STOP, REPAIR;
+        START, STOP, REPAIR, BACKUP, IMPORT;
 
         public static Action fromString( String actionString )
         {
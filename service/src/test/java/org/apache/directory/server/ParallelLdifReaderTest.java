@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.server;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test case for the ParallelLdifReader class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelLdifReaderTest
+{
+    /** The LDIF file */
+    private File ldifFile;
+
+
+    @Before
+    public void createFile() throws IOException
+    {
+        ldifFile = File.createTempFile( "parallel", ".ldif" );
+    }
+
+
+    @After
+    public void deleteFile() throws IOException
+    {
+        Files.deleteIfExists( ldifFile.toPath() );
+    }
+
+
+    private void write( String ldif ) throws IOException
+    {
+        Files.write( ldifFile.toPath(), ldif.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+
+    @Test
+    public void testEntriesInFileOrder() throws Exception
+    {
+        StringBuilder ldif = new StringBuilder( "version: 1\n\n# The entries\n" );
+
+        for ( int i = 0; i < 2500; i++ )
+        {
+            ldif.append( "dn: cn=user" ).append( i ).append( ",ou=system\n" );
+            ldif.append( "objectClass: person\n" );
+            ldif.append( "cn: user" ).append( i ).append( '\n' );
+            ldif.append( "description: a value spread\n  over two lines\n" );
+            ldif.append( "sn: " ).append( i ).append( "\n\n" );
+        }
+
+        // No empty line after the last record
+        ldif.append( "dn: cn=last,ou=system\nobjectClass: person\ncn: last\nsn: last" );
+        write( ldif.toString() );
+
+        try ( ParallelLdifReader reader = new ParallelLdifReader( ldifFile, null, 3 ) )
+        {
+            for ( int i = 0; i < 2500; i++ )
+            {
+                Entry entry = reader.next();
+                assertEquals( "cn=user" + i + ",ou=system", entry.getDn().getName() );
+                assertEquals( "a value spread over two lines", entry.get( "description" ).getString() );
+            }
+
+            assertEquals( "cn=last,ou=system", reader.next().getDn().getName() );
+            assertFalse( reader.hasNext() );
+        }
+    }
+
+
+    @Test
+    public void testChangeRecord() throws Exception
+    {
+        write( "dn: cn=user,ou=system\nobjectClass: person\ncn: user\nsn: user\n\n"
+            + "dn: cn=user,ou=system\nchangetype: delete\n\n" );
+
+        try ( ParallelLdifReader reader = new ParallelLdifReader( ldifFile, null, 2 ) )
+        {
+            reader.hasNext();
+            fail();
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            // Expected
+        }
+    }
+}
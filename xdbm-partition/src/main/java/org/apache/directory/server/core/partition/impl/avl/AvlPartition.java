@@ -35,6 +35,10 @@ import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
 import org.apache.directory.server.xdbm.impl.avl.AvlMasterTable;
 import org.apache.directory.server.xdbm.impl.avl.AvlRdnIndex;
+import org.apache.directory.server.xdbm.impl.mvcc.MvccIndex;
+import org.apache.directory.server.xdbm.impl.mvcc.MvccMasterTable;
+import org.apache.directory.server.xdbm.impl.mvcc.MvccRdnIndex;
+import org.apache.directory.server.xdbm.impl.mvcc.MvccStore;
 import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
 import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
 import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
@@ -46,6 +50,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An XDBM Partition backed by in memory AVL Trees.
+ * <br>
+ * When the concurrent mode is set, the AVL trees are replaced by immutable trees versioned
+ * by a {@link MvccStore} : a read transaction sees the last committed version of the
+ * master table and of all the indexes without taking any lock, and keeps seeing it for
+ * its whole life, while a write transaction only publishes its updates on commit.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -54,6 +63,12 @@ public class AvlPartition extends AbstractBTreePartition
     /** static logger */
     private static final Logger LOG = LoggerFactory.getLogger( AvlPartition.class );
 
+    /** Tells if the partition uses the versioned, lock-free for readers, tables */
+    private boolean concurrent = false;
+
+    /** The store holding the table versions, in concurrent mode */
+    private MvccStore mvccStore;
+
 
     /**
      * Creates a store based on AVL Trees.
@@ -117,7 +132,15 @@ public class AvlPartition extends AbstractBTreePartition
             }
 
             // Create the master table (the table containing all the entries)
-            master = new AvlMasterTable( id, UuidComparator.INSTANCE, null, false );
+            if ( concurrent )
+            {
+                mvccStore = new MvccStore();
+                master = new MvccMasterTable( mvccStore, id, UuidComparator.INSTANCE );
+            }
+            else
+            {
+                master = new AvlMasterTable( id, UuidComparator.INSTANCE, null, false );
+            }
 
             super.doInit();
         }
@@ -142,6 +165,41 @@ public class AvlPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * @return <tt>true</tt> if the partition uses versioned tables, giving each read transaction its own snapshot
+     */
+    @Override
+    public boolean isConcurrent()
+    {
+        return concurrent;
+    }
+
+
+    /**
+     * Sets the concurrent mode. In this mode, the master table and the indexes are immutable
+     * trees, versioned so that the readers never wait for a writer, and each search works on
+     * a consistent snapshot. The default is to use the AVL trees, which rely on the partition
+     * lock.
+     *
+     * @param concurrent <tt>true</tt> to use the versioned tables
+     */
+    public void setConcurrent( boolean concurrent )
+    {
+        checkInitialized( "concurrent" );
+        this.concurrent = concurrent;
+    }
+
+
+    /**
+     * The DN caches are shared by all the transactions, they are not used in concurrent mode.
+     */
+    @Override
+    protected boolean isDnCacheEnabled()
+    {
+        return !concurrent;
+    }
+
+
     /**
      * always returns false, cause this is a in-memory store
      */
@@ -165,6 +223,11 @@ public class AvlPartition extends AbstractBTreePartition
     @Override
     protected Index<?, String> convertAndInit( Index<?, String> index ) throws LdapException
     {
+        if ( concurrent )
+        {
+            return convertAndInitMvcc( index );
+        }
+
         AvlIndex<?> avlIndex;
 
         if ( index.getAttributeId().equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
@@ -188,11 +251,49 @@ public class AvlPartition extends AbstractBTreePartition
     }
 
 
+    /**
+     * Converts an index to a MvccIndex, keeping its attribute and its reverse flag.
+     */
+    private Index<?, String> convertAndInitMvcc( Index<?, String> index ) throws LdapException
+    {
+        MvccIndex<?> mvccIndex;
+
+        if ( index.getAttributeId().equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+        {
+            mvccIndex = new MvccRdnIndex( mvccStore, index.getAttributeId() );
+        }
+        else if ( index instanceof MvccIndex<?> )
+        {
+            mvccIndex = ( MvccIndex<?> ) index;
+        }
+        else
+        {
+            LOG.debug( "Supplied index {} is not a MvccIndex. "
+                + "Will create new MvccIndex using copied configuration parameters.", index );
+            mvccIndex = new MvccIndex( mvccStore, index.getAttributeId(), true );
+        }
+
+        mvccIndex.init( schemaManager, schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ) );
+
+        return mvccIndex;
+    }
+
+
     /**
      * {@inheritDoc}
      */
     protected final Index createSystemIndex( String oid, URI path, boolean withReverse ) throws LdapException
     {
+        if ( concurrent )
+        {
+            if ( oid.equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+            {
+                return new MvccRdnIndex( mvccStore, oid );
+            }
+
+            return new MvccIndex( mvccStore, oid, withReverse );
+        }
+
         LOG.debug( "Supplied index {} is not a JdbmIndex.  "
             + "Will create new JdbmIndex using copied configuration parameters." );
 
@@ -227,6 +328,11 @@ public class AvlPartition extends AbstractBTreePartition
     @Override
     public PartitionReadTxn beginReadTransaction()
     {
+        if ( mvccStore != null )
+        {
+            return mvccStore.beginReadTransaction();
+        }
+
         return new PartitionReadTxn();
     }
 
@@ -234,6 +340,11 @@ public class AvlPartition extends AbstractBTreePartition
     @Override
     public PartitionWriteTxn beginWriteTransaction()
     {
+        if ( mvccStore != null )
+        {
+            return mvccStore.beginWriteTransaction();
+        }
+
         return new PartitionWriteTxn();
     }
 }
@@ -20,10 +20,21 @@
 package org.apache.directory.server.core.partition.impl.btree;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -66,6 +77,8 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -129,6 +142,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** The Entry cache size for this partition */
     protected int cacheSize = DEFAULT_CACHE_SIZE;
 
+    /** The memory used by the off-heap entry cache, in bytes. 0 means the entries are cached on the heap */
+    protected long entryCacheMemory = 0L;
+
     /** The alias cache */
     protected Cache<String, Dn> aliasCache;
 
@@ -308,6 +324,110 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Gets the memory the entry cache can use out of the heap.
+     *
+     * @return the maximum number of bytes used to cache entries, or 0 if the entries are cached on the heap
+     */
+    public long getEntryCacheMemory()
+    {
+        return entryCacheMemory;
+    }
+
+
+    /**
+     * Stores the cached entries out of the heap, in the given amount of memory, instead of
+     * keeping up to {@link #getCacheSize()} entries on the heap. The entries are then
+     * decoded each time they are read from the cache.
+     *
+     * @param entryCacheMemory the maximum number of bytes used to cache entries, 0 to cache them on the heap
+     */
+    public void setEntryCacheMemory( long entryCacheMemory )
+    {
+        checkInitialized( "entryCacheMemory" );
+        this.entryCacheMemory = entryCacheMemory;
+    }
+
+
+    /**
+     * Creates the entry cache, depending on the configuration : an {@link OffHeapEntryCache}
+     * if some entry cache memory has been set, an {@link HeapEntryCache} holding up to
+     * cacheSize entries otherwise.
+     *
+     * @return The entry cache
+     */
+    protected EntryCache createEntryCache()
+    {
+        if ( entryCacheMemory > 0L )
+        {
+            LOG.debug( "Using an off-heap entry cache of {} bytes for {} partition", entryCacheMemory, id );
+
+            return new OffHeapEntryCache( schemaManager, entryCacheMemory );
+        }
+
+        return new HeapEntryCache( cacheSize );
+    }
+
+
+    /**
+     * Tells if the alias, ParentIdAndRdn and entry DN caches are used. Those caches are
+     * shared by all the transactions, so a partition giving each reader its own snapshot
+     * of the data must not use them.
+     *
+     * @return <tt>true</tt> if the caches are used
+     */
+    protected boolean isDnCacheEnabled()
+    {
+        return true;
+    }
+
+
+    /**
+     * Tells if the entries returned by the master table may be shared : the instances kept
+     * in memory by the backend, and returned to all the readers. An entry being modified or
+     * renamed is then copied first. The default is <tt>true</tt>, a backend deserializing a
+     * new entry on each read returns <tt>false</tt>.
+     *
+     * @return <tt>true</tt> if the master table may return a shared instance of an entry
+     */
+    protected boolean isStoredEntryShared()
+    {
+        return true;
+    }
+
+
+    /**
+     * Gets an entry from the master table, in order to update it. It's copied if the
+     * stored instance may be shared with the readers.
+     */
+    private Entry getEntryForUpdate( PartitionTxn partitionTxn, String id ) throws LdapException
+    {
+        Entry entry = master.get( partitionTxn, id );
+
+        if ( ( entry == null ) || !isStoredEntryShared() )
+        {
+            return entry;
+        }
+
+        return entry.clone();
+    }
+
+
+    /**
+     * Drops all the cached DNs : the alias targets, the parent ID and RDN of the entries,
+     * and the entry DNs.
+     */
+    protected void invalidateDnCaches()
+    {
+        if ( isDnCacheEnabled() )
+        {
+            aliasCache.invalidateAll();
+            piarCache.invalidateAll();
+            entryDnCache.invalidateAll();
+        }
+    }
+
+
     /**
      * Tells if the Optimizer is enabled or not
      * @return true if the optimizer is enabled
@@ -543,9 +663,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // don't reset initialized flag
         initialized = false;
 
-        aliasCache.invalidateAll();
-        piarCache.invalidateAll();
-        entryDnCache.invalidateAll();
+        invalidateDnCaches();
 
         MultiException errors = new MultiException( I18n.err( I18n.ERR_577 ) );
 
@@ -629,14 +747,17 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         setupSystemIndices();
         setupUserIndices();
 
-        aliasCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+        if ( isDnCacheEnabled() )
+        {
+            aliasCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
+                .build();
 
-        piarCache = Caffeine.newBuilder().maximumSize( cacheSize * 3L )
-            .expireAfterAccess( Duration.ofMinutes( 20 ) ).build();
+            piarCache = Caffeine.newBuilder().maximumSize( cacheSize * 3L )
+                .expireAfterAccess( Duration.ofMinutes( 20 ) ).build();
 
-        entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
-            .build();
+            entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize )
+                .expireAfterAccess( Duration.ofMinutes( 20 ) ).build();
+        }
     }
 
 
@@ -992,11 +1113,32 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         Entry deletedEntry = delete( partitionTxn, id );
 
         updateCache( deleteContext );
+        syncOnWrite( deleteContext );
         
         return deletedEntry;
     }
 
 
+    /**
+     * Flushes the partition once an update is done, if syncOnWrite is set. The updates done
+     * in a session transaction are not flushed : a flush would make them permanent before we
+     * know if the next updates of the transaction succeed. They are written when the
+     * transaction is committed.
+     *
+     * @param opContext The update operation context
+     * @throws LdapException If the flush failed
+     */
+    private void syncOnWrite( OperationContext opContext ) throws LdapException
+    {
+        CoreSession session = opContext.getSession();
+
+        if ( isSyncOnWrite.get() && ( ( session == null ) || !session.hasSessionTransaction() ) )
+        {
+            sync();
+        }
+    }
+
+
     protected void updateRdnIdx( PartitionTxn partitionTxn, String parentId, boolean addRemove, int nbDescendant ) throws LdapException
     {
         boolean isFirst = true;
@@ -1151,7 +1293,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
                 updatePiarCache( parent, id, DEL_CACHE );
 
-                entryDnCache.invalidate( id );
+                if ( entryDnCache != null )
+                {
+                    entryDnCache.invalidate( id );
+                }
                 
                 Attribute csn = entry.get( entryCsnAT );
                 // can be null while doing subentry deletion
@@ -1167,11 +1312,6 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 unlockWrite();
             }
 
-            if ( isSyncOnWrite.get() )
-            {
-                sync();
-            }
-
             return entry;
         }
         catch ( Exception e )
@@ -1296,7 +1436,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
 
             if ( id == null )
             {
@@ -1313,7 +1453,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -1337,33 +1477,23 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 entry.setDn( dn );
 
-                entry = new ClonedServerEntry( entry );
+                entry = new ClonedServerEntry( entry, true );
 
-                // Replace the entry's DN with the provided one
-                Attribute entryDnAt = entry.get( entryDnAT );
-                Value dnValue = new Value( entryDnAT, dn.getName(), dn.getNormName() );
-
-                if ( entryDnAt == null )
-                {
-                    entry.add( entryDnAT, dnValue );
-                }
-                else
-                {
-                    entryDnAt.clear();
-                    entryDnAt.add( dnValue );
-                }
+                // Replace the entry's DN with the provided one. The cached entry's attribute
+                // is shared, so we don't modify it
+                entry.put( entryDnAT, new Value( entryDnAT, dn.getName(), dn.getNormName() ) );
 
                 return entry;
             }
 
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 entry = master.get( partitionTxn, id );
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
 
             if ( entry != null )
@@ -1374,7 +1504,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // always store original entry in the cache
                 addToCache( id, entry );
 
-                entry = new ClonedServerEntry( entry );
+                entry = new ClonedServerEntry( entry, true );
 
                 if ( !entry.containsAttribute( entryDnAT ) )
                 {
@@ -1433,7 +1563,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     public final synchronized Entry modify( PartitionTxn partitionTxn, Dn dn, Modification... mods ) throws LdapException
     {
         String id = getEntryId( partitionTxn, dn );
-        Entry entry = master.get( partitionTxn, id );
+        // The stored entry may be shared with the entries being read : we modify a copy
+        Entry entry = getEntryForUpdate( partitionTxn, id );
 
         for ( Modification mod : mods )
         {
@@ -2087,6 +2218,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
             move( partitionTxn, oldDn, newSuperior, newDn, modifiedEntry );
             updateCache( moveContext );
+            syncOnWrite( moveContext );
         }
         catch ( Exception e )
         {
@@ -2190,16 +2322,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
 
-        entryDnCache.invalidateAll();
+        // The DN of the moved entry and of its descendants have changed
+        invalidateEntryDnCache( partitionTxn, entryId, movedEntry.getNbDescendants() );
         
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         master.put( partitionTxn, entryId, modifiedEntry );
-
-        if ( isSyncOnWrite.get() )
-        {
-            sync();
-        }
     }
 
 
@@ -2369,8 +2497,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         modifiedEntry.removeAttributes( ApacheSchemaConstants.ENTRY_PARENT_ID_OID );
         modifiedEntry.add( ApacheSchemaConstants.ENTRY_PARENT_ID_OID, newParentId );
         
-        // Doom the DN cache now
-        entryDnCache.invalidateAll();
+        // The DN of the moved entry and of its descendants have changed
+        invalidateEntryDnCache( partitionTxn, entryId, movedEntry.getNbDescendants() );
 
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
@@ -2477,6 +2605,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
 
             updateCache( renameContext );
+            syncOnWrite( renameContext );
         }
         catch ( Exception e )
         {
@@ -2496,7 +2625,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         if ( entry == null )
         {
-            entry = master.get( partitionTxn, oldId );
+            // The stored entry may be shared with the entries being read
+            entry = getEntryForUpdate( partitionTxn, oldId );
         }
 
         Dn updn = entry.getDn();
@@ -2653,7 +2783,6 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unchecked")
     @Override
     public final synchronized void rename( PartitionTxn partitionTxn, Dn dn, Rdn newRdn, boolean deleteOldRdn, Entry entry ) 
         throws LdapException
@@ -2693,12 +2822,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         updatePiarCache( parentIdAndRdn, oldId, ADD_CACHE );
 
-        entryDnCache.invalidateAll();
-        
-        if ( isSyncOnWrite.get() )
-        {
-            sync();
-        }
+        // The DN of the renamed entry and of its descendants have changed
+        invalidateEntryDnCache( partitionTxn, oldId, parentIdAndRdn.getNbDescendants() );
     }
 
 
@@ -2768,6 +2893,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     private void updatePiarCache( ParentIdAndRdn piar, String id, boolean add )
     {
+        if ( piarCache == null )
+        {
+            return;
+        }
+
         if ( add == ADD_CACHE )
         {
             piarCache.put( id, piar );
@@ -2779,6 +2909,83 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Removes an entry and its descendants from the entry DN cache, once the entry has been
+     * renamed or moved. The DNs cached for the other entries remain valid. The descendants
+     * are found by following the RDN index parent links of the cached entries up to the
+     * renamed entry.
+     *
+     * @param partitionTxn The transaction to use
+     * @param id The renamed or moved entry ID
+     * @param nbDescendants The number of descendants of the entry
+     * @throws LdapException If we weren't able to read the RDN index
+     */
+    protected void invalidateEntryDnCache( PartitionTxn partitionTxn, String id, int nbDescendants )
+        throws LdapException
+    {
+        if ( entryDnCache == null )
+        {
+            return;
+        }
+
+        entryDnCache.invalidate( id );
+
+        if ( nbDescendants == 0 )
+        {
+            return;
+        }
+
+        List<String> descendants = new ArrayList<>();
+
+        for ( String cachedId : entryDnCache.asMap().keySet() )
+        {
+            if ( isDescendant( partitionTxn, cachedId, id ) )
+            {
+                descendants.add( cachedId );
+            }
+        }
+
+        entryDnCache.invalidateAll( descendants );
+    }
+
+
+    /**
+     * Tells if an entry is a descendant of another entry, walking up the RDN index parent links.
+     * An entry which can't be found in the RDN index is considered as a descendant.
+     */
+    private boolean isDescendant( PartitionTxn partitionTxn, String id, String ancestorId ) throws LdapException
+    {
+        String parentId = id;
+
+        do
+        {
+            ParentIdAndRdn piar = piarCache.getIfPresent( parentId );
+
+            if ( piar == null )
+            {
+                piar = rdnIdx.reverseLookup( partitionTxn, parentId );
+
+                if ( piar == null )
+                {
+                    return true;
+                }
+
+                piarCache.put( parentId, piar );
+            }
+
+            parentId = piar.getParentId();
+
+            if ( parentId.equals( ancestorId ) )
+            {
+                return true;
+            }
+        }
+        while ( !parentId.equals( Partition.ROOT_ID ) );
+
+        return false;
+    }
+
+
     // ------------------------------------------------------------------------
     // Index and master table Operations
     // ------------------------------------------------------------------------
@@ -2803,7 +3010,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
 
             if ( entryDnCache != null )
             {
@@ -2866,12 +3073,16 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             
             dn = new Dn( schemaManager, Arrays.copyOf( rdnArray, pos ) );
             
-            entryDnCache.put( id, dn );
+            if ( entryDnCache != null )
+            {
+                entryDnCache.put( id, dn );
+            }
+
             return dn;
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -2933,7 +3144,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             // Check into the Rdn index, starting with the partition Suffix
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 String currentId = rdnIdx.forwardLookup( partitionTxn, suffixKey );
 
                 for ( int i = dn.size() - suffixDn.size(); i > 0; i-- )
@@ -2953,7 +3164,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
         catch ( Exception e )
@@ -2971,7 +3182,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
             ParentIdAndRdn key = rdnIdx.reverseLookup( partitionTxn, childId );
 
             if ( key == null )
@@ -2983,7 +3194,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -3003,12 +3214,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 suffixId = rdnIdx.forwardLookup( partitionTxn, key );
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
 
@@ -3630,7 +3841,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     private void lockRead()
     {
-        rwLock.readLock().lock();
+        // The readers of a concurrent partition work on their own snapshot
+        if ( !isConcurrent() )
+        {
+            rwLock.readLock().lock();
+        }
     }
 
 
@@ -3639,7 +3854,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     private void unlockRead()
     {
-        rwLock.readLock().unlock();
+        if ( !isConcurrent() )
+        {
+            rwLock.readLock().unlock();
+        }
     }
 
 
@@ -3734,7 +3952,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         if ( operationContext.getSession() != null )
         {
-            rwLock = operationContext.getSession().getDirectoryService().getOperationManager().getRWLock();
+            rwLock = operationContext.getSession().getDirectoryService().getOperationManager()
+                .getRWLock( getSuffixDn() );
         }
         else
         {
@@ -3756,6 +3975,229 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         return rwLock;
     }
 
+
+    /**
+     * Writes a consistent copy of the partition files into a directory, while the server
+     * is running. The updates of the partition are suspended during the copy, the searches
+     * and lookups are not : the partition read lock of the OperationManager blocks the
+     * operations updating the partition, and the partition monitor blocks the binds updating
+     * the password policy attributes, which only hold the read lock.
+     * The pending modifications are first flushed by calling {@link #sync()}, then each file
+     * is copied using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so that the data don't go through the heap.
+     * <br>
+     * The files are copied, not linked : the B-tree files are updated in place, so a hard link
+     * would see the next modifications.
+     *
+     * @param directoryService The DirectoryService the partition is registered in, null if it's not registered
+     * @param targetDirectory The directory where the files will be copied. It must be empty, or not exist.
+     * @return The number of copied bytes
+     * @throws LdapException If the partition has no files, or if the copy failed
+     */
+    public long backup( DirectoryService directoryService, File targetDirectory ) throws LdapException
+    {
+        if ( !initialized )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The partition " + id + " is not initialized" );
+        }
+
+        if ( getPartitionPath() == null )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The partition " + id + " is not stored on disk" );
+        }
+
+        Path source = Paths.get( getPartitionPath() ).toAbsolutePath().normalize();
+        Path target = targetDirectory.toPath().toAbsolutePath().normalize();
+
+        if ( target.startsWith( source ) || source.startsWith( target ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The backup directory " + target + " overlaps the partition directory " + source );
+        }
+
+        ReadWriteLock lock = getOperationLock( directoryService );
+        lock.readLock().lock();
+
+        try
+        {
+            if ( Files.isDirectory( target ) )
+            {
+                try ( DirectoryStream<Path> content = Files.newDirectoryStream( target ) )
+                {
+                    if ( content.iterator().hasNext() )
+                    {
+                        throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                            "The backup directory " + target + " is not empty" );
+                    }
+                }
+            }
+
+            // modify(), move() and rename() are synchronized on the partition
+            synchronized ( this )
+            {
+                sync();
+
+                long copied = copyPartitionFiles( source, target );
+
+                LOG.info( "Copied {} bytes from the partition {} into {}", copied, id, target );
+
+                return copied;
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Gets the lock the OperationManager uses to protect this partition. The lock set by the
+     * operations may not be known yet, so it's asked to the OperationManager. A partition which
+     * is not registered in a DirectoryService is only accessed by its caller, it gets a private
+     * lock.
+     *
+     * @param directoryService The DirectoryService the partition is registered in, or null
+     * @return The partition lock
+     */
+    protected ReadWriteLock getOperationLock( DirectoryService directoryService )
+    {
+        if ( directoryService == null )
+        {
+            return new ReentrantReadWriteLock();
+        }
+
+        return directoryService.getOperationManager().getRWLock( getSuffixDn() );
+    }
+
+
+    /**
+     * Copies the partition files, keeping the directory layout when the partition
+     * is stored in a directory
+     */
+    private long copyPartitionFiles( final Path source, final Path target ) throws IOException
+    {
+        Files.createDirectories( target );
+
+        if ( !Files.isDirectory( source ) )
+        {
+            return copyFile( source, target.resolve( source.getFileName() ) );
+        }
+
+        final long[] copied = new long[1];
+
+        Files.walkFileTree( source, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) throws IOException
+            {
+                Files.createDirectories( target.resolve( source.relativize( dir ).toString() ) );
+
+                return FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) throws IOException
+            {
+                if ( attrs.isRegularFile() )
+                {
+                    copied[0] += copyFile( file, target.resolve( source.relativize( file ).toString() ) );
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+
+        return copied[0];
+    }
+
+
+    /**
+     * Copies a file using a zero-copy transfer, and forces the copy to disk
+     */
+    private static long copyFile( Path source, Path target ) throws IOException
+    {
+        try ( FileChannel in = FileChannel.open( source, StandardOpenOption.READ );
+            FileChannel out = FileChannel.open( target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE ) )
+        {
+            long size = in.size();
+            long position = 0L;
+
+            while ( position < size )
+            {
+                position += in.transferTo( position, size - position, out );
+            }
+
+            out.force( true );
+
+            return size;
+        }
+    }
+
+
+    /**
+     * Loads entries into an empty partition, without going through the interceptors : the entries
+     * are not checked against the schema, and no access control is applied. The master table is
+     * written in a single pass, then each index is filled in key order, from tuples sorted on disk.
+     * The partition may already contain its context entry.
+     * <br>
+     * The parents must come before their children.
+     *
+     * @param entries The entries to load
+     * @param tmpDirectory The directory where the index tuples are sorted
+     * @param maxTuplesInMemory The number of tuples per index kept in memory before being sorted on disk
+     * @return The number of loaded entries
+     * @throws LdapException If the partition is not empty, or if an entry can't be loaded
+     */
+    public long bulkLoad( Iterator<Entry> entries, File tmpDirectory, int maxTuplesInMemory ) throws LdapException
+    {
+        if ( !initialized )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "The partition " + id + " is not initialized" );
+        }
+
+        if ( rwLock == null )
+        {
+            rwLock = new ReentrantReadWriteLock();
+        }
+
+        ReadWriteLock lock = rwLock;
+        lock.writeLock().lock();
+
+        try
+        {
+            PartitionBulkLoader loader = new PartitionBulkLoader( this, tmpDirectory, maxTuplesInMemory );
+
+            try
+            {
+                return loader.load( entries );
+            }
+            finally
+            {
+                invalidateDnCaches();
+
+                if ( loader.getLastCsn() != null )
+                {
+                    setContextCsn( loader.getLastCsn() );
+                }
+
+                sync();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
     
     /**
      * {@inheritDoc}
@@ -3857,13 +4299,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 return;
             }
 
-            origEntry = ( ( ClonedServerEntry ) origEntry ).getOriginalEntry();
+            // The original entry is cached and shared with the entries being read : we modify a copy
+            origEntry = ( ( ClonedServerEntry ) origEntry ).getOriginalEntry().clone();
             
             origEntry.removeAttributes( contextCsnAT, entryDnAT );
             
             origEntry.add( contextCsnAT, contextCsn );
             
             master.put( partitionTxn, contextEntryId, origEntry );
+            addToCache( contextEntryId, origEntry );
             
             ctxCsnChanged = false;
             
@@ -3889,7 +4333,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             // Check into the Rdn index, starting with the partition Suffix
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, entry.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
 
                 subordinates.setNbChildren( parentIdAndRdn.getNbChildren() );
@@ -3897,7 +4341,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
         catch ( Exception e )
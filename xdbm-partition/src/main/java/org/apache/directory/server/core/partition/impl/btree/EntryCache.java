@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+
+/**
+ * The cache a partition keeps its entries in, indexed by their entryUUID.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface EntryCache
+{
+    /**
+     * Gets an entry from the cache.
+     *
+     * @param id The entry ID
+     * @return The cached entry, or null if it's not in the cache
+     */
+    Entry get( String id );
+
+
+    /**
+     * Stores an entry in the cache, replacing any entry stored with the same ID.
+     *
+     * @param id The entry ID
+     * @param entry The entry to cache
+     */
+    void put( String id, Entry entry );
+
+
+    /**
+     * Removes an entry from the cache.
+     *
+     * @param id The entry ID
+     */
+    void invalidate( String id );
+
+
+    /**
+     * Removes all the entries from the cache.
+     */
+    void invalidateAll();
+
+
+    /**
+     * @return The number of entries in the cache
+     */
+    long size();
+
+
+    /**
+     * Releases the resources held by the cache. The cache must not be used afterward.
+     */
+    void close();
+}
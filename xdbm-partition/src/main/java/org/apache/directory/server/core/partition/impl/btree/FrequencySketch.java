@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+/**
+ * A count-min sketch estimating how often a key has been accessed recently, used by the
+ * {@link OffHeapEntryCache} to decide which entries are worth keeping. Each key is mapped
+ * to four 4-bit counters, and its frequency is the smallest of them. All the counters are
+ * halved once enough increments have been recorded, so that old accesses fade away.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class FrequencySketch
+{
+    /** The seeds used to compute the four counter positions of a key */
+    private static final long[] SEEDS =
+        {
+            0xc3a5c85c97cb3127L,
+            0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L
+        };
+
+    /** The mask used to halve the 16 counters stored in a long */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** The largest value a counter can hold */
+    private static final int MAX_COUNT = 15;
+
+    /** The counters, 16 per long */
+    private final long[] table;
+
+    /** The mask used to get a position in the table */
+    private final int tableMask;
+
+    /** The number of increments after which the counters are halved */
+    private final int sampleSize;
+
+    /** The number of increments since the last reset */
+    private int size;
+
+
+    /**
+     * Creates a new instance of FrequencySketch
+     *
+     * @param expectedSize The expected number of distinct keys
+     */
+    FrequencySketch( int expectedSize )
+    {
+        int length = Integer.highestOneBit( Math.max( expectedSize, 16 ) - 1 ) << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = length * 10;
+    }
+
+
+    /**
+     * Gets the estimated number of accesses to a key
+     *
+     * @param key The key
+     * @return The estimated frequency, between 0 and 15
+     */
+    int frequency( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+        int frequency = MAX_COUNT;
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            int index = indexOf( hash, i );
+            int count = ( int ) ( ( table[index] >>> ( ( start + i ) << 2 ) ) & 0xfL );
+            frequency = Math.min( frequency, count );
+        }
+
+        return frequency;
+    }
+
+
+    /**
+     * Records an access to a key
+     *
+     * @param key The key
+     */
+    void increment( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+        boolean added = false;
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            added |= incrementAt( indexOf( hash, i ), start + i );
+        }
+
+        if ( added && ( ++size == sampleSize ) )
+        {
+            reset();
+        }
+    }
+
+
+    /**
+     * Increments a counter, unless it has reached its maximum value
+     */
+    private boolean incrementAt( int index, int counter )
+    {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+
+        if ( ( table[index] & mask ) != mask )
+        {
+            table[index] += 1L << offset;
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Halves all the counters
+     */
+    private void reset()
+    {
+        for ( int i = 0; i < table.length; i++ )
+        {
+            table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+        }
+
+        size = size >>> 1;
+    }
+
+
+    /**
+     * Gets the position in the table of the i-th counter of a key
+     */
+    private int indexOf( int hash, int i )
+    {
+        long value = ( hash + SEEDS[i] ) * SEEDS[i];
+        value += value >>> 32;
+
+        return ( int ) value & tableMask;
+    }
+
+
+    /**
+     * Spreads the bits of a hash code, as String hash codes are poorly distributed
+     */
+    private static int spread( int hash )
+    {
+        int value = ( ( hash >>> 16 ) ^ hash ) * 0x45d9f3b;
+        value = ( ( value >>> 16 ) ^ value ) * 0x45d9f3b;
+
+        return ( value >>> 16 ) ^ value;
+    }
+}
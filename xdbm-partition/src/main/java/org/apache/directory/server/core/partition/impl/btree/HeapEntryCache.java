@@ -0,0 +1,109 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * An {@link EntryCache} keeping the entries on the heap, sized in number of entries.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class HeapEntryCache implements EntryCache
+{
+    /** The underlying cache */
+    private final Cache<String, Entry> cache;
+
+
+    /**
+     * Creates a new instance of HeapEntryCache
+     *
+     * @param maximumSize The maximum number of entries to keep in the cache
+     */
+    public HeapEntryCache( int maximumSize )
+    {
+        cache = Caffeine.newBuilder().maximumSize( maximumSize ).build();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get( String id )
+    {
+        return cache.getIfPresent( id );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( String id, Entry entry )
+    {
+        cache.put( id, entry );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate( String id )
+    {
+        cache.invalidate( id );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size()
+    {
+        return cache.estimatedSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+
+
+/**
+ * Sorts the (key, entry ID) tuples of an index, whatever their number. The tuples are
+ * kept in memory up to a limit, then sorted and written to a temporary file. Once all
+ * the tuples have been added, the sorted files are merged.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class IndexTupleSorter implements Closeable
+{
+    /** The order of the tuples : by key, then by ID */
+    private static final Comparator<Tuple<String, String>> TUPLE_ORDER = new Comparator<Tuple<String, String>>()
+    {
+        @Override
+        public int compare( Tuple<String, String> tuple1, Tuple<String, String> tuple2 )
+        {
+            int result = tuple1.getKey().compareTo( tuple2.getKey() );
+
+            if ( result == 0 )
+            {
+                result = tuple1.getValue().compareTo( tuple2.getValue() );
+            }
+
+            return result;
+        }
+    };
+
+    /** The directory where the sorted runs are written */
+    private final File tmpDirectory;
+
+    /** The number of tuples kept in memory before being written to a file */
+    private final int maxTuplesInMemory;
+
+    /** The tuples not written yet */
+    private List<Tuple<String, String>> tuples = new ArrayList<>();
+
+    /** The files containing the sorted runs */
+    private final List<File> runs = new ArrayList<>();
+
+    /** The files being merged */
+    private final List<DataInputStream> readers = new ArrayList<>();
+
+
+    /**
+     * Creates a new instance of IndexTupleSorter.
+     *
+     * @param tmpDirectory The directory where the sorted runs are written
+     * @param maxTuplesInMemory The number of tuples kept in memory
+     */
+    IndexTupleSorter( File tmpDirectory, int maxTuplesInMemory )
+    {
+        this.tmpDirectory = tmpDirectory;
+        this.maxTuplesInMemory = maxTuplesInMemory;
+    }
+
+
+    /**
+     * Adds a tuple
+     *
+     * @param key The index key
+     * @param id The entry ID
+     * @throws IOException If the tuples can't be written to a file
+     */
+    void add( String key, String id ) throws IOException
+    {
+        tuples.add( new Tuple<>( key, id ) );
+
+        if ( tuples.size() >= maxTuplesInMemory )
+        {
+            writeRun();
+        }
+    }
+
+
+    private void writeRun() throws IOException
+    {
+        Collections.sort( tuples, TUPLE_ORDER );
+
+        if ( ( tmpDirectory != null ) && !tmpDirectory.isDirectory() && !tmpDirectory.mkdirs() )
+        {
+            throw new IOException( "Cannot create the directory " + tmpDirectory );
+        }
+
+        File run = File.createTempFile( "index-", ".run", tmpDirectory );
+        runs.add( run );
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+            new FileOutputStream( run ) ) ) )
+        {
+            for ( Tuple<String, String> tuple : tuples )
+            {
+                writeString( out, tuple.getKey() );
+                writeString( out, tuple.getValue() );
+            }
+        }
+
+        tuples = new ArrayList<>();
+    }
+
+
+    private static void writeString( DataOutputStream out, String value ) throws IOException
+    {
+        // Not using writeUTF, which is limited to 64Kb
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static Tuple<String, String> readTuple( DataInputStream in ) throws IOException
+    {
+        int length;
+
+        try
+        {
+            length = in.readInt();
+        }
+        catch ( EOFException eofe )
+        {
+            return null;
+        }
+
+        byte[] key = new byte[length];
+        in.readFully( key );
+        byte[] id = new byte[in.readInt()];
+        in.readFully( id );
+
+        return new Tuple<>( new String( key, StandardCharsets.UTF_8 ), new String( id, StandardCharsets.UTF_8 ) );
+    }
+
+
+    /**
+     * Returns the tuples in key order. No tuple can be added once this method is called.
+     *
+     * @return The sorted tuples
+     * @throws IOException If the sorted runs can't be read
+     */
+    SortedTuples sort() throws IOException
+    {
+        Collections.sort( tuples, TUPLE_ORDER );
+
+        return new SortedTuples();
+    }
+
+
+    /**
+     * Deletes the temporary files
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for ( DataInputStream reader : readers )
+        {
+            reader.close();
+        }
+
+        for ( File run : runs )
+        {
+            if ( !run.delete() )
+            {
+                run.deleteOnExit();
+            }
+        }
+
+        readers.clear();
+        runs.clear();
+        tuples = new ArrayList<>();
+    }
+
+
+    /**
+     * Merges the sorted runs and the in memory tuples
+     */
+    class SortedTuples
+    {
+        /** The head of each source, the in memory tuples being the last source */
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        /** The position in the in memory tuples */
+        private int position;
+
+
+        private SortedTuples() throws IOException
+        {
+            for ( File run : runs )
+            {
+                DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( run ) ) );
+                readers.add( in );
+                push( in );
+            }
+
+            push( null );
+        }
+
+
+        private void push( DataInputStream in ) throws IOException
+        {
+            Tuple<String, String> tuple;
+
+            if ( in == null )
+            {
+                tuple = ( position < tuples.size() ) ? tuples.get( position++ ) : null;
+            }
+            else
+            {
+                tuple = readTuple( in );
+            }
+
+            if ( tuple != null )
+            {
+                heads.add( new Head( tuple, in ) );
+            }
+        }
+
+
+        /**
+         * @return <code>true</code> if there are more tuples
+         */
+        boolean hasNext()
+        {
+            return !heads.isEmpty();
+        }
+
+
+        /**
+         * @return The next tuple
+         * @throws IOException If the sorted runs can't be read
+         */
+        Tuple<String, String> next() throws IOException
+        {
+            Head head = heads.poll();
+
+            if ( head == null )
+            {
+                throw new NoSuchElementException();
+            }
+
+            push( head.source );
+
+            return head.tuple;
+        }
+    }
+
+
+    /**
+     * The current tuple of a source
+     */
+    private static class Head implements Comparable<Head>
+    {
+        private final Tuple<String, String> tuple;
+
+        /** The file the tuple comes from, null for the in memory tuples */
+        private final DataInputStream source;
+
+
+        Head( Tuple<String, String> tuple, DataInputStream source )
+        {
+            this.tuple = tuple;
+            this.source = source;
+        }
+
+
+        @Override
+        public int compareTo( Head other )
+        {
+            return TUPLE_ORDER.compare( tuple, other.tuple );
+        }
+    }
+}
@@ -0,0 +1,745 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An {@link EntryCache} storing serialized entries out of the Java heap, sized in bytes.
+ * The entries are decoded on each hit, so that the cache can be made as large as needed
+ * without filling the old generation with entries.
+ * <p>
+ * The memory is split in blocks of {@link #BLOCK_SIZE} bytes, allocated from direct buffers
+ * as the cache grows. An entry is stored in as many blocks as needed, which don't have to be
+ * contiguous, so that the memory never gets fragmented. Only the IDs and the block numbers
+ * are kept on the heap, and the list of the released blocks grows with the number of blocks
+ * actually used.
+ * <p>
+ * The eviction follows the W-TinyLFU policy :
+ * <ul>
+ *   <li>new entries are added to a small LRU window (1% of the cache)</li>
+ *   <li>the entries evicted from the window compete with the least recently used entry of
+ *   the main space, and the one which has been accessed the most often recently, as estimated
+ *   by a {@link FrequencySketch}, is kept</li>
+ *   <li>the main space is a segmented LRU : the entries get into a probation segment, and are
+ *   promoted to a protected segment (80% of the main space) when they are accessed again</li>
+ * </ul>
+ * The cache is guarded by a single lock, which is only held while moving bytes in and out of
+ * the buffers : the entries are serialized and deserialized outside of it. The RDNs and the
+ * attributes are written with their writeExternal() method, which only writes primitive
+ * values : we use a plain data stream, without the ObjectOutputStream header and framing.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OffHeapEntryCache implements EntryCache
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( OffHeapEntryCache.class );
+
+    /** The size of a block, in bytes */
+    public static final int BLOCK_SIZE = 256;
+
+    /** The number of bits to shift to get a number of blocks from a number of bytes */
+    private static final int BLOCK_SHIFT = 8;
+
+    /** The number of blocks in a segment (a segment is a 64MB direct buffer) */
+    private static final int SEGMENT_BLOCKS = 1 << 18;
+
+    /** The number of bits to shift to get a segment number from a block number */
+    private static final int SEGMENT_SHIFT = 18;
+
+    /** The maximum number of longs used by the frequency sketch */
+    private static final int MAX_SKETCH_SIZE = 1 << 22;
+
+    /** The initial size of the list of released blocks */
+    private static final int INITIAL_FREE_BLOCKS = 1024;
+
+    /** The queues an entry can be in */
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    /** The schemaManager, used to decode the entries */
+    private final SchemaManager schemaManager;
+
+    /** The memory, allocated on demand */
+    private final ByteBuffer[] segments;
+
+    /** The number of blocks the cache can use */
+    private final int maxBlocks;
+
+    /** The number of blocks the window can use */
+    private final int maxWindowBlocks;
+
+    /** The number of blocks the main space can use */
+    private final int maxMainBlocks;
+
+    /** The number of blocks the protected segment can use */
+    private final int maxProtectedBlocks;
+
+    /** The blocks that have been released, and can be reused. Grown as needed */
+    private int[] freeBlocks;
+
+    /** The number of released blocks */
+    private int nbFreeBlocks;
+
+    /** The number of blocks that have been used at least once */
+    private int nbAllocatedBlocks;
+
+    /** The number of blocks used by the entries in each queue */
+    private int windowBlocks;
+    private int probationBlocks;
+    private int protectedBlocks;
+
+    /** The queues. The head is the most recently used node, the tail the least recently used */
+    private final Node window = new Node( null, WINDOW );
+    private final Node probation = new Node( null, PROBATION );
+    private final Node protectedSegment = new Node( null, PROTECTED );
+
+    /** The cached entries */
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    /** The access frequency estimation */
+    private final FrequencySketch sketch;
+
+    /** The lock protecting the cache */
+    private final Object lock = new Object();
+
+    /**
+     * A cached entry. The entry is stored in the blocks, in order.
+     */
+    private static final class Node
+    {
+        /** The entry ID */
+        private final String id;
+
+        /** The queue the node is in */
+        private byte queue;
+
+        /** The number of bytes of the serialized entry */
+        private int length;
+
+        /** The blocks the serialized entry is stored in */
+        private int[] blocks;
+
+        /** The previous and next nodes in the queue */
+        private Node prev;
+        private Node next;
+
+        private Node( String id, byte queue )
+        {
+            this.id = id;
+            this.queue = queue;
+            prev = this;
+            next = this;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of OffHeapEntryCache
+     *
+     * @param schemaManager The SchemaManager, used to decode the entries
+     * @param maximumMemory The maximum number of bytes the cache can use to store the entries
+     */
+    public OffHeapEntryCache( SchemaManager schemaManager, long maximumMemory )
+    {
+        if ( maximumMemory < BLOCK_SIZE * 100L )
+        {
+            throw new IllegalArgumentException( "The cache must be at least " + ( BLOCK_SIZE * 100 ) + " bytes large" );
+        }
+
+        this.schemaManager = schemaManager;
+
+        // The blocks are indexed by an int
+        maxBlocks = ( int ) Math.min( maximumMemory >>> BLOCK_SHIFT, Integer.MAX_VALUE - 8 );
+        maxWindowBlocks = Math.max( 1, maxBlocks / 100 );
+        maxMainBlocks = maxBlocks - maxWindowBlocks;
+        maxProtectedBlocks = ( int ) ( maxMainBlocks * 0.8d );
+
+        segments = new ByteBuffer[( maxBlocks + SEGMENT_BLOCKS - 1 ) >>> SEGMENT_SHIFT];
+        freeBlocks = new int[Math.min( maxBlocks, INITIAL_FREE_BLOCKS )];
+
+        // Assume an entry uses 4 blocks on average
+        sketch = new FrequencySketch( Math.min( Math.max( maxBlocks / 4, 16 ), MAX_SKETCH_SIZE ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get( String id )
+    {
+        byte[] bytes;
+
+        synchronized ( lock )
+        {
+            sketch.increment( id );
+            Node node = nodes.get( id );
+
+            if ( node == null )
+            {
+                return null;
+            }
+
+            onHit( node );
+            bytes = read( node );
+        }
+
+        try
+        {
+            return deserialize( bytes );
+        }
+        catch ( IOException | LdapException e )
+        {
+            LOG.warn( "Cannot decode the cached entry {}, removing it from the cache", id, e );
+            invalidate( id );
+
+            return null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( String id, Entry entry )
+    {
+        byte[] bytes;
+
+        try
+        {
+            bytes = serialize( entry );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( "Cannot encode the entry {}, it won't be cached", id, ioe );
+            invalidate( id );
+
+            return;
+        }
+
+        int nbBlocks = ( bytes.length + BLOCK_SIZE - 1 ) >>> BLOCK_SHIFT;
+
+        synchronized ( lock )
+        {
+            sketch.increment( id );
+            Node old = nodes.remove( id );
+
+            if ( old != null )
+            {
+                remove( old );
+            }
+
+            if ( nbBlocks > maxMainBlocks )
+            {
+                // Too large to be cached
+                return;
+            }
+
+            // Make some room, then store the entry in the window
+            Node node = new Node( id, WINDOW );
+            node.length = bytes.length;
+            windowBlocks += nbBlocks;
+            linkFirst( window, node );
+            nodes.put( id, node );
+            evict();
+
+            // The entry may have been evicted right away
+            if ( nodes.get( id ) == node )
+            {
+                write( node, bytes );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate( String id )
+    {
+        synchronized ( lock )
+        {
+            Node node = nodes.remove( id );
+
+            if ( node != null )
+            {
+                remove( node );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAll()
+    {
+        synchronized ( lock )
+        {
+            nodes.clear();
+            clear( window );
+            clear( probation );
+            clear( protectedSegment );
+            windowBlocks = 0;
+            probationBlocks = 0;
+            protectedBlocks = 0;
+
+            // All the allocated blocks are available
+            ensureFreeBlocksCapacity( nbAllocatedBlocks );
+
+            for ( int i = 0; i < nbAllocatedBlocks; i++ )
+            {
+                freeBlocks[i] = i;
+            }
+
+            nbFreeBlocks = nbAllocatedBlocks;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size()
+    {
+        synchronized ( lock )
+        {
+            return nodes.size();
+        }
+    }
+
+
+    /**
+     * @return The number of bytes used by the cached entries, counted in blocks
+     */
+    public long getUsedMemory()
+    {
+        synchronized ( lock )
+        {
+            return ( long ) ( windowBlocks + probationBlocks + protectedBlocks ) << BLOCK_SHIFT;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        synchronized ( lock )
+        {
+            invalidateAll();
+
+            // The direct memory will be released when the buffers are collected
+            for ( int i = 0; i < segments.length; i++ )
+            {
+                segments[i] = null;
+            }
+
+            nbFreeBlocks = 0;
+            nbAllocatedBlocks = 0;
+            freeBlocks = new int[Math.min( maxBlocks, INITIAL_FREE_BLOCKS )];
+        }
+    }
+
+
+    /**
+     * Updates the queues when an entry is read
+     */
+    private void onHit( Node node )
+    {
+        int nbBlocks = blockCount( node );
+
+        switch ( node.queue )
+        {
+            case WINDOW:
+                unlink( node );
+                linkFirst( window, node );
+                break;
+
+            case PROBATION:
+                // Promote the entry, and demote the protected entries in excess
+                unlink( node );
+                probationBlocks -= nbBlocks;
+                node.queue = PROTECTED;
+                linkFirst( protectedSegment, node );
+                protectedBlocks += nbBlocks;
+
+                while ( protectedBlocks > maxProtectedBlocks )
+                {
+                    Node demoted = protectedSegment.prev;
+                    unlink( demoted );
+                    protectedBlocks -= blockCount( demoted );
+                    demoted.queue = PROBATION;
+                    linkFirst( probation, demoted );
+                    probationBlocks += blockCount( demoted );
+                }
+
+                break;
+
+            default:
+                unlink( node );
+                linkFirst( protectedSegment, node );
+                break;
+        }
+    }
+
+
+    /**
+     * Moves the entries in excess out of the window. They get into the main space if there is
+     * some room left, or if they are used more often than the main space entries they replace.
+     * The node being added has no block yet : the sizes are computed from the entries length.
+     */
+    private void evict()
+    {
+        while ( windowBlocks > maxWindowBlocks )
+        {
+            Node candidate = window.prev;
+            int candidateBlocks = blockCount( candidate );
+            unlink( candidate );
+            windowBlocks -= candidateBlocks;
+
+            boolean admitted = true;
+            int candidateFrequency = sketch.frequency( candidate.id );
+
+            while ( probationBlocks + protectedBlocks + candidateBlocks > maxMainBlocks )
+            {
+                Node victim = ( probation.prev != probation ) ? probation.prev : protectedSegment.prev;
+
+                if ( candidateFrequency > sketch.frequency( victim.id ) )
+                {
+                    nodes.remove( victim.id );
+                    remove( victim );
+                }
+                else
+                {
+                    admitted = false;
+                    break;
+                }
+            }
+
+            if ( admitted )
+            {
+                candidate.queue = PROBATION;
+                linkFirst( probation, candidate );
+                probationBlocks += candidateBlocks;
+            }
+            else
+            {
+                nodes.remove( candidate.id );
+                freeBlocks( candidate );
+            }
+        }
+    }
+
+
+    /**
+     * Removes a node from its queue, and releases its blocks
+     */
+    private void remove( Node node )
+    {
+        unlink( node );
+
+        int nbBlocks = blockCount( node );
+
+        switch ( node.queue )
+        {
+            case WINDOW:
+                windowBlocks -= nbBlocks;
+                break;
+
+            case PROBATION:
+                probationBlocks -= nbBlocks;
+                break;
+
+            default:
+                protectedBlocks -= nbBlocks;
+                break;
+        }
+
+        freeBlocks( node );
+    }
+
+
+    /**
+     * Gets the number of blocks needed by a node
+     */
+    private static int blockCount( Node node )
+    {
+        return ( node.length + BLOCK_SIZE - 1 ) >>> BLOCK_SHIFT;
+    }
+
+
+    /**
+     * Releases the blocks of a node
+     */
+    private void freeBlocks( Node node )
+    {
+        if ( node.blocks != null )
+        {
+            ensureFreeBlocksCapacity( nbFreeBlocks + node.blocks.length );
+
+            for ( int block : node.blocks )
+            {
+                freeBlocks[nbFreeBlocks++] = block;
+            }
+
+            node.blocks = null;
+        }
+    }
+
+
+    /**
+     * Grows the list of released blocks so that it can hold the given number of blocks. It
+     * never holds more than the allocated blocks.
+     */
+    private void ensureFreeBlocksCapacity( int capacity )
+    {
+        if ( capacity > freeBlocks.length )
+        {
+            int newLength = ( int ) Math.min( Math.max( capacity, freeBlocks.length * 2L ), maxBlocks );
+            freeBlocks = Arrays.copyOf( freeBlocks, newLength );
+        }
+    }
+
+
+    /**
+     * Allocates the blocks needed by a node, and copies the serialized entry in them
+     */
+    private void write( Node node, byte[] bytes )
+    {
+        int nbBlocks = blockCount( node );
+        int[] blocks = new int[nbBlocks];
+
+        for ( int i = 0; i < nbBlocks; i++ )
+        {
+            int block;
+
+            if ( nbFreeBlocks > 0 )
+            {
+                block = freeBlocks[--nbFreeBlocks];
+            }
+            else
+            {
+                block = nbAllocatedBlocks++;
+
+                if ( segments[block >>> SEGMENT_SHIFT] == null )
+                {
+                    int segmentBlocks = Math.min( SEGMENT_BLOCKS, maxBlocks - block );
+                    segments[block >>> SEGMENT_SHIFT] = ByteBuffer.allocateDirect( segmentBlocks << BLOCK_SHIFT );
+                }
+            }
+
+            blocks[i] = block;
+            int offset = i << BLOCK_SHIFT;
+            ByteBuffer segment = segments[block >>> SEGMENT_SHIFT];
+            segment.position( ( block & ( SEGMENT_BLOCKS - 1 ) ) << BLOCK_SHIFT );
+            segment.put( bytes, offset, Math.min( BLOCK_SIZE, bytes.length - offset ) );
+        }
+
+        node.blocks = blocks;
+    }
+
+
+    /**
+     * Copies a serialized entry out of its blocks
+     */
+    private byte[] read( Node node )
+    {
+        byte[] bytes = new byte[node.length];
+
+        for ( int i = 0; i < node.blocks.length; i++ )
+        {
+            int block = node.blocks[i];
+            int offset = i << BLOCK_SHIFT;
+            ByteBuffer segment = segments[block >>> SEGMENT_SHIFT];
+            segment.position( ( block & ( SEGMENT_BLOCKS - 1 ) ) << BLOCK_SHIFT );
+            segment.get( bytes, offset, Math.min( BLOCK_SIZE, bytes.length - offset ) );
+        }
+
+        return bytes;
+    }
+
+
+    private static void linkFirst( Node head, Node node )
+    {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+
+
+    private static void unlink( Node node )
+    {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node;
+        node.next = node;
+    }
+
+
+    private static void clear( Node head )
+    {
+        head.prev = head;
+        head.next = head;
+    }
+
+
+    /**
+     * Serializes an entry : the number of RDNs of its DN, the RDNs, the number of attributes,
+     * and for each attribute its OID and its values.
+     */
+    private byte[] serialize( Entry entry ) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream( 1024 );
+
+        try ( DataObjectOutput out = new DataObjectOutput( baos ) )
+        {
+            Dn dn = entry.getDn();
+            out.writeInt( dn.size() );
+
+            for ( Rdn rdn : dn.getRdns() )
+            {
+                rdn.writeExternal( out );
+            }
+
+            out.writeInt( entry.size() );
+
+            for ( Attribute attribute : entry )
+            {
+                out.writeUTF( attribute.getAttributeType().getOid() );
+                attribute.writeExternal( out );
+            }
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Deserializes an entry serialized by {@link #serialize(Entry)}
+     */
+    private Entry deserialize( byte[] bytes ) throws IOException, LdapException
+    {
+        try ( DataObjectInput in = new DataObjectInput( new ByteArrayInputStream( bytes ) ) )
+        {
+            Entry entry = new DefaultEntry( schemaManager );
+            Rdn[] rdns = new Rdn[in.readInt()];
+
+            for ( int i = 0; i < rdns.length; i++ )
+            {
+                rdns[i] = new Rdn( schemaManager );
+                rdns[i].readExternal( in );
+            }
+
+            entry.setDn( rdns.length == 0 ? Dn.EMPTY_DN : new Dn( schemaManager, rdns ) );
+
+            int nbAttributes = in.readInt();
+
+            for ( int i = 0; i < nbAttributes; i++ )
+            {
+                AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry( in.readUTF() );
+                Attribute attribute = new DefaultAttribute( attributeType );
+                attribute.readExternal( in );
+                entry.add( attribute );
+            }
+
+            return entry;
+        }
+        catch ( ClassNotFoundException cnfe )
+        {
+            throw new IOException( cnfe.getMessage(), cnfe );
+        }
+    }
+
+
+    /**
+     * An ObjectOutput only writing primitive values, as a DataOutputStream does.
+     */
+    private static final class DataObjectOutput extends DataOutputStream implements ObjectOutput
+    {
+        private DataObjectOutput( OutputStream out )
+        {
+            super( out );
+        }
+
+
+        @Override
+        public void writeObject( Object obj ) throws IOException
+        {
+            throw new NotSerializableException( "Only primitive values can be written in the entry cache" );
+        }
+    }
+
+
+    /**
+     * An ObjectInput only reading primitive values, as a DataInputStream does.
+     */
+    private static final class DataObjectInput extends DataInputStream implements ObjectInput
+    {
+        private DataObjectInput( InputStream in )
+        {
+            super( in );
+        }
+
+
+        @Override
+        public Object readObject() throws IOException
+        {
+            throw new NotSerializableException( "Only primitive values can be read from the entry cache" );
+        }
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.IndexNotFoundException;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Loads entries into an empty partition, bypassing the interceptors. The entries are
+ * written into the master table as they come, in a single pass. Their index tuples are
+ * not inserted one entry at a time : they are collected per index, sorted, possibly on
+ * disk (see {@link IndexTupleSorter}), and inserted in key order once all the entries
+ * have been read. The RDN index counters are computed in memory, instead of walking
+ * up the ancestors of each entry.
+ * <br>
+ * The parents must be loaded before their children, as in an LDIF export.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class PartitionBulkLoader
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PartitionBulkLoader.class );
+
+    /** The number of updates done between two commits */
+    private static final int COMMIT_INTERVAL = 1000;
+
+    /** The number of entries between two progress messages */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /** The partition to load */
+    private final AbstractBTreePartition partition;
+
+    /** The SchemaManager */
+    private final SchemaManager schemaManager;
+
+    /** The directory where the index tuples are sorted */
+    private final File tmpDirectory;
+
+    /** The number of tuples per index kept in memory */
+    private final int maxTuplesInMemory;
+
+    /** The index tuples, per index */
+    private final Map<Index<?, String>, IndexTupleSorter> sorters = new LinkedHashMap<>();
+
+    /** The position of the loaded entries, per normalized DN */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /** The loaded entry IDs */
+    private final List<String> ids = new ArrayList<>();
+
+    /** The RDN index keys of the loaded entries */
+    private final List<ParentIdAndRdn> rdns = new ArrayList<>();
+
+    /** The position of the parent of each loaded entry, -1 for the context entry */
+    private int[] parents = new int[1024];
+
+    /** The aliases, which are indexed once the RDN index is complete */
+    private final List<Entry> aliases = new ArrayList<>();
+
+    /** The CSN factory used for the entries without entryCSN */
+    private final CsnFactory csnFactory = new CsnFactory( 0 );
+
+    /** The greatest loaded CSN */
+    private String lastCsn;
+
+    /** Tells if the context entry was already in the partition */
+    private boolean hasContextEntry;
+
+    /** The current write transaction */
+    private PartitionTxn transaction;
+
+    /** The number of updates done in the current transaction */
+    private int updates;
+
+
+    /**
+     * Creates a new instance of PartitionBulkLoader.
+     *
+     * @param partition The partition to load
+     * @param tmpDirectory The directory where the index tuples are sorted
+     * @param maxTuplesInMemory The number of tuples per index kept in memory
+     */
+    PartitionBulkLoader( AbstractBTreePartition partition, File tmpDirectory, int maxTuplesInMemory )
+    {
+        this.partition = partition;
+        this.schemaManager = partition.getSchemaManager();
+        this.tmpDirectory = tmpDirectory;
+        this.maxTuplesInMemory = maxTuplesInMemory;
+    }
+
+
+    /**
+     * @return The greatest CSN of the loaded entries
+     */
+    String getLastCsn()
+    {
+        return lastCsn;
+    }
+
+
+    /**
+     * Loads the entries.
+     *
+     * @param entries The entries to load, the parents before their children
+     * @return The number of loaded entries
+     * @throws LdapException If the partition is not empty, or if an entry can't be loaded
+     */
+    long load( Iterator<Entry> entries ) throws LdapException
+    {
+        checkEmpty();
+
+        long start = System.currentTimeMillis();
+        long loaded = 0L;
+        transaction = partition.beginWriteTransaction();
+
+        try
+        {
+            while ( entries.hasNext() )
+            {
+                if ( loadEntry( entries.next() ) )
+                {
+                    loaded++;
+                    updated();
+
+                    if ( loaded % PROGRESS_INTERVAL == 0 )
+                    {
+                        LOG.info( "Loaded {} entries in the partition {}", loaded, partition.getId() );
+                    }
+                }
+            }
+
+            LOG.info( "Loaded {} entries in the partition {}, now building the indexes", loaded, partition.getId() );
+
+            buildRdnIndex();
+
+            for ( Map.Entry<Index<?, String>, IndexTupleSorter> sorter : sorters.entrySet() )
+            {
+                buildIndex( sorter.getKey(), sorter.getValue() );
+            }
+
+            for ( Entry alias : aliases )
+            {
+                String aliasId = alias.get( partition.entryUuidAT ).getString();
+                Dn aliasTarget = new Dn( schemaManager, alias.get( partition.aliasedObjectNameAT ).getString() );
+                partition.addAliasIndices( transaction, aliasId, alias.getDn(), aliasTarget );
+            }
+
+            transaction.commit();
+        }
+        catch ( LdapException le )
+        {
+            abort();
+
+            throw le;
+        }
+        catch ( IOException | IndexNotFoundException e )
+        {
+            abort();
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        catch ( RuntimeException re )
+        {
+            // The entries iterator may fail too
+            abort();
+
+            throw re;
+        }
+        finally
+        {
+            closeSorters();
+        }
+
+        long duration = Math.max( 1L, System.currentTimeMillis() - start );
+        LOG.info( "Loaded {} entries in the partition {} in {} ms ({} entries/s)", loaded, partition.getId(),
+            duration, loaded * 1000L / duration );
+
+        return loaded;
+    }
+
+
+    /**
+     * Checks that the partition contains no entry, except its context entry
+     */
+    private void checkEmpty() throws LdapException
+    {
+        try ( PartitionTxn readTxn = partition.beginReadTransaction() )
+        {
+            long count = partition.getMasterTable().count( readTxn );
+
+            if ( count == 0L )
+            {
+                return;
+            }
+
+            String suffixId = ( count == 1L ) ? partition.getSuffixId( readTxn ) : null;
+
+            if ( suffixId == null )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "The partition " + partition.getId() + " must be empty to be bulk loaded" );
+            }
+
+            // The context entry stays, the loaded entries will be its descendants
+            Dn suffixDn = partition.getSuffixDn();
+            register( suffixDn.getNormName(), suffixId, new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() ),
+                -1 );
+            hasContextEntry = true;
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    private void register( String normName, String id, ParentIdAndRdn rdn, int parent )
+    {
+        int position = ids.size();
+
+        if ( position == parents.length )
+        {
+            parents = Arrays.copyOf( parents, position * 2 );
+        }
+
+        parents[position] = parent;
+        positions.put( normName, position );
+        ids.add( id );
+        rdns.add( rdn );
+    }
+
+
+    /**
+     * Writes an entry in the master table, and keeps its index tuples
+     *
+     * @return <code>false</code> if the entry is the context entry, and was already in the partition
+     */
+    private boolean loadEntry( Entry entry ) throws LdapException, IndexNotFoundException, IOException
+    {
+        if ( !entry.isSchemaAware() )
+        {
+            entry = new DefaultEntry( schemaManager, entry );
+        }
+
+        Dn dn = entry.getDn();
+
+        if ( !dn.isSchemaAware() )
+        {
+            dn = new Dn( schemaManager, dn );
+            entry.setDn( dn );
+        }
+
+        Dn suffixDn = partition.getSuffixDn();
+        String normName = dn.getNormName();
+        boolean isContextEntry = normName.equals( suffixDn.getNormName() );
+
+        if ( positions.containsKey( normName ) )
+        {
+            if ( isContextEntry && hasContextEntry && ( ids.size() == 1 ) )
+            {
+                LOG.info( "The context entry {} is already in the partition, skipping it", dn );
+
+                return false;
+            }
+
+            throw new LdapEntryAlreadyExistsException( I18n.err( I18n.ERR_250_ENTRY_ALREADY_EXISTS, dn.getName() ) );
+        }
+
+        ParentIdAndRdn rdn;
+        int parent;
+
+        if ( isContextEntry )
+        {
+            rdn = new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() );
+            parent = -1;
+        }
+        else
+        {
+            Integer parentPosition = dn.isDescendantOf( suffixDn ) ? positions.get( dn.getParent().getNormName() )
+                : null;
+
+            if ( parentPosition == null )
+            {
+                throw new LdapNoSuchObjectException( I18n.err( I18n.ERR_216_ID_FOR_PARENT_NOT_FOUND, dn ) );
+            }
+
+            parent = parentPosition;
+            rdn = new ParentIdAndRdn( ids.get( parent ), dn.getRdn() );
+        }
+
+        String id = addOperationalAttributes( entry, rdn.getParentId() );
+        register( normName, id, rdn, parent );
+
+        // The ObjectClass index
+        Attribute objectClass = entry.get( partition.objectClassAT );
+
+        if ( objectClass == null )
+        {
+            throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                I18n.err( I18n.ERR_217, dn.getName(), entry ) );
+        }
+
+        Normalizer objectClassNormalizer = partition.objectClassAT.getEquality().getNormalizer();
+
+        for ( Value value : objectClass )
+        {
+            String normalizedOc = objectClassNormalizer.normalize( value.getString() );
+
+            if ( !normalizedOc.equals( SchemaConstants.TOP_OC ) )
+            {
+                sorter( partition.objectClassIdx ).add( normalizedOc, id );
+            }
+        }
+
+        if ( objectClass.contains( SchemaConstants.ALIAS_OC ) )
+        {
+            aliases.add( entry );
+        }
+
+        // The EntryCsn index
+        sorter( partition.entryCsnIdx ).add( entry.get( partition.entryCsnAT ).getString(), id );
+
+        // The AdministrativeRole index
+        Attribute adminRoles = entry.get( partition.administrativeRoleAT );
+
+        if ( adminRoles != null )
+        {
+            for ( Value value : adminRoles )
+            {
+                sorter( partition.adminRoleIdx ).add( value.getString(), id );
+            }
+
+            sorter( partition.presenceIdx ).add( partition.administrativeRoleAT.getOid(), id );
+        }
+
+        // The user indexes
+        for ( Attribute attribute : entry )
+        {
+            AttributeType attributeType = attribute.getAttributeType();
+
+            if ( partition.hasUserIndexOn( attributeType ) )
+            {
+                IndexTupleSorter sorter = sorter( partition.getUserIndex( attributeType ) );
+
+                for ( Value value : attribute )
+                {
+                    sorter.add( value.getNormalized(), id );
+                }
+
+                sorter( partition.presenceIdx ).add( attributeType.getOid(), id );
+            }
+        }
+
+        partition.getMasterTable().put( transaction, id, entry );
+
+        return true;
+    }
+
+
+    /**
+     * Adds the attributes the interceptors would have added, and returns the entry ID
+     */
+    private String addOperationalAttributes( Entry entry, String parentId ) throws LdapException
+    {
+        Attribute entryUuid = entry.get( partition.entryUuidAT );
+        String id;
+
+        if ( entryUuid == null )
+        {
+            id = partition.getMasterTable().getNextId( entry );
+            entry.add( partition.entryUuidAT, id );
+        }
+        else
+        {
+            id = entryUuid.getString();
+        }
+
+        Attribute entryCsn = entry.get( partition.entryCsnAT );
+        String csn;
+
+        if ( entryCsn == null )
+        {
+            csn = csnFactory.newInstance().toString();
+            entry.add( partition.entryCsnAT, csn );
+        }
+        else
+        {
+            csn = entryCsn.getString();
+        }
+
+        if ( ( lastCsn == null ) || ( csn.compareTo( lastCsn ) > 0 ) )
+        {
+            lastCsn = csn;
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATORS_NAME_AT ) )
+        {
+            entry.add( SchemaConstants.CREATORS_NAME_AT, ServerDNConstants.ADMIN_SYSTEM_DN );
+        }
+
+        if ( !entry.containsAttribute( SchemaConstants.CREATE_TIMESTAMP_AT ) )
+        {
+            entry.add( SchemaConstants.CREATE_TIMESTAMP_AT, DateUtils.getGeneralizedTime( TimeProvider.DEFAULT ) );
+        }
+
+        entry.put( ApacheSchemaConstants.ENTRY_PARENT_ID_AT, parentId );
+        entry.removeAttributes( partition.entryDnAT );
+
+        return id;
+    }
+
+
+    private IndexTupleSorter sorter( Index<?, String> index )
+    {
+        IndexTupleSorter sorter = sorters.get( index );
+
+        if ( sorter == null )
+        {
+            sorter = new IndexTupleSorter( tmpDirectory, maxTuplesInMemory );
+            sorters.put( index, sorter );
+        }
+
+        return sorter;
+    }
+
+
+    /**
+     * Computes the number of children and descendants of each entry, then inserts
+     * the RDN index keys in key order
+     */
+    private void buildRdnIndex() throws LdapException, IOException
+    {
+        int size = ids.size();
+        int[] children = new int[size];
+        int[] descendants = new int[size];
+
+        // The children come after their parent
+        for ( int position = size - 1; position >= 0; position-- )
+        {
+            int parent = parents[position];
+
+            if ( parent >= 0 )
+            {
+                children[parent]++;
+                descendants[parent] += descendants[position] + 1;
+            }
+        }
+
+        if ( hasContextEntry )
+        {
+            // The context entry key is replaced by a key with the new counters
+            partition.rdnIdx.drop( transaction, ids.get( 0 ) );
+        }
+
+        Integer[] order = new Integer[size];
+
+        for ( int position = 0; position < size; position++ )
+        {
+            order[position] = position;
+        }
+
+        Arrays.sort( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer position1, Integer position2 )
+            {
+                return rdns.get( position1 ).compareTo( rdns.get( position2 ) );
+            }
+        } );
+
+        for ( Integer position : order )
+        {
+            ParentIdAndRdn rdn = rdns.get( position );
+            rdn.setNbChildren( children[position] );
+            rdn.setNbDescendants( descendants[position] );
+            partition.rdnIdx.add( transaction, rdn, ids.get( position ) );
+            updated();
+        }
+    }
+
+
+    /**
+     * Inserts the tuples of an index in key order
+     */
+    @SuppressWarnings("unchecked")
+    private void buildIndex( Index<?, String> index, IndexTupleSorter sorter ) throws LdapException, IOException
+    {
+        Index<String, String> target = ( Index<String, String> ) index;
+        IndexTupleSorter.SortedTuples tuples = sorter.sort();
+
+        while ( tuples.hasNext() )
+        {
+            Tuple<String, String> tuple = tuples.next();
+            target.add( transaction, tuple.getKey(), tuple.getValue() );
+            updated();
+        }
+    }
+
+
+    /**
+     * Commits the current transaction every COMMIT_INTERVAL updates, so that it does not grow without limit
+     */
+    private void updated() throws IOException
+    {
+        updates++;
+
+        if ( updates >= COMMIT_INTERVAL )
+        {
+            transaction.commit();
+            transaction = partition.beginWriteTransaction();
+            updates = 0;
+        }
+    }
+
+
+    private void abort()
+    {
+        try
+        {
+            transaction.abort();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( "Failed to abort the bulk load transaction", ioe );
+        }
+    }
+
+
+    private void closeSorters()
+    {
+        for ( IndexTupleSorter sorter : sorters.values() )
+        {
+            try
+            {
+                sorter.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to delete the index sort files", ioe );
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.MasterTable;
+
+
+/**
+ * The master table of a partition backed by {@link MvccTable}s. The partition updates
+ * the entries it reads from the master table in place before storing them back, so an
+ * entry read by anything but a read transaction is a copy : the stored entries, which may
+ * be seen by the readers of older versions, are never modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccMasterTable extends MvccTable<String, Entry> implements MasterTable
+{
+    public MvccMasterTable( MvccStore store, String name, Comparator<String> keyComparator )
+    {
+        super( store, name, keyComparator, null, false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get( PartitionTxn transaction, String key ) throws LdapException
+    {
+        Entry entry = super.get( transaction, key );
+
+        if ( ( entry != null ) && !( transaction instanceof MvccReadTxn ) )
+        {
+            return entry.clone();
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getNextId( Entry entry )
+    {
+        return UUID.randomUUID().toString();
+    }
+}
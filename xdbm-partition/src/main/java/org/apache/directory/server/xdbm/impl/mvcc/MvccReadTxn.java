@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+
+
+/**
+ * A read transaction on a {@link MvccStore}. It sees the version which was the last
+ * committed one when it was created, whatever the updates done meanwhile.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccReadTxn extends PartitionReadTxn implements MvccTxn
+{
+    /** The store */
+    private final MvccStore store;
+
+    /** The version this transaction reads */
+    private final Object[] version;
+
+
+    /**
+     * Creates a new instance of MvccReadTxn
+     *
+     * @param store The store
+     * @param version The version to read
+     */
+    MvccReadTxn( MvccStore store, Object[] version )
+    {
+        this.store = store;
+        this.version = version;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MvccStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getRoot( int slot )
+    {
+        if ( slot < version.length )
+        {
+            return version[slot];
+        }
+
+        // A table created after this transaction
+        return store.getRoot( slot );
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.server.core.api.partition.PartitionReadTxn;
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+
+
+/**
+ * Holds the versions of a set of {@link MvccTable}s. A version is an immutable array
+ * containing the root of each table, indexed by the slot the table got when it has been
+ * registered. Readers get the last committed version without any lock, and keep it for
+ * the whole transaction, so that a search sees a consistent snapshot of the master table
+ * and of all the indexes.
+ * <br>
+ * A write transaction works on its own copy of the roots it updates, and publishes them
+ * atomically on commit. The write transactions are serialized by the store : a writer
+ * waits until the previous one is committed or aborted, so its base version is always
+ * the last one. A write transaction started by a thread which already holds a write
+ * transaction of this store joins it, and must be ended by the same thread.
+ * <br>
+ * The tables can only be updated in a write transaction of this store. The commit checks
+ * that the roots it replaces are still the ones the transaction is based on, and fails
+ * without publishing anything otherwise. This only happens when a table has been closed
+ * while the transaction was running, as closing a table resets it in the last version
+ * immediately.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccStore
+{
+    /** The last committed version */
+    private final AtomicReference<Object[]> current = new AtomicReference<>( new Object[0] );
+
+    /** The lock serializing the write transactions */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** The running write transaction, protected by the write lock */
+    private MvccWriteTxn writer;
+
+
+    /**
+     * Registers a new table.
+     *
+     * @param root The table initial root
+     * @return The slot of the table in each version
+     */
+    int register( Object root )
+    {
+        while ( true )
+        {
+            Object[] version = current.get();
+            Object[] newVersion = Arrays.copyOf( version, version.length + 1 );
+            newVersion[version.length] = root;
+
+            if ( current.compareAndSet( version, newVersion ) )
+            {
+                return version.length;
+            }
+        }
+    }
+
+
+    /**
+     * @return The last committed version
+     */
+    Object[] getVersion()
+    {
+        return current.get();
+    }
+
+
+    /**
+     * @return The root of a table in the last committed version
+     */
+    Object getRoot( int slot )
+    {
+        return current.get()[slot];
+    }
+
+
+    /**
+     * Replaces the root of a table in the last committed version, without waiting for
+     * the running write transaction. This is only used to reset a table being closed.
+     *
+     * @param slot The table slot
+     * @param root The new root
+     */
+    void update( int slot, Object root )
+    {
+        while ( true )
+        {
+            Object[] version = current.get();
+            Object[] newVersion = version.clone();
+            newVersion[slot] = root;
+
+            if ( current.compareAndSet( version, newVersion ) )
+            {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Publishes the roots updated by a write transaction, if the roots they replace are
+     * still the ones the transaction read.
+     *
+     * @param baseRoots The roots the updated roots are derived from, by slot
+     * @param roots The updated roots, by slot
+     * @throws IOException If one of the tables has been updated since the transaction read it
+     */
+    void commit( Map<Integer, Object> baseRoots, Map<Integer, Object> roots ) throws IOException
+    {
+        if ( roots.isEmpty() )
+        {
+            return;
+        }
+
+        while ( true )
+        {
+            Object[] version = current.get();
+            Object[] newVersion = version.clone();
+
+            for ( Map.Entry<Integer, Object> root : roots.entrySet() )
+            {
+                int slot = root.getKey();
+
+                if ( version[slot] != baseRoots.get( slot ) )
+                {
+                    throw new IOException( "Write conflict : the table in slot " + slot
+                        + " has been updated since the transaction started" );
+                }
+
+                newVersion[slot] = root.getValue();
+            }
+
+            if ( current.compareAndSet( version, newVersion ) )
+            {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Checks that the current thread holds the write lock of this store, as a write
+     * transaction can only be used by the thread which started it.
+     *
+     * @throws IllegalStateException If the current thread does not hold the write lock
+     */
+    void checkWriter()
+    {
+        if ( !writeLock.isHeldByCurrentThread() )
+        {
+            throw new IllegalStateException( "The write transaction has not been started by the current thread" );
+        }
+    }
+
+
+    /**
+     * Releases the write lock held by a write transaction.
+     *
+     * @param txn The ended transaction
+     * @throws IllegalStateException If the current thread did not start the transaction
+     */
+    void endWriteTransaction( MvccWriteTxn txn )
+    {
+        checkWriter();
+
+        if ( txn == writer )
+        {
+            writer = null;
+        }
+
+        writeLock.unlock();
+    }
+
+
+    /**
+     * @return A read transaction working on the last committed version
+     */
+    public PartitionReadTxn beginReadTransaction()
+    {
+        return new MvccReadTxn( this, current.get() );
+    }
+
+
+    /**
+     * Starts a write transaction, waiting for the running one to be ended. If the running
+     * transaction has been started by the current thread, the new transaction joins it.
+     *
+     * @return A write transaction based on the last committed version
+     */
+    public PartitionWriteTxn beginWriteTransaction()
+    {
+        writeLock.lock();
+
+        if ( writer != null )
+        {
+            return new MvccWriteTxn( this, writer );
+        }
+
+        writer = new MvccWriteTxn( this, current.get() );
+
+        return writer;
+    }
+}
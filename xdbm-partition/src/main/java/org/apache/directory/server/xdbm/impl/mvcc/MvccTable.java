@@ -0,0 +1,587 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.util.Comparator;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.xdbm.AbstractTable;
+import org.apache.directory.server.xdbm.impl.mvcc.PersistentTree.Node;
+
+
+/**
+ * A Table implementation backed by an in memory {@link PersistentTree}, versioned
+ * by a {@link MvccStore}. Each read uses the version seen by the given transaction,
+ * so the readers never block, and never see an uncommitted update. The table can only
+ * be updated in a write transaction of the store.
+ * <br>
+ * When duplicate values are allowed, a key with a single value stores it directly,
+ * and a key with more values stores them in a PersistentTree used as a sorted set.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccTable<K, V> extends AbstractTable<K, V>
+{
+    /** The store holding the versions of this table */
+    private final MvccStore store;
+
+    /** The slot of this table in the store versions */
+    private final int slot;
+
+
+    /**
+     * Creates a new instance of MvccTable
+     *
+     * @param store The store holding the versions of this table
+     * @param name The table name
+     * @param keyComparator The key comparator
+     * @param valueComparator The value comparator
+     * @param dupsEnabled If the table allows duplicate values
+     */
+    public MvccTable( MvccStore store, String name, Comparator<K> keyComparator, Comparator<V> valueComparator,
+        boolean dupsEnabled )
+    {
+        super( null, name, keyComparator, valueComparator );
+        this.store = store;
+        this.allowsDuplicates = dupsEnabled;
+        this.slot = store.register( new PersistentTree<K, Object>( keyComparator ) );
+    }
+
+
+    /**
+     * @return The version of the table seen by the given transaction
+     */
+    @SuppressWarnings("unchecked")
+    PersistentTree<K, Object> getTree( PartitionTxn transaction )
+    {
+        if ( ( transaction instanceof MvccTxn ) && ( ( ( MvccTxn ) transaction ).getStore() == store ) )
+        {
+            return ( PersistentTree<K, Object> ) ( ( MvccTxn ) transaction ).getRoot( slot );
+        }
+
+        return ( PersistentTree<K, Object> ) store.getRoot( slot );
+    }
+
+
+    /**
+     * Stores a new version of the table in the given transaction. The table can only be
+     * updated in a running write transaction of our store, started by the current thread.
+     */
+    private void setTree( PartitionTxn transaction, PersistentTree<K, Object> tree ) throws LdapException
+    {
+        if ( !( transaction instanceof MvccWriteTxn ) || ( ( ( MvccWriteTxn ) transaction ).getStore() != store ) )
+        {
+            throw new LdapOtherException( "The table " + name + " can only be updated in a write transaction" );
+        }
+
+        MvccWriteTxn writeTxn = ( MvccWriteTxn ) transaction;
+
+        if ( writeTxn.isClosed() )
+        {
+            throw new LdapOtherException( "The table " + name + " can't be updated in a closed transaction" );
+        }
+
+        try
+        {
+            store.checkWriter();
+        }
+        catch ( IllegalStateException ise )
+        {
+            throw new LdapOtherException( ise.getMessage(), ise );
+        }
+
+        writeTxn.setRoot( slot, tree );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( PartitionTxn transaction ) throws LdapException
+    {
+        store.update( slot, new PersistentTree<K, Object>( keyComparator ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn transaction ) throws LdapException
+    {
+        return getTree( transaction ).weight();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return 0L;
+        }
+
+        Node<K, Object> node = getTree( transaction ).get( key );
+
+        if ( node == null )
+        {
+            return 0L;
+        }
+
+        return PersistentTree.weightOf( node.value );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long greaterThanCount( PartitionTxn transaction, K key ) throws LdapException
+    {
+        PersistentTree<K, Object> tree = getTree( transaction );
+
+        if ( key == null )
+        {
+            return tree.weight();
+        }
+
+        return tree.weight() - tree.weightBelow( key, false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long lessThanCount( PartitionTxn transaction, K key ) throws LdapException
+    {
+        PersistentTree<K, Object> tree = getTree( transaction );
+
+        if ( key == null )
+        {
+            return tree.weight();
+        }
+
+        return tree.weightBelow( key, true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        Node<K, Object> node = getTree( transaction ).get( key );
+
+        if ( node == null )
+        {
+            return null;
+        }
+
+        if ( node.value instanceof PersistentTree )
+        {
+            return ( ( PersistentTree<V, Boolean> ) node.value ).first().key;
+        }
+
+        return ( V ) node.value;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return getTree( transaction ).get( key ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean has( PartitionTxn transaction, K key, V value ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        Node<K, Object> node = getTree( transaction ).get( key );
+
+        if ( node == null )
+        {
+            return false;
+        }
+
+        return containsValue( node.value, value );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return getTree( transaction ).higher( key, true ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasGreaterOrEqual( PartitionTxn transaction, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        Node<K, Object> node = getTree( transaction ).higher( key, true );
+
+        if ( node == null )
+        {
+            return false;
+        }
+
+        return higherValue( node.value, val, true ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        return getTree( transaction ).lower( key, true ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasLessOrEqual( PartitionTxn transaction, K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        Node<K, Object> node = getTree( transaction ).lower( key, true );
+
+        if ( node == null )
+        {
+            return false;
+        }
+
+        return lowerValue( node.value, val, true ) != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void put( PartitionTxn partitionTxn, K key, V value ) throws LdapException
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return;
+        }
+
+        PersistentTree<K, Object> tree = getTree( partitionTxn );
+        Node<K, Object> node = tree.get( key );
+
+        if ( !allowsDuplicates || ( node == null ) )
+        {
+            setTree( partitionTxn, tree.put( key, value ) );
+
+            return;
+        }
+
+        PersistentTree<V, Boolean> values;
+
+        if ( node.value instanceof PersistentTree )
+        {
+            values = ( PersistentTree<V, Boolean> ) node.value;
+
+            if ( values.get( value ) != null )
+            {
+                return;
+            }
+        }
+        else
+        {
+            if ( valueComparator.compare( ( V ) node.value, value ) == 0 )
+            {
+                return;
+            }
+
+            values = new PersistentTree<V, Boolean>( valueComparator ).put( ( V ) node.value, Boolean.TRUE );
+        }
+
+        setTree( partitionTxn, tree.put( key, values.put( value, Boolean.TRUE ) ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        PersistentTree<K, Object> tree = getTree( partitionTxn );
+        PersistentTree<K, Object> newTree = tree.remove( key );
+
+        if ( newTree != tree )
+        {
+            setTree( partitionTxn, newTree );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void remove( PartitionTxn partitionTxn, K key, V value ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        PersistentTree<K, Object> tree = getTree( partitionTxn );
+        Node<K, Object> node = tree.get( key );
+
+        if ( ( node == null ) || !containsValue( node.value, value ) )
+        {
+            return;
+        }
+
+        if ( node.value instanceof PersistentTree )
+        {
+            PersistentTree<V, Boolean> values = ( ( PersistentTree<V, Boolean> ) node.value ).remove( value );
+
+            if ( values.weight() == 1L )
+            {
+                // Back to a single value
+                setTree( partitionTxn, tree.put( key, values.first().key ) );
+            }
+            else
+            {
+                setTree( partitionTxn, tree.put( key, values ) );
+            }
+        }
+        else
+        {
+            setTree( partitionTxn, tree.remove( key ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor()
+    {
+        return new MvccTableCursor<>( this, getTree( null ) );
+    }
+
+
+    /**
+     * Creates a cursor over the version of the table seen by the given transaction.
+     *
+     * @param partitionTxn The transaction we are running in
+     * @return A cursor over all the tuples of the table
+     */
+    public Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn )
+    {
+        return new MvccTableCursor<>( this, getTree( partitionTxn ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<Tuple<K, V>> cursor( PartitionTxn partitionTxn, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        return new MvccTableCursor<>( this, getTree( partitionTxn ), key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<V> valueCursor( PartitionTxn transaction, K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<>();
+        }
+
+        return new MvccValueCursor<>( new MvccTableCursor<>( this, getTree( transaction ), key ) );
+    }
+
+
+    /**
+     * Tells if a node value, single or set, contains the given value
+     */
+    @SuppressWarnings("unchecked")
+    private boolean containsValue( Object nodeValue, V value )
+    {
+        if ( value == null )
+        {
+            return false;
+        }
+
+        if ( nodeValue instanceof PersistentTree )
+        {
+            return ( ( PersistentTree<V, Boolean> ) nodeValue ).get( value ) != null;
+        }
+
+        if ( valueComparator == null )
+        {
+            return nodeValue.equals( value );
+        }
+
+        return valueComparator.compare( ( V ) nodeValue, value ) == 0;
+    }
+
+
+    /**
+     * @return The first value of a node
+     */
+    @SuppressWarnings("unchecked")
+    V firstValue( Object nodeValue )
+    {
+        if ( nodeValue instanceof PersistentTree )
+        {
+            return ( ( PersistentTree<V, Boolean> ) nodeValue ).first().key;
+        }
+
+        return ( V ) nodeValue;
+    }
+
+
+    /**
+     * @return The last value of a node
+     */
+    @SuppressWarnings("unchecked")
+    V lastValue( Object nodeValue )
+    {
+        if ( nodeValue instanceof PersistentTree )
+        {
+            return ( ( PersistentTree<V, Boolean> ) nodeValue ).last().key;
+        }
+
+        return ( V ) nodeValue;
+    }
+
+
+    /**
+     * @return The smallest value of a node above (or equal to, if inclusive is set) the given value, or null
+     */
+    @SuppressWarnings("unchecked")
+    V higherValue( Object nodeValue, V value, boolean inclusive )
+    {
+        if ( nodeValue instanceof PersistentTree )
+        {
+            Node<V, Boolean> node = ( ( PersistentTree<V, Boolean> ) nodeValue ).higher( value, inclusive );
+
+            return node == null ? null : node.key;
+        }
+
+        int cmp = valueComparator.compare( ( V ) nodeValue, value );
+
+        return ( cmp > 0 ) || ( inclusive && ( cmp == 0 ) ) ? ( V ) nodeValue : null;
+    }
+
+
+    /**
+     * @return The biggest value of a node below (or equal to, if inclusive is set) the given value, or null
+     */
+    @SuppressWarnings("unchecked")
+    V lowerValue( Object nodeValue, V value, boolean inclusive )
+    {
+        if ( nodeValue instanceof PersistentTree )
+        {
+            Node<V, Boolean> node = ( ( PersistentTree<V, Boolean> ) nodeValue ).lower( value, inclusive );
+
+            return node == null ? null : node.key;
+        }
+
+        int cmp = valueComparator.compare( ( V ) nodeValue, value );
+
+        return ( cmp < 0 ) || ( inclusive && ( cmp == 0 ) ) ? ( V ) nodeValue : null;
+    }
+}
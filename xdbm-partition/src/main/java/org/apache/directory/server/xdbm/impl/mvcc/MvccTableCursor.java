@@ -0,0 +1,438 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.xdbm.impl.mvcc.PersistentTree.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over the tuples of a version of a {@link MvccTable}. As the version is
+ * immutable, the cursor does not keep any pointer into the tree : each move looks up
+ * the tuple following or preceding the current position, which costs O(log n).
+ * <br>
+ * The cursor may be limited to the tuples of a single key. In this case, the key of
+ * the elements given to before() and after() is not considered.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccTableCursor<K, V> extends AbstractCursor<Tuple<K, V>>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The possible positions */
+    private static final int BEFORE_FIRST = 0;
+    private static final int BEFORE = 1;
+    private static final int ON = 2;
+    private static final int AFTER = 3;
+    private static final int AFTER_LAST = 4;
+
+    /** The table */
+    private final MvccTable<K, V> table;
+
+    /** The browsed version of the table */
+    private final PersistentTree<K, Object> tree;
+
+    /** The key the cursor is limited to, if any */
+    private final K fixedKey;
+
+    /** The current position */
+    private int position = BEFORE_FIRST;
+
+    /** The key and value the position is relative to. The value is null for a table without duplicates */
+    private K positionKey;
+    private V positionValue;
+
+    /** The tuple the cursor is on */
+    private Tuple<K, V> current;
+
+
+    /**
+     * Creates a Cursor over all the tuples of a table version.
+     *
+     * @param table The table
+     * @param tree The table version
+     */
+    MvccTableCursor( MvccTable<K, V> table, PersistentTree<K, Object> tree )
+    {
+        this( table, tree, null );
+    }
+
+
+    /**
+     * Creates a Cursor over the tuples of a table version having the given key.
+     *
+     * @param table The table
+     * @param tree The table version
+     * @param fixedKey The key the cursor is limited to, or null
+     */
+    MvccTableCursor( MvccTable<K, V> table, PersistentTree<K, Object> tree, K fixedKey )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating MvccTableCursor {}", this );
+        }
+
+        this.table = table;
+        this.tree = tree;
+        this.fixedKey = fixedKey;
+    }
+
+
+    /**
+     * @return The smallest tuple above (or equal to, if inclusive is set) the given key and value.
+     * A null value stands for the smallest value of the key if inclusive is set, for the biggest otherwise.
+     */
+    private Tuple<K, V> higher( K key, V value, boolean inclusive )
+    {
+        Node<K, Object> node = tree.get( key );
+
+        if ( node != null )
+        {
+            V found = null;
+
+            if ( value == null )
+            {
+                if ( inclusive )
+                {
+                    found = table.firstValue( node.value );
+                }
+            }
+            else
+            {
+                found = table.higherValue( node.value, value, inclusive );
+            }
+
+            if ( found != null )
+            {
+                return new Tuple<>( node.key, found );
+            }
+        }
+
+        if ( fixedKey != null )
+        {
+            return null;
+        }
+
+        Node<K, Object> next = tree.higher( key, false );
+
+        return next == null ? null : new Tuple<>( next.key, table.firstValue( next.value ) );
+    }
+
+
+    /**
+     * @return The biggest tuple below (or equal to, if inclusive is set) the given key and value.
+     * A null value stands for the biggest value of the key if inclusive is set, for the smallest otherwise.
+     */
+    private Tuple<K, V> lower( K key, V value, boolean inclusive )
+    {
+        Node<K, Object> node = tree.get( key );
+
+        if ( node != null )
+        {
+            V found = null;
+
+            if ( value == null )
+            {
+                if ( inclusive )
+                {
+                    found = table.lastValue( node.value );
+                }
+            }
+            else
+            {
+                found = table.lowerValue( node.value, value, inclusive );
+            }
+
+            if ( found != null )
+            {
+                return new Tuple<>( node.key, found );
+            }
+        }
+
+        if ( fixedKey != null )
+        {
+            return null;
+        }
+
+        Node<K, Object> previous = tree.lower( key, false );
+
+        return previous == null ? null : new Tuple<>( previous.key, table.lastValue( previous.value ) );
+    }
+
+
+    /**
+     * Sets the position relative to the given element
+     */
+    private void setPosition( int position, Tuple<K, V> element )
+    {
+        this.position = position;
+        current = null;
+        positionKey = fixedKey != null ? fixedKey : element.getKey();
+        positionValue = table.isDupsEnabled() ? element.getValue() : null;
+    }
+
+
+    /**
+     * Moves the cursor on the given tuple, or past the end if the tuple is null
+     */
+    private boolean moveTo( Tuple<K, V> tuple, int outOfBounds )
+    {
+        if ( tuple == null )
+        {
+            position = outOfBounds;
+            current = null;
+
+            return false;
+        }
+
+        position = ON;
+        current = tuple;
+        positionKey = tuple.getKey();
+        positionValue = table.isDupsEnabled() ? tuple.getValue() : null;
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return current != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setPosition( BEFORE, element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        setPosition( AFTER, element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = BEFORE_FIRST;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        position = AFTER_LAST;
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        Tuple<K, V> tuple;
+
+        switch ( position )
+        {
+            case BEFORE_FIRST:
+                if ( fixedKey != null )
+                {
+                    tuple = higher( fixedKey, null, true );
+                }
+                else
+                {
+                    Node<K, Object> first = tree.first();
+                    tuple = first == null ? null : new Tuple<>( first.key, table.firstValue( first.value ) );
+                }
+
+                break;
+
+            case BEFORE:
+                tuple = higher( positionKey, positionValue, true );
+                break;
+
+            case ON:
+            case AFTER:
+                tuple = higher( positionKey, positionValue, false );
+                break;
+
+            default:
+                tuple = null;
+                break;
+        }
+
+        return moveTo( tuple, AFTER_LAST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        Tuple<K, V> tuple;
+
+        switch ( position )
+        {
+            case AFTER_LAST:
+                if ( fixedKey != null )
+                {
+                    tuple = lower( fixedKey, null, true );
+                }
+                else
+                {
+                    Node<K, Object> last = tree.last();
+                    tuple = last == null ? null : new Tuple<>( last.key, table.lastValue( last.value ) );
+                }
+
+                break;
+
+            case AFTER:
+                tuple = lower( positionKey, positionValue, true );
+                break;
+
+            case ON:
+            case BEFORE:
+                tuple = lower( positionKey, positionValue, false );
+                break;
+
+            default:
+                tuple = null;
+                break;
+        }
+
+        return moveTo( tuple, BEFORE_FIRST );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tuple<K, V> get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( current == null )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return current;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing MvccTableCursor {}", this );
+        }
+
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing MvccTableCursor {}", this );
+        }
+
+        super.close( cause );
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.server.core.api.partition.PartitionWriteTxn;
+
+
+/**
+ * A write transaction on a {@link MvccStore}. The updated table roots are kept in the
+ * transaction, so that they are only seen by this transaction until it's committed.
+ * An abort simply drops them. Once the transaction is closed, it reads the last committed
+ * version, and can't be used to update the tables anymore.
+ * <br>
+ * The write transactions of a store are serialized, and must be ended by the thread
+ * which started them. A transaction started while the same thread already holds one
+ * joins it : it shares its roots, and its commit or abort only releases its hold on the
+ * store, the updates being published or dropped by the outer transaction.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MvccWriteTxn extends PartitionWriteTxn implements MvccTxn
+{
+    /** The store */
+    private final MvccStore store;
+
+    /** The version this transaction is based on */
+    private final Object[] base;
+
+    /** The transaction this transaction joined, if any */
+    private final MvccWriteTxn outer;
+
+    /** The roots updated by this transaction, by slot */
+    private Map<Integer, Object> updatedRoots = new HashMap<>();
+
+    /** The roots the updated roots are derived from, by slot */
+    private Map<Integer, Object> baseRoots = new HashMap<>();
+
+    /** Tells if the transaction has been committed or aborted */
+    private volatile boolean closed = false;
+
+
+    /**
+     * Creates a new instance of MvccWriteTxn
+     *
+     * @param store The store
+     * @param base The version this transaction is based on
+     */
+    MvccWriteTxn( MvccStore store, Object[] base )
+    {
+        this.store = store;
+        this.base = base;
+        this.outer = null;
+    }
+
+
+    /**
+     * Creates a new instance of MvccWriteTxn joining a running transaction
+     *
+     * @param store The store
+     * @param outer The running transaction
+     */
+    MvccWriteTxn( MvccStore store, MvccWriteTxn outer )
+    {
+        this.store = store;
+        this.base = outer.base;
+        this.outer = outer;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MvccStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getRoot( int slot )
+    {
+        if ( closed )
+        {
+            return store.getRoot( slot );
+        }
+
+        if ( outer != null )
+        {
+            return outer.getRoot( slot );
+        }
+
+        Object root = updatedRoots.get( slot );
+
+        if ( root != null )
+        {
+            return root;
+        }
+
+        if ( slot < base.length )
+        {
+            return base[slot];
+        }
+
+        // A table created after this transaction
+        return store.getRoot( slot );
+    }
+
+
+    /**
+     * Updates the root of a table.
+     *
+     * @param slot The table slot
+     * @param root The new root
+     * @throws IllegalStateException If the transaction is closed
+     */
+    void setRoot( int slot, Object root )
+    {
+        if ( closed )
+        {
+            throw new IllegalStateException( "The write transaction is closed" );
+        }
+        else if ( outer != null )
+        {
+            outer.setRoot( slot, root );
+        }
+        else
+        {
+            if ( !updatedRoots.containsKey( slot ) )
+            {
+                baseRoots.put( slot, getRoot( slot ) );
+            }
+
+            updatedRoots.put( slot, root );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commit() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        store.checkWriter();
+        closed = true;
+
+        try
+        {
+            if ( outer == null )
+            {
+                store.commit( baseRoots, updatedRoots );
+            }
+        }
+        finally
+        {
+            updatedRoots = null;
+            baseRoots = null;
+            store.endWriteTransaction( this );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abort() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        store.checkWriter();
+        closed = true;
+        updatedRoots = null;
+        baseRoots = null;
+        store.endWriteTransaction( this );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        commit();
+    }
+}
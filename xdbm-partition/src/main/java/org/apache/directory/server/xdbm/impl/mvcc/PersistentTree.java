@@ -0,0 +1,449 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import java.util.Comparator;
+
+
+/**
+ * An immutable AVL tree. An update never modifies an existing node : it copies the
+ * nodes on the path from the root to the updated node, and returns a new tree sharing
+ * all the other nodes with the previous one. A reader holding a tree can thus browse
+ * it without any lock while it is being updated.
+ * <br>
+ * Each node value is either a single value, or, when duplicate values are stored, a
+ * PersistentTree used as a sorted set. Each node keeps the number of values stored in
+ * its subtree, so that the counts are computed in O(log n).
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class PersistentTree<K, V>
+{
+    /** The comparator used to order the keys */
+    private final Comparator<K> comparator;
+
+    /** The root node, null if the tree is empty */
+    private final Node<K, V> root;
+
+
+    /**
+     * A tree node.
+     */
+    static final class Node<K, V>
+    {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int height;
+
+        /** The number of values stored in this subtree */
+        final long weight;
+
+
+        Node( K key, V value, Node<K, V> left, Node<K, V> right )
+        {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max( height( left ), height( right ) ) + 1;
+            this.weight = weight( left ) + weightOf( value ) + weight( right );
+        }
+    }
+
+
+    /**
+     * Creates an empty tree
+     *
+     * @param comparator The key comparator
+     */
+    PersistentTree( Comparator<K> comparator )
+    {
+        this( comparator, null );
+    }
+
+
+    private PersistentTree( Comparator<K> comparator, Node<K, V> root )
+    {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+
+    /**
+     * @return The number of values stored in a node : the set size for a set of duplicate values, 1 otherwise
+     */
+    static long weightOf( Object value )
+    {
+        if ( value instanceof PersistentTree )
+        {
+            return ( ( PersistentTree<?, ?> ) value ).weight();
+        }
+
+        return 1L;
+    }
+
+
+    private static int height( Node<?, ?> node )
+    {
+        return node == null ? 0 : node.height;
+    }
+
+
+    private static long weight( Node<?, ?> node )
+    {
+        return node == null ? 0L : node.weight;
+    }
+
+
+    /**
+     * @return The key comparator
+     */
+    Comparator<K> getComparator()
+    {
+        return comparator;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the tree is empty
+     */
+    boolean isEmpty()
+    {
+        return root == null;
+    }
+
+
+    /**
+     * @return The number of values stored in this tree
+     */
+    long weight()
+    {
+        return weight( root );
+    }
+
+
+    /**
+     * @return The node with the given key, or null
+     */
+    Node<K, V> get( K key )
+    {
+        Node<K, V> node = root;
+
+        while ( node != null )
+        {
+            int cmp = comparator.compare( key, node.key );
+
+            if ( cmp == 0 )
+            {
+                return node;
+            }
+
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * @return The node with the smallest key, or null if the tree is empty
+     */
+    Node<K, V> first()
+    {
+        Node<K, V> node = root;
+
+        if ( node == null )
+        {
+            return null;
+        }
+
+        while ( node.left != null )
+        {
+            node = node.left;
+        }
+
+        return node;
+    }
+
+
+    /**
+     * @return The node with the biggest key, or null if the tree is empty
+     */
+    Node<K, V> last()
+    {
+        Node<K, V> node = root;
+
+        if ( node == null )
+        {
+            return null;
+        }
+
+        while ( node.right != null )
+        {
+            node = node.right;
+        }
+
+        return node;
+    }
+
+
+    /**
+     * @return The node with the smallest key above (or equal to, if inclusive is set) the given key, or null
+     */
+    Node<K, V> higher( K key, boolean inclusive )
+    {
+        Node<K, V> node = root;
+        Node<K, V> found = null;
+
+        while ( node != null )
+        {
+            int cmp = comparator.compare( key, node.key );
+
+            if ( ( cmp == 0 ) && inclusive )
+            {
+                return node;
+            }
+
+            if ( cmp < 0 )
+            {
+                found = node;
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }
+
+        return found;
+    }
+
+
+    /**
+     * @return The node with the biggest key below (or equal to, if inclusive is set) the given key, or null
+     */
+    Node<K, V> lower( K key, boolean inclusive )
+    {
+        Node<K, V> node = root;
+        Node<K, V> found = null;
+
+        while ( node != null )
+        {
+            int cmp = comparator.compare( key, node.key );
+
+            if ( ( cmp == 0 ) && inclusive )
+            {
+                return node;
+            }
+
+            if ( cmp > 0 )
+            {
+                found = node;
+                node = node.right;
+            }
+            else
+            {
+                node = node.left;
+            }
+        }
+
+        return found;
+    }
+
+
+    /**
+     * @return The number of values stored with a key below (or equal to, if inclusive is set) the given key
+     */
+    long weightBelow( K key, boolean inclusive )
+    {
+        Node<K, V> node = root;
+        long result = 0L;
+
+        while ( node != null )
+        {
+            int cmp = comparator.compare( key, node.key );
+
+            if ( cmp < 0 )
+            {
+                node = node.left;
+            }
+            else if ( cmp > 0 )
+            {
+                result += weight( node.left ) + weightOf( node.value );
+                node = node.right;
+            }
+            else
+            {
+                result += weight( node.left ) + ( inclusive ? weightOf( node.value ) : 0L );
+
+                break;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Adds or replaces a key.
+     *
+     * @param key The key
+     * @param value The value to associate with the key
+     * @return The new tree
+     */
+    PersistentTree<K, V> put( K key, V value )
+    {
+        return new PersistentTree<>( comparator, put( root, key, value ) );
+    }
+
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key to remove
+     * @return The new tree, or this tree if the key was not present
+     */
+    PersistentTree<K, V> remove( K key )
+    {
+        if ( get( key ) == null )
+        {
+            return this;
+        }
+
+        return new PersistentTree<>( comparator, remove( root, key ) );
+    }
+
+
+    private Node<K, V> put( Node<K, V> node, K key, V value )
+    {
+        if ( node == null )
+        {
+            return new Node<>( key, value, null, null );
+        }
+
+        int cmp = comparator.compare( key, node.key );
+
+        if ( cmp == 0 )
+        {
+            return new Node<>( key, value, node.left, node.right );
+        }
+        else if ( cmp < 0 )
+        {
+            return balance( node.key, node.value, put( node.left, key, value ), node.right );
+        }
+        else
+        {
+            return balance( node.key, node.value, node.left, put( node.right, key, value ) );
+        }
+    }
+
+
+    private Node<K, V> remove( Node<K, V> node, K key )
+    {
+        int cmp = comparator.compare( key, node.key );
+
+        if ( cmp < 0 )
+        {
+            return balance( node.key, node.value, remove( node.left, key ), node.right );
+        }
+        else if ( cmp > 0 )
+        {
+            return balance( node.key, node.value, node.left, remove( node.right, key ) );
+        }
+
+        if ( node.left == null )
+        {
+            return node.right;
+        }
+
+        if ( node.right == null )
+        {
+            return node.left;
+        }
+
+        // Replace the removed node by its successor
+        Node<K, V> successor = node.right;
+
+        while ( successor.left != null )
+        {
+            successor = successor.left;
+        }
+
+        return balance( successor.key, successor.value, node.left, removeFirst( node.right ) );
+    }
+
+
+    private Node<K, V> removeFirst( Node<K, V> node )
+    {
+        if ( node.left == null )
+        {
+            return node.right;
+        }
+
+        return balance( node.key, node.value, removeFirst( node.left ), node.right );
+    }
+
+
+    /**
+     * Creates a node, applying the needed rotations if the heights of its two
+     * subtrees differ by more than one.
+     */
+    private Node<K, V> balance( K key, V value, Node<K, V> left, Node<K, V> right )
+    {
+        int diff = height( left ) - height( right );
+
+        if ( diff > 1 )
+        {
+            if ( height( left.left ) >= height( left.right ) )
+            {
+                // Single right rotation
+                return new Node<>( left.key, left.value, left.left, new Node<>( key, value, left.right, right ) );
+            }
+
+            // Double rotation
+            Node<K, V> pivot = left.right;
+
+            return new Node<>( pivot.key, pivot.value, new Node<>( left.key, left.value, left.left, pivot.left ),
+                new Node<>( key, value, pivot.right, right ) );
+        }
+
+        if ( diff < -1 )
+        {
+            if ( height( right.right ) >= height( right.left ) )
+            {
+                // Single left rotation
+                return new Node<>( right.key, right.value, new Node<>( key, value, left, right.left ), right.right );
+            }
+
+            // Double rotation
+            Node<K, V> pivot = right.left;
+
+            return new Node<>( pivot.key, pivot.value, new Node<>( key, value, left, pivot.left ),
+                new Node<>( right.key, right.value, pivot.right, right.right ) );
+        }
+
+        return new Node<>( key, value, left, right );
+    }
+}
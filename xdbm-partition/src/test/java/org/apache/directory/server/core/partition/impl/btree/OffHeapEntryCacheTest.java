@@ -0,0 +1,249 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link OffHeapEntryCache} class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OffHeapEntryCacheTest
+{
+    private static SchemaManager schemaManager;
+
+    /** A cache with room for 100 blocks */
+    private OffHeapEntryCache cache;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = OffHeapEntryCacheTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+    }
+
+
+    @Before
+    public void createCache()
+    {
+        cache = new OffHeapEntryCache( schemaManager, OffHeapEntryCache.BLOCK_SIZE * 100L );
+    }
+
+
+    @After
+    public void closeCache()
+    {
+        cache.close();
+    }
+
+
+    private Entry createEntry( int i ) throws Exception
+    {
+        return new DefaultEntry( schemaManager,
+            "cn=user" + i + ",ou=people,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user" + i,
+            "sn: User " + i,
+            "description: the user number " + i );
+    }
+
+
+    @Test
+    public void testPutGet() throws Exception
+    {
+        Entry entry = createEntry( 1 );
+        cache.put( "1", entry );
+
+        Entry cached = cache.get( "1" );
+
+        assertNotNull( cached );
+        assertEquals( entry.getDn(), cached.getDn() );
+        assertTrue( cached.getDn().isSchemaAware() );
+        assertEquals( entry, cached );
+        assertNull( cache.get( "2" ) );
+
+        // Each hit returns a new instance
+        cached.add( "description", "modified" );
+        assertEquals( entry, cache.get( "1" ) );
+    }
+
+
+    @Test
+    public void testReplace() throws Exception
+    {
+        cache.put( "1", createEntry( 1 ) );
+        cache.put( "1", createEntry( 2 ) );
+
+        assertEquals( 1L, cache.size() );
+        assertEquals( createEntry( 2 ), cache.get( "1" ) );
+    }
+
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        cache.put( "1", createEntry( 1 ) );
+        cache.put( "2", createEntry( 2 ) );
+
+        cache.invalidate( "1" );
+
+        assertNull( cache.get( "1" ) );
+        assertNotNull( cache.get( "2" ) );
+
+        cache.invalidateAll();
+
+        assertNull( cache.get( "2" ) );
+        assertEquals( 0L, cache.size() );
+        assertEquals( 0L, cache.getUsedMemory() );
+
+        // The released memory is reused
+        cache.put( "3", createEntry( 3 ) );
+        assertEquals( createEntry( 3 ), cache.get( "3" ) );
+    }
+
+
+    @Test
+    public void testMemoryBudget() throws Exception
+    {
+        for ( int i = 0; i < 1000; i++ )
+        {
+            cache.put( Integer.toString( i ), createEntry( i ) );
+            assertTrue( cache.getUsedMemory() <= OffHeapEntryCache.BLOCK_SIZE * 100L );
+        }
+
+        assertTrue( cache.size() < 1000L );
+
+        // The remaining entries are intact
+        int found = 0;
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            Entry entry = cache.get( Integer.toString( i ) );
+
+            if ( entry != null )
+            {
+                assertEquals( createEntry( i ), entry );
+                found++;
+            }
+        }
+
+        assertEquals( cache.size(), found );
+    }
+
+
+    @Test
+    public void testFrequentlyUsedEntriesAreKept() throws Exception
+    {
+        cache.put( "hot", createEntry( 0 ) );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertNotNull( cache.get( "hot" ) );
+        }
+
+        // Scan a lot of entries which are never read again
+        for ( int i = 1; i < 1000; i++ )
+        {
+            cache.put( Integer.toString( i ), createEntry( i ) );
+        }
+
+        assertEquals( createEntry( 0 ), cache.get( "hot" ) );
+    }
+
+
+    /**
+     * Check that the list of the released blocks grows when more blocks are used
+     */
+    @Test
+    public void testManyReleasedBlocks() throws Exception
+    {
+        OffHeapEntryCache largeCache = new OffHeapEntryCache( schemaManager, OffHeapEntryCache.BLOCK_SIZE * 10000L );
+
+        try
+        {
+            for ( int i = 0; i < 3000; i++ )
+            {
+                largeCache.put( Integer.toString( i ), createEntry( i ) );
+            }
+
+            for ( int i = 0; i < 3000; i += 2 )
+            {
+                largeCache.invalidate( Integer.toString( i ) );
+            }
+
+            largeCache.invalidateAll();
+
+            for ( int i = 0; i < 3000; i++ )
+            {
+                largeCache.put( Integer.toString( i ), createEntry( i ) );
+            }
+
+            assertEquals( createEntry( 2999 ), largeCache.get( "2999" ) );
+        }
+        finally
+        {
+            largeCache.close();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
 
 
 /**
@@ -292,8 +293,11 @@ public class StoreUtils
         entry.add( SchemaConstants.ENTRY_CSN_AT, CSN_FACTORY.newInstance().toString() );
         entry.add( SchemaConstants.ENTRY_UUID_AT, Strings.getUUID( index ).toString() );
 
+        Partition partition = ( Partition ) store;
+        PartitionTxn partitionTxn = partition.beginWriteTransaction();
         AddOperationContext addContext = new AddOperationContext( null, entry );
-        addContext.setTransaction( new MockPartitionWriteTxn() );
-        ( ( Partition ) store ).add( addContext );
+        addContext.setTransaction( partitionTxn );
+        partition.add( addContext );
+        partitionTxn.commit();
     }
 }
@@ -64,6 +64,7 @@ import org.apache.directory.server.core.api.interceptor.context.ModDnAva;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.Index;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.StoreUtils;
 import org.junit.After;
@@ -645,4 +646,71 @@ public class AvlPartitionTest
         lookedup = partition.modify( txn, dn, add );
         assertEquals( attribVal, lookedup.get( "ou" ).get().getString() );
     }
+
+    @Test
+    public void testConcurrentSnapshot() throws Exception
+    {
+        AvlPartition concurrentPartition = new AvlPartition( schemaManager, dnFactory );
+        concurrentPartition.setId( "concurrent" );
+        concurrentPartition.setConcurrent( true );
+        concurrentPartition.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        concurrentPartition.setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        concurrentPartition.initialize();
+        assertTrue( concurrentPartition.isConcurrent() );
+
+        try
+        {
+            StoreUtils.loadExampleData( concurrentPartition, schemaManager );
+
+            Dn dn = new Dn( schemaManager, "cn=JOhnny WAlkeR,ou=Sales,o=Good Times Co." );
+            PartitionTxn snapshot = concurrentPartition.beginReadTransaction();
+            String id = concurrentPartition.getEntryId( snapshot, dn );
+            Entry before = concurrentPartition.fetch( snapshot, id );
+            assertEquals( 11, concurrentPartition.count( snapshot ) );
+
+            // Add an entry and modify another one in a write transaction
+            Dn childDn = new Dn( schemaManager, "cn=Private Ryan,ou=Engineering,o=Good Times Co." );
+            DefaultEntry childEntry = new DefaultEntry( schemaManager, childDn,
+                "objectClass: top",
+                "objectClass: person",
+                "objectClass: organizationalPerson",
+                "ou: Engineering",
+                "cn", "Private Ryan",
+                "entryCSN", new CsnFactory( 1 ).newInstance().toString(),
+                "entryUUID", UUID.randomUUID().toString() );
+
+            PartitionTxn writeTxn = concurrentPartition.beginWriteTransaction();
+            AddOperationContext addContext = new AddOperationContext( null, childEntry );
+            addContext.setPartition( concurrentPartition );
+            addContext.setTransaction( writeTxn );
+            concurrentPartition.add( addContext );
+            concurrentPartition.modify( writeTxn, dn, new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+                schemaManager.getAttributeType( "telephoneNumber" ), "+1974045779" ) );
+
+            // Not visible until the write transaction is committed
+            assertNull( concurrentPartition.getEntryId( snapshot, childDn ) );
+            assertEquals( 11, concurrentPartition.count( concurrentPartition.beginReadTransaction() ) );
+
+            writeTxn.commit();
+
+            // The snapshot still sees the previous version, including the modified entry
+            assertEquals( 11, concurrentPartition.count( snapshot ) );
+            assertNull( concurrentPartition.getEntryId( snapshot, childDn ) );
+            assertNull( concurrentPartition.fetch( snapshot, id ).get( "telephoneNumber" ) );
+            assertNull( before.get( "telephoneNumber" ) );
+            @SuppressWarnings("unchecked")
+            Index<String, String> ouIndex = ( Index<String, String> ) concurrentPartition.getUserIndex( OU_AT );
+            String sales = OU_AT.getEquality().getNormalizer().normalize( "Sales" );
+            assertEquals( 3, ouIndex.count( snapshot, sales ) );
+
+            PartitionTxn current = concurrentPartition.beginReadTransaction();
+            assertEquals( 12, concurrentPartition.count( current ) );
+            assertNotNull( concurrentPartition.getEntryId( current, childDn ) );
+            assertTrue( concurrentPartition.fetch( current, id ).get( "telephoneNumber" ).contains( "+1974045779" ) );
+        }
+        finally
+        {
+            concurrentPartition.destroy( null );
+        }
+    }
 }
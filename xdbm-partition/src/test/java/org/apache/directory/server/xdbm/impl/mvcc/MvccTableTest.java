@@ -0,0 +1,756 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.mvcc;
+
+
+import static org.apache.directory.server.xdbm.impl.avl.TableData.injectDupsData;
+import static org.apache.directory.server.xdbm.impl.avl.TableData.injectNoDupsData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * A set of test cases for the MvccTable class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class MvccTableTest
+{
+    private MvccStore store;
+    private MvccTable<Integer, Integer> dups;
+    private MvccTable<Integer, Integer> nodups;
+    private final Comparator<Integer> comparator = new IntComparator();
+    PartitionTxn txn;
+
+
+    @Before
+    public void setUp()
+    {
+        store = new MvccStore();
+        dups = new MvccTable<Integer, Integer>( store, "dups", comparator, comparator, true );
+        nodups = new MvccTable<Integer, Integer>( store, "nodups", comparator, comparator, false );
+        txn = store.beginWriteTransaction();
+    }
+
+
+    @After
+    public void tearDown() throws Exception
+    {
+        txn.abort();
+    }
+
+
+    @Test
+    public void testGetName()
+    {
+        assertEquals( "dups", dups.getName() );
+        assertEquals( "nodups", nodups.getName() );
+    }
+
+
+    @Test
+    public void testCursorWithKey() throws Exception
+    {
+        injectNoDupsData( txn, nodups );
+        Cursor<Tuple<Integer, Integer>> cursor = nodups.cursor( txn, 2 );
+
+        cursor.beforeFirst();
+        assertFalse( cursor.available() );
+
+        assertTrue( cursor.next() );
+        Tuple<Integer, Integer> tuple = cursor.get();
+        assertEquals( 2, tuple.getKey().intValue() );
+        assertEquals( 1, tuple.getValue().intValue() );
+
+        assertFalse( cursor.next() );
+        
+        cursor.close();
+
+        // ---- on duplicates ----
+
+        injectDupsData( txn, dups );
+        cursor = dups.cursor( txn, 3 );
+        assertFalse( cursor.available() );
+
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 0, tuple.getValue().intValue() );
+
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 8, tuple.getValue().intValue() );
+
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 9, tuple.getValue().intValue() );
+
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 10, tuple.getValue().intValue() );
+
+        assertFalse( cursor.next() );
+        cursor.close();
+    }
+
+
+    @Test
+    public void testCursor() throws Exception
+    {
+        injectNoDupsData( txn, nodups );
+        Cursor<Tuple<Integer, Integer>> cursor = nodups.cursor( txn );
+
+        // position at first element (0,3)
+        assertTrue( cursor.first() );
+        Tuple<Integer, Integer> tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 0, tuple.getKey().intValue() );
+        assertEquals( 3, tuple.getValue().intValue() );
+
+        // move to next element (1,2)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 1, tuple.getKey().intValue() );
+        assertEquals( 2, tuple.getValue().intValue() );
+
+        // move to next element (2,1)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 2, tuple.getKey().intValue() );
+        assertEquals( 1, tuple.getValue().intValue() );
+
+        // move to next element (3,0)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 0, tuple.getValue().intValue() );
+
+        // move to next element (23,8934)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 23, tuple.getKey().intValue() );
+        assertEquals( 8934, tuple.getValue().intValue() );
+
+        assertFalse( cursor.next() );
+        cursor.close();
+
+        // work with duplicates now
+
+        injectDupsData( txn, dups );
+        cursor = dups.cursor( txn );
+
+        // position at first element (0,3)
+        assertTrue( cursor.first() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 0, tuple.getKey().intValue() );
+        assertEquals( 3, tuple.getValue().intValue() );
+
+        // move to next element (1,2)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 1, tuple.getKey().intValue() );
+        assertEquals( 2, tuple.getValue().intValue() );
+
+        // move to next element (1,4)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 1, tuple.getKey().intValue() );
+        assertEquals( 4, tuple.getValue().intValue() );
+
+        // move to next element (1,6)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 1, tuple.getKey().intValue() );
+        assertEquals( 6, tuple.getValue().intValue() );
+
+        // move to next element (2,1)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 2, tuple.getKey().intValue() );
+        assertEquals( 1, tuple.getValue().intValue() );
+
+        // move to next element (3,0)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 0, tuple.getValue().intValue() );
+
+        // move to next element (3,8)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 8, tuple.getValue().intValue() );
+
+        // move to next element (3,9)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 9, tuple.getValue().intValue() );
+
+        // move to next element (3,10)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 10, tuple.getValue().intValue() );
+
+        // move to next element (23,8934)
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 23, tuple.getKey().intValue() );
+        assertEquals( 8934, tuple.getValue().intValue() );
+
+        assertFalse( cursor.next() );
+
+        // test beforeFirst
+
+        cursor.beforeFirst();
+        assertFalse( cursor.available() );
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 0, tuple.getKey().intValue() );
+        assertEquals( 3, tuple.getValue().intValue() );
+
+        // test afterLast
+
+        cursor.afterLast();
+        assertFalse( cursor.available() );
+        assertFalse( cursor.next() );
+        assertTrue( cursor.previous() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 23, tuple.getKey().intValue() );
+        assertEquals( 8934, tuple.getValue().intValue() );
+        cursor.close();
+    }
+
+
+    /**
+     * Checks that cursor.after() behavior with duplicates enabled obeys 
+     * the required semantics.
+     */
+    @Test
+    public void testCursorAfterWithDups() throws Exception
+    {
+        injectDupsData( txn, dups );
+        Cursor<Tuple<Integer, Integer>> cursor;
+        Tuple<Integer, Integer> tuple = new Tuple<Integer, Integer>();
+
+        cursor = dups.cursor( txn );
+        cursor.after( tuple.setKey( 1 ) );
+        assertFalse( cursor.available() );
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 2, tuple.getKey().intValue() );
+        assertEquals( 1, tuple.getValue().intValue() );
+
+        tuple = new Tuple<Integer, Integer>();
+        cursor.after( tuple.setKey( 2 ) );
+        assertFalse( cursor.available() );
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 3, tuple.getKey().intValue() );
+        assertEquals( 0, tuple.getValue().intValue() );
+
+        tuple = new Tuple<Integer, Integer>();
+        cursor.after( tuple.setKey( 3 ) );
+        assertFalse( cursor.available() );
+        assertTrue( cursor.next() );
+        tuple = cursor.get();
+        assertNotNull( tuple );
+        assertEquals( 23, tuple.getKey().intValue() );
+        assertEquals( 8934, tuple.getValue().intValue() );
+        cursor.close();
+    }
+
+
+    /**
+     * Tests the put() and get() methods on a MvccTable.
+     */
+    @Test
+    public void testPutGetCount() throws Exception
+    {
+        // ---------------------------------------------------------
+        // normal operation 
+        // ---------------------------------------------------------
+
+        injectNoDupsData( txn, nodups );
+
+        assertEquals( 5, nodups.count( txn ) );
+
+        assertEquals( 3, nodups.get( txn, 0 ).intValue() );
+        assertEquals( 2, nodups.get( txn, 1 ).intValue() );
+        assertEquals( 1, nodups.get( txn, 2 ).intValue() );
+        assertEquals( 0, nodups.get( txn, 3 ).intValue() );
+        assertEquals( 8934, nodups.get( txn, 23 ).intValue() );
+
+        // ---------------------------------------------------------
+        // try adding duplicates when not supported
+        // ---------------------------------------------------------
+
+        nodups.put( txn, 23, 34 );
+        assertEquals( 34, nodups.get( txn, 23 ).intValue() );
+        assertEquals( 5, nodups.count( txn ) );
+
+        // ---------------------------------------------------------
+        // now with duplicates
+        // ---------------------------------------------------------
+
+        assertEquals( 0, dups.count( txn ) );
+
+        injectDupsData( txn, dups );
+
+        // [3,0] was put twice so only 10 of 11 should have been put in
+        assertEquals( 10, dups.count( txn ) );
+
+        assertEquals( 3, dups.get( txn, 0 ).intValue() );
+        assertEquals( 2, dups.get( txn, 1 ).intValue() );
+        assertEquals( 1, dups.get( txn, 2 ).intValue() );
+        assertEquals( 0, dups.get( txn, 3 ).intValue() );
+    }
+
+    /**
+     * Tests the remove() methods and the counts
+     */
+    @Test
+    public void testRemoveAndCounts() throws Exception
+    {
+        injectDupsData( txn, dups );
+
+        assertEquals( 3, dups.count( txn, 1 ) );
+        assertEquals( 4, dups.count( txn, 3 ) );
+        assertEquals( 0, dups.count( txn, 5 ) );
+
+        // Keys greater than or equal to 3 : 3 (4 values) and 23
+        assertEquals( 5, dups.greaterThanCount( txn, 3 ) );
+
+        // Keys less than or equal to 1 : 0 and 1 (3 values)
+        assertEquals( 4, dups.lessThanCount( txn, 1 ) );
+
+        dups.remove( txn, 1, 4 );
+        assertEquals( 2, dups.count( txn, 1 ) );
+        assertFalse( dups.has( txn, 1, 4 ) );
+        assertTrue( dups.has( txn, 1, 6 ) );
+
+        // Back to a single value
+        dups.remove( txn, 1, 2 );
+        assertEquals( 1, dups.count( txn, 1 ) );
+        assertEquals( 6, dups.get( txn, 1 ).intValue() );
+
+        dups.remove( txn, 1, 6 );
+        assertFalse( dups.has( txn, 1 ) );
+
+        dups.remove( txn, 3 );
+        assertFalse( dups.has( txn, 3 ) );
+        assertEquals( 3, dups.count( txn ) );
+
+        injectNoDupsData( txn, nodups );
+
+        // Removing with a wrong value has no effect
+        nodups.remove( txn, 2, 5 );
+        assertTrue( nodups.has( txn, 2 ) );
+        nodups.remove( txn, 2, 1 );
+        assertFalse( nodups.has( txn, 2 ) );
+        assertEquals( 4, nodups.count( txn ) );
+    }
+
+
+    /**
+     * Tests the backward moves and the positioning on a value
+     */
+    @Test
+    public void testCursorBackward() throws Exception
+    {
+        injectDupsData( txn, dups );
+        Cursor<Tuple<Integer, Integer>> cursor = dups.cursor( txn );
+
+        cursor.before( new Tuple<Integer, Integer>( 3, 9 ) );
+        assertTrue( cursor.next() );
+        assertEquals( 9, cursor.get().getValue().intValue() );
+        assertTrue( cursor.previous() );
+        assertEquals( 8, cursor.get().getValue().intValue() );
+        assertTrue( cursor.previous() );
+        assertEquals( 0, cursor.get().getValue().intValue() );
+        assertTrue( cursor.previous() );
+        assertEquals( 2, cursor.get().getKey().intValue() );
+
+        cursor.after( new Tuple<Integer, Integer>( 1, 4 ) );
+        assertTrue( cursor.previous() );
+        assertEquals( 1, cursor.get().getKey().intValue() );
+        assertEquals( 4, cursor.get().getValue().intValue() );
+
+        assertTrue( cursor.last() );
+        assertEquals( 23, cursor.get().getKey().intValue() );
+        assertTrue( cursor.first() );
+        assertFalse( cursor.previous() );
+        assertFalse( cursor.available() );
+        cursor.close();
+
+        Cursor<Integer> values = dups.valueCursor( txn, 3 );
+        values.afterLast();
+        assertTrue( values.previous() );
+        assertEquals( 10, values.get().intValue() );
+        values.before( 5 );
+        assertTrue( values.next() );
+        assertEquals( 8, values.get().intValue() );
+        values.close();
+    }
+
+
+    /**
+     * Tests that a read transaction keeps seeing the version it started with, and that
+     * the updates of a write transaction are only seen once committed
+     */
+    @Test
+    public void testSnapshotIsolation() throws Exception
+    {
+        // This test runs its own transactions
+        txn.abort();
+
+        PartitionTxn writeTxn = store.beginWriteTransaction();
+        injectDupsData( writeTxn, dups );
+
+        PartitionTxn beforeCommit = store.beginReadTransaction();
+        assertEquals( 10, dups.count( writeTxn ) );
+        assertEquals( 0, dups.count( beforeCommit ) );
+
+        writeTxn.commit();
+
+        assertEquals( 0, dups.count( beforeCommit ) );
+        assertEquals( 10, dups.count( store.beginReadTransaction() ) );
+
+        // A cursor keeps browsing the version it has been created on
+        PartitionTxn readTxn = store.beginReadTransaction();
+        Cursor<Tuple<Integer, Integer>> cursor = dups.cursor( readTxn, 1 );
+
+        writeTxn = store.beginWriteTransaction();
+        dups.remove( writeTxn, 1 );
+        writeTxn.commit();
+
+        int nbValues = 0;
+
+        while ( cursor.next() )
+        {
+            nbValues++;
+        }
+
+        cursor.close();
+
+        assertEquals( 3, nbValues );
+        assertTrue( dups.has( readTxn, 1 ) );
+        assertFalse( dups.has( store.beginReadTransaction(), 1 ) );
+
+        // An aborted transaction leaves no trace
+        writeTxn = store.beginWriteTransaction();
+        dups.remove( writeTxn, 3 );
+        nodups.put( writeTxn, 5, 5 );
+        writeTxn.abort();
+
+        assertTrue( dups.has( store.beginReadTransaction(), 3 ) );
+        assertFalse( nodups.has( store.beginReadTransaction(), 5 ) );
+    }
+
+
+    /**
+     * Tests that the write transactions are serialized, so that concurrent read-modify-write
+     * updates don't lose any update
+     */
+    @Test
+    public void testConcurrentWriteTransactions() throws Exception
+    {
+        nodups.put( txn, 1, 0 );
+        txn.commit();
+
+        Thread[] writers = new Thread[4];
+        final Exception[] failure = new Exception[1];
+
+        for ( int i = 0; i < writers.length; i++ )
+        {
+            writers[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < 100; j++ )
+                        {
+                            PartitionTxn writeTxn = store.beginWriteTransaction();
+                            int value = nodups.get( writeTxn, 1 );
+                            Thread.yield();
+                            nodups.put( writeTxn, 1, value + 1 );
+                            writeTxn.commit();
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        failure[0] = e;
+                    }
+                }
+            };
+
+            writers[i].start();
+        }
+
+        for ( Thread writer : writers )
+        {
+            writer.join();
+        }
+
+        assertNull( failure[0] );
+        assertEquals( Integer.valueOf( 400 ), nodups.get( store.beginReadTransaction(), 1 ) );
+    }
+
+
+    /**
+     * Tests that a write transaction joined by the same thread shares its updates
+     */
+    @Test
+    public void testJoinedWriteTransaction() throws Exception
+    {
+        // This test runs its own transactions
+        txn.abort();
+
+        PartitionTxn writeTxn = store.beginWriteTransaction();
+        nodups.put( writeTxn, 1, 1 );
+
+        PartitionTxn nestedTxn = store.beginWriteTransaction();
+        assertTrue( nodups.has( nestedTxn, 1 ) );
+        nodups.put( nestedTxn, 2, 2 );
+        nestedTxn.commit();
+
+        // Nothing is published until the outer transaction commits
+        assertFalse( nodups.has( store.beginReadTransaction(), 2 ) );
+
+        writeTxn.commit();
+
+        assertTrue( nodups.has( store.beginReadTransaction(), 1 ) );
+        assertTrue( nodups.has( store.beginReadTransaction(), 2 ) );
+    }
+
+
+    /**
+     * Tests that a table can only be updated in a running write transaction, by the thread
+     * which started it
+     */
+    @Test
+    public void testWriteOutsideTransaction() throws Exception
+    {
+        nodups.put( txn, 1, 1 );
+        txn.commit();
+
+        try
+        {
+            nodups.put( store.beginReadTransaction(), 2, 2 );
+            fail();
+        }
+        catch ( LdapOtherException loe )
+        {
+            // Expected
+        }
+
+        try
+        {
+            nodups.remove( txn, 1 );
+            fail();
+        }
+        catch ( LdapOtherException loe )
+        {
+            // Expected
+        }
+
+        final PartitionTxn writeTxn = store.beginWriteTransaction();
+        final Exception[] failures = new Exception[2];
+
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    nodups.put( writeTxn, 3, 3 );
+                }
+                catch ( Exception e )
+                {
+                    failures[0] = e;
+                }
+
+                try
+                {
+                    writeTxn.commit();
+                }
+                catch ( Exception e )
+                {
+                    failures[1] = e;
+                }
+            }
+        };
+
+        other.start();
+        other.join();
+
+        assertTrue( failures[0] instanceof LdapOtherException );
+        assertTrue( failures[1] instanceof IllegalStateException );
+        assertFalse( writeTxn.isClosed() );
+
+        writeTxn.commit();
+
+        PartitionTxn readTxn = store.beginReadTransaction();
+        assertTrue( nodups.has( readTxn, 1 ) );
+        assertFalse( nodups.has( readTxn, 2 ) );
+        assertFalse( nodups.has( readTxn, 3 ) );
+    }
+
+
+    /**
+     * Tests that a commit fails, and publishes nothing, when a table it updates has been
+     * reset while the transaction was running
+     */
+    @Test
+    public void testWriteConflict() throws Exception
+    {
+        nodups.put( txn, 2, 2 );
+        txn.commit();
+
+        PartitionTxn writeTxn = store.beginWriteTransaction();
+        nodups.put( writeTxn, 1, 1 );
+        dups.put( writeTxn, 1, 1 );
+
+        // Closing a table resets it immediately
+        nodups.close( null );
+
+        try
+        {
+            writeTxn.commit();
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        PartitionTxn readTxn = store.beginReadTransaction();
+        assertFalse( nodups.has( readTxn, 1 ) );
+        assertFalse( dups.has( readTxn, 1 ) );
+        assertFalse( nodups.has( readTxn, 2 ) );
+
+        // The store is available for the next writer
+        writeTxn = store.beginWriteTransaction();
+        dups.put( writeTxn, 1, 1 );
+        writeTxn.commit();
+
+        assertTrue( dups.has( store.beginReadTransaction(), 1 ) );
+    }
+
+
+    /**
+     * Checks the table against a TreeMap, with random insertions and deletions
+     */
+    @Test
+    public void testRandomUpdates() throws Exception
+    {
+        Random random = new Random( 42L );
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            int key = random.nextInt( 500 );
+
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                nodups.remove( txn, key );
+                expected.remove( key );
+            }
+            else
+            {
+                nodups.put( txn, key, i );
+                expected.put( key, i );
+            }
+        }
+
+        assertEquals( expected.size(), nodups.count( txn ) );
+        assertEquals( expected.headMap( 250, true ).size(), nodups.lessThanCount( txn, 250 ) );
+
+        Cursor<Tuple<Integer, Integer>> cursor = nodups.cursor( txn );
+
+        for ( Map.Entry<Integer, Integer> entry : expected.entrySet() )
+        {
+            assertTrue( cursor.next() );
+            assertEquals( entry.getKey(), cursor.get().getKey() );
+            assertEquals( entry.getValue(), cursor.get().getValue() );
+        }
+
+        assertFalse( cursor.next() );
+        cursor.close();
+    }
+
+
+    class IntComparator implements Comparator<Integer>
+    {
+        public int compare( Integer i1, Integer i2 )
+        {
+            return i1.compareTo( i2 );
+        }
+    }
+}